@@ -0,0 +1,21 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Reads the number of bytes allocated by the current thread, as tracked by HotSpot.
+ */
+public final class Allocations {
+
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private Allocations() {
+	}
+
+	public static long allocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+}
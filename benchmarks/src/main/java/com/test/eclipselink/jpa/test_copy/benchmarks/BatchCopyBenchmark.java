@@ -0,0 +1,123 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Compares copying freshly loaded roots one by one, each copy initializing what it needs (the N+1 case), with batch
+ * copies (CopyPlans.copyAll with an EntityManager), which load it a few hundred entities per query first.
+ *
+ * As in CopyGroupCascadeBenchmark, every operation gets its own context and the "statements" and "copies" counters tell
+ * the number of queries per copy.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchCopyBenchmark {
+
+	@Param({ "CASCADE_ALL_PARTS", "CASCADE_TREE" })
+	public CascadeMode mode;
+
+	@Param({ "100", "1000" })
+	public int width;
+
+	private EntityManagerFactory emf;
+	private StatementCounter statementCounter;
+	private CopyGroup group;
+	private CopyPlans plans;
+
+	private EntityManager em;
+	private List<RootEntity> roots;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class CopyCounters {
+
+		public long statements;
+		public long copies;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			statements = 0;
+			copies = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void createFactory() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		statementCounter = StatementCounter.install(emf);
+		group = mode.newCopyGroup(BenchmarkGraphs.MAX_DEPTH);
+		plans = new CopyPlans(emf);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeFactory() {
+		emf.close();
+	}
+
+	@Setup(Level.Invocation)
+	public void loadRoots() {
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, 0);
+		statementCounter.reset();
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeContext() {
+		em.close();
+	}
+
+	@Benchmark
+	public Object oneByOne(CopyCounters counters) {
+		CopyPlan plan = plans.plan(RootEntity.class, group);
+		Map<Object, Object> copied = new IdentityHashMap<Object, Object>();
+		for (RootEntity root : roots) {
+			plan.copy(root, copied);
+		}
+		counters.statements += statementCounter.getStatementCount();
+		counters.copies += roots.size();
+		return copied;
+	}
+
+	@Benchmark
+	public Object batch(CopyCounters counters) {
+		Object copies = plans.copyAll(em, roots, group);
+		counters.statements += statementCounter.getStatementCount();
+		counters.copies += roots.size();
+		return copies;
+	}
+
+}
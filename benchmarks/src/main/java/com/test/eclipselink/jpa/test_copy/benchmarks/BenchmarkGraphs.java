@@ -0,0 +1,147 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity_1;
+import com.test.eclipselink.jpa.test_copy.entities.DeepAssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Builds, loads and describes the RootEntity graphs the benchmarks copy.
+ *
+ * Every graph is the one set up by TestCopyEntities: a RootEntity, its AssociateEntity (and that one's DeepAssociateEntity) and
+ * the AssociateEntity_1 that points back to the root. All four entities of the n-th graph share the id n.
+ *
+ * Two parameters shape a benchmark:
+ *      -width, the number of graphs (roots) copied by a single operation
+ *      -depth, how far each graph was loaded before being copied (and, for CASCADE_TREE, how far the CopyGroup reaches):
+ *          0 - the root's own attributes
+ *          1 - plus "association" and "association1"
+ *          2 - plus "association.deepAssocEntity" and "association1.circularRef"
+ *
+ */
+public final class BenchmarkGraphs {
+
+	public static final int MAX_DEPTH = 2;
+
+	private BenchmarkGraphs() {
+	}
+
+	/**
+	 * Creates the testPU factory with logging turned off; FINEST logging would otherwise be most of what gets measured.
+	 */
+	public static EntityManagerFactory createEntityManagerFactory() {
+		return createEntityManagerFactory(new HashMap<String, Object>());
+	}
+
+	public static EntityManagerFactory createEntityManagerFactory(Map<String, Object> overrides) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PersistenceUnitProperties.LOGGING_LEVEL, "OFF");
+		properties.putAll(overrides);
+		return Persistence.createEntityManagerFactory("testPU", properties);
+	}
+
+	/**
+	 * Makes sure graphs 1..width exist; graphs are merged, so populating the same database twice is harmless.
+	 */
+	public static void populate(EntityManagerFactory emf, int width) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			for (long id = 1; id <= width; id++) {
+				RootEntity rootEntity = new RootEntity();
+				rootEntity.setId(id);
+				rootEntity.setData1("Root:" + id + "L:Data1");
+				rootEntity.setData2("Root:" + id + "L:Data2");
+
+				DeepAssociateEntity deepAssoc = new DeepAssociateEntity();
+				deepAssoc.setId(id);
+				deepAssoc.setData1("DeepAssoc:" + id + "L:Data1");
+				deepAssoc.setData2("DeepAssoc:" + id + "L:Data2");
+
+				AssociateEntity assocEnt = new AssociateEntity();
+				assocEnt.setId(id);
+				assocEnt.setData1("Assoc:" + id + "L:Data1");
+				assocEnt.setData2("Assoc:" + id + "L:Data2");
+				assocEnt.setLazyData3("Assoc:" + id + "L:LazyData3");
+
+				AssociateEntity_1 circularAssoc = new AssociateEntity_1();
+				circularAssoc.setId(id);
+				circularAssoc.setData1("Assoc_1:" + id + "L:Data1");
+				circularAssoc.setData2("Assoc_1:" + id + "L:Data2");
+
+				rootEntity = em.merge(rootEntity);
+				assocEnt = em.merge(assocEnt);
+				assocEnt.setDeepAssocEntity(em.merge(deepAssoc));
+				rootEntity.setAssociation(assocEnt);
+
+				circularAssoc.setCircularRef(rootEntity);
+				rootEntity.setAssociation1(em.merge(circularAssoc));
+
+				if (id % 500 == 0) {
+					em.flush();
+					em.clear();
+				}
+			}
+			em.getTransaction().commit();
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Reads roots 1..width with their default fetch state and initializes their associations down to the given depth.
+	 */
+	public static List<RootEntity> load(EntityManager em, int width, int depth) {
+		TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o WHERE o.id <= :width ORDER BY o.id",
+				RootEntity.class);
+		query.setParameter("width", (long) width);
+		List<RootEntity> roots = query.getResultList();
+		for (RootEntity root : roots) {
+			if (depth >= 1) {
+				AssociateEntity association = root.getAssociation();
+				AssociateEntity_1 association1 = root.getAssociation1();
+				if (depth >= 2) {
+					association.getDeepAssocEntity();
+					association1.getCircularRef();
+				}
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * A CASCADE_TREE CopyGroup covering exactly what {@link #load(EntityManager, int, int)} initializes for the given depth.
+	 */
+	public static CopyGroup treeGroup(int depth) {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("data2");
+		if (depth >= 1) {
+			cg.addAttribute("association.data1");
+			cg.addAttribute("association.data2");
+			cg.addAttribute("association1.data1");
+			cg.addAttribute("association1.data2");
+		}
+		if (depth >= 2) {
+			cg.addAttribute("association.deepAssocEntity.data1");
+			cg.addAttribute("association.deepAssocEntity.data2");
+			cg.addAttribute("association1.circularRef.data1");
+			cg.addAttribute("association1.circularRef.data2");
+		}
+		return cg;
+	}
+
+}
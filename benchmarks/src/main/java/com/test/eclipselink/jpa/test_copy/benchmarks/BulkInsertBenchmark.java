@@ -0,0 +1,148 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyInserter;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.IdBlocks;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity_1;
+import com.test.eclipselink.jpa.test_copy.entities.DeepAssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Inserts "graphs" copies of graph 1, made by JpaEntityManager.copy with the primary key reset, as new rows (four per
+ * graph), with JDBC batch writing ("batchSize" statements per batch) and statement caching turned on:
+ *      -persist: new ids from IdBlocks, then every entity persisted through an EntityManager, a transaction per chunk of
+ *          CopyInserter.DEFAULT_CHUNK_SIZE graphs
+ *      -copyInserter: CopyInserter.insertAll, which gives the ids out itself
+ *
+ * Every measured operation inserts all the copies once; they are made before, and their rows deleted after, each
+ * iteration.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BulkInsertBenchmark {
+
+	@Param({ "100000" })
+	public int graphs;
+
+	@Param({ "100" })
+	public int batchSize;
+
+	private EntityManagerFactory emf;
+	private CopyPlans plans;
+	private IdBlocks ids;
+	private List<RootEntity> copies;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory(CopyInserter.batchProperties(batchSize));
+		BenchmarkGraphs.populate(emf, 1);
+		plans = new CopyPlans(emf);
+		ids = new IdBlocks(emf);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		emf.close();
+	}
+
+	private static CopyGroup resetKeyGroup() {
+		CopyGroup cg = CascadeMode.CASCADE_ALL_PARTS.newCopyGroup(BenchmarkGraphs.MAX_DEPTH);
+		cg.setShouldResetPrimaryKey(true);
+		return cg;
+	}
+
+	@Setup(Level.Iteration)
+	public void copy() {
+		EntityManager em = emf.createEntityManager();
+		try {
+			RootEntity root = BenchmarkGraphs.load(em, 1, BenchmarkGraphs.MAX_DEPTH).get(0);
+			copies = new ArrayList<RootEntity>(graphs);
+			for (int i = 0; i < graphs; i++) {
+				//a group per copy: a group keeps the copies it made, and would hand out the same one again
+				copies.add((RootEntity) ((JpaEntityManager) em).copy(root, resetKeyGroup()));
+			}
+		} finally {
+			em.close();
+		}
+	}
+
+	//all but graph 1, referencing tables first
+	@TearDown(Level.Iteration)
+	public void deleteCopies() {
+		copies = null;
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			for (String entityName : new String[] { "AssociateEntity_1", "RootEntity", "AssociateEntity", "DeepAssociateEntity" }) {
+				em.createQuery("DELETE FROM " + entityName + " e WHERE e.id > 1").executeUpdate();
+			}
+			em.getTransaction().commit();
+		} finally {
+			em.close();
+		}
+	}
+
+	@Benchmark
+	public int persist() {
+		EntityManager em = emf.createEntityManager();
+		try {
+			for (int start = 0; start < copies.size(); start += CopyInserter.DEFAULT_CHUNK_SIZE) {
+				em.getTransaction().begin();
+				for (RootEntity copyRoot : copies.subList(start, Math.min(start + CopyInserter.DEFAULT_CHUNK_SIZE, copies.size()))) {
+					AssociateEntity association = copyRoot.getAssociation();
+					DeepAssociateEntity deepAssociate = association.getDeepAssocEntity();
+					AssociateEntity_1 association1 = copyRoot.getAssociation1();
+					copyRoot.setId((Long) ids.nextId(RootEntity.class));
+					association.setId((Long) ids.nextId(AssociateEntity.class));
+					deepAssociate.setId((Long) ids.nextId(DeepAssociateEntity.class));
+					association1.setId((Long) ids.nextId(AssociateEntity_1.class));
+					em.persist(deepAssociate);
+					em.persist(association);
+					em.persist(copyRoot);
+					em.persist(association1);
+				}
+				em.getTransaction().commit();
+				em.clear();
+			}
+		} finally {
+			em.close();
+		}
+		return copies.size();
+	}
+
+	@Benchmark
+	public int copyInserter() {
+		return new CopyInserter(emf, plans, ids).insertAll(copies, resetKeyGroup());
+	}
+
+}
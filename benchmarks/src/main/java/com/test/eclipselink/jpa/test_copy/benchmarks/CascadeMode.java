@@ -0,0 +1,49 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+
+/**
+ * The four CopyGroup cascade levels, as a JMH parameter.
+ */
+public enum CascadeMode {
+
+	CASCADE_ALL_PARTS {
+		@Override
+		public CopyGroup newCopyGroup(int depth) {
+			CopyGroup cg = new CopyGroup();
+			cg.cascadeAllParts();
+			return cg;
+		}
+	},
+
+	CASCADE_TREE {
+		@Override
+		public CopyGroup newCopyGroup(int depth) {
+			return BenchmarkGraphs.treeGroup(depth);
+		}
+	},
+
+	CASCADE_PRIVATE_PARTS {
+		@Override
+		public CopyGroup newCopyGroup(int depth) {
+			CopyGroup cg = new CopyGroup();
+			cg.cascadePrivateParts();
+			return cg;
+		}
+	},
+
+	NO_CASCADE {
+		@Override
+		public CopyGroup newCopyGroup(int depth) {
+			CopyGroup cg = new CopyGroup();
+			cg.dontCascade();
+			return cg;
+		}
+	};
+
+	/**
+	 * A new group for every copy: a CopyGroup keeps the copies it made, so reusing one would hand back the previous copies.
+	 */
+	public abstract CopyGroup newCopyGroup(int depth);
+
+}
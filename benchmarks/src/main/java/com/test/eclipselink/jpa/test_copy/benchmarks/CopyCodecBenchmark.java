@@ -0,0 +1,123 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.codec.CopyCodec;
+
+/**
+ *
+ * Ships copies of "width" graphs, loaded all the way (depth 2) and copied with BenchmarkGraphs.treeGroup(2), as bytes:
+ *      -codecEncode, codecDecode: CopyCodec
+ *      -javaWrite, javaRead: java.io serialization
+ * The "bytes" counter of codecEncode and javaWrite tells the size of the encoding.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyCodecBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	private EntityManagerFactory emf;
+	private CopyCodec codec;
+	private List<Object> copies;
+	private byte[] encoded;
+	private byte[] serialized;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class EncodedSize {
+
+		public long bytes;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		EntityManager em = emf.createEntityManager();
+		try {
+			copies = new ArrayList<Object>((List<?>) ((JpaEntityManager) em)
+					.copy(BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH), BenchmarkGraphs.treeGroup(BenchmarkGraphs.MAX_DEPTH)));
+		} finally {
+			em.close();
+		}
+		codec = new CopyCodec(emf);
+		encoded = codec.encodeAll(copies);
+		serialized = serialize(copies);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		emf.close();
+	}
+
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] codecEncode(EncodedSize size) {
+		byte[] bytes = codec.encodeAll(copies);
+		size.bytes = bytes.length;
+		return bytes;
+	}
+
+	@Benchmark
+	public Object codecDecode() {
+		return codec.decodeAll(encoded);
+	}
+
+	@Benchmark
+	public byte[] javaWrite(EncodedSize size) throws IOException {
+		byte[] bytes = serialize(copies);
+		size.bytes = bytes.length;
+		return bytes;
+	}
+
+	@Benchmark
+	public Object javaRead() throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Measures JpaEntityManager.copy for every CopyGroup cascade level.
+ *
+ * Each operation copies "width" freshly loaded roots (see BenchmarkGraphs for what width and depth mean), so the extra
+ * initialization queries a cascade level triggers are part of what is measured - just as they are in TestCopyEntities.
+ *
+ * Reported per benchmark:
+ *      -ops/s, the primary result (one op copies "width" roots)
+ *      -"statements" and "copies", the SQL statements issued while copying and the number of roots copied;
+ *          statements / copies is the number of queries per copy
+ *      -"allocatedBytes", the bytes the copying thread allocated inside copy(); allocatedBytes / copies is the number of bytes
+ *          allocated per copy (gc.alloc.rate.norm from -prof gc also counts the reloading done before every operation)
+ *
+ * Run with: java -jar target/benchmarks.jar CopyGroupCascadeBenchmark -prof gc
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyGroupCascadeBenchmark {
+
+	@Param({ "CASCADE_ALL_PARTS", "CASCADE_TREE", "CASCADE_PRIVATE_PARTS", "NO_CASCADE" })
+	public CascadeMode mode;
+
+	@Param({ "1", "100" })
+	public int width;
+
+	@Param({ "0", "1", "2" })
+	public int depth;
+
+	private EntityManagerFactory emf;
+	private StatementCounter statementCounter;
+
+	private EntityManager em;
+	private List<RootEntity> roots;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class CopyCounters {
+
+		public long statements;
+		public long copies;
+		public long allocatedBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			statements = 0;
+			copies = 0;
+			allocatedBytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void createFactory() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		statementCounter = StatementCounter.install(emf);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeFactory() {
+		emf.close();
+	}
+
+	//copying initializes the originals, so every operation gets its own context and freshly loaded roots
+	@Setup(Level.Invocation)
+	public void loadRoots() {
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, depth);
+		statementCounter.reset();
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeContext() {
+		em.close();
+	}
+
+	@Benchmark
+	public Object copy(CopyCounters counters) {
+		long allocatedBefore = Allocations.allocatedBytes();
+		Object copies = ((JpaEntityManager) em).copy(roots, mode.newCopyGroup(depth));
+		counters.allocatedBytes += Allocations.allocatedBytes() - allocatedBefore;
+		counters.statements += statementCounter.getStatementCount();
+		counters.copies += roots.size();
+		return copies;
+	}
+
+}
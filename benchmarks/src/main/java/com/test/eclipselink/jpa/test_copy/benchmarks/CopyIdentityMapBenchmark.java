@@ -0,0 +1,133 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyIdentityMap;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copies "width" graphs loaded all the way (depth 2) with a CASCADE_ALL_PARTS plan, with the original-to-copy map given
+ * by "map" (a new IdentityHashMap, or the CopyIdentityMap of the thread sized from the plan):
+ *      -copyEachGraph: one map per graph, i.e. per copy of 4 entities
+ *      -copyAllGraphs: one map for all the graphs, as CopyPlans.copyAll copies them, i.e. 4 * "width" entities
+ *      -traversal: the map alone, as a traversal of "width" * 4 entities uses it: a lookup then an insertion per entity,
+ *      then a lookup per entity again, as back-references do
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyIdentityMapBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	@Param({ "identityHashMap", "copyIdentityMap" })
+	public String map;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+	private CopyPlan plan;
+	private Object[] entities;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		plan = new CopyPlans(emf).plan(RootEntity.class, cg);
+		entities = new Object[4 * width];
+		for (int i = 0; i < entities.length; i++) {
+			entities[i] = new Object();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	private Map<Object, Object> acquire(int expectedSize) {
+		return map.equals("identityHashMap") ? new IdentityHashMap<Object, Object>()
+				: CopyIdentityMap.acquire(expectedSize);
+	}
+
+	private static void release(Map<Object, Object> copies) {
+		if (copies instanceof CopyIdentityMap) {
+			((CopyIdentityMap) copies).release();
+		}
+	}
+
+	@Benchmark
+	public int copyEachGraph() {
+		int hash = 0;
+		for (RootEntity root : roots) {
+			Map<Object, Object> copies = acquire(plan.getExpectedSize());
+			hash += System.identityHashCode(plan.copy(root, copies));
+			release(copies);
+		}
+		return hash;
+	}
+
+	@Benchmark
+	public int copyAllGraphs() {
+		int hash = 0;
+		Map<Object, Object> copies = acquire(plan.getExpectedSize() * roots.size());
+		for (RootEntity root : roots) {
+			hash += System.identityHashCode(plan.copy(root, copies));
+		}
+		release(copies);
+		return hash;
+	}
+
+	@Benchmark
+	public int traversal() {
+		Map<Object, Object> copies = acquire(entities.length);
+		for (Object entity : entities) {
+			if (copies.get(entity) == null) {
+				copies.put(entity, entity);
+			}
+		}
+		int found = 0;
+		for (Object entity : entities) {
+			if (copies.get(entity) != null) {
+				found++;
+			}
+		}
+		release(copies);
+		return found;
+	}
+
+}
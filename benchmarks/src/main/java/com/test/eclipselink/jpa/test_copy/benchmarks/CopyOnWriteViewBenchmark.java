@@ -0,0 +1,97 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+import com.test.eclipselink.jpa.test_copy.view.CopyOnWriteViews;
+
+/**
+ *
+ * A read-mostly caller: for each of "width" graphs loaded all the way (depth 2), it reads "data1" and
+ * "association.data2", and sets "data2" if "write" is set, on:
+ *      -cascadeAllCopy: a CASCADE_ALL_PARTS copy, made up front
+ *      -copyOnWriteView: a copy-on-write view (see CopyOnWriteViews)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyOnWriteViewBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	@Param({ "false", "true" })
+	public boolean write;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+	private CopyOnWriteViews views;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+		views = new CopyOnWriteViews(emf);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	@Benchmark
+	public long cascadeAllCopy() {
+		long length = 0;
+		for (RootEntity root : roots) {
+			CopyGroup cg = new CopyGroup();
+			cg.cascadeAllParts();
+			length += use((RootEntity) ((JpaEntityManager) em).copy(root, cg));
+		}
+		return length;
+	}
+
+	@Benchmark
+	public long copyOnWriteView() {
+		long length = 0;
+		for (RootEntity root : roots) {
+			length += use(views.view(root));
+		}
+		return length;
+	}
+
+	private long use(RootEntity copy) {
+		if (write) {
+			copy.setData2("Written");
+		}
+		return copy.getData1().length() + copy.getAssociation().getData2().length();
+	}
+
+}
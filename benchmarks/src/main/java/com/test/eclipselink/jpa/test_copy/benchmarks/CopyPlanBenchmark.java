@@ -0,0 +1,102 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Compares JpaEntityManager.copy with copy plans (see CopyPlan), on graphs that are loaded all the way (depth 2), so
+ * that no copy has anything left to initialize and only the copying itself is measured.
+ *
+ *      -plainCopy: JpaEntityManager.copy with a new CopyGroup, as every caller has to do
+ *      -cachedPlan: CopyPlans.copyAll, which looks the plan up by the group's signature on every call
+ *      -heldPlan: a plan compiled once and held by the caller
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyPlanBenchmark {
+
+	@Param({ "CASCADE_ALL_PARTS", "CASCADE_TREE" })
+	public CascadeMode mode;
+
+	@Param({ "1", "100" })
+	public int width;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+
+	private CopyGroup group;
+	private CopyPlans plans;
+	private CopyPlan plan;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+
+		group = mode.newCopyGroup(BenchmarkGraphs.MAX_DEPTH);
+		plans = new CopyPlans(emf);
+		plan = plans.plan(RootEntity.class, group);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	@Benchmark
+	public Object plainCopy() {
+		return ((JpaEntityManager) em).copy(roots, mode.newCopyGroup(BenchmarkGraphs.MAX_DEPTH));
+	}
+
+	@Benchmark
+	public Object cachedPlan() {
+		return plans.copyAll(roots, group);
+	}
+
+	@Benchmark
+	public Object heldPlan() {
+		Map<Object, Object> copied = new IdentityHashMap<Object, Object>();
+		List<Object> copies = new ArrayList<Object>(roots.size());
+		for (RootEntity root : roots) {
+			copies.add(plan.copy(root, copied));
+		}
+		return copies;
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.CopySource;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Fans "width" graphs out to "tenants" variants each, with a CASCADE_ALL_PARTS group that resets the primary key, on a
+ * pool of 1 to 8 threads; every tenant is a task of its own. The graphs are copied from:
+ *      -reload: the graphs loaded all the way (depth 2) by an EntityManager of the task, as each thread needs its own
+ *      -snapshot: a CopySource per graph, built once and shared by all tasks
+ * The speedup from one thread to N is the ratio of their ops/s; it cannot exceed the number of cores.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopySourceBenchmark {
+
+	@Param({ "reload", "snapshot" })
+	public String source;
+
+	@Param({ "100" })
+	public int width;
+
+	@Param({ "16" })
+	public int tenants;
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	private EntityManagerFactory emf;
+	private ExecutorService executor;
+	private CopyPlan variantPlan;
+	private List<CopySource<RootEntity>> sources;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		executor = Executors.newFixedThreadPool(threads);
+		CopyPlans plans = new CopyPlans(emf);
+		CopyGroup variantGroup = CascadeMode.CASCADE_ALL_PARTS.newCopyGroup(BenchmarkGraphs.MAX_DEPTH);
+		variantGroup.setShouldResetPrimaryKey(true);
+		variantPlan = plans.plan(RootEntity.class, variantGroup);
+		sources = new ArrayList<CopySource<RootEntity>>(width);
+		EntityManager em = emf.createEntityManager();
+		for (RootEntity root : BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH)) {
+			sources.add(new CopySource<RootEntity>(plans, root,
+					CascadeMode.CASCADE_ALL_PARTS.newCopyGroup(BenchmarkGraphs.MAX_DEPTH)));
+		}
+		em.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executor.shutdown();
+		emf.close();
+	}
+
+	private List<Object> reloadAndCopy() {
+		EntityManager em = emf.createEntityManager();
+		try {
+			List<Object> variants = new ArrayList<Object>(width);
+			for (RootEntity root : BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH)) {
+				variants.add(variantPlan.copy(root));
+			}
+			return variants;
+		} finally {
+			em.close();
+		}
+	}
+
+	private List<Object> copySnapshots() {
+		List<Object> variants = new ArrayList<Object>(width);
+		for (CopySource<RootEntity> graph : sources) {
+			variants.add(graph.copy(variantPlan));
+		}
+		return variants;
+	}
+
+	@Benchmark
+	public int fanOut() throws Exception {
+		List<Callable<List<Object>>> tasks = new ArrayList<Callable<List<Object>>>(tenants);
+		for (int i = 0; i < tenants; i++) {
+			tasks.add(new Callable<List<Object>>() {
+
+				@Override
+				public List<Object> call() {
+					return source.equals("reload") ? reloadAndCopy() : copySnapshots();
+				}
+			});
+		}
+		int copies = 0;
+		for (Future<List<Object>> future : executor.invokeAll(tasks)) {
+			copies += future.get().size();
+		}
+		return copies;
+	}
+
+}
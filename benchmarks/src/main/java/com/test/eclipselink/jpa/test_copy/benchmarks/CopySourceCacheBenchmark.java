@@ -0,0 +1,127 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.CopySourceCache;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copies graph after graph by id, going round "width" graphs, with a CASCADE_ALL_PARTS group:
+ *      -reload: an EntityManager per copy reads the graph (all the way, depth 2) before it is copied, as every request
+ *          does with the shared cache off
+ *      -cached: the copy is made from a CopySourceCache holding all graphs
+ * Every "writeEvery" copies (never if 0), the AssociateEntity of the graph about to be copied is changed and committed,
+ * which drops its snapshot from the cache; the "hits" and "misses" counters of cached tell how often that makes it read
+ * the graph again.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopySourceCacheBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	@Param({ "0", "100" })
+	public int writeEvery;
+
+	private EntityManagerFactory emf;
+	private CopyPlan plan;
+	private CopySourceCache cache;
+	private long copies;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class CacheCounters {
+
+		public long hits;
+		public long misses;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			hits = 0;
+			misses = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		CopyPlans plans = new CopyPlans(emf);
+		plan = plans.plan(RootEntity.class, CascadeMode.CASCADE_ALL_PARTS.newCopyGroup(BenchmarkGraphs.MAX_DEPTH));
+		cache = new CopySourceCache(emf, plans, CascadeMode.CASCADE_ALL_PARTS.newCopyGroup(BenchmarkGraphs.MAX_DEPTH), width,
+				CopySourceCache.DEFAULT_TIME_TO_LIVE_MILLIS);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		cache.close();
+		emf.close();
+	}
+
+	//the id of the next graph, after a write to it if one is due
+	private long next() {
+		long id = copies++ % width + 1;
+		if (writeEvery > 0 && copies % writeEvery == 0) {
+			EntityManager em = emf.createEntityManager();
+			try {
+				em.getTransaction().begin();
+				em.find(AssociateEntity.class, id).setData2("Assoc:" + id + "L:Data2:" + copies);
+				em.getTransaction().commit();
+			} finally {
+				em.close();
+			}
+		}
+		return id;
+	}
+
+	@Benchmark
+	public Object reload() {
+		long id = next();
+		EntityManager em = emf.createEntityManager();
+		try {
+			return plan.copy(em.find(RootEntity.class, id));
+		} finally {
+			em.close();
+		}
+	}
+
+	@Benchmark
+	public Object cached(CacheCounters counters) {
+		long id = next();
+		long hits = cache.getHitCount();
+		long misses = cache.getMissCount();
+		Object copy = cache.copy(RootEntity.class, id);
+		counters.hits += cache.getHitCount() - hits;
+		counters.misses += cache.getMissCount() - misses;
+		return copy;
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyIdentityMap;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.CopyTraversal;
+import com.test.eclipselink.jpa.test_copy.entities.ChainLinkEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copies with a CASCADE_ALL_PARTS plan in the given "traversal" order:
+ *      -copyChain: a cycle of "length" ChainLinkEntity links, far deeper than a recursive copy could go
+ *      -copyGraphs: the 100 graphs loaded all the way (depth 2), one at a time, as CopyPlan.copy(Object) copies them
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeepCopyBenchmark {
+
+	private static final int WIDTH = 100;
+
+	@Param({ "100000" })
+	public int length;
+
+	@Param({ "DEPTH_FIRST", "BREADTH_FIRST" })
+	public CopyTraversal traversal;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private ChainLinkEntity first;
+	private List<RootEntity> roots;
+	private CopyPlan chainPlan;
+	private CopyPlan graphPlan;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, WIDTH);
+		persistChain();
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, WIDTH, BenchmarkGraphs.MAX_DEPTH);
+		//the whole chain in the persistence context, so that copying it runs no query
+		em.createQuery("SELECT o FROM ChainLinkEntity o", ChainLinkEntity.class).getResultList();
+		first = em.find(ChainLinkEntity.class, 1L);
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		CopyPlans plans = new CopyPlans(emf);
+		chainPlan = plans.plan(ChainLinkEntity.class, cg);
+		graphPlan = plans.plan(RootEntity.class, cg);
+	}
+
+	//links 1 to length, each one's next the one after it and the last one's the first one
+	private void persistChain() {
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		em.createNativeQuery("DELETE FROM CHAIN_LINK_ENTITY").executeUpdate();
+		for (long id = length; id >= 1; id--) {
+			em.createNativeQuery("INSERT INTO CHAIN_LINK_ENTITY (ID, DATA1, NEXT_FK) VALUES (?, ?, ?)")
+					.setParameter(1, id).setParameter(2, "Link:" + id + "L:Data1")
+					.setParameter(3, id == length ? null : id + 1).executeUpdate();
+		}
+		em.createNativeQuery("UPDATE CHAIN_LINK_ENTITY SET NEXT_FK = 1 WHERE ID = ?").setParameter(1, length)
+				.executeUpdate();
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	@Benchmark
+	public Object copyChain() {
+		CopyIdentityMap copies = CopyIdentityMap.acquire(length);
+		try {
+			return chainPlan.copy(first, copies, traversal);
+		} finally {
+			copies.release();
+		}
+	}
+
+	@Benchmark
+	public int copyGraphs() {
+		int hash = 0;
+		for (RootEntity root : roots) {
+			CopyIdentityMap copies = CopyIdentityMap.acquire(graphPlan.getExpectedSize());
+			hash += System.identityHashCode(graphPlan.copy(root, copies, traversal));
+			copies.release();
+		}
+		return hash;
+	}
+
+}
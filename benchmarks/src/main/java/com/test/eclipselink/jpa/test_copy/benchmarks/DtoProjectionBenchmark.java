@@ -0,0 +1,123 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.dto.DtoProjection;
+import com.test.eclipselink.jpa.test_copy.dto.DtoRecord;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Turns "width" graphs into what gets serialized, with BenchmarkGraphs.treeGroup(2):
+ *      -from graphs loaded all the way (depth 2):
+ *          -jpaCopy: JpaEntityManager.copy
+ *          -project: DtoProjection.project, nested records
+ *          -projectFlat: DtoProjection.projectFlat, one row per graph
+ *      -from the database, with a new EntityManager:
+ *          -loadAndCopy: BenchmarkGraphs.load, then JpaEntityManager.copy
+ *          -query: DtoProjection.query, records built from the rows of one report query
+ *
+ * Run with "-prof gc" for the allocations.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoProjectionBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+	private List<Long> ids;
+	private DtoProjection projection;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+		ids = new ArrayList<Long>(width);
+		for (RootEntity root : roots) {
+			ids.add(root.getId());
+		}
+		projection = DtoProjection.compile(emf, RootEntity.class, BenchmarkGraphs.treeGroup(BenchmarkGraphs.MAX_DEPTH));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	@Benchmark
+	public Object jpaCopy() {
+		return ((JpaEntityManager) em).copy(roots, BenchmarkGraphs.treeGroup(BenchmarkGraphs.MAX_DEPTH));
+	}
+
+	@Benchmark
+	public Object project() {
+		List<DtoRecord> records = new ArrayList<DtoRecord>(roots.size());
+		for (RootEntity root : roots) {
+			records.add(projection.project(root));
+		}
+		return records;
+	}
+
+	@Benchmark
+	public Object projectFlat() {
+		List<Object[]> rows = new ArrayList<Object[]>(roots.size());
+		for (RootEntity root : roots) {
+			rows.add(projection.projectFlat(root));
+		}
+		return rows;
+	}
+
+	@Benchmark
+	public Object loadAndCopy() {
+		EntityManager loadingEm = emf.createEntityManager();
+		try {
+			return ((JpaEntityManager) loadingEm).copy(BenchmarkGraphs.load(loadingEm, width, BenchmarkGraphs.MAX_DEPTH),
+					BenchmarkGraphs.treeGroup(BenchmarkGraphs.MAX_DEPTH));
+		} finally {
+			loadingEm.close();
+		}
+	}
+
+	@Benchmark
+	public Object query() {
+		EntityManager queryingEm = emf.createEntityManager();
+		try {
+			return projection.query(queryingEm, ids);
+		} finally {
+			queryingEm.close();
+		}
+	}
+
+}
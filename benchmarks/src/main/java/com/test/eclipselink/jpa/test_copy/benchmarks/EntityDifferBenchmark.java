@@ -0,0 +1,118 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.diff.EntityDiffer;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity_1;
+import com.test.eclipselink.jpa.test_copy.entities.DeepAssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Compares "width" unchanged graphs, loaded all the way (depth 2), with their CASCADE_ALL_PARTS copies:
+ *      -handWrittenEquals: attribute by attribute through the getters, as change detection was written before
+ *      -entityDiffer: EntityDiffer.diff, which also lists what differs
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityDifferBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+	private RootEntity[] copies;
+	private EntityDiffer differ;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+		copies = new RootEntity[roots.size()];
+		for (int i = 0; i < copies.length; i++) {
+			CopyGroup cg = new CopyGroup();
+			cg.cascadeAllParts();
+			copies[i] = (RootEntity) ((JpaEntityManager) em).copy(roots.get(i), cg);
+		}
+		differ = new EntityDiffer(emf);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	@Benchmark
+	public int handWrittenEquals() {
+		int changed = 0;
+		for (int i = 0; i < copies.length; i++) {
+			if (!isUnchanged(roots.get(i), copies[i])) {
+				changed++;
+			}
+		}
+		return changed;
+	}
+
+	@Benchmark
+	public int entityDiffer() {
+		int changed = 0;
+		for (int i = 0; i < copies.length; i++) {
+			if (!differ.diff(roots.get(i), copies[i]).isEmpty()) {
+				changed++;
+			}
+		}
+		return changed;
+	}
+
+	private static boolean isUnchanged(RootEntity root, RootEntity copy) {
+		AssociateEntity assoc = root.getAssociation();
+		AssociateEntity copyAssoc = copy.getAssociation();
+		DeepAssociateEntity deep = assoc.getDeepAssocEntity();
+		DeepAssociateEntity copyDeep = copyAssoc.getDeepAssocEntity();
+		AssociateEntity_1 assoc1 = root.getAssociation1();
+		AssociateEntity_1 copyAssoc1 = copy.getAssociation1();
+		return Objects.equals(root.getId(), copy.getId()) && Objects.equals(root.getData1(), copy.getData1())
+				&& Objects.equals(root.getData2(), copy.getData2()) && Objects.equals(assoc.getId(), copyAssoc.getId())
+				&& Objects.equals(assoc.getData1(), copyAssoc.getData1())
+				&& Objects.equals(assoc.getData2(), copyAssoc.getData2())
+				&& Objects.equals(deep.getId(), copyDeep.getId()) && Objects.equals(deep.getData1(), copyDeep.getData1())
+				&& Objects.equals(deep.getData2(), copyDeep.getData2())
+				&& Objects.equals(assoc1.getId(), copyAssoc1.getId())
+				&& Objects.equals(assoc1.getData1(), copyAssoc1.getData1())
+				&& Objects.equals(assoc1.getData2(), copyAssoc1.getData2())
+				&& Objects.equals(assoc1.getCircularRef().getId(), copyAssoc1.getCircularRef().getId());
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Compares copy plans that copy basic attributes with their mappings (the accessors and reflection of Eclipselink) with
+ * plans that use generated field copiers (see FieldCopiers), on graphs loaded all the way (depth 2).
+ *
+ *      -mappings: a plan compiled without field copiers
+ *      -generated: a plan compiled with them
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldCopierBenchmark {
+
+	@Param({ "CASCADE_ALL_PARTS", "CASCADE_TREE" })
+	public CascadeMode mode;
+
+	@Param({ "1", "100" })
+	public int width;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+
+	private CopyPlan mappingsPlan;
+	private CopyPlan generatedPlan;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+
+		AbstractSession session = (AbstractSession) JpaHelper.getServerSession(emf);
+		CopyGroup group = mode.newCopyGroup(BenchmarkGraphs.MAX_DEPTH);
+		mappingsPlan = CopyPlan.compile(session, RootEntity.class, group, false);
+		generatedPlan = CopyPlan.compile(session, RootEntity.class, group, true);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	@Benchmark
+	public Object mappings() {
+		return copyAll(mappingsPlan);
+	}
+
+	@Benchmark
+	public Object generated() {
+		return copyAll(generatedPlan);
+	}
+
+	private List<Object> copyAll(CopyPlan plan) {
+		Map<Object, Object> copied = new IdentityHashMap<Object, Object>();
+		List<Object> copies = new ArrayList<Object>(roots.size());
+		for (RootEntity root : roots) {
+			copies.add(plan.copy(root, copied));
+		}
+		return copies;
+	}
+
+}
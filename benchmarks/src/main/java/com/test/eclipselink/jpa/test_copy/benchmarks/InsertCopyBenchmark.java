@@ -0,0 +1,134 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyIdentityMap;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.IdBlocks;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity_1;
+import com.test.eclipselink.jpa.test_copy.entities.DeepAssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copies "width" graphs loaded all the way (depth 2) as new rows with new ids, reserved "blockSize" at a time:
+ *      -jpaCopy: JpaEntityManager.copy with the primary key reset, for reference; it leaves the ids null
+ *      -copyThenResequence: a plan that resets the primary key, then a second pass over the four entities of each graph
+ *          to give them new ids
+ *      -copyForInsert: CopyPlan.copyForInsert, which gives the ids out while copying
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertCopyBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	@Param({ "500" })
+	public int blockSize;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+	private CopyPlan resetKeyPlan;
+	private CopyPlan plan;
+	private IdBlocks ids;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+		CopyPlans plans = new CopyPlans(emf);
+		resetKeyPlan = plans.plan(RootEntity.class, resetKeyGroup());
+		plan = plans.plan(RootEntity.class, CascadeMode.CASCADE_ALL_PARTS.newCopyGroup(BenchmarkGraphs.MAX_DEPTH));
+		ids = new IdBlocks(emf, blockSize);
+		//the lazy basic attribute, loaded once rather than by the first copy measured
+		for (RootEntity root : roots) {
+			root.getAssociation().getLazyData3();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	private static CopyGroup resetKeyGroup() {
+		CopyGroup cg = CascadeMode.CASCADE_ALL_PARTS.newCopyGroup(BenchmarkGraphs.MAX_DEPTH);
+		cg.setShouldResetPrimaryKey(true);
+		return cg;
+	}
+
+	@Benchmark
+	public Object jpaCopy() {
+		return ((JpaEntityManager) em).copy(roots, resetKeyGroup());
+	}
+
+	@Benchmark
+	public Object copyThenResequence() {
+		CopyIdentityMap copies = CopyIdentityMap.acquire(resetKeyPlan.getExpectedSize() * roots.size());
+		try {
+			List<RootEntity> copyRoots = new ArrayList<RootEntity>(roots.size());
+			for (RootEntity root : roots) {
+				copyRoots.add((RootEntity) resetKeyPlan.copy(root, copies));
+			}
+			for (RootEntity copyRoot : copyRoots) {
+				copyRoot.setId((Long) ids.nextId(RootEntity.class));
+				AssociateEntity association = copyRoot.getAssociation();
+				association.setId((Long) ids.nextId(AssociateEntity.class));
+				association.getDeepAssocEntity().setId((Long) ids.nextId(DeepAssociateEntity.class));
+				AssociateEntity_1 association1 = copyRoot.getAssociation1();
+				association1.setId((Long) ids.nextId(AssociateEntity_1.class));
+			}
+			return copyRoots;
+		} finally {
+			copies.release();
+		}
+	}
+
+	@Benchmark
+	public Object copyForInsert() {
+		CopyIdentityMap copies = CopyIdentityMap.acquire(plan.getExpectedSize() * roots.size());
+		try {
+			List<Object> copyRoots = new ArrayList<Object>(roots.size());
+			for (RootEntity root : roots) {
+				copyRoots.add(plan.copyForInsert(root, copies, ids));
+			}
+			return copyRoots;
+		} finally {
+			copies.release();
+		}
+	}
+
+}
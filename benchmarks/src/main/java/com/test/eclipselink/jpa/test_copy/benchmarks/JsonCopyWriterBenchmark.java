@@ -0,0 +1,86 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+import com.test.eclipselink.jpa.test_copy.json.JsonCopyWriter;
+
+/**
+ *
+ * Writes "width" graphs, loaded all the way (depth 2), as a JSON array, with BenchmarkGraphs.treeGroup(2):
+ *      -copyThenWrite: JpaEntityManager.copy, then the copies written by a JsonCopyWriter, as a REST layer serializing
+ *          copies does
+ *      -write: the graphs written by a JsonCopyWriter directly
+ *
+ * Run with "-prof gc" for the allocations.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCopyWriterBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+	private JsonCopyWriter writer;
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+		writer = JsonCopyWriter.compile(emf, RootEntity.class, BenchmarkGraphs.treeGroup(BenchmarkGraphs.MAX_DEPTH));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	@Benchmark
+	public int copyThenWrite() throws IOException {
+		List<?> copies = (List<?>) ((JpaEntityManager) em).copy(roots, BenchmarkGraphs.treeGroup(BenchmarkGraphs.MAX_DEPTH));
+		out.reset();
+		writer.writeAll(copies, out);
+		return out.size();
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		out.reset();
+		writer.writeAll(roots, out);
+		return out.size();
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copies each of "width" graphs loaded all the way (depth 2) with a CASCADE_ALL_PARTS plan, reads "data1" and, if
+ * "readAssociation" is set, "association.data2" of the copy:
+ *      -eagerCopy: CopyPlan.copy, which copies the whole graph up front
+ *      -lazyCopy: CopyPlan.copyLazily, which copies the root, and "association" only once it is read
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyCopyBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	@Param({ "false", "true" })
+	public boolean readAssociation;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+	private CopyPlan plan;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		plan = new CopyPlans(emf).plan(RootEntity.class, cg);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	@Benchmark
+	public long eagerCopy() {
+		long length = 0;
+		for (RootEntity root : roots) {
+			length += use((RootEntity) plan.copy(root));
+		}
+		return length;
+	}
+
+	@Benchmark
+	public long lazyCopy() {
+		long length = 0;
+		for (RootEntity root : roots) {
+			length += use((RootEntity) plan.copyLazily(root));
+		}
+		return length;
+	}
+
+	private long use(RootEntity copy) {
+		long length = copy.getData1().length();
+		if (readAssociation) {
+			length += copy.getAssociation().getData2().length();
+		}
+		return length;
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.ParallelCopier;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Measures ParallelCopier on pools of 1 to 8 threads: one operation reads and copies "width" graphs, split into chunks of
+ * "chunkSize" roots. The speedup from one thread to N is the ratio of their ops/s; it cannot exceed the number of cores
+ * (nor the number of chunks).
+ *
+ * Every running task holds a connection while it reads; the default connection pool of Eclipselink (32 connections) is
+ * larger than the largest ForkJoinPool.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelCopyBenchmark {
+
+	@Param({ "CASCADE_ALL_PARTS", "CASCADE_TREE" })
+	public CascadeMode mode;
+
+	@Param({ "10000" })
+	public int width;
+
+	@Param({ "500" })
+	public int chunkSize;
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	private EntityManagerFactory emf;
+	private ForkJoinPool pool;
+	private ParallelCopier copier;
+	private List<Long> ids;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		pool = new ForkJoinPool(threads);
+		copier = new ParallelCopier(emf, new CopyPlans(emf), pool, chunkSize);
+		ids = new ArrayList<Long>(width);
+		for (long id = 1; id <= width; id++) {
+			ids.add(id);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+		emf.close();
+	}
+
+	@Benchmark
+	public Object copyAll() {
+		return copier.copyAll(RootEntity.class, ids, mode.newCopyGroup(BenchmarkGraphs.MAX_DEPTH));
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.CopyTargetPool;
+import com.test.eclipselink.jpa.test_copy.copy.PooledCopy;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copies each of "width" graphs loaded all the way (depth 2) with a CASCADE_ALL_PARTS plan, reads
+ * "association.deepAssocEntity.data2" of the copy, and drops it:
+ *      -newTargets: CopyPlan.copy, into new entities
+ *      -pooledTargets: CopyTargetPool.copy, into entities the previous copies were made into
+ *
+ * Run with "-prof gc" for the allocation rate of each.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PooledCopyBenchmark {
+
+	@Param({ "100" })
+	public int width;
+
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private List<RootEntity> roots;
+	private CopyPlan plan;
+	private CopyTargetPool pool;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, width);
+		em = emf.createEntityManager();
+		roots = BenchmarkGraphs.load(em, width, BenchmarkGraphs.MAX_DEPTH);
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		CopyPlans plans = new CopyPlans(emf);
+		plan = plans.plan(RootEntity.class, cg);
+		pool = new CopyTargetPool(plans);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		em.close();
+		emf.close();
+	}
+
+	@Benchmark
+	public long newTargets() {
+		long length = 0;
+		for (RootEntity root : roots) {
+			length += use((RootEntity) plan.copy(root));
+		}
+		return length;
+	}
+
+	@Benchmark
+	public long pooledTargets() {
+		long length = 0;
+		for (RootEntity root : roots) {
+			PooledCopy<RootEntity> copy = pool.copy(root, plan);
+			length += use(copy.get());
+			copy.close();
+		}
+		return length;
+	}
+
+	private static long use(RootEntity copy) {
+		return copy.getAssociation().getDeepAssocEntity().getData2().length();
+	}
+
+}
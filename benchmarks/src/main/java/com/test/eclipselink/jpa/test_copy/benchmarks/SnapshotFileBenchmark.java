@@ -0,0 +1,122 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.StreamingCopier;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+import com.test.eclipselink.jpa.test_copy.snapshot.SnapshotFile;
+import com.test.eclipselink.jpa.test_copy.snapshot.SnapshotStore;
+
+/**
+ *
+ * What it takes to have "graphs" CASCADE_ALL_PARTS snapshots at hand after a restart, and to read "association.data2"
+ * of every graph:
+ *      -rebuildFromDatabase, copying every graph from the database (the shared cache being cleared first, as it is after
+ *      a restart) into a SnapshotStore
+ *      -reloadFile, opening a SnapshotFile the snapshots were appended to
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class SnapshotFileBenchmark {
+
+	@Param({ "100000" })
+	public int graphs;
+
+	private EntityManagerFactory emf;
+	private CopyGroup cg;
+	private Path path;
+
+	@Setup(Level.Trial)
+	public void writeFile() throws IOException {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, graphs);
+		cg = new CopyGroup();
+		cg.cascadeAllParts();
+		path = Files.createTempFile("snapshots", ".bin");
+		Files.delete(path);
+		final SnapshotFile file = new SnapshotFile(emf, path);
+		copyAll(new Consumer<RootEntity>() {
+
+			@Override
+			public void accept(RootEntity copy) {
+				try {
+					file.append(copy);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		file.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws IOException {
+		emf.close();
+		Files.delete(path);
+	}
+
+	private void copyAll(Consumer<RootEntity> consumer) {
+		EntityManager em = emf.createEntityManager();
+		new StreamingCopier(new CopyPlans(emf)).copyAll(em,
+				em.createQuery("SELECT o FROM RootEntity o WHERE o.id <= :graphs ORDER BY o.id").setParameter("graphs",
+						(long) graphs),
+				cg, consumer);
+		em.close();
+	}
+
+	@Benchmark
+	public long rebuildFromDatabase() {
+		emf.getCache().evictAll();
+		final SnapshotStore store = new SnapshotStore(emf);
+		final long[] length = new long[1];
+		copyAll(new Consumer<RootEntity>() {
+
+			@Override
+			public void accept(RootEntity copy) {
+				length[0] += store.get(store.put(copy)).getReference("association").getChars("data2").length();
+			}
+		});
+		store.close();
+		return length[0];
+	}
+
+	@Benchmark
+	public long reloadFile() throws IOException {
+		SnapshotFile file = new SnapshotFile(emf, path);
+		long length = 0;
+		for (long handle : file.getHandles()) {
+			length += file.get(handle).getReference("association").getChars("data2").length();
+		}
+		file.close();
+		return length;
+	}
+
+}
@@ -0,0 +1,143 @@
+package com.test.eclipselink.jpa.test_copy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.StreamingCopier;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+import com.test.eclipselink.jpa.test_copy.snapshot.EntitySnapshot;
+import com.test.eclipselink.jpa.test_copy.snapshot.SnapshotStore;
+
+/**
+ *
+ * Keeps "graphs" CASCADE_ALL_PARTS copies around, either as they are (ON_HEAP) or in a SnapshotStore (OFF_HEAP), and
+ * measures:
+ *      -fullCollection, the pause of a full garbage collection while they are kept
+ *      -readAll, reading "association.data2" of every graph
+ *
+ * The "heapMB" and "offHeapMB" counters tell the footprint of what is kept: the heap used after a full collection, less
+ * what it was before the copies were made, and the direct memory of the store.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class SnapshotStoreBenchmark {
+
+	public enum Storage {
+		ON_HEAP, OFF_HEAP
+	}
+
+	@Param({ "ON_HEAP", "OFF_HEAP" })
+	public Storage storage;
+
+	@Param({ "100000" })
+	public int graphs;
+
+	private EntityManagerFactory emf;
+	private SnapshotStore store;
+	private List<RootEntity> copies;
+	private long[] handles;
+	private long heapBytes;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+
+		public long heapMB;
+		public long offHeapMB;
+	}
+
+	@Setup(Level.Trial)
+	public void keepCopies() {
+		emf = BenchmarkGraphs.createEntityManagerFactory();
+		BenchmarkGraphs.populate(emf, graphs);
+		store = new SnapshotStore(emf);
+		copies = new ArrayList<RootEntity>(graphs);
+		handles = new long[graphs];
+		long baseline = usedHeap();
+
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		EntityManager em = emf.createEntityManager();
+		final int[] count = new int[1];
+		new StreamingCopier(new CopyPlans(emf)).copyAll(em,
+				em.createQuery("SELECT o FROM RootEntity o WHERE o.id <= :graphs ORDER BY o.id").setParameter("graphs",
+						(long) graphs),
+				cg, new Consumer<RootEntity>() {
+
+					@Override
+					public void accept(RootEntity copy) {
+						if (storage == Storage.ON_HEAP) {
+							copies.add(copy);
+						} else {
+							handles[count[0]] = store.put(copy);
+						}
+						count[0]++;
+					}
+				});
+		em.close();
+		heapBytes = usedHeap() - baseline;
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		store.close();
+		emf.close();
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Benchmark
+	public void fullCollection(Footprint footprint) {
+		System.gc();
+		footprint.heapMB = heapBytes >> 20;
+		footprint.offHeapMB = store.getReservedBytes() >> 20;
+	}
+
+	@Benchmark
+	public long readAll() {
+		long length = 0;
+		if (storage == Storage.ON_HEAP) {
+			for (RootEntity copy : copies) {
+				length += copy.getAssociation().getData2().length();
+			}
+		} else {
+			for (long handle : handles) {
+				EntitySnapshot root = store.get(handle);
+				length += root.getReference("association").getChars("data2").length();
+			}
+		}
+		return length;
+	}
+
+}
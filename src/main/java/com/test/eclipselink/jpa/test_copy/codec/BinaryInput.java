@@ -0,0 +1,96 @@
+package com.test.eclipselink.jpa.test_copy.codec;
+
+/**
+ *
+ * Reads what a BinaryOutput wrote; reading past the end, or a malformed integer, throws an IllegalArgumentException.
+ *
+ */
+final class BinaryInput {
+
+	private final byte[] bytes;
+	private int position;
+
+	BinaryInput(byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	int readByte() {
+		if (position == bytes.length) {
+			throw new IllegalArgumentException("The encoded copy is truncated.");
+		}
+		return bytes[position++] & 0xff;
+	}
+
+	int readInt() {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = value << 8 | readByte();
+		}
+		return value;
+	}
+
+	long readLong() {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = value << 8 | readByte();
+		}
+		return value;
+	}
+
+	long readVarLong() {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("The encoded copy holds a malformed integer.");
+	}
+
+	int readVarInt() {
+		long value = readVarLong();
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The encoded copy holds an integer out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	long readSignedVarLong() {
+		long value = readVarLong();
+		return value >>> 1 ^ -(value & 1);
+	}
+
+	byte[] readBytes() {
+		int length = readLength();
+		byte[] value = new byte[length];
+		for (int i = 0; i < length; i++) {
+			value[i] = (byte) readByte();
+		}
+		return value;
+	}
+
+	String readString() {
+		int length = readLength();
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) readVarLong();
+		}
+		return new String(chars);
+	}
+
+	boolean isAtEnd() {
+		return position == bytes.length;
+	}
+
+	//every element takes a byte at least, so a length beyond what is left is corrupt, not an allocation to make
+	private int readLength() {
+		int length = readVarInt();
+		if (length > bytes.length - position) {
+			throw new IllegalArgumentException("The encoded copy is truncated.");
+		}
+		return length;
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.test.eclipselink.jpa.test_copy.codec;
+
+import java.util.Arrays;
+
+/**
+ *
+ * A growing byte array written with variable-length integers: seven bits a byte, low bits first, signed values zigzag
+ * encoded so that small negative numbers stay short.
+ *
+ */
+final class BinaryOutput {
+
+	private byte[] bytes = new byte[256];
+	private int position;
+
+	void writeByte(int b) {
+		if (position == bytes.length) {
+			bytes = Arrays.copyOf(bytes, bytes.length << 1);
+		}
+		bytes[position++] = (byte) b;
+	}
+
+	void writeInt(int value) {
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			writeByte(value >>> shift);
+		}
+	}
+
+	void writeLong(long value) {
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			writeByte((int) (value >>> shift));
+		}
+	}
+
+	void writeVarLong(long value) {
+		while ((value & ~0x7fL) != 0) {
+			writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		writeByte((int) value);
+	}
+
+	void writeSignedVarLong(long value) {
+		writeVarLong(value << 1 ^ value >> 63);
+	}
+
+	void writeBytes(byte[] value) {
+		writeVarLong(value.length);
+		for (byte b : value) {
+			writeByte(b);
+		}
+	}
+
+	//the length, then every char as a variable-length integer: ASCII takes a byte a char, and any UTF-16 string,
+	//lone surrogates included, comes back as it was
+	void writeString(String value) {
+		int length = value.length();
+		writeVarLong(length);
+		for (int i = 0; i < length; i++) {
+			writeVarLong(value.charAt(i));
+		}
+	}
+
+	byte[] toByteArray() {
+		return Arrays.copyOf(bytes, position);
+	}
+
+}
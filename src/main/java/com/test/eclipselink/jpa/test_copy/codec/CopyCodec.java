@@ -0,0 +1,480 @@
+package com.test.eclipselink.jpa.test_copy.codec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.FetchGroupManager;
+import org.eclipse.persistence.internal.queries.EntityFetchGroup;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.foundation.AbstractDirectMapping;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+
+/**
+ *
+ * Encodes copied entity graphs into a compact binary form, and decodes them back into entities, keeping their fetch
+ * state.
+ *
+ * Java serialization of a copy writes class descriptions, field names and the woven EclipseLink state along with the
+ * values. The codec relies on a schema instead, built from the descriptors of the persistence unit, which both ends of a
+ * transfer share: every entity class gets an index, every attribute a type. An entity is then:
+ *      -its class index
+ *      -a bitmap of its loaded attributes, as FetchStateTracker reports them, and one of those holding null
+ *      -the value of every other loaded attribute, an associated entity being encoded in place
+ * An entity that was already encoded - the same instance, or another one of the same class with the same id, such as the
+ * root reached again through "association1.circularRef" - is encoded as a reference to the first one, so that it is
+ * decoded into the same instance.
+ *
+ * Decoded entities are new, detached instances of the woven entity classes. An entity that was not fully loaded gets the
+ * EntityFetchGroup of its loaded attributes, as a copy made by JpaEntityManager.copy does: an attribute that was not
+ * loaded stays unloaded instead of becoming null.
+ *
+ * Every encoding starts with the fingerprint of the schema; decoding with another schema is refused. Only entities with at
+ * most 64 attributes, all of them basic or object reference (toOne) mappings, can be encoded. A codec is thread-safe.
+ *
+ */
+public final class CopyCodec {
+
+	private static final int MAGIC = 0x43435031;
+	//the fetch groups of decoded entities beyond this many, per class, are built every time
+	private static final int MAXIMUM_FETCH_GROUPS = 256;
+
+	private static final int STRING = 0;
+	private static final int LONG = 1;
+	private static final int INTEGER = 2;
+	private static final int SHORT = 3;
+	private static final int BYTE = 4;
+	private static final int CHARACTER = 5;
+	private static final int BOOLEAN = 6;
+	private static final int DOUBLE = 7;
+	private static final int FLOAT = 8;
+	private static final int BIG_DECIMAL = 9;
+	private static final int BIG_INTEGER = 10;
+	private static final int BYTES = 11;
+	private static final int REFERENCE = 12;
+
+	private static final Map<Class<?>, Integer> BASIC_TYPES = new HashMap<Class<?>, Integer>();
+
+	static {
+		BASIC_TYPES.put(String.class, STRING);
+		BASIC_TYPES.put(Long.class, LONG);
+		BASIC_TYPES.put(long.class, LONG);
+		BASIC_TYPES.put(Integer.class, INTEGER);
+		BASIC_TYPES.put(int.class, INTEGER);
+		BASIC_TYPES.put(Short.class, SHORT);
+		BASIC_TYPES.put(short.class, SHORT);
+		BASIC_TYPES.put(Byte.class, BYTE);
+		BASIC_TYPES.put(byte.class, BYTE);
+		BASIC_TYPES.put(Character.class, CHARACTER);
+		BASIC_TYPES.put(char.class, CHARACTER);
+		BASIC_TYPES.put(Boolean.class, BOOLEAN);
+		BASIC_TYPES.put(boolean.class, BOOLEAN);
+		BASIC_TYPES.put(Double.class, DOUBLE);
+		BASIC_TYPES.put(double.class, DOUBLE);
+		BASIC_TYPES.put(Float.class, FLOAT);
+		BASIC_TYPES.put(float.class, FLOAT);
+		BASIC_TYPES.put(BigDecimal.class, BIG_DECIMAL);
+		BASIC_TYPES.put(BigInteger.class, BIG_INTEGER);
+		BASIC_TYPES.put(byte[].class, BYTES);
+	}
+
+	private final AbstractSession session;
+	private final FetchStateTracker fetchStates;
+	private final ClassSchema[] classes;
+	private final Map<Class<?>, ClassSchema> classesByType = new HashMap<Class<?>, ClassSchema>();
+	private final int fingerprint;
+
+	public CopyCodec(EntityManagerFactory emf) {
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.fetchStates = new FetchStateTracker(emf);
+		List<ClassDescriptor> descriptors = new ArrayList<ClassDescriptor>(session.getDescriptors().values());
+		Collections.sort(descriptors, new Comparator<ClassDescriptor>() {
+			@Override
+			public int compare(ClassDescriptor d1, ClassDescriptor d2) {
+				return d1.getJavaClassName().compareTo(d2.getJavaClassName());
+			}
+		});
+		this.classes = new ClassSchema[descriptors.size()];
+		for (int i = 0; i < classes.length; i++) {
+			classes[i] = new ClassSchema(i, descriptors.get(i));
+			classesByType.put(descriptors.get(i).getJavaClass(), classes[i]);
+		}
+		StringBuilder schema = new StringBuilder();
+		for (ClassSchema classSchema : classes) {
+			classSchema.resolveReferences(classesByType);
+			classSchema.describe(schema);
+		}
+		this.fingerprint = schema.toString().hashCode();
+	}
+
+	/**
+	 * The fingerprint of the schema, which encodings start with; the codecs of persistence units with the same entities and
+	 * attributes have the same one.
+	 */
+	public int getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Encodes the graph of the given entity, which may be null.
+	 *
+	 * @throws IllegalArgumentException if the graph holds an entity that cannot be encoded
+	 */
+	public byte[] encode(Object entity) {
+		return encodeAll(Collections.singletonList(entity));
+	}
+
+	/**
+	 * Encodes the graphs of the given entities together: entities they share, by instance or by id, are encoded once.
+	 *
+	 * @throws IllegalArgumentException if the graphs hold an entity that cannot be encoded
+	 */
+	public byte[] encodeAll(Collection<?> entities) {
+		BinaryOutput out = new BinaryOutput();
+		out.writeInt(MAGIC);
+		out.writeInt(fingerprint);
+		out.writeVarLong(entities.size());
+		Encoding encoding = new Encoding();
+		for (Object entity : entities) {
+			writeEntity(entity, out, encoding);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the graph {@link #encode(Object)} encoded.
+	 *
+	 * @throws IllegalArgumentException if the bytes are not the encoding of a single graph with this schema
+	 */
+	public Object decode(byte[] bytes) {
+		List<Object> entities = decodeAll(bytes);
+		if (entities.size() != 1) {
+			throw new IllegalArgumentException("The bytes encode " + entities.size() + " graphs, not one.");
+		}
+		return entities.get(0);
+	}
+
+	/**
+	 * Decodes the graphs {@link #encodeAll(Collection)} encoded, in their order.
+	 *
+	 * @throws IllegalArgumentException if the bytes are not an encoding with this schema
+	 */
+	public List<Object> decodeAll(byte[] bytes) {
+		BinaryInput in = new BinaryInput(bytes);
+		if (in.readInt() != MAGIC) {
+			throw new IllegalArgumentException("The bytes are not an encoded copy.");
+		}
+		if (in.readInt() != fingerprint) {
+			throw new IllegalArgumentException("The copy was encoded with another schema.");
+		}
+		int size = in.readVarInt();
+		List<Object> entities = new ArrayList<Object>(Math.min(size, bytes.length));
+		List<Object> decoded = new ArrayList<Object>();
+		for (int i = 0; i < size; i++) {
+			entities.add(readEntity(in, decoded));
+		}
+		if (!in.isAtEnd()) {
+			throw new IllegalArgumentException("The encoded copy is followed by other bytes.");
+		}
+		return entities;
+	}
+
+	//0 for null, the index of an entity already encoded as (index << 1 | 1), or the index of the class of a new entity as
+	//((class + 1) << 1), followed by the entity
+	private void writeEntity(Object entity, BinaryOutput out, Encoding encoding) {
+		if (entity == null) {
+			out.writeVarLong(0);
+			return;
+		}
+		ClassSchema classSchema = classSchema(entity.getClass());
+		Integer index = encoding.indexOf(classSchema, entity, session);
+		if (index != null) {
+			out.writeVarLong((long) index << 1 | 1);
+			return;
+		}
+		out.writeVarLong((long) (classSchema.index + 1) << 1);
+		long loaded = fetchStates.loadedAttributes(entity);
+		long nulls = 0;
+		//read once, as reading through the mappings is what encoding mostly costs
+		Object[] values = new Object[classSchema.mappings.length];
+		for (long bits = loaded; bits != 0; bits &= bits - 1) {
+			int i = Long.numberOfTrailingZeros(bits);
+			values[i] = classSchema.mappings[i].getRealAttributeValueFromObject(entity, session);
+			if (values[i] == null) {
+				nulls |= 1L << i;
+			}
+		}
+		out.writeVarLong(loaded);
+		out.writeVarLong(nulls);
+		for (long bits = loaded & ~nulls; bits != 0; bits &= bits - 1) {
+			int i = Long.numberOfTrailingZeros(bits);
+			if (classSchema.types[i] == REFERENCE) {
+				writeEntity(values[i], out, encoding);
+			} else {
+				writeValue(classSchema.types[i], values[i], out);
+			}
+		}
+	}
+
+	private Object readEntity(BinaryInput in, List<Object> decoded) {
+		long tag = in.readVarLong();
+		if (tag == 0) {
+			return null;
+		}
+		if ((tag & 1) != 0) {
+			long index = tag >>> 1;
+			if (index >= decoded.size()) {
+				throw new IllegalArgumentException("The encoded copy refers to an entity it does not hold: " + index);
+			}
+			return decoded.get((int) index);
+		}
+		long classIndex = (tag >>> 1) - 1;
+		if (classIndex >= classes.length) {
+			throw new IllegalArgumentException("The encoded copy holds an unknown class: " + classIndex);
+		}
+		ClassSchema classSchema = classes[(int) classIndex];
+		classSchema.checkSupported();
+		Object entity = classSchema.descriptor.getObjectBuilder().buildNewInstance();
+		decoded.add(entity);
+		long loaded = in.readVarLong();
+		long nulls = in.readVarLong();
+		if ((loaded & ~classSchema.allAttributes) != 0 || (nulls & ~loaded) != 0) {
+			throw new IllegalArgumentException("The encoded copy holds attributes " + classSchema.descriptor.getJavaClassName()
+					+ " does not have.");
+		}
+		for (long bits = loaded; bits != 0; bits &= bits - 1) {
+			int i = Long.numberOfTrailingZeros(bits);
+			Object value = null;
+			if ((nulls & 1L << i) == 0) {
+				value = classSchema.types[i] == REFERENCE ? readEntity(in, decoded) : readValue(classSchema.types[i], in);
+			}
+			classSchema.mappings[i].setRealAttributeValueInObject(entity, value);
+		}
+		classSchema.setFetchGroup(entity, loaded);
+		return entity;
+	}
+
+	private static void writeValue(int type, Object value, BinaryOutput out) {
+		switch (type) {
+		case STRING:
+			out.writeString((String) value);
+			break;
+		case LONG:
+		case INTEGER:
+		case SHORT:
+		case BYTE:
+			out.writeSignedVarLong(((Number) value).longValue());
+			break;
+		case CHARACTER:
+			out.writeVarLong((Character) value);
+			break;
+		case BOOLEAN:
+			out.writeByte((Boolean) value ? 1 : 0);
+			break;
+		case DOUBLE:
+			out.writeLong(Double.doubleToRawLongBits((Double) value));
+			break;
+		case FLOAT:
+			out.writeInt(Float.floatToRawIntBits((Float) value));
+			break;
+		case BIG_DECIMAL:
+		case BIG_INTEGER:
+			out.writeString(value.toString());
+			break;
+		default:
+			out.writeBytes((byte[]) value);
+		}
+	}
+
+	private static Object readValue(int type, BinaryInput in) {
+		switch (type) {
+		case STRING:
+			return in.readString();
+		case LONG:
+			return in.readSignedVarLong();
+		case INTEGER:
+			return (int) in.readSignedVarLong();
+		case SHORT:
+			return (short) in.readSignedVarLong();
+		case BYTE:
+			return (byte) in.readSignedVarLong();
+		case CHARACTER:
+			return (char) in.readVarLong();
+		case BOOLEAN:
+			return in.readByte() != 0;
+		case DOUBLE:
+			return Double.longBitsToDouble(in.readLong());
+		case FLOAT:
+			return Float.intBitsToFloat(in.readInt());
+		case BIG_DECIMAL:
+			return new BigDecimal(in.readString());
+		case BIG_INTEGER:
+			return new BigInteger(in.readString());
+		default:
+			return in.readBytes();
+		}
+	}
+
+	private ClassSchema classSchema(Class<?> entityClass) {
+		ClassSchema classSchema = classesByType.get(entityClass);
+		if (classSchema == null) {
+			throw new IllegalArgumentException(entityClass.getName() + " is not an entity of the persistence unit.");
+		}
+		classSchema.checkSupported();
+		return classSchema;
+	}
+
+	//the entities encoded so far, by instance, and by id for those with one
+	private static final class Encoding {
+
+		private final Map<ClassSchema, Map<Object, Integer>> byId = new HashMap<ClassSchema, Map<Object, Integer>>();
+		private final Map<Object, Integer> byInstance = new IdentityHashMap<Object, Integer>();
+		private int size;
+
+		//the index of the entity if it was encoded already; otherwise, the next index is given to it
+		Integer indexOf(ClassSchema classSchema, Object entity, AbstractSession session) {
+			Integer index = byInstance.get(entity);
+			if (index != null) {
+				return index;
+			}
+			Object id = classSchema.idOf(entity, session);
+			if (id != null) {
+				Map<Object, Integer> indexes = byId.get(classSchema);
+				if (indexes == null) {
+					indexes = new HashMap<Object, Integer>();
+					byId.put(classSchema, indexes);
+				}
+				index = indexes.get(id);
+				if (index == null) {
+					indexes.put(id, size);
+				}
+			}
+			byInstance.put(entity, index == null ? size++ : index);
+			return index;
+		}
+	}
+
+	private static final class ClassSchema {
+
+		final int index;
+		final ClassDescriptor descriptor;
+		//the mappings in the order of the descriptor, as the positions of FetchStateTracker
+		final DatabaseMapping[] mappings;
+		final int[] types;
+		final long allAttributes;
+		//why the class cannot be encoded, if it cannot
+		final String unsupported;
+		final ClassSchema[] references;
+		//the primary key mapping, if there is a single basic one
+		final DatabaseMapping idMapping;
+		private final ConcurrentMap<Long, EntityFetchGroup> fetchGroups = new ConcurrentHashMap<Long, EntityFetchGroup>();
+
+		ClassSchema(int index, ClassDescriptor descriptor) {
+			this.index = index;
+			this.descriptor = descriptor;
+			List<DatabaseMapping> descriptorMappings = descriptor.getMappings();
+			this.mappings = descriptorMappings.toArray(new DatabaseMapping[descriptorMappings.size()]);
+			this.types = new int[mappings.length];
+			this.references = new ClassSchema[mappings.length];
+			String reason = mappings.length > 64 ? "it has more than 64 attributes" : null;
+			for (int i = 0; i < mappings.length && reason == null; i++) {
+				if (mappings[i].isObjectReferenceMapping()) {
+					types[i] = REFERENCE;
+				} else if (mappings[i].isDirectToFieldMapping()) {
+					Integer type = BASIC_TYPES.get(attributeClass((AbstractDirectMapping) mappings[i]));
+					if (type == null) {
+						reason = "the type of " + mappings[i].getAttributeName() + " is not supported";
+					} else {
+						types[i] = type;
+					}
+				} else {
+					reason = "the mapping of " + mappings[i].getAttributeName() + " is not supported";
+				}
+			}
+			this.unsupported = reason;
+			List<DatabaseMapping> keyMappings = descriptor.getObjectBuilder().getPrimaryKeyMappings();
+			this.idMapping = keyMappings.size() == 1 && keyMappings.get(0).isDirectToFieldMapping() ? keyMappings.get(0) : null;
+			this.allAttributes = mappings.length >= 64 ? -1L : (1L << mappings.length) - 1;
+		}
+
+		private static Class<?> attributeClass(AbstractDirectMapping mapping) {
+			Class<?> attributeClass = mapping.getAttributeClassification();
+			return attributeClass != null ? attributeClass : mapping.getAttributeAccessor().getAttributeClass();
+		}
+
+		Object idOf(Object entity, AbstractSession session) {
+			if (idMapping != null) {
+				return idMapping.getAttributeValueFromObject(entity);
+			}
+			return descriptor.getObjectBuilder().extractPrimaryKeyFromObject(entity, session, true);
+		}
+
+		void resolveReferences(Map<Class<?>, ClassSchema> classesByType) {
+			for (int i = 0; i < mappings.length; i++) {
+				if (types[i] == REFERENCE) {
+					references[i] = classesByType.get(mappings[i].getReferenceDescriptor().getJavaClass());
+				}
+			}
+		}
+
+		void describe(StringBuilder schema) {
+			schema.append(descriptor.getJavaClassName()).append('{');
+			for (int i = 0; i < mappings.length; i++) {
+				schema.append(mappings[i].getAttributeName()).append(':').append(types[i]);
+				if (references[i] != null) {
+					schema.append(':').append(references[i].descriptor.getJavaClassName());
+				}
+				schema.append(';');
+			}
+			schema.append('}');
+		}
+
+		void checkSupported() {
+			if (unsupported != null) {
+				throw new IllegalArgumentException(descriptor.getJavaClassName() + " cannot be encoded: " + unsupported + ".");
+			}
+		}
+
+		//the EntityFetchGroup JpaEntityManager.copy would give a copy with these attributes; none if they are all loaded
+		void setFetchGroup(Object entity, long loaded) {
+			FetchGroupManager fetchGroupManager = descriptor.getFetchGroupManager();
+			if (loaded == allAttributes || fetchGroupManager == null || !(entity instanceof FetchGroupTracker)) {
+				return;
+			}
+			EntityFetchGroup fetchGroup = fetchGroups.get(loaded);
+			if (fetchGroup == null) {
+				Set<String> names = new HashSet<String>();
+				for (long bits = loaded; bits != 0; bits &= bits - 1) {
+					names.add(mappings[Long.numberOfTrailingZeros(bits)].getAttributeName());
+				}
+				fetchGroup = fetchGroupManager.getEntityFetchGroup(names);
+				if (fetchGroup == null) {
+					return;
+				}
+				if (fetchGroups.size() < MAXIMUM_FETCH_GROUPS) {
+					fetchGroups.put(loaded, fetchGroup);
+				}
+			}
+			fetchGroupManager.setObjectFetchGroup(entity, fetchGroup, null);
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.indirection.DatabaseValueHolder;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+
+/**
+ *
+ * Loads, a few hundred entities per query, what copying a batch of entities with a CopyPlan would otherwise load one
+ * entity at a time.
+ *
+ * The plan tells what is needed, class by class, starting from the roots:
+ *      -the attributes a CASCADE_TREE plan requires and an entity has not fetched; the entities missing some are read again
+ *          with all their attributes, as FetchGroup.onUnfetchedAttribute would read each of them
+ *      -the target of every association the plan reads, copied or shared, unless it is instantiated already; the targets
+ *          are read with their sources' ids ("SELECT e.id, t FROM RootEntity e LEFT JOIN e.association t WHERE e.id IN
+ *          :ids") and handed to the sources' value holders, which then hold what instantiating them would have read
+ *      -the same, recursively, for the targets the plan copies
+ *
+ * Handing a target to a value holder (a DatabaseValueHolder) works for both sides of a OneToOne: the owning side would
+ * find its target in the persistence context anyway, but the mappedBy side (RootEntity.association1) would go to the
+ * database again. It is only
+ * done when the value holder is not backed up (see UnitOfWorkValueHolder), i.e. unless the class uses deferred change
+ * detection; the value holders of such classes are left to instantiate themselves.
+ *
+ * Entities with a composite primary key are not batched either.
+ *
+ */
+final class BatchLoader {
+
+	/**
+	 * The number of ids in one IN list.
+	 */
+	static final int BATCH_SIZE = 500;
+
+	private final EntityManager em;
+	private final AbstractSession session;
+	private final Map<CopyPlan, Set<Object>> loaded = new IdentityHashMap<CopyPlan, Set<Object>>();
+
+	BatchLoader(EntityManager em) {
+		this.em = em;
+		this.session = (AbstractSession) ((JpaEntityManager) em).getActiveSession();
+	}
+
+	/**
+	 * Loads what the given plan needs to copy the given entities without going to the database.
+	 */
+	void load(CopyPlan plan, Collection<?> originals) {
+		Set<Object> done = loaded.get(plan);
+		if (done == null) {
+			done = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			loaded.put(plan, done);
+		}
+		List<Object> pending = new ArrayList<Object>();
+		for (Object original : originals) {
+			if (original != null && done.add(original)) {
+				pending.add(original);
+			}
+		}
+		ClassDescriptor descriptor = plan.getDescriptor();
+		if (pending.isEmpty() || getPrimaryKeyMapping(descriptor) == null) {
+			return;
+		}
+
+		List<Object> missingAttributes = new ArrayList<Object>();
+		for (Object original : pending) {
+			if (plan.isMissingAttributes(original)) {
+				missingAttributes.add(original);
+			}
+		}
+		loadAttributes(descriptor, missingAttributes);
+
+		ObjectReferenceMapping[] referenceMappings = plan.getReferenceMappings();
+		CopyPlan[] referencePlans = plan.getReferencePlans();
+		for (int i = 0; i < referenceMappings.length; i++) {
+			ObjectReferenceMapping mapping = referenceMappings[i];
+			loadReferences(descriptor, mapping, pending);
+			if (referencePlans[i] != null) {
+				List<Object> targets = new ArrayList<Object>(pending.size());
+				for (Object original : pending) {
+					targets.add(mapping.getRealAttributeValueFromObject(original, session));
+				}
+				load(referencePlans[i], targets);
+			}
+		}
+	}
+
+	private void loadAttributes(ClassDescriptor descriptor, List<Object> entities) {
+		String pk = getPrimaryKeyMapping(descriptor).getAttributeName();
+		String jpql = "SELECT e FROM " + descriptor.getAlias() + " e WHERE e." + pk + " IN :ids";
+		for (List<Object> batch : batches(entities)) {
+			Query query = em.createQuery(jpql);
+			query.setHint(QueryHints.FETCH_GROUP_DEFAULT, "false");
+			query.setParameter("ids", ids(descriptor, batch).keySet());
+			//the entities are in the persistence context: reading them merges the attributes they miss into them
+			query.getResultList();
+		}
+	}
+
+	private void loadReferences(ClassDescriptor descriptor, ObjectReferenceMapping mapping, List<Object> sources) {
+		if (descriptor.getObjectChangePolicy().isDeferredChangeDetectionPolicy()) {
+			return;
+		}
+		List<Object> uninstantiated = new ArrayList<Object>();
+		for (Object source : sources) {
+			Object valueHolder = mapping.getAttributeValueFromObject(source);
+			if (valueHolder instanceof DatabaseValueHolder && !((DatabaseValueHolder) valueHolder).isInstantiated()) {
+				uninstantiated.add(source);
+			}
+		}
+		String pk = getPrimaryKeyMapping(descriptor).getAttributeName();
+		String jpql = "SELECT e." + pk + ", t FROM " + descriptor.getAlias() + " e LEFT JOIN e." + mapping.getAttributeName()
+				+ " t WHERE e." + pk + " IN :ids";
+		for (List<Object> batch : batches(uninstantiated)) {
+			Map<Object, Object> sourcesById = ids(descriptor, batch);
+			Query query = em.createQuery(jpql);
+			query.setParameter("ids", sourcesById.keySet());
+			for (Object result : query.getResultList()) {
+				Object[] row = (Object[]) result;
+				Object source = sourcesById.get(row[0]);
+				DatabaseValueHolder valueHolder = (DatabaseValueHolder) mapping.getAttributeValueFromObject(source);
+				if (!valueHolder.isInstantiated()) {
+					//what DatabaseValueHolder.getValue does with what it reads; setValue would instantiate the holder first
+					valueHolder.privilegedSetValue(row[1]);
+					valueHolder.setInstantiated();
+				}
+			}
+		}
+	}
+
+	private Map<Object, Object> ids(ClassDescriptor descriptor, List<Object> entities) {
+		DatabaseMapping pk = getPrimaryKeyMapping(descriptor);
+		Map<Object, Object> entitiesById = new HashMap<Object, Object>();
+		for (Object entity : entities) {
+			entitiesById.put(pk.getAttributeValueFromObject(entity), entity);
+		}
+		return entitiesById;
+	}
+
+	private static List<List<Object>> batches(List<Object> entities) {
+		List<List<Object>> batches = new ArrayList<List<Object>>();
+		for (int from = 0; from < entities.size(); from += BATCH_SIZE) {
+			batches.add(entities.subList(from, Math.min(from + BATCH_SIZE, entities.size())));
+		}
+		return batches;
+	}
+
+	private static DatabaseMapping getPrimaryKeyMapping(ClassDescriptor descriptor) {
+		List<DatabaseMapping> primaryKeyMappings = descriptor.getObjectBuilder().getPrimaryKeyMappings();
+		return primaryKeyMappings.size() == 1 ? primaryKeyMappings.get(0) : null;
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * What CopyMetrics recorded for one CopyGroup signature. All counters are lock-free, so recording a copy costs a handful
+ * of atomic increments.
+ *
+ */
+public class CopyGroupStats implements CopyGroupStatsMBean {
+
+	private static final int BUCKETS = 40;
+
+	private final String signature;
+
+	private final AtomicLong copyCount = new AtomicLong();
+	private final AtomicLong entitiesCopied = new AtomicLong();
+	private final AtomicLong lazyInitializations = new AtomicLong();
+	private final AtomicLong statements = new AtomicLong();
+	private final AtomicLong totalLatencyMicros = new AtomicLong();
+	private final AtomicLong maxLatencyMicros = new AtomicLong();
+	private final AtomicLongArray latencyHistogram = new AtomicLongArray(BUCKETS);
+
+	CopyGroupStats(String signature) {
+		this.signature = signature;
+	}
+
+	void record(long latencyNanos, long entities, long initializations, long statementCount) {
+		long micros = latencyNanos / 1000;
+		copyCount.incrementAndGet();
+		entitiesCopied.addAndGet(entities);
+		lazyInitializations.addAndGet(initializations);
+		statements.addAndGet(statementCount);
+		totalLatencyMicros.addAndGet(micros);
+		latencyHistogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+		long max = maxLatencyMicros.get();
+		while (micros > max && !maxLatencyMicros.compareAndSet(max, micros)) {
+			max = maxLatencyMicros.get();
+		}
+	}
+
+	@Override
+	public String getSignature() {
+		return signature;
+	}
+
+	@Override
+	public long getCopyCount() {
+		return copyCount.get();
+	}
+
+	@Override
+	public long getEntitiesCopied() {
+		return entitiesCopied.get();
+	}
+
+	@Override
+	public long getLazyInitializations() {
+		return lazyInitializations.get();
+	}
+
+	@Override
+	public long getStatements() {
+		return statements.get();
+	}
+
+	@Override
+	public double getMeanLatencyMicros() {
+		long count = copyCount.get();
+		return count == 0 ? 0 : (double) totalLatencyMicros.get() / count;
+	}
+
+	@Override
+	public long getMaxLatencyMicros() {
+		return maxLatencyMicros.get();
+	}
+
+	@Override
+	public long get50thPercentileMicros() {
+		return percentile(0.5);
+	}
+
+	@Override
+	public long get99thPercentileMicros() {
+		return percentile(0.99);
+	}
+
+	@Override
+	public long[] getLatencyHistogram() {
+		long[] histogram = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram[i] = latencyHistogram.get(i);
+		}
+		return histogram;
+	}
+
+	private long percentile(double fraction) {
+		long[] histogram = getLatencyHistogram();
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		long rank = (long) Math.ceil(total * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += histogram[i];
+			if (seen >= rank && seen > 0) {
+				return 1L << i;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public void reset() {
+		copyCount.set(0);
+		entitiesCopied.set(0);
+		lazyInitializations.set(0);
+		statements.set(0);
+		totalLatencyMicros.set(0);
+		maxLatencyMicros.set(0);
+		for (int i = 0; i < BUCKETS; i++) {
+			latencyHistogram.set(i, 0);
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+/**
+ *
+ * The JMX view of the copies made with the CopyGroups of one signature (see CopyMetrics).
+ *
+ * Latencies are in microseconds; percentiles are read from a histogram of power-of-two buckets, so they are the upper
+ * bound of the bucket holding them.
+ *
+ */
+public interface CopyGroupStatsMBean {
+
+	String getSignature();
+
+	long getCopyCount();
+
+	long getEntitiesCopied();
+
+	/**
+	 * Queries run by value holders and fetch groups while copying, whether or not they went to the database.
+	 */
+	long getLazyInitializations();
+
+	/**
+	 * SQL statements sent to the database while copying.
+	 */
+	long getStatements();
+
+	double getMeanLatencyMicros();
+
+	long getMaxLatencyMicros();
+
+	long get50thPercentileMicros();
+
+	long get99thPercentileMicros();
+
+	/**
+	 * The number of copies per latency bucket: bucket i counts the copies that took less than 2^i microseconds (and at
+	 * least 2^(i-1)).
+	 */
+	long[] getLatencyHistogram();
+
+	void reset();
+
+}
@@ -0,0 +1,221 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *
+ * The original-to-copy map of a copy traversal: an identity map, as the IdentityHashMap copies are made with, tuned for
+ * what a traversal does with it - one lookup per entity reached, one insertion per entity copied, then nothing until it
+ * is dropped.
+ *      -keys and values are kept side by side in one array, probed linearly from a hash that spreads the identity hash
+ *      codes over the whole table (IdentityHashMap uses the low bits of a shifted code)
+ *      -the table is sized up front, from the number of entities a plan expects to copy (see CopyPlan.getExpectedSize()),
+ *      so that it does not grow during the traversal
+ *      -the slots in use are remembered, so that clearing a large table after a small copy only touches those slots
+ *
+ * Entries cannot be removed one by one, only all at once with {@link #clear()}.
+ *
+ * {@link #acquire(int)} hands out a map per thread, reused from one copy to the next; it is what CopyPlan.copy(Object)
+ * and CopyPlans copy with. Maps that escape the copy, like those of lazy copies, are created with the constructor.
+ *
+ */
+public final class CopyIdentityMap extends AbstractMap<Object, Object> {
+
+	//the table of a thread's map is dropped, rather than kept, beyond this many slots
+	private static final int MAXIMUM_REUSED_CAPACITY = 1 << 16;
+	private static final int MINIMUM_CAPACITY = 8;
+
+	private static final ThreadLocal<CopyIdentityMap> threadMaps = new ThreadLocal<CopyIdentityMap>();
+
+	//key at 2 * slot, value at 2 * slot + 1
+	private Object[] table;
+	private int[] usedSlots;
+	private int shift;
+	private int size;
+	private boolean acquired;
+
+	public CopyIdentityMap() {
+		this(MINIMUM_CAPACITY / 2);
+	}
+
+	/**
+	 * Creates a map that holds the given number of entries without growing.
+	 */
+	public CopyIdentityMap(int expectedSize) {
+		allocate(capacity(expectedSize));
+	}
+
+	/**
+	 * Returns the empty map of the current thread, sized for the given number of entries; it must be handed back with
+	 * {@link #release()} once the copy is made. A thread that acquires a map while its own is in use, by copying within a
+	 * copy, gets a new one.
+	 */
+	public static CopyIdentityMap acquire(int expectedSize) {
+		CopyIdentityMap map = threadMaps.get();
+		if (map == null || map.acquired) {
+			map = new CopyIdentityMap(expectedSize);
+			if (threadMaps.get() == null) {
+				threadMaps.set(map);
+			}
+		} else {
+			map.ensureCapacity(expectedSize);
+		}
+		map.acquired = true;
+		return map;
+	}
+
+	/**
+	 * Empties a map given by {@link #acquire(int)} for the next copy of the thread.
+	 */
+	public void release() {
+		clear();
+		acquired = false;
+		if (table.length / 2 > MAXIMUM_REUSED_CAPACITY) {
+			allocate(MINIMUM_CAPACITY);
+		}
+	}
+
+	private static int capacity(int expectedSize) {
+		//at most half full
+		int capacity = MINIMUM_CAPACITY;
+		while (capacity < 2 * expectedSize) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		table = new Object[2 * capacity];
+		usedSlots = new int[capacity / 2];
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+		size = 0;
+	}
+
+	private void ensureCapacity(int expectedSize) {
+		if (2 * expectedSize > table.length / 2) {
+			allocate(capacity(expectedSize));
+		}
+	}
+
+	//Fibonacci hashing: the high bits of the product depend on all the bits of the identity hash code
+	private int slot(Object key) {
+		return (System.identityHashCode(key) * 0x9E3779B9) >>> shift;
+	}
+
+	@Override
+	public Object get(Object key) {
+		Object[] table = this.table;
+		int mask = table.length / 2 - 1;
+		for (int slot = slot(key);; slot = (slot + 1) & mask) {
+			Object candidate = table[2 * slot];
+			if (candidate == key) {
+				return table[2 * slot + 1];
+			}
+			if (candidate == null) {
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * @throws NullPointerException if the key or the value is null
+	 */
+	@Override
+	public Object put(Object key, Object value) {
+		if (key == null || value == null) {
+			throw new NullPointerException("A copy identity map holds neither null keys nor null values.");
+		}
+		Object[] table = this.table;
+		int mask = table.length / 2 - 1;
+		int slot = slot(key);
+		for (;; slot = (slot + 1) & mask) {
+			Object candidate = table[2 * slot];
+			if (candidate == key) {
+				Object previous = table[2 * slot + 1];
+				table[2 * slot + 1] = value;
+				return previous;
+			}
+			if (candidate == null) {
+				break;
+			}
+		}
+		if (size == usedSlots.length) {
+			grow();
+			return put(key, value);
+		}
+		table[2 * slot] = key;
+		table[2 * slot + 1] = value;
+		usedSlots[size++] = slot;
+		return null;
+	}
+
+	private void grow() {
+		Object[] previous = table;
+		int[] previousSlots = usedSlots;
+		int previousSize = size;
+		allocate(table.length);
+		for (int i = 0; i < previousSize; i++) {
+			int slot = previousSlots[i];
+			put(previous[2 * slot], previous[2 * slot + 1]);
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			int slot = usedSlots[i];
+			table[2 * slot] = null;
+			table[2 * slot + 1] = null;
+		}
+		size = 0;
+	}
+
+	@Override
+	public Set<Map.Entry<Object, Object>> entrySet() {
+		return new AbstractSet<Map.Entry<Object, Object>>() {
+
+			@Override
+			public Iterator<Map.Entry<Object, Object>> iterator() {
+				return new Iterator<Map.Entry<Object, Object>>() {
+
+					private int index;
+
+					@Override
+					public boolean hasNext() {
+						return index < size;
+					}
+
+					@Override
+					public Map.Entry<Object, Object> next() {
+						if (index >= size) {
+							throw new NoSuchElementException();
+						}
+						int slot = usedSlots[index++];
+						return new SimpleImmutableEntry<Object, Object>(table[2 * slot], table[2 * slot + 1]);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+}
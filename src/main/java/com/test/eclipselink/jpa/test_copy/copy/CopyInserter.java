@@ -0,0 +1,226 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.CommitManager;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.eclipse.persistence.sessions.server.ClientSession;
+import org.eclipse.persistence.sessions.server.ServerSession;
+
+/**
+ *
+ * Inserts copies (made by JpaEntityManager.copy, or by a CopyPlan) as new rows, in bulk.
+ *
+ * Persisting copies through an EntityManager registers and clones every one of them, and computes a change set for each
+ * at commit. None of that is needed for rows that are known to be new, so the inserter writes them itself:
+ *      -the graph of every copy is walked with the plan of the group it was copied with; only what the plan cascades to is
+ *          inserted, associations the copy shares point to existing rows
+ *      -copies without a primary key get one from the given IdBlocks
+ *      -the rows are sorted by table, in the order Eclipselink commits them (tables referenced by a foreign key first:
+ *          DEEP_ASSOCIATE_ENTITY, ASSOCIATE_ENTITY, ROOT_ENTITY, ASSOCIATE_ENTITY_1), so the inserts into one table follow
+ *          each other and are sent as one JDBC batch
+ *      -every chunk of copies is inserted in a transaction of its own, by a client session of the server session
+ *
+ * Batching and statement caching are properties of the persistence unit; see {@link #batchProperties(int)}. Without them
+ * the rows are still inserted, one statement each.
+ *
+ * Attributes a CASCADE_TREE copy does not hold are inserted as null. Copies of an entity that refers to another entity
+ * of its own class (ChainLinkEntity) cannot be ordered by table, so plans that cascade such an association are rejected.
+ *
+ */
+public class CopyInserter {
+
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	private final ServerSession session;
+	private final CopyPlans plans;
+	private final IdBlocks ids;
+	private final int chunkSize;
+
+	public CopyInserter(EntityManagerFactory emf, CopyPlans plans, IdBlocks ids) {
+		this(emf, plans, ids, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param ids where copies without a primary key get one, or null if all copies have one
+	 * @param chunkSize the number of copies inserted per transaction
+	 */
+	public CopyInserter(EntityManagerFactory emf, CopyPlans plans, IdBlocks ids, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size must be positive: " + chunkSize);
+		}
+		this.session = (ServerSession) JpaHelper.getServerSession(emf);
+		this.plans = plans;
+		this.ids = ids;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * The persistence unit properties that turn on JDBC batch writing, with the given number of statements per batch, and
+	 * the caching of the prepared statements, for the factory of an inserter.
+	 */
+	public static Map<String, Object> batchProperties(int batchSize) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PersistenceUnitProperties.BATCH_WRITING, "JDBC");
+		properties.put(PersistenceUnitProperties.BATCH_WRITING_SIZE, String.valueOf(batchSize));
+		properties.put(PersistenceUnitProperties.CACHE_STATEMENTS, "true");
+		return properties;
+	}
+
+	/**
+	 * Inserts the given copies, made with the given group, and what they cascade to; returns the number of rows inserted.
+	 */
+	public int insertAll(List<?> copies, CopyGroup group) {
+		if (copies.isEmpty()) {
+			return 0;
+		}
+		return insertAll(copies, plans.plan(copies.get(0).getClass(), group));
+	}
+
+	/**
+	 * Inserts the given copies, made with the given plan, and what they cascade to; returns the number of rows inserted.
+	 */
+	public int insertAll(List<?> copies, CopyPlan plan) {
+		List<ClassDescriptor> order = insertOrder(plan);
+		//an entity reached from copies of two chunks is inserted with the first
+		Set<Object> collected = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		int inserted = 0;
+		for (int start = 0; start < copies.size(); start += chunkSize) {
+			List<?> chunk = copies.subList(start, Math.min(start + chunkSize, copies.size()));
+			Map<ClassDescriptor, List<Object>> rows = new HashMap<ClassDescriptor, List<Object>>();
+			for (ClassDescriptor descriptor : order) {
+				rows.put(descriptor, new ArrayList<Object>());
+			}
+			for (Object copy : chunk) {
+				collect(plan, copy, rows, collected);
+			}
+			inserted += insert(order, rows);
+		}
+		return inserted;
+	}
+
+	/**
+	 * The entity classes the given plan inserts rows for, in the order they are inserted.
+	 */
+	public List<Class<?>> getInsertOrder(CopyPlan plan) {
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		for (ClassDescriptor descriptor : insertOrder(plan)) {
+			classes.add(descriptor.getJavaClass());
+		}
+		return classes;
+	}
+
+	private List<ClassDescriptor> insertOrder(CopyPlan plan) {
+		Set<ClassDescriptor> descriptors = Collections.newSetFromMap(new IdentityHashMap<ClassDescriptor, Boolean>());
+		addDescriptors(plan, descriptors, Collections.newSetFromMap(new IdentityHashMap<CopyPlan, Boolean>()));
+		List<ClassDescriptor> order = new ArrayList<ClassDescriptor>(descriptors.size());
+		for (Object entityClass : session.getCommitManager().getCommitOrder()) {
+			ClassDescriptor descriptor = session.getDescriptor((Class<?>) entityClass);
+			if (descriptors.remove(descriptor)) {
+				order.add(descriptor);
+			}
+		}
+		//not ordered by Eclipselink (there are none in this project)
+		order.addAll(descriptors);
+		return order;
+	}
+
+	private static void addDescriptors(CopyPlan plan, Set<ClassDescriptor> descriptors, Set<CopyPlan> visited) {
+		if (plan == null || !visited.add(plan)) {
+			return;
+		}
+		descriptors.add(plan.getDescriptor());
+		ObjectReferenceMapping[] mappings = plan.getReferenceMappings();
+		for (int i = 0; i < mappings.length; i++) {
+			if (plan.getReferencePlans()[i] != null && mappings[i].getReferenceDescriptor() == plan.getDescriptor()
+					&& mappings[i].isForeignKeyRelationship()) {
+				throw new IllegalArgumentException("The rows of " + plan.getEntityClass().getName()
+						+ " refer to rows of their own table and cannot be ordered by table: " + mappings[i].getAttributeName());
+			}
+			addDescriptors(plan.getReferencePlans()[i], descriptors, visited);
+		}
+	}
+
+	//the graph of a copy, as the plan it was copied with walks it; shared associations are left out
+	private void collect(CopyPlan plan, Object copy, Map<ClassDescriptor, List<Object>> rows, Set<Object> collected) {
+		List<CopyPlan> planStack = new ArrayList<CopyPlan>();
+		List<Object> copyStack = new ArrayList<Object>();
+		planStack.add(plan);
+		copyStack.add(copy);
+		while (!copyStack.isEmpty()) {
+			CopyPlan entityPlan = planStack.remove(planStack.size() - 1);
+			Object entity = copyStack.remove(copyStack.size() - 1);
+			if (!collected.add(entity)) {
+				continue;
+			}
+			ClassDescriptor descriptor = entityPlan.getDescriptor();
+			assignId(descriptor, entity);
+			rows.get(descriptor).add(entity);
+			CopyPlan[] referencePlans = entityPlan.getReferencePlans();
+			for (int i = 0; i < referencePlans.length; i++) {
+				Object target = referencePlans[i] != null ? entityPlan.getReference(i, entity) : null;
+				if (target != null) {
+					planStack.add(referencePlans[i]);
+					copyStack.add(target);
+				}
+			}
+		}
+	}
+
+	private void assignId(ClassDescriptor descriptor, Object entity) {
+		List<DatabaseMapping> keyMappings = descriptor.getObjectBuilder().getPrimaryKeyMappings();
+		if (keyMappings.size() != 1 || keyMappings.get(0).getAttributeValueFromObject(entity) != null) {
+			return;
+		}
+		if (ids == null) {
+			throw new IllegalArgumentException("A copy of " + descriptor.getJavaClass().getName()
+					+ " has no primary key, and the inserter has no IdBlocks to give it one.");
+		}
+		keyMappings.get(0).setAttributeValueInObject(entity, ids.nextId(descriptor));
+	}
+
+	//the commit manager is kept active for the whole chunk, as by a unit of work: inserting an entity cascades to its
+	//private parts (and only then is the foreign key to them written), which are then known to be inserted already
+	private int insert(List<ClassDescriptor> order, Map<ClassDescriptor, List<Object>> rows) {
+		ClientSession clientSession = session.acquireClientSession();
+		CommitManager commitManager = clientSession.getCommitManager();
+		int inserted = 0;
+		try {
+			clientSession.beginTransaction();
+			commitManager.setIsActive(true);
+			try {
+				for (ClassDescriptor descriptor : order) {
+					for (Object entity : rows.get(descriptor)) {
+						clientSession.insertObject(entity);
+						inserted++;
+					}
+				}
+				commitManager.setIsActive(false);
+				commitManager.reinitialize();
+				clientSession.commitTransaction();
+			} catch (RuntimeException e) {
+				commitManager.setIsActive(false);
+				commitManager.reinitialize();
+				clientSession.rollbackTransaction();
+				throw e;
+			}
+		} finally {
+			clientSession.release();
+		}
+		return inserted;
+	}
+
+}
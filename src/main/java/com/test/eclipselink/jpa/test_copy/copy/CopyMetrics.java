@@ -0,0 +1,250 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.queries.ReadObjectQuery;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionEventListener;
+
+/**
+ *
+ * Metrics of the copies made through a persistence unit, per CopyGroup signature (see CopyPlans.signature), published as
+ * CopyGroupStats MBeans on the platform MBean server, under
+ * "com.test.eclipselink.jpa.test_copy:type=CopyGroupStats,unit=<session name>,signature=<quoted signature>".
+ *
+ * For every copy it records:
+ *      - its latency
+ *      - the number of entities copied
+ *      - the lazy initializations it triggered: the queries of value holders (queries with a source mapping) and of fetch
+ *      groups loading what an entity is missing (ReadObjectQuery on a selection object), counted by a SessionEventListener
+ *      - the SQL statements it sent, counted by a StatementCounter: session events are raised per query, and a query
+ *      answered by the cache sends none
+ *
+ * Everything is counted per thread, so copies made concurrently do not pollute each other's numbers.
+ *
+ * A persistence unit has one CopyMetrics at a time: installing it again returns the installed one. Publishing never fails
+ * a copy: an MBean left registered under the same name (by metrics of a factory since closed) is replaced, and other JMX
+ * errors are logged to the session log.
+ *
+ * NOTE: client sessions take the listeners and the profiler of the server session when they are acquired, so the metrics
+ * must be installed before the entity managers to be observed are created.
+ *
+ */
+public class CopyMetrics {
+
+	public static final String DOMAIN = "com.test.eclipselink.jpa.test_copy";
+
+	private final AbstractSession session;
+	private final StatementCounter statementCounter;
+	private final InitializationCounter initializationCounter = new InitializationCounter(this);
+	private final ConcurrentMap<String, CopyGroupStats> stats = new ConcurrentHashMap<String, CopyGroupStats>();
+	private final ThreadLocal<long[]> threadInitializations = new ThreadLocal<long[]>() {
+
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	private CopyMetrics(AbstractSession session, StatementCounter statementCounter) {
+		this.session = session;
+		this.statementCounter = statementCounter;
+	}
+
+	/**
+	 * Installs metrics on the server session behind the given factory, along with a StatementCounter unless one is already
+	 * installed; returns the installed metrics if there are.
+	 */
+	public static CopyMetrics install(EntityManagerFactory emf) {
+		Session session = JpaHelper.getServerSession(emf);
+		synchronized (session.getEventManager()) {
+			CopyMetrics metrics = of(emf);
+			if (metrics == null) {
+				StatementCounter statementCounter = StatementCounter.of(emf);
+				if (statementCounter == null) {
+					statementCounter = StatementCounter.install(emf);
+				}
+				metrics = new CopyMetrics((AbstractSession) session, statementCounter);
+				session.getEventManager().addListener(metrics.initializationCounter);
+			}
+			return metrics;
+		}
+	}
+
+	/**
+	 * Returns the metrics previously installed on the given factory, or null if there are none.
+	 */
+	public static CopyMetrics of(EntityManagerFactory emf) {
+		for (SessionEventListener listener : JpaHelper.getServerSession(emf).getEventManager().getListeners()) {
+			if (listener instanceof InitializationCounter) {
+				return ((InitializationCounter) listener).metrics;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops counting the lazy initializations of the persistence unit and unregisters the MBeans; the next install()
+	 * starts new metrics. The StatementCounter stays installed.
+	 */
+	public void uninstall() {
+		synchronized (session.getEventManager()) {
+			session.getEventManager().removeListener(initializationCounter);
+		}
+		unregister();
+	}
+
+	private static boolean isLazyInitialization(DatabaseQuery query) {
+		return query.getSourceMapping() != null
+				|| (query instanceof ReadObjectQuery && ((ReadObjectQuery) query).getSelectionObject() != null);
+	}
+
+	/**
+	 * Starts measuring a copy made by the current thread.
+	 */
+	public Sample start() {
+		return new Sample(System.nanoTime(), threadInitializations.get()[0], statementCounter.getThreadStatementCount());
+	}
+
+	/**
+	 * Copies the given entity with JpaEntityManager.copy, recording it under the signature the group had before the copy:
+	 * a CASCADE_TREE copy adds the primary key to the group.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T copy(EntityManager em, T entity, CopyGroup group) {
+		String signature = CopyPlans.signature(group);
+		Sample sample = start();
+		T copy = (T) em.unwrap(JpaEntityManager.class).copy(entity, group);
+		sample.stop(signature, group.getCopies().size());
+		return copy;
+	}
+
+	/**
+	 * Returns the metrics of the given group's signature, or null if nothing was copied with it.
+	 */
+	public CopyGroupStats getStats(CopyGroup group) {
+		return stats.get(CopyPlans.signature(group));
+	}
+
+	public Collection<CopyGroupStats> getStats() {
+		return stats.values();
+	}
+
+	/**
+	 * Unregisters the MBeans; the metrics keep counting, but are not published anymore.
+	 */
+	public void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (CopyGroupStats groupStats : stats.values()) {
+			try {
+				ObjectName name = objectName(groupStats.getSignature());
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+			} catch (JMException e) {
+				log("Cannot unregister the metrics of " + groupStats.getSignature(), e);
+			}
+		}
+	}
+
+	public ObjectName objectName(String signature) throws JMException {
+		return new ObjectName(DOMAIN + ":type=CopyGroupStats,unit=" + ObjectName.quote(session.getName())
+				+ ",signature=" + ObjectName.quote(signature));
+	}
+
+	private CopyGroupStats stats(String signature) {
+		CopyGroupStats groupStats = stats.get(signature);
+		if (groupStats == null) {
+			groupStats = new CopyGroupStats(signature);
+			CopyGroupStats previous = stats.putIfAbsent(signature, groupStats);
+			if (previous != null) {
+				return previous;
+			}
+			register(groupStats);
+		}
+		return groupStats;
+	}
+
+	private void register(CopyGroupStats groupStats) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = objectName(groupStats.getSignature());
+			try {
+				server.registerMBean(groupStats, name);
+			} catch (InstanceAlreadyExistsException e) {
+				//left by metrics of a factory since closed, or uninstalled without unregistering
+				server.unregisterMBean(name);
+				server.registerMBean(groupStats, name);
+			}
+		} catch (JMException | RuntimeException e) {
+			log("Cannot register the metrics of " + groupStats.getSignature(), e);
+		}
+	}
+
+	private void log(String message, Exception e) {
+		session.log(SessionLog.WARNING, SessionLog.MONITORING, message, null, null, false);
+		session.logThrowable(SessionLog.WARNING, SessionLog.MONITORING, e);
+	}
+
+	//counts the lazy initializations of the current thread; an instance on the event manager marks installed metrics
+	private static final class InitializationCounter extends SessionEventAdapter {
+
+		private final CopyMetrics metrics;
+
+		InitializationCounter(CopyMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void preExecuteQuery(SessionEvent event) {
+			if (isLazyInitialization(event.getQuery())) {
+				metrics.threadInitializations.get()[0]++;
+			}
+		}
+	}
+
+	/**
+	 * What the counters of the current thread were when a copy started.
+	 */
+	public final class Sample {
+
+		private final long startNanos;
+		private final long initializations;
+		private final long statements;
+
+		private Sample(long startNanos, long initializations, long statements) {
+			this.startNanos = startNanos;
+			this.initializations = initializations;
+			this.statements = statements;
+		}
+
+		/**
+		 * Records the copy, made by the thread that started the sample, under the given signature; that of the group before
+		 * the copy, which may change it.
+		 */
+		public void stop(String signature, int entitiesCopied) {
+			long latency = System.nanoTime() - startNanos;
+			stats(signature).record(latency, entitiesCopied, threadInitializations.get()[0] - initializations,
+					statementCounter.getThreadStatementCount() - statements);
+		}
+	}
+
+}
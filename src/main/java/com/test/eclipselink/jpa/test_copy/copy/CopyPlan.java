@@ -0,0 +1,597 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.FetchGroupManager;
+import org.eclipse.persistence.indirection.ValueHolderInterface;
+import org.eclipse.persistence.internal.indirection.BasicIndirectionPolicy;
+import org.eclipse.persistence.internal.descriptors.InstanceVariableAttributeAccessor;
+import org.eclipse.persistence.internal.descriptors.ObjectBuilder;
+import org.eclipse.persistence.internal.queries.EntityFetchGroup;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+import org.eclipse.persistence.mappings.foundation.AbstractDirectMapping;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+/**
+ *
+ * A CopyGroup compiled against the descriptor of one entity class.
+ *
+ * JpaEntityManager.copy resolves the group again on every call: attribute names are looked up in the group for every
+ * mapping, nested groups are created for associations the group does not describe, and the group itself is mutated along
+ * the way (primary key attributes are added to it, and it keeps every copy it made). A plan does all the resolving once:
+ *      -the direct mappings to copy and the associations to visit are kept in arrays
+ *      -every visited association points to the plan of its target, or to none if the target is to be shared
+ *      -the EntityFetchGroup to install on CASCADE_TREE copies is looked up up front
+ *      -the basic attributes are copied by a FieldCopier generated for the class (see FieldCopiers), unless the plan is
+ *          compiled without them; the mappings a copier cannot be generated for are copied by the mapping
+ *
+ * Copying with a plan follows what ObjectBuilder.copyObject does with the group the plan was compiled from:
+ *      -CASCADE_TREE copies the group's attributes (plus the primary key and version unless they are to be reset), loading
+ *          the ones the original has not fetched yet; an association without a nested group gets its non-reference
+ *          attributes, and an empty group copies all attributes
+ *      -CASCADE_ALL_PARTS copies every attribute and cascades every association
+ *      -CASCADE_PRIVATE_PARTS copies every attribute and cascades only the @PrivateOwned associations
+ *      -NO_CASCADE copies every attribute and cascades no association
+ * Associations that are not cascaded refer to the copy of their target if there is one, or else to the original target.
+ *
+ * A plan can also copy lazily (see {@link #copyLazily(Object)}): the basic attributes are copied, but the associations
+ * are only copied, by the same plans and with the same original-to-copy map, once they are first read from the copy.
+ *
+ * Copies meant to be inserted as new rows are made with {@link #copyForInsert(Object, Map, IdBlocks)}, which gives every
+ * copy a new primary key (or none) and resets its version whatever the cascade level.
+ *
+ * The graph is walked iteratively, depth first unless told otherwise (see CopyTraversal), so that chains of associations
+ * of any length can be copied.
+ *
+ * Two things are deliberately simpler than in Eclipselink:
+ *      -resetting the primary key or the version always leaves those attributes out of the copy, whatever the cascade level
+ *          (see the NOTE on setShouldResetPrimaryKey in TestCopyEntities)
+ *      -an entity that is reached a second time is not copied again; the copy made by the first plan that reached it is used
+ *
+ * Only direct (basic) and object reference (toOne) mappings without inheritance are supported, which covers every entity
+ * of this project; anything else is rejected when the plan is compiled.
+ *
+ * A plan is immutable once compiled and can be shared between threads; the copies it makes are not.
+ *
+ */
+public final class CopyPlan {
+
+	private final ClassDescriptor descriptor;
+	private final AbstractSession session;
+	private final int depth;
+
+	private FieldCopier fieldCopier;
+	private AbstractDirectMapping[] directMappings;
+	private ObjectReferenceMapping[] referenceMappings;
+	private CopyPlan[] referencePlans;
+
+	private Set<String> attributeNames;
+	private Set<String> requiredAttributes;
+	private EntityFetchGroup copyFetchGroup;
+	private FetchGroup completeFetchGroup;
+	private volatile AbstractDirectMapping[] insertMappings;
+	private volatile int expectedSize;
+
+	private CopyPlan(ClassDescriptor descriptor, AbstractSession session, int depth) {
+		this.descriptor = descriptor;
+		this.session = session;
+		this.depth = depth;
+	}
+
+	/**
+	 * Compiles the given group for the given entity class; see {@link CopyPlans} for a cache of compiled plans.
+	 */
+	public static CopyPlan compile(AbstractSession session, Class<?> entityClass, CopyGroup group) {
+		return compile(session, entityClass, group, true);
+	}
+
+	/**
+	 * Compiles the given group for the given entity class, with or without generated field copiers; without them, every
+	 * basic attribute is copied by its mapping.
+	 */
+	public static CopyPlan compile(AbstractSession session, Class<?> entityClass, CopyGroup group, boolean fieldCopiers) {
+		ClassDescriptor descriptor = session.getDescriptor(entityClass);
+		if (descriptor == null) {
+			throw new IllegalArgumentException("The class " + entityClass.getName() + " is not an entity of this persistence unit.");
+		}
+		return new Compiler(session, fieldCopiers).compile(descriptor, group);
+	}
+
+	public Class<?> getEntityClass() {
+		return descriptor.getJavaClass();
+	}
+
+	/**
+	 * The cascade level of the group the plan was compiled from (CopyGroup.CASCADE_TREE, ...).
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	ClassDescriptor getDescriptor() {
+		return descriptor;
+	}
+
+	/**
+	 * The names of the attributes the plan copies, associations included.
+	 */
+	Set<String> getAttributeNames() {
+		return attributeNames;
+	}
+
+	ObjectReferenceMapping[] getReferenceMappings() {
+		return referenceMappings;
+	}
+
+	/**
+	 * The plans of the targets of {@link #getReferenceMappings()}, null for a target that is shared rather than copied.
+	 */
+	CopyPlan[] getReferencePlans() {
+		return referencePlans;
+	}
+
+	/**
+	 * The number of entities one copy with the plan makes, for an entity whose associations are all set and lead to
+	 * distinct entities: the number of plans it reaches, itself included. Original-to-copy maps are sized from it.
+	 */
+	public int getExpectedSize() {
+		int size = expectedSize;
+		if (size == 0) {
+			//racing threads count the same
+			size = countPlans(this, Collections.newSetFromMap(new IdentityHashMap<CopyPlan, Boolean>()));
+			expectedSize = size;
+		}
+		return size;
+	}
+
+	private static int countPlans(CopyPlan plan, Set<CopyPlan> counted) {
+		if (plan == null || !counted.add(plan)) {
+			return 0;
+		}
+		int count = 1;
+		for (CopyPlan referencePlan : plan.referencePlans) {
+			count += countPlans(referencePlan, counted);
+		}
+		return count;
+	}
+
+	/**
+	 * Copies the given entity and whatever the plan cascades to, with the original-to-copy map of the current thread
+	 * (see CopyIdentityMap).
+	 */
+	public Object copy(Object original) {
+		CopyIdentityMap copies = CopyIdentityMap.acquire(getExpectedSize());
+		try {
+			return copy(original, copies);
+		} finally {
+			copies.release();
+		}
+	}
+
+	/**
+	 * Copies the given entity, sharing the given original-to-copy map with other copies; entities already in it are not
+	 * copied again.
+	 */
+	public Object copy(Object original, Map<Object, Object> copies) {
+		return copy(original, copies, CopyTraversal.DEPTH_FIRST);
+	}
+
+	/**
+	 * Copies the given entity as {@link #copy(Object, Map)} does, walking the graph in the given order.
+	 */
+	public Object copy(Object original, Map<Object, Object> copies, CopyTraversal traversal) {
+		return copy(original, CopyWork.acquire(copies, false, null), traversal);
+	}
+
+	/**
+	 * Copies the given entity, leaving its associations to be copied on first access; see {@link LazyCopyValueHolder}.
+	 */
+	public Object copyLazily(Object original) {
+		return copyLazily(original, new CopyIdentityMap(getExpectedSize()));
+	}
+
+	/**
+	 * Copies the given entity as {@link #copy(Object, Map)} does, but with the associations left unresolved: each one is
+	 * copied, with the given map, the first time it is read from the copy. Associations without indirection have no value
+	 * holder to defer them with, and are copied right away.
+	 */
+	public Object copyLazily(Object original, Map<Object, Object> copies) {
+		return copy(original, CopyWork.acquire(copies, true, null), CopyTraversal.DEPTH_FIRST);
+	}
+
+	/**
+	 * Copies the given entity as {@link #copy(Object, Map)} does, into targets taken from the given pooled copy rather than
+	 * new ones; see CopyTargetPool.
+	 */
+	Object copy(Object original, Map<Object, Object> copies, PooledCopy<?> targets) {
+		return copy(original, CopyWork.acquire(copies, false, targets), CopyTraversal.DEPTH_FIRST);
+	}
+
+	/**
+	 * Copies the given entity as new rows to insert, whatever the group says of keys and versions:
+	 *      -every copy gets a new primary key from the given blocks, in the same pass, or none if they are null
+	 *      -versions are reset to those of a new row
+	 *      -originals that have not fetched all the attributes the plan copies get them loaded, and copies get no fetch
+	 *          group, so that what the group copies is all there is to insert
+	 * The copies are new entities in the map, in the order they were made: the entities to persist, all at once, in one
+	 * transaction (associations do not cascade the persist).
+	 */
+	public Object copyForInsert(Object original, Map<Object, Object> copies, IdBlocks ids) {
+		CopyWork work = CopyWork.acquire(copies, false, null);
+		work.forInsert = true;
+		work.ids = ids;
+		return copy(original, work, CopyTraversal.DEPTH_FIRST);
+	}
+
+	/**
+	 * Copies the graph without recursing: the entities whose associations are still to be copied are kept in the given
+	 * work, and taken from its end (depth first) or its start (breadth first). The work is released once done.
+	 */
+	private Object copy(Object original, CopyWork work, CopyTraversal traversal) {
+		try {
+			if (original == null) {
+				return null;
+			}
+			Object copy = work.copies.get(original);
+			if (copy != null) {
+				return copy;
+			}
+			copy = start(original, work);
+			if (traversal == CopyTraversal.BREADTH_FIRST) {
+				while (!work.isEmpty()) {
+					int item = work.first();
+					CopyPlan plan = work.plan(item);
+					Object itemOriginal = work.original(item);
+					Object itemCopy = work.copy(item);
+					work.removeFirst();
+					for (int i = 0; i < plan.referenceMappings.length; i++) {
+						plan.copyReference(i, itemOriginal, itemCopy, work);
+					}
+				}
+			} else {
+				while (!work.isEmpty()) {
+					int item = work.last();
+					CopyPlan plan = work.plan(item);
+					int index = work.nextReference(item);
+					Object itemOriginal = work.original(item);
+					Object itemCopy = work.copy(item);
+					//done with the entity before its last association, so that a chain keeps a single item
+					if (index == plan.referenceMappings.length - 1) {
+						work.removeLast();
+					} else {
+						work.setNextReference(item, index + 1);
+					}
+					plan.copyReference(index, itemOriginal, itemCopy, work);
+				}
+			}
+			return copy;
+		} finally {
+			work.release();
+		}
+	}
+
+	//makes the copy of the given original, with its basic attributes, and leaves its associations to the work
+	private Object start(Object original, CopyWork work) {
+		if (work.forInsert ? isMissingForInsert(original) : isMissingAttributes(original)) {
+			((FetchGroupTracker) original)._persistence_getFetchGroup().onUnfetchedAttribute((FetchGroupTracker) original, null);
+		}
+		Object copy = work.targets == null ? descriptor.getObjectBuilder().buildNewInstance() : work.targets.acquire(descriptor);
+		work.copies.put(original, copy);
+		if (copyFetchGroup != null && !work.forInsert) {
+			((FetchGroupTracker) copy)._persistence_setFetchGroup(copyFetchGroup);
+		}
+		if (fieldCopier != null) {
+			fieldCopier.copy(original, copy);
+		}
+		for (AbstractDirectMapping mapping : directMappings) {
+			mapping.buildCloneValue(original, copy, session);
+		}
+		if (work.forInsert) {
+			resetForInsert(copy, work.ids);
+		}
+		if (referenceMappings.length > 0) {
+			work.add(this, original, copy);
+		}
+		return copy;
+	}
+
+	//sets the association at the given index of referenceMappings in the copy of the given original
+	private void copyReference(int index, Object original, Object copy, CopyWork work) {
+		ObjectReferenceMapping mapping = referenceMappings[index];
+		if (work.lazily && mapping.getIndirectionPolicy() instanceof BasicIndirectionPolicy) {
+			mapping.setAttributeValueInObject(copy, new LazyCopyValueHolder(this, index, original, work.copies));
+			return;
+		}
+		Object value = null;
+		Object target = target(mapping, original);
+		if (target != null) {
+			value = work.copies.get(target);
+			if (value == null) {
+				value = referencePlans[index] != null ? referencePlans[index].start(target, work) : target;
+			}
+		}
+		if (work.targets != null) {
+			work.targets.setReference(mapping, copy, value);
+		} else {
+			mapping.getIndirectionPolicy().reset(copy);
+			mapping.setRealAttributeValueInObject(copy, value);
+		}
+	}
+
+	/**
+	 * The value of the association at the given index of {@link #getReferenceMappings()} in the lazy copy of the given
+	 * original: the lazy copy of its target, or the target itself if the plan shares it and it was not copied otherwise.
+	 */
+	Object copyLazyReference(int index, Object original, Map<Object, Object> copies) {
+		Object target = target(referenceMappings[index], original);
+		if (target == null) {
+			return null;
+		}
+		if (referencePlans[index] != null) {
+			return referencePlans[index].copyLazily(target, copies);
+		}
+		Object targetCopy = copies.get(target);
+		return targetCopy != null ? targetCopy : target;
+	}
+
+	/**
+	 * The target of the association at the given index of {@link #getReferenceMappings()} in the given entity, read the
+	 * way copies read it.
+	 */
+	Object getReference(int index, Object entity) {
+		return target(referenceMappings[index], entity);
+	}
+
+	//a value holder is read as it is: the indirection policy of woven entities would set the attribute of the original
+	//again, reflectively, on every read
+	private Object target(ObjectReferenceMapping mapping, Object original) {
+		if (!(mapping.getIndirectionPolicy() instanceof BasicIndirectionPolicy)) {
+			return mapping.getRealAttributeValueFromObject(original, session);
+		}
+		Object value = mapping.getAttributeValueFromObject(original);
+		return value instanceof ValueHolderInterface ? ((ValueHolderInterface) value).getValue() : value;
+	}
+
+	/**
+	 * The same check ObjectBuilder.copyObject makes before a CASCADE_TREE copy: whether the original lacks attributes the
+	 * copy needs, which then get loaded.
+	 */
+	boolean isMissingAttributes(Object original) {
+		if (requiredAttributes == null || !(original instanceof FetchGroupTracker)) {
+			return false;
+		}
+		FetchGroup fetchGroup = ((FetchGroupTracker) original)._persistence_getFetchGroup();
+		return fetchGroup != null && !fetchGroup.getAttributeNames().containsAll(requiredAttributes);
+	}
+
+	//whether the original lacks any attribute the plan copies; the entities of a class mostly share a few fetch groups, so
+	//the last one found to hold them all is remembered (only ever compared, a stale one just means checking again)
+	private boolean isMissingForInsert(Object original) {
+		if (!(original instanceof FetchGroupTracker)) {
+			return false;
+		}
+		FetchGroup fetchGroup = ((FetchGroupTracker) original)._persistence_getFetchGroup();
+		if (fetchGroup == null || fetchGroup == completeFetchGroup) {
+			return false;
+		}
+		if (!fetchGroup.getAttributeNames().containsAll(attributeNames)) {
+			return true;
+		}
+		completeFetchGroup = fetchGroup;
+		return false;
+	}
+
+	//the key and version of a new row: the next id of the blocks, or none, and no version yet
+	private void resetForInsert(Object copy, IdBlocks ids) {
+		for (AbstractDirectMapping mapping : insertMappings()) {
+			Object value = ids != null && mapping.isPrimaryKeyMapping() ? ids.nextId(descriptor) : emptyValue(mapping);
+			if (mapping.getAttributeAccessor().isInstanceVariableAttributeAccessor()) {
+				//the field itself: the woven accessor would look the attribute up by name
+				try {
+					((InstanceVariableAttributeAccessor) mapping.getAttributeAccessor()).getAttributeField().set(copy, value);
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException("The attribute " + mapping.getAttributeName() + " cannot be set.", e);
+				}
+			} else {
+				mapping.setAttributeValueInObject(copy, value);
+			}
+		}
+	}
+
+	//the basic primary key and version mappings
+	private AbstractDirectMapping[] insertMappings() {
+		AbstractDirectMapping[] mappings = insertMappings;
+		if (mappings == null) {
+			//racing threads find the same
+			List<AbstractDirectMapping> found = new ArrayList<AbstractDirectMapping>();
+			ObjectBuilder builder = descriptor.getObjectBuilder();
+			for (DatabaseMapping mapping : builder.getPrimaryKeyMappings()) {
+				if (mapping.isDirectToFieldMapping()) {
+					found.add((AbstractDirectMapping) mapping);
+				}
+			}
+			String lockAttribute = builder.getLockAttribute();
+			DatabaseMapping versionMapping = lockAttribute == null ? null : builder.getMappingForAttributeName(lockAttribute);
+			if (versionMapping != null && versionMapping.isDirectToFieldMapping()) {
+				found.add((AbstractDirectMapping) versionMapping);
+			}
+			mappings = found.toArray(new AbstractDirectMapping[found.size()]);
+			insertMappings = mappings;
+		}
+		return mappings;
+	}
+
+	//null, or zero for a primitive attribute
+	private Object emptyValue(AbstractDirectMapping mapping) {
+		Class<?> attributeClass = mapping.getAttributeClassification();
+		return attributeClass != null && attributeClass.isPrimitive()
+				? session.getDatasourcePlatform().convertObject(0, attributeClass) : null;
+	}
+
+	/**
+	 * Compiles one group; plans of CASCADE_ALL_PARTS and CASCADE_PRIVATE_PARTS groups depend only on the entity class, so
+	 * they are shared within a compilation - which is also what lets circular associations point back to a plan being
+	 * compiled.
+	 */
+	private static class Compiler {
+
+		private final AbstractSession session;
+		private final boolean fieldCopiers;
+		private final Map<String, CopyPlan> classPlans = new HashMap<String, CopyPlan>();
+
+		Compiler(AbstractSession session, boolean fieldCopiers) {
+			this.session = session;
+			this.fieldCopiers = fieldCopiers;
+		}
+
+		CopyPlan compile(ClassDescriptor descriptor, CopyGroup group) {
+			if (descriptor.hasInheritance()) {
+				throw new IllegalArgumentException("Copy plans do not support inheritance: " + descriptor.getJavaClass().getName());
+			}
+			if (group.shouldCascadeTree()) {
+				return compileTree(descriptor, group);
+			}
+			String key = descriptor.getJavaClass().getName() + "/" + group.getDepth() + "/" + group.shouldResetPrimaryKey()
+					+ "/" + group.shouldResetVersion();
+			CopyPlan plan = classPlans.get(key);
+			if (plan == null) {
+				plan = new CopyPlan(descriptor, session, group.getDepth());
+				classPlans.put(key, plan);
+				compileAllAttributes(plan, group);
+			}
+			return plan;
+		}
+
+		private void compileAllAttributes(CopyPlan plan, CopyGroup group) {
+			List<AbstractDirectMapping> directMappings = new ArrayList<AbstractDirectMapping>();
+			List<ObjectReferenceMapping> referenceMappings = new ArrayList<ObjectReferenceMapping>();
+			List<CopyPlan> referencePlans = new ArrayList<CopyPlan>();
+			for (DatabaseMapping mapping : plan.descriptor.getMappings()) {
+				if (isReset(plan.descriptor, mapping, group)) {
+					continue;
+				}
+				if (mapping.isDirectToFieldMapping()) {
+					directMappings.add((AbstractDirectMapping) mapping);
+				} else if (mapping.isObjectReferenceMapping()) {
+					ObjectReferenceMapping referenceMapping = (ObjectReferenceMapping) mapping;
+					referenceMappings.add(referenceMapping);
+					boolean cascade = group.shouldCascadeAllParts()
+							|| (group.shouldCascadePrivateParts() && referenceMapping.isPrivateOwned());
+					referencePlans.add(cascade ? compile(referenceMapping.getReferenceDescriptor(), group) : null);
+				} else {
+					throw unsupported(mapping);
+				}
+			}
+			setMappings(plan, directMappings, referenceMappings, referencePlans);
+		}
+
+		private CopyPlan compileTree(ClassDescriptor descriptor, CopyGroup group) {
+			CopyPlan plan = new CopyPlan(descriptor, session, CopyGroup.CASCADE_TREE);
+			boolean copyAll = !group.hasItems();
+			Set<String> attributeNames = new HashSet<String>();
+			List<AbstractDirectMapping> directMappings = new ArrayList<AbstractDirectMapping>();
+			List<ObjectReferenceMapping> referenceMappings = new ArrayList<ObjectReferenceMapping>();
+			List<CopyPlan> referencePlans = new ArrayList<CopyPlan>();
+			for (DatabaseMapping mapping : descriptor.getMappings()) {
+				String name = mapping.getAttributeName();
+				boolean keyOrVersion = mapping.isPrimaryKeyMapping() || name.equals(descriptor.getObjectBuilder().getLockAttribute());
+				if (isReset(descriptor, mapping, group) || !(copyAll || keyOrVersion || group.containsAttributeInternal(name))) {
+					continue;
+				}
+				attributeNames.add(name);
+				if (mapping.isDirectToFieldMapping()) {
+					directMappings.add((AbstractDirectMapping) mapping);
+				} else if (mapping.isObjectReferenceMapping()) {
+					ObjectReferenceMapping referenceMapping = (ObjectReferenceMapping) mapping;
+					referenceMappings.add(referenceMapping);
+					referencePlans.add(compileTree(referenceMapping.getReferenceDescriptor(), nestedGroup(group, referenceMapping)));
+				} else {
+					throw unsupported(mapping);
+				}
+			}
+			setMappings(plan, directMappings, referenceMappings, referencePlans);
+			if (!copyAll) {
+				plan.requiredAttributes = attributeNames;
+				FetchGroupManager fetchGroupManager = descriptor.getFetchGroupManager();
+				if (fetchGroupManager != null) {
+					plan.copyFetchGroup = fetchGroupManager.getEntityFetchGroup(attributeNames);
+				}
+			}
+			return plan;
+		}
+
+		private void setMappings(CopyPlan plan, List<AbstractDirectMapping> directMappings,
+				List<ObjectReferenceMapping> referenceMappings, List<CopyPlan> referencePlans) {
+			Set<String> attributeNames = new HashSet<String>();
+			for (DatabaseMapping mapping : directMappings) {
+				attributeNames.add(mapping.getAttributeName());
+			}
+			for (DatabaseMapping mapping : referenceMappings) {
+				attributeNames.add(mapping.getAttributeName());
+			}
+			plan.attributeNames = Collections.unmodifiableSet(attributeNames);
+			setDirectMappings(plan, directMappings);
+			plan.referenceMappings = referenceMappings.toArray(new ObjectReferenceMapping[referenceMappings.size()]);
+			plan.referencePlans = referencePlans.toArray(new CopyPlan[referencePlans.size()]);
+		}
+
+		private void setDirectMappings(CopyPlan plan, List<AbstractDirectMapping> directMappings) {
+			List<AbstractDirectMapping> generated = new ArrayList<AbstractDirectMapping>();
+			List<AbstractDirectMapping> remaining = new ArrayList<AbstractDirectMapping>();
+			for (AbstractDirectMapping mapping : directMappings) {
+				(fieldCopiers && FieldCopiers.canGenerate(mapping) ? generated : remaining).add(mapping);
+			}
+			if (!generated.isEmpty()) {
+				plan.fieldCopier = FieldCopiers.generate(plan.descriptor.getJavaClass(), generated);
+			}
+			plan.directMappings = remaining.toArray(new AbstractDirectMapping[remaining.size()]);
+		}
+
+		//an association without a group of its own gets the non-reference attributes of its target, as in ObjectBuilder
+		private CopyGroup nestedGroup(CopyGroup group, ObjectReferenceMapping mapping) {
+			CopyGroup nested = group.hasItems() ? group.getGroup(mapping.getAttributeName()) : null;
+			if (nested == null) {
+				nested = new CopyGroup();
+				nested.setShouldResetPrimaryKey(group.shouldResetPrimaryKey());
+				nested.setShouldResetVersion(group.shouldResetVersion());
+				FetchGroupManager fetchGroupManager = mapping.getReferenceDescriptor().getFetchGroupManager();
+				if (fetchGroupManager != null) {
+					EntityFetchGroup nonReference = fetchGroupManager.getNonReferenceEntityFetchGroup(
+							group.shouldResetPrimaryKey(), group.shouldResetVersion());
+					if (nonReference != null) {
+						for (String name : nonReference.getAttributeNames()) {
+							nested.addAttribute(name);
+						}
+					}
+				}
+				nested.cascadeTree();
+			}
+			return nested;
+		}
+
+		private boolean isReset(ClassDescriptor descriptor, DatabaseMapping mapping, CopyGroup group) {
+			if (group.shouldResetPrimaryKey() && mapping.isPrimaryKeyMapping()) {
+				return true;
+			}
+			return group.shouldResetVersion() && mapping.getAttributeName().equals(descriptor.getObjectBuilder().getLockAttribute());
+		}
+
+		private IllegalArgumentException unsupported(DatabaseMapping mapping) {
+			return new IllegalArgumentException("Copy plans do not support the mapping " + mapping.getAttributeName() + " of "
+					+ mapping.getDescriptor().getJavaClass().getName() + " (" + mapping.getClass().getSimpleName() + ").");
+		}
+	}
+
+}
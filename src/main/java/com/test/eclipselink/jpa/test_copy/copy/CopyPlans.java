@@ -0,0 +1,272 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.queries.AttributeItem;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+/**
+ *
+ * A bounded cache of CopyPlans, keyed by entity class and CopyGroup signature.
+ *
+ * The signature of a group is its cascade level, its reset flags and - for CASCADE_TREE - its attributes and nested
+ * groups in name order; two groups with the same signature compile to the same plan. Computing it still walks the group,
+ * so the hottest paths should get their plan once through {@link #plan(Class, CopyGroup)} and hold on to it.
+ *
+ * The least recently used plan is dropped once the cache is full.
+ *
+ * Copies are recorded by the CopyMetrics given to {@link #setMetrics(CopyMetrics)}, if any.
+ *
+ */
+public class CopyPlans {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+	private final AbstractSession session;
+	private final boolean fieldCopiers;
+	private final Map<PlanKey, CopyPlan> plans;
+	private volatile CopyMetrics metrics;
+
+	public CopyPlans(EntityManagerFactory emf) {
+		this(emf, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public CopyPlans(EntityManagerFactory emf, int maximumSize) {
+		this(emf, maximumSize, true);
+	}
+
+	/**
+	 * @param fieldCopiers whether the plans copy basic attributes with generated copiers (see FieldCopiers) or with their
+	 *            mappings
+	 */
+	public CopyPlans(EntityManagerFactory emf, final int maximumSize, boolean fieldCopiers) {
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.fieldCopiers = fieldCopiers;
+		this.plans = Collections.synchronizedMap(new LinkedHashMap<PlanKey, CopyPlan>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<PlanKey, CopyPlan> eldest) {
+				return size() > maximumSize;
+			}
+		});
+	}
+
+	/**
+	 * Returns the plan of the given class and group, compiling it if it is not cached.
+	 */
+	public CopyPlan plan(Class<?> entityClass, CopyGroup group) {
+		return plan(entityClass, signature(group), group);
+	}
+
+	private CopyPlan plan(Class<?> entityClass, String signature, CopyGroup group) {
+		PlanKey key = new PlanKey(entityClass, signature);
+		CopyPlan plan = plans.get(key);
+		if (plan == null) {
+			//compiling twice under contention is harmless, the plans are equivalent
+			plan = CopyPlan.compile(session, entityClass, group, fieldCopiers);
+			plans.put(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Copies the given entity as JpaEntityManager.copy would with the given group.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T copy(T entity, CopyGroup group) {
+		if (entity == null) {
+			return null;
+		}
+		CopyMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return (T) plan(entity.getClass(), group).copy(entity);
+		}
+		CopyMetrics.Sample sample = metrics.start();
+		String signature = signature(group);
+		CopyPlan plan = plan(entity.getClass(), signature, group);
+		CopyIdentityMap copied = CopyIdentityMap.acquire(plan.getExpectedSize());
+		try {
+			T copy = (T) plan.copy(entity, copied);
+			sample.stop(signature, copied.size());
+			return copy;
+		} finally {
+			copied.release();
+		}
+	}
+
+	/**
+	 * Copies the given entity as {@link #copy(Object, CopyGroup)} does, but leaves the associations the group reaches to be
+	 * copied when they are first read (see CopyPlan.copyLazily). Since most of the copying happens later, if at all, lazy
+	 * copies are not recorded by the metrics.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T copyLazily(T entity, CopyGroup group) {
+		return entity == null ? null : (T) plan(entity.getClass(), group).copyLazily(entity);
+	}
+
+	/**
+	 * Copies all of the given entities (of the same class) with one original-to-copy map, as JpaEntityManager.copy does for
+	 * a collection.
+	 *
+	 * @throws IllegalArgumentException if the entities are not all of the same class
+	 */
+	public <T> List<T> copyAll(List<T> entities, CopyGroup group) {
+		CopyMetrics metrics = this.metrics;
+		return copyAll(entities, group, metrics == null ? null : metrics.start());
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> List<T> copyAll(List<T> entities, CopyGroup group, CopyMetrics.Sample sample) {
+		Class<?> entityClass = entityClass(entities);
+		List<T> copies = new ArrayList<T>(entities.size());
+		String signature = signature(group);
+		CopyIdentityMap copied = null;
+		try {
+			if (entityClass != null) {
+				CopyPlan plan = plan(entityClass, signature, group);
+				copied = CopyIdentityMap.acquire(plan.getExpectedSize() * entities.size());
+				for (T entity : entities) {
+					copies.add(entity == null ? null : (T) plan.copy(entity, copied));
+				}
+			} else {
+				copies.addAll(entities);
+			}
+			if (sample != null) {
+				sample.stop(signature, copied == null ? 0 : copied.size());
+			}
+		} finally {
+			if (copied != null) {
+				copied.release();
+			}
+		}
+		return copies;
+	}
+
+	/**
+	 * Copies all of the given entities (of the same class) with one original-to-copy map, after loading what the copies
+	 * need in batches (see BatchLoader): whatever the number of entities, copying then takes a few queries per
+	 * association the group reaches, instead of a few per entity.
+	 *
+	 * @throws IllegalArgumentException if the entities are not all of the same class
+	 */
+	public <T> List<T> copyAll(EntityManager em, List<T> entities, CopyGroup group) {
+		CopyMetrics metrics = this.metrics;
+		CopyMetrics.Sample sample = metrics == null ? null : metrics.start();
+		Class<?> entityClass = entityClass(entities);
+		if (entityClass != null) {
+			List<Object> originals = new ArrayList<Object>(entities.size());
+			for (T entity : entities) {
+				if (entity != null) {
+					originals.add(entity);
+				}
+			}
+			new BatchLoader(em).load(plan(entityClass, group), originals);
+		}
+		return copyAll(entities, group, sample);
+	}
+
+	//the class of the entities, null if there are none: a group describes the attributes of one class
+	private static Class<?> entityClass(List<?> entities) {
+		Class<?> entityClass = null;
+		for (Object entity : entities) {
+			if (entity == null) {
+				continue;
+			}
+			if (entityClass == null) {
+				entityClass = entity.getClass();
+			} else if (entityClass != entity.getClass()) {
+				throw new IllegalArgumentException("The entities are not all of the same class: " + entityClass.getName()
+						+ " and " + entity.getClass().getName());
+			}
+		}
+		return entityClass;
+	}
+
+	/**
+	 * Records the copies made from now on with the given metrics, or stops recording them if null.
+	 */
+	public void setMetrics(CopyMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public int size() {
+		return plans.size();
+	}
+
+	public void clear() {
+		plans.clear();
+	}
+
+	/**
+	 * Returns the signature of the given group, e.g. "4--[association{4--[data1]},data2]" for a CASCADE_TREE group holding
+	 * "data2" and "association.data1".
+	 */
+	public static String signature(CopyGroup group) {
+		StringBuilder signature = new StringBuilder();
+		appendSignature(group, signature);
+		return signature.toString();
+	}
+
+	private static void appendSignature(CopyGroup group, StringBuilder signature) {
+		signature.append(group.getDepth());
+		signature.append(group.shouldResetPrimaryKey() ? 'K' : '-');
+		signature.append(group.shouldResetVersion() ? 'V' : '-');
+		if (!group.shouldCascadeTree() || !group.hasItems()) {
+			return;
+		}
+		List<String> names = new ArrayList<String>(group.getItems().keySet());
+		Collections.sort(names);
+		signature.append('[');
+		for (int i = 0; i < names.size(); i++) {
+			if (i > 0) {
+				signature.append(',');
+			}
+			String name = names.get(i);
+			signature.append(name);
+			AttributeItem item = group.getItem(name);
+			if (item.getGroup() != null) {
+				signature.append('{');
+				appendSignature((CopyGroup) item.getGroup(), signature);
+				signature.append('}');
+			}
+		}
+		signature.append(']');
+	}
+
+	private static final class PlanKey {
+
+		private final Class<?> entityClass;
+		private final String signature;
+
+		PlanKey(Class<?> entityClass, String signature) {
+			this.entityClass = entityClass;
+			this.signature = signature;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * entityClass.hashCode() + signature.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PlanKey)) {
+				return false;
+			}
+			PlanKey other = (PlanKey) obj;
+			return entityClass == other.entityClass && signature.equals(other.signature);
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+/**
+ *
+ * An immutable snapshot of a loaded entity graph that any number of threads can copy from at the same time.
+ *
+ * An EntityManager is not thread-safe, so copying the same graph on several threads otherwise takes an EntityManager per
+ * thread, each reading the same rows again. A source copies the graph once, with the given group, into entities of its
+ * own that are never handed out; every copy is then made from those:
+ *      -without the EntityManager, which can be closed, and without any database access
+ *      -without locks: the snapshot is only ever read, by the plans, which read value holders as they are rather than
+ *          through the woven getters (that would set the attribute again)
+ *      -with the group of the source ({@link #copy()}) or with any other plan that reads no more than the snapshot holds
+ *          ({@link #copy(CopyPlan)}), e.g. one that resets the primary key, for a variant of the graph to insert per tenant
+ *
+ * A plan reads no more than the snapshot holds if, from the root down, every attribute it copies is in the snapshot and
+ * it cascades to exactly the associations the snapshot cascaded to. Sharing an association the snapshot copied would hand
+ * out an entity of the snapshot; cascading to one the snapshot shared would copy an entity of the EntityManager.
+ * Associations neither cascades to are shared with the EntityManager, as by any copy.
+ *
+ */
+public final class CopySource<T> {
+
+	private final CopyPlans plans;
+	private final CopyPlan plan;
+	private final T snapshot;
+	//plans known to read no more than the snapshot holds
+	private final ConcurrentMap<CopyPlan, Boolean> checkedPlans = new ConcurrentHashMap<CopyPlan, Boolean>();
+
+	/**
+	 * Takes a snapshot of the given entity and whatever the group cascades to, loading what it lacks through its
+	 * EntityManager.
+	 */
+	@SuppressWarnings("unchecked")
+	public CopySource(CopyPlans plans, T entity, CopyGroup group) {
+		if (entity == null) {
+			throw new IllegalArgumentException("A copy source needs an entity.");
+		}
+		this.plans = plans;
+		this.plan = plans.plan(entity.getClass(), group);
+		this.snapshot = (T) plan.copy(entity, new CopyIdentityMap(plan.getExpectedSize()));
+		checkedPlans.put(plan, Boolean.TRUE);
+	}
+
+	/**
+	 * The plan the snapshot was taken with.
+	 */
+	public CopyPlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * Copies the snapshot with the group of the source.
+	 */
+	public T copy() {
+		return copy(plan);
+	}
+
+	/**
+	 * Copies the snapshot with the given group; the plan is looked up in the CopyPlans of the source, which synchronizes,
+	 * so threads copying many times should get it once and use {@link #copy(CopyPlan)}.
+	 *
+	 * @throws IllegalArgumentException if the group reads more than the snapshot holds
+	 */
+	public T copy(CopyGroup group) {
+		return copy(plans.plan(plan.getEntityClass(), group));
+	}
+
+	/**
+	 * Copies the snapshot with the given plan.
+	 *
+	 * @throws IllegalArgumentException if the plan reads more than the snapshot holds
+	 */
+	@SuppressWarnings("unchecked")
+	public T copy(CopyPlan copyPlan) {
+		if (checkedPlans.get(copyPlan) == null) {
+			check(copyPlan, plan, new IdentityHashMap<CopyPlan, CopyPlan>());
+			checkedPlans.put(copyPlan, Boolean.TRUE);
+		}
+		return (T) copyPlan.copy(snapshot);
+	}
+
+	private static void check(CopyPlan copyPlan, CopyPlan snapshotPlan, Map<CopyPlan, CopyPlan> checked) {
+		if (checked.put(copyPlan, snapshotPlan) == snapshotPlan) {
+			return;
+		}
+		if (copyPlan.getDescriptor() != snapshotPlan.getDescriptor()) {
+			throw new IllegalArgumentException("The plan copies " + copyPlan.getEntityClass().getName()
+					+ " where the snapshot holds " + snapshotPlan.getEntityClass().getName() + ".");
+		}
+		if (!snapshotPlan.getAttributeNames().containsAll(copyPlan.getAttributeNames())) {
+			throw new IllegalArgumentException("The plan copies attributes of " + copyPlan.getEntityClass().getName()
+					+ " the snapshot does not hold: " + copyPlan.getAttributeNames() + " for " + snapshotPlan.getAttributeNames()
+					+ ".");
+		}
+		ObjectReferenceMapping[] mappings = copyPlan.getReferenceMappings();
+		for (int i = 0; i < mappings.length; i++) {
+			CopyPlan referencePlan = copyPlan.getReferencePlans()[i];
+			CopyPlan snapshotReferencePlan = snapshotReferencePlan(snapshotPlan, mappings[i]);
+			if ((referencePlan == null) != (snapshotReferencePlan == null)) {
+				throw new IllegalArgumentException("The plan " + (referencePlan == null ? "shares" : "copies") + " the association "
+						+ mappings[i].getAttributeName() + " of " + copyPlan.getEntityClass().getName() + ", which the snapshot "
+						+ (referencePlan == null ? "copied." : "shares."));
+			}
+			if (referencePlan != null) {
+				check(referencePlan, snapshotReferencePlan, checked);
+			}
+		}
+	}
+
+	private static CopyPlan snapshotReferencePlan(CopyPlan snapshotPlan, ObjectReferenceMapping mapping) {
+		ObjectReferenceMapping[] mappings = snapshotPlan.getReferenceMappings();
+		for (int i = 0; i < mappings.length; i++) {
+			if (mappings[i] == mapping) {
+				return snapshotPlan.getReferencePlans()[i];
+			}
+		}
+		return null;
+	}
+
+}
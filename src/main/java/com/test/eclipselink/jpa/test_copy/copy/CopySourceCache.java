@@ -0,0 +1,394 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkChangeSet;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.ModifyAllQuery;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionEventListener;
+
+/**
+ *
+ * A bounded cache of CopySources, keyed by entity class and id, to copy hot graphs from without going to the database.
+ *
+ * The persistence unit turns the shared cache off (eclipselink.cache.shared.default=false), so every EntityManager reads
+ * the graphs it copies again. The cache keeps one immutable snapshot per root instead, taken with the group of the cache
+ * through an EntityManager of its own, and hands out copies of it (see CopySource):
+ *      -a snapshot is dropped once it has not been used for long, when the cache is full (least recently used first), or
+ *          once it is older than the time to live, whichever comes first
+ *      -a snapshot is dropped as soon as a unit of work of the persistence unit changes or deletes any entity it holds,
+ *          root or not: the change sets are read when they are calculated (on flush or commit) and again once the unit of
+ *          work commits, so that a snapshot taken in between is not kept either
+ *      -a bulk update or delete (JPQL UPDATE/DELETE) drops every snapshot holding an entity of its class
+ *      -a snapshot taken while a change was being recorded is handed out once, but not cached
+ * Changes made to the database by anything but this persistence unit are only seen once the time to live is over.
+ *
+ * Hits, misses, evictions and invalidations are counted.
+ *
+ * NOTE: client sessions take the listeners of the server session when they are acquired, so the cache must be created
+ * before the entity managers whose changes it is to see.
+ *
+ */
+public class CopySourceCache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+	public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60000;
+
+	private static final String CHANGED_KEYS = CopySourceCache.class.getName() + ".changedKeys";
+
+	private final EntityManagerFactory emf;
+	private final AbstractSession session;
+	private final CopyPlans plans;
+	private final CopyGroup group;
+	private final long timeToLiveNanos;
+	private final SessionEventListener listener;
+
+	//guarded by this
+	private final LinkedHashMap<EntityKey, Entry> entries;
+	private final Map<EntityKey, Set<EntityKey>> rootsByMember = new HashMap<EntityKey, Set<EntityKey>>();
+	private long invalidationGeneration;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	public CopySourceCache(EntityManagerFactory emf, CopyPlans plans, CopyGroup group) {
+		this(emf, plans, group, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE_MILLIS);
+	}
+
+	public CopySourceCache(EntityManagerFactory emf, CopyPlans plans, CopyGroup group, final int maximumSize,
+			long timeToLiveMillis) {
+		if (maximumSize < 1 || timeToLiveMillis < 1) {
+			throw new IllegalArgumentException("The maximum size and time to live must be positive: " + maximumSize + ", "
+					+ timeToLiveMillis);
+		}
+		this.emf = emf;
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.plans = plans;
+		this.group = group;
+		this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+		this.entries = new LinkedHashMap<EntityKey, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<EntityKey, Entry> eldest) {
+				if (size() <= maximumSize) {
+					return false;
+				}
+				unindex(eldest.getKey(), eldest.getValue());
+				evictions.incrementAndGet();
+				return true;
+			}
+		};
+		this.listener = new InvalidationListener();
+		session.getEventManager().addListener(listener);
+	}
+
+	/**
+	 * Returns the source of the entity of the given class with the given id, reading it if it is not cached; null if there
+	 * is no such entity.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CopySource<T> get(Class<T> entityClass, Object id) {
+		EntityKey key = new EntityKey(entityClass, id);
+		long generation;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				if (System.nanoTime() - entry.created < timeToLiveNanos) {
+					hits.incrementAndGet();
+					return (CopySource<T>) entry.source;
+				}
+				remove(key);
+				evictions.incrementAndGet();
+			}
+			generation = invalidationGeneration;
+		}
+		misses.incrementAndGet();
+		Entry entry = load(entityClass, id);
+		if (entry == null) {
+			return null;
+		}
+		synchronized (this) {
+			if (generation == invalidationGeneration) {
+				remove(key);
+				entries.put(key, entry);
+				for (EntityKey member : entry.members) {
+					Set<EntityKey> roots = rootsByMember.get(member);
+					if (roots == null) {
+						roots = new HashSet<EntityKey>();
+						rootsByMember.put(member, roots);
+					}
+					roots.add(key);
+				}
+			}
+		}
+		return (CopySource<T>) entry.source;
+	}
+
+	/**
+	 * Copies the entity of the given class with the given id with the group of the cache; null if there is no such entity.
+	 */
+	public <T> T copy(Class<T> entityClass, Object id) {
+		CopySource<T> source = get(entityClass, id);
+		return source == null ? null : source.copy();
+	}
+
+	/**
+	 * Copies the entity of the given class with the given id with the given group, which must read no more than the group
+	 * of the cache (see CopySource); null if there is no such entity.
+	 */
+	public <T> T copy(Class<T> entityClass, Object id, CopyGroup copyGroup) {
+		CopySource<T> source = get(entityClass, id);
+		return source == null ? null : source.copy(copyGroup);
+	}
+
+	private Entry load(Class<?> entityClass, Object id) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			Object entity = em.find(entityClass, id);
+			if (entity == null) {
+				return null;
+			}
+			CopySource<Object> source = new CopySource<Object>(plans, entity, group);
+			return new Entry(source, members(source.getPlan(), entity), System.nanoTime());
+		} finally {
+			em.close();
+		}
+	}
+
+	//the entities of the snapshot, found in the graph it was taken from (loaded by then)
+	private Set<EntityKey> members(CopyPlan plan, Object entity) {
+		Set<EntityKey> members = new HashSet<EntityKey>();
+		Map<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+		List<CopyPlan> planStack = new ArrayList<CopyPlan>();
+		List<Object> entityStack = new ArrayList<Object>();
+		planStack.add(plan);
+		entityStack.add(entity);
+		while (!entityStack.isEmpty()) {
+			CopyPlan memberPlan = planStack.remove(planStack.size() - 1);
+			Object member = entityStack.remove(entityStack.size() - 1);
+			if (visited.put(member, Boolean.TRUE) != null) {
+				continue;
+			}
+			members.add(new EntityKey(memberPlan.getEntityClass(),
+					memberPlan.getDescriptor().getObjectBuilder().extractPrimaryKeyFromObject(member, session)));
+			CopyPlan[] referencePlans = memberPlan.getReferencePlans();
+			for (int i = 0; i < referencePlans.length; i++) {
+				Object target = referencePlans[i] != null ? memberPlan.getReference(i, member) : null;
+				if (target != null) {
+					planStack.add(referencePlans[i]);
+					entityStack.add(target);
+				}
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * Drops every snapshot holding the entity of the given class with the given id.
+	 */
+	public synchronized void invalidate(Class<?> entityClass, Object id) {
+		invalidationGeneration++;
+		Set<EntityKey> roots = rootsByMember.get(new EntityKey(entityClass, id));
+		if (roots != null) {
+			for (EntityKey root : new ArrayList<EntityKey>(roots)) {
+				remove(root);
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Drops every snapshot holding an entity of the given class.
+	 */
+	public synchronized void invalidateAll(Class<?> entityClass) {
+		invalidationGeneration++;
+		List<EntityKey> roots = new ArrayList<EntityKey>();
+		for (Map.Entry<EntityKey, Set<EntityKey>> member : rootsByMember.entrySet()) {
+			if (member.getKey().entityClass == entityClass) {
+				roots.addAll(member.getValue());
+			}
+		}
+		for (EntityKey root : roots) {
+			if (remove(root)) {
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	private boolean remove(EntityKey key) {
+		Entry entry = entries.remove(key);
+		if (entry == null) {
+			return false;
+		}
+		unindex(key, entry);
+		return true;
+	}
+
+	private void unindex(EntityKey key, Entry entry) {
+		for (EntityKey member : entry.members) {
+			Set<EntityKey> roots = rootsByMember.get(member);
+			if (roots != null && roots.remove(key) && roots.isEmpty()) {
+				rootsByMember.remove(member);
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized void clear() {
+		invalidationGeneration++;
+		entries.clear();
+		rootsByMember.clear();
+	}
+
+	/**
+	 * Stops listening to the changes of the persistence unit and drops every snapshot.
+	 */
+	public void close() {
+		session.getEventManager().removeListener(listener);
+		clear();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of snapshots dropped because the cache was full or they were too old.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * The number of snapshots dropped because an entity they hold was changed.
+	 */
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+
+	public double getHitRatio() {
+		long hitCount = hits.get();
+		long requests = hitCount + misses.get();
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	private final class InvalidationListener extends SessionEventAdapter {
+
+		//the entities changed by the unit of work are remembered on it until it commits
+		@Override
+		@SuppressWarnings("unchecked")
+		public void postCalculateUnitOfWorkChangeSet(SessionEvent event) {
+			UnitOfWorkChangeSet changeSet = (UnitOfWorkChangeSet) event.getProperty("UnitOfWorkChangeSet");
+			Session unitOfWork = event.getSession();
+			Set<EntityKey> changedKeys = (Set<EntityKey>) unitOfWork.getProperty(CHANGED_KEYS);
+			if (changedKeys == null) {
+				changedKeys = new HashSet<EntityKey>();
+				unitOfWork.setProperty(CHANGED_KEYS, changedKeys);
+			}
+			addKeys(changeSet.getAllChangeSets().keySet(), unitOfWork, changedKeys);
+			addKeys(changeSet.getDeletedObjects().keySet(), unitOfWork, changedKeys);
+			invalidateKeys(changedKeys);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void postCommitUnitOfWork(SessionEvent event) {
+			Set<EntityKey> changedKeys = (Set<EntityKey>) event.getSession().getProperty(CHANGED_KEYS);
+			if (changedKeys != null) {
+				invalidateKeys(changedKeys);
+				changedKeys.clear();
+			}
+		}
+
+		@Override
+		public void postExecuteQuery(SessionEvent event) {
+			if (event.getQuery() instanceof ModifyAllQuery) {
+				invalidateAll(event.getQuery().getReferenceClass());
+			}
+		}
+
+		private void addKeys(Collection<ObjectChangeSet> objectChangeSets, Session unitOfWork, Set<EntityKey> keys) {
+			for (ObjectChangeSet objectChangeSet : objectChangeSets) {
+				//new entities are in no snapshot
+				if (!objectChangeSet.isNew() && objectChangeSet.getId() != null) {
+					keys.add(new EntityKey(objectChangeSet.getClassType(unitOfWork), objectChangeSet.getId()));
+				}
+			}
+		}
+
+		private void invalidateKeys(Set<EntityKey> keys) {
+			for (EntityKey key : keys) {
+				invalidate(key.entityClass, key.id);
+			}
+		}
+	}
+
+	private static final class Entry {
+
+		final CopySource<?> source;
+		final Set<EntityKey> members;
+		final long created;
+
+		Entry(CopySource<?> source, Set<EntityKey> members, long created) {
+			this.source = source;
+			this.members = members;
+			this.created = created;
+		}
+	}
+
+	private static final class EntityKey {
+
+		final Class<?> entityClass;
+		final Object id;
+
+		EntityKey(Class<?> entityClass, Object id) {
+			this.entityClass = entityClass;
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * entityClass.hashCode() + id.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof EntityKey)) {
+				return false;
+			}
+			EntityKey other = (EntityKey) obj;
+			return entityClass == other.entityClass && id.equals(other.id);
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.indirection.ValueHolder;
+import org.eclipse.persistence.internal.indirection.WeavedObjectBasicIndirectionPolicy;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+import org.eclipse.persistence.mappings.foundation.AbstractDirectMapping;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+/**
+ *
+ * A pool of copy targets: entities that copies are made into, in place, instead of new ones, and that go back to the
+ * pool once the copy is closed (see PooledCopy). Once the pool holds as many targets as the copies in use at the same
+ * time need, copying with a plan allocates nothing:
+ *
+ *      try (PooledCopy<RootEntity> copy = pool.copy(rootEnt, plan)) {
+ *          ...copy.get()...
+ *      }
+ *
+ * A copy fills its targets as CopyPlan.copy fills new entities, with two differences:
+ *      -the value holder of an association is the one the target already has, given its new value, rather than a new one
+ *      -the value holder of an association of the original is read as it is, as the plans always do
+ * So that what the plan does not copy (attributes outside the CopyGroup, attributes the original has not loaded) is
+ * left as in a new entity, every target is reset when it goes back to the pool: its basic attributes are copied from an
+ * entity made up front and never handed out, by a generated copier (see FieldCopiers), its associations are cleared and
+ * its fetch group removed.
+ *
+ * At most "maximumIdle" targets per entity class are kept; the others are left to the garbage collector.
+ *
+ * A pool is not thread-safe: each thread copies with a pool of its own (e.g. held by a ThreadLocal).
+ *
+ */
+public class CopyTargetPool {
+
+	public static final int DEFAULT_MAXIMUM_IDLE = 1024;
+
+	private final CopyPlans plans;
+	private final int maximumIdle;
+	private final Map<Class<?>, Targets> targets = new HashMap<Class<?>, Targets>();
+	private final ArrayDeque<PooledCopy<?>> idleCopies = new ArrayDeque<PooledCopy<?>>();
+
+	public CopyTargetPool(CopyPlans plans) {
+		this(plans, DEFAULT_MAXIMUM_IDLE);
+	}
+
+	public CopyTargetPool(CopyPlans plans, int maximumIdle) {
+		this.plans = plans;
+		this.maximumIdle = maximumIdle;
+	}
+
+	/**
+	 * Copies the given entity with the plan of the given group, into pooled targets; null if the entity is null.
+	 */
+	public <T> PooledCopy<T> copy(T entity, CopyGroup group) {
+		return entity == null ? null : copy(entity, plans.plan(entity.getClass(), group));
+	}
+
+	/**
+	 * Copies the given entity with the given plan, into pooled targets; null if the entity is null.
+	 *
+	 * @throws IllegalArgumentException if the plan is not one of the entity's class
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> PooledCopy<T> copy(T entity, CopyPlan plan) {
+		if (entity == null) {
+			return null;
+		}
+		if (plan.getEntityClass() != entity.getClass()) {
+			throw new IllegalArgumentException("The plan of " + plan.getEntityClass().getName() + " cannot copy a "
+					+ entity.getClass().getName() + ".");
+		}
+		PooledCopy<T> copy = (PooledCopy<T>) idleCopies.poll();
+		if (copy == null) {
+			copy = new PooledCopy<T>(this);
+		}
+		try {
+			copy.fill(plan, entity);
+		} catch (RuntimeException e) {
+			copy.close();
+			throw e;
+		}
+		return copy;
+	}
+
+	/**
+	 * The number of targets of the given class waiting in the pool.
+	 */
+	public int getIdleCount(Class<?> entityClass) {
+		Targets classTargets = targets.get(entityClass);
+		return classTargets == null ? 0 : classTargets.idle.size();
+	}
+
+	Object acquire(ClassDescriptor descriptor) {
+		Targets classTargets = targets.get(descriptor.getJavaClass());
+		if (classTargets == null) {
+			classTargets = new Targets(descriptor);
+			targets.put(descriptor.getJavaClass(), classTargets);
+		}
+		Object target = classTargets.idle.poll();
+		return target != null ? target : descriptor.getObjectBuilder().buildNewInstance();
+	}
+
+	void release(Object target) {
+		Targets classTargets = targets.get(target.getClass());
+		classTargets.reset(target);
+		if (classTargets.idle.size() < maximumIdle) {
+			classTargets.idle.push(target);
+		}
+	}
+
+	void release(PooledCopy<?> copy) {
+		idleCopies.push(copy);
+	}
+
+	//a target filled before has an instantiated ValueHolder already, which only needs the new value; going through the
+	//indirection policy would install a new one, and set the woven attribute reflectively
+	void setReference(ObjectReferenceMapping mapping, Object copy, Object value) {
+		Object holder = mapping.getAttributeValueFromObject(copy);
+		if (holder == null || holder.getClass() != ValueHolder.class) {
+			mapping.getIndirectionPolicy().reset(copy);
+			mapping.setRealAttributeValueInObject(copy, value);
+			return;
+		}
+		((ValueHolder) holder).setValue(value);
+		Field field = targets.get(copy.getClass()).wovenFields.get(mapping);
+		if (field != null) {
+			try {
+				field.set(copy, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("The field " + field + " cannot be accessed.", e);
+			}
+		}
+	}
+
+	/**
+	 * The idle targets of one entity class, and what resets them.
+	 */
+	private final class Targets {
+
+		private final ArrayDeque<Object> idle = new ArrayDeque<Object>();
+		private final Object blank;
+		private final FieldCopier blankCopier;
+		private final AbstractDirectMapping[] directMappings;
+		private final ObjectReferenceMapping[] referenceMappings;
+		//the attributes behind the value holders of woven associations
+		private final Map<DatabaseMapping, Field> wovenFields = new IdentityHashMap<DatabaseMapping, Field>();
+
+		Targets(ClassDescriptor descriptor) {
+			this.blank = descriptor.getObjectBuilder().buildNewInstance();
+			List<AbstractDirectMapping> generated = new ArrayList<AbstractDirectMapping>();
+			List<AbstractDirectMapping> remaining = new ArrayList<AbstractDirectMapping>();
+			List<ObjectReferenceMapping> references = new ArrayList<ObjectReferenceMapping>();
+			for (DatabaseMapping mapping : descriptor.getMappings()) {
+				if (mapping.isDirectToFieldMapping()) {
+					AbstractDirectMapping directMapping = (AbstractDirectMapping) mapping;
+					(FieldCopiers.canGenerate(directMapping) ? generated : remaining).add(directMapping);
+				} else if (mapping.isObjectReferenceMapping()) {
+					ObjectReferenceMapping referenceMapping = (ObjectReferenceMapping) mapping;
+					references.add(referenceMapping);
+					if (referenceMapping.getIndirectionPolicy() instanceof WeavedObjectBasicIndirectionPolicy) {
+						wovenFields.put(mapping, wovenField(descriptor, mapping));
+					}
+				} else {
+					throw new IllegalArgumentException("Copy targets cannot be pooled for the mapping "
+							+ mapping.getAttributeName() + " of " + descriptor.getJavaClass().getName() + " ("
+							+ mapping.getClass().getSimpleName() + ").");
+				}
+			}
+			this.blankCopier = generated.isEmpty() ? null : FieldCopiers.generate(descriptor.getJavaClass(), generated);
+			this.directMappings = remaining.toArray(new AbstractDirectMapping[remaining.size()]);
+			this.referenceMappings = references.toArray(new ObjectReferenceMapping[references.size()]);
+		}
+
+		void reset(Object target) {
+			if (target instanceof FetchGroupTracker) {
+				((FetchGroupTracker) target)._persistence_setFetchGroup(null);
+			}
+			if (blankCopier != null) {
+				blankCopier.copy(blank, target);
+			}
+			for (AbstractDirectMapping mapping : directMappings) {
+				mapping.setAttributeValueInObject(target, mapping.getAttributeValueFromObject(blank));
+			}
+			for (ObjectReferenceMapping mapping : referenceMappings) {
+				setReference(mapping, target, null);
+			}
+		}
+
+		private Field wovenField(ClassDescriptor descriptor, DatabaseMapping mapping) {
+			try {
+				Field field = descriptor.getJavaClass().getDeclaredField(mapping.getAttributeName());
+				field.setAccessible(true);
+				return field;
+			} catch (NoSuchFieldException e) {
+				throw new IllegalStateException("The woven attribute " + mapping.getAttributeName() + " of "
+						+ descriptor.getJavaClass().getName() + " cannot be found.", e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+/**
+ *
+ * The order in which a CopyPlan walks the graph it copies (see CopyPlan.copy(Object, Map, CopyTraversal)). Either way
+ * the walk is iterative, with the entities still to be walked kept on the heap, so graphs of any depth can be copied.
+ *
+ */
+public enum CopyTraversal {
+
+	/**
+	 * The associations of an entity are walked to the end, one after the other, before the next association of the
+	 * entity that led to it: the order of a recursive copy, and of ObjectBuilder.copyObject. The work held is the path
+	 * from the root to the current entity, less the entities that have no association left to walk - a chain holds one.
+	 */
+	DEPTH_FIRST,
+
+	/**
+	 * The entities are walked level by level: all the associations of an entity are copied before those of its targets.
+	 * The work held is the entities of the current and next levels.
+	 */
+	BREADTH_FIRST
+
+}
@@ -0,0 +1,168 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ *
+ * The state of one copy with a CopyPlan: the original-to-copy map and the entities whose associations are still to be
+ * copied, with the position of the next one, in the order of their copy. A depth-first copy works at the end of the
+ * list, like a call stack; a breadth-first copy at its start, like a queue.
+ *
+ * The work of a thread is reused from one copy to the next, as the maps of CopyIdentityMap.acquire are.
+ *
+ */
+final class CopyWork {
+
+	//the arrays of a thread's work are dropped, rather than kept, beyond this many entities
+	private static final int MAXIMUM_REUSED_CAPACITY = 1 << 16;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final ThreadLocal<CopyWork> threadWork = new ThreadLocal<CopyWork>();
+
+	Map<Object, Object> copies;
+	boolean lazily;
+	PooledCopy<?> targets;
+	//copies for insert (see CopyPlan.copyForInsert), with new ids from the blocks, if any
+	boolean forInsert;
+	IdBlocks ids;
+
+	private CopyPlan[] plans;
+	private Object[] originals;
+	private Object[] entityCopies;
+	private int[] nextReferences;
+	private int head;
+	private int tail;
+	private boolean acquired;
+
+	private CopyWork() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Returns the empty work of the current thread, or new work if the thread's is in use; it must be handed back with
+	 * {@link #release()}.
+	 */
+	static CopyWork acquire(Map<Object, Object> copies, boolean lazily, PooledCopy<?> targets) {
+		CopyWork work = threadWork.get();
+		if (work == null || work.acquired) {
+			work = new CopyWork();
+			if (threadWork.get() == null) {
+				threadWork.set(work);
+			}
+		}
+		work.acquired = true;
+		work.copies = copies;
+		work.lazily = lazily;
+		work.targets = targets;
+		return work;
+	}
+
+	void release() {
+		//what a failed copy left
+		while (!isEmpty()) {
+			removeLast();
+		}
+		copies = null;
+		targets = null;
+		forInsert = false;
+		ids = null;
+		acquired = false;
+		if (plans.length > MAXIMUM_REUSED_CAPACITY) {
+			allocate(INITIAL_CAPACITY);
+		}
+	}
+
+	private void allocate(int capacity) {
+		plans = new CopyPlan[capacity];
+		originals = new Object[capacity];
+		entityCopies = new Object[capacity];
+		nextReferences = new int[capacity];
+	}
+
+	void add(CopyPlan plan, Object original, Object copy) {
+		if (tail == plans.length) {
+			if (head > 0) {
+				compact();
+			} else {
+				plans = Arrays.copyOf(plans, 2 * tail);
+				originals = Arrays.copyOf(originals, 2 * tail);
+				entityCopies = Arrays.copyOf(entityCopies, 2 * tail);
+				nextReferences = Arrays.copyOf(nextReferences, 2 * tail);
+			}
+		}
+		plans[tail] = plan;
+		originals[tail] = original;
+		entityCopies[tail] = copy;
+		nextReferences[tail] = 0;
+		tail++;
+	}
+
+	private void compact() {
+		int count = tail - head;
+		System.arraycopy(plans, head, plans, 0, count);
+		System.arraycopy(originals, head, originals, 0, count);
+		System.arraycopy(entityCopies, head, entityCopies, 0, count);
+		System.arraycopy(nextReferences, head, nextReferences, 0, count);
+		Arrays.fill(plans, count, tail, null);
+		Arrays.fill(originals, count, tail, null);
+		Arrays.fill(entityCopies, count, tail, null);
+		head = 0;
+		tail = count;
+	}
+
+	boolean isEmpty() {
+		return head == tail;
+	}
+
+	int first() {
+		return head;
+	}
+
+	int last() {
+		return tail - 1;
+	}
+
+	CopyPlan plan(int item) {
+		return plans[item];
+	}
+
+	Object original(int item) {
+		return originals[item];
+	}
+
+	Object copy(int item) {
+		return entityCopies[item];
+	}
+
+	int nextReference(int item) {
+		return nextReferences[item];
+	}
+
+	void setNextReference(int item, int index) {
+		nextReferences[item] = index;
+	}
+
+	void removeFirst() {
+		clear(head++);
+		if (head == tail) {
+			head = 0;
+			tail = 0;
+		}
+	}
+
+	void removeLast() {
+		clear(--tail);
+		if (head == tail) {
+			head = 0;
+			tail = 0;
+		}
+	}
+
+	private void clear(int item) {
+		plans[item] = null;
+		originals[item] = null;
+		entityCopies[item] = null;
+	}
+
+}
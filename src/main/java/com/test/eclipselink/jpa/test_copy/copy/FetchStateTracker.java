@@ -0,0 +1,193 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ForeignReferenceMapping;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+
+/**
+ *
+ * Tells whether the attributes of entities are loaded, as EntityManagerFactoryImpl.isLoaded does, in constant time and
+ * without allocating.
+ *
+ * The fetch state of an entity is a bitset of its loaded attributes, indexed by the position of their mappings in the
+ * descriptor. EclipseLink already keeps the entity's part of it current: the woven _persistence_fetchGroup field, which
+ * the FetchGroupManager sets whenever a query or a fetch group load changes what the entity holds, and which points to
+ * one of the few EntityFetchGroups the manager shares between all the entities with the same attributes. The tracker
+ * turns each of those groups into a bitset once, so that a check is:
+ *      -one lookup of the class layout and one of the bitset of the entity's fetch group (none if it has no fetch group,
+ *      i.e. is fully fetched)
+ *      -for a lazy association, a look at its value holder, which is loaded once it is instantiated
+ *
+ * Resolving an attribute name is a hash lookup; hot paths should resolve the position once, with
+ * {@link #position(Class, String)}, and check with {@link #isLoaded(Object, int)}.
+ *
+ */
+public class FetchStateTracker {
+
+	//the bitsets of fetch groups beyond this many, per class, are not kept; those groups are asked directly
+	private static final int MAXIMUM_FETCH_GROUPS = 1024;
+
+	private final AbstractSession session;
+	private final ConcurrentMap<Class<?>, Layout> layouts = new ConcurrentHashMap<Class<?>, Layout>();
+
+	public FetchStateTracker(EntityManagerFactory emf) {
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+	}
+
+	/**
+	 * Returns the position of the given attribute in the fetch state of the given class, or -1 if it is not mapped.
+	 */
+	public int position(Class<?> entityClass, String attributeName) {
+		Integer position = layout(entityClass).positions.get(attributeName);
+		return position == null ? -1 : position;
+	}
+
+	/**
+	 * Whether the given attribute of the given entity is loaded.
+	 *
+	 * @throws IllegalArgumentException if the entity's class is not an entity of the persistence unit, or does not map
+	 *             the attribute
+	 */
+	public boolean isLoaded(Object entity, String attributeName) {
+		Layout layout = layout(entity.getClass());
+		Integer position = layout.positions.get(attributeName);
+		if (position == null) {
+			throw new IllegalArgumentException(
+					"The attribute '" + attributeName + "' is not mapped by " + entity.getClass().getName() + ".");
+		}
+		return layout.isLoaded(entity, position);
+	}
+
+	/**
+	 * Whether the attribute at the given position (see {@link #position(Class, String)}) of the given entity is loaded.
+	 */
+	public boolean isLoaded(Object entity, int position) {
+		return layout(entity.getClass()).isLoaded(entity, position);
+	}
+
+	/**
+	 * The loaded attributes of the given entity, as a bitset of their positions (see {@link #position(Class, String)}),
+	 * for walking all of them at once.
+	 *
+	 * @throws IllegalArgumentException if the entity's class maps more than 64 attributes
+	 */
+	public long loadedAttributes(Object entity) {
+		return layout(entity.getClass()).loadedAttributes(entity);
+	}
+
+	private Layout layout(Class<?> entityClass) {
+		Layout layout = layouts.get(entityClass);
+		if (layout == null) {
+			ClassDescriptor descriptor = session.getDescriptor(entityClass);
+			if (descriptor == null) {
+				throw new IllegalArgumentException(entityClass.getName() + " is not an entity of the persistence unit.");
+			}
+			layout = new Layout(descriptor);
+			layouts.put(entityClass, layout);
+		}
+		return layout;
+	}
+
+	private static final class Layout {
+
+		private final DatabaseMapping[] mappings;
+		private final Map<String, Integer> positions;
+		private final long[] lazyReferences;
+		private final ConcurrentMap<FetchGroup, long[]> fetched = new ConcurrentHashMap<FetchGroup, long[]>();
+
+		Layout(ClassDescriptor descriptor) {
+			List<DatabaseMapping> descriptorMappings = descriptor.getMappings();
+			this.mappings = descriptorMappings.toArray(new DatabaseMapping[descriptorMappings.size()]);
+			this.positions = new HashMap<String, Integer>();
+			this.lazyReferences = new long[(mappings.length + 63) >>> 6];
+			for (int i = 0; i < mappings.length; i++) {
+				positions.put(mappings[i].getAttributeName(), i);
+				if (mappings[i].isForeignReferenceMapping() && ((ForeignReferenceMapping) mappings[i]).isLazy()) {
+					lazyReferences[i >>> 6] |= 1L << i;
+				}
+			}
+		}
+
+		boolean isLoaded(Object entity, int position) {
+			if (entity instanceof FetchGroupTracker) {
+				FetchGroup fetchGroup = ((FetchGroupTracker) entity)._persistence_getFetchGroup();
+				if (fetchGroup != null && !isFetched(fetchGroup, position)) {
+					return false;
+				}
+			}
+			if ((lazyReferences[position >>> 6] & (1L << position)) == 0) {
+				return true;
+			}
+			ForeignReferenceMapping mapping = (ForeignReferenceMapping) mappings[position];
+			return mapping.getIndirectionPolicy().objectIsInstantiated(mapping.getAttributeValueFromObject(entity));
+		}
+
+		long loadedAttributes(Object entity) {
+			if (mappings.length > 64) {
+				throw new IllegalArgumentException(
+						"The attributes of " + entity.getClass().getName() + " do not fit in a long.");
+			}
+			long loaded = mappings.length == 64 ? -1L : (1L << mappings.length) - 1;
+			if (entity instanceof FetchGroupTracker) {
+				FetchGroup fetchGroup = ((FetchGroupTracker) entity)._persistence_getFetchGroup();
+				if (fetchGroup != null) {
+					loaded = fetchedBits(fetchGroup)[0];
+				}
+			}
+			for (long lazy = loaded & lazyReferences[0]; lazy != 0; lazy &= lazy - 1) {
+				int position = Long.numberOfTrailingZeros(lazy);
+				ForeignReferenceMapping mapping = (ForeignReferenceMapping) mappings[position];
+				if (!mapping.getIndirectionPolicy().objectIsInstantiated(mapping.getAttributeValueFromObject(entity))) {
+					loaded &= ~(1L << position);
+				}
+			}
+			return loaded;
+		}
+
+		private boolean isFetched(FetchGroup fetchGroup, int position) {
+			long[] bits = fetched.get(fetchGroup);
+			if (bits == null) {
+				if (fetched.size() >= MAXIMUM_FETCH_GROUPS) {
+					return fetchGroup.containsAttributeInternal(mappings[position].getAttributeName());
+				}
+				bits = bits(fetchGroup);
+				fetched.put(fetchGroup, bits);
+			}
+			return (bits[position >>> 6] & (1L << position)) != 0;
+		}
+
+		private long[] fetchedBits(FetchGroup fetchGroup) {
+			long[] bits = fetched.get(fetchGroup);
+			if (bits == null) {
+				bits = bits(fetchGroup);
+				if (fetched.size() < MAXIMUM_FETCH_GROUPS) {
+					fetched.put(fetchGroup, bits);
+				}
+			}
+			return bits;
+		}
+
+		private long[] bits(FetchGroup fetchGroup) {
+			long[] bits = new long[lazyReferences.length];
+			for (int i = 0; i < mappings.length; i++) {
+				if (fetchGroup.containsAttributeInternal(mappings[i].getAttributeName())) {
+					bits[i >>> 6] |= 1L << i;
+				}
+			}
+			return bits;
+		}
+	}
+
+}
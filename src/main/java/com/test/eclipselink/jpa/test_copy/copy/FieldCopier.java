@@ -0,0 +1,16 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+/**
+ *
+ * Copies a fixed set of basic attributes from one entity to another of the same class; see {@link FieldCopiers} for the
+ * generated implementations.
+ *
+ */
+public interface FieldCopier {
+
+	/**
+	 * Copies the attributes of the copier that are fetched in the original into the copy.
+	 */
+	void copy(Object original, Object copy);
+
+}
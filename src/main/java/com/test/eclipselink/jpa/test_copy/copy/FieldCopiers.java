@@ -0,0 +1,231 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.persistence.internal.descriptors.InstanceVariableAttributeAccessor;
+import org.eclipse.persistence.internal.libraries.asm.ClassWriter;
+import org.eclipse.persistence.internal.libraries.asm.Label;
+import org.eclipse.persistence.internal.libraries.asm.MethodVisitor;
+import org.eclipse.persistence.internal.libraries.asm.Opcodes;
+import org.eclipse.persistence.internal.libraries.asm.Type;
+import org.eclipse.persistence.mappings.foundation.AbstractDirectMapping;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+
+/**
+ *
+ * Generates a FieldCopier class per entity class and set of basic attributes, with the ASM that comes with Eclipselink.
+ *
+ * A plan copies a basic attribute with AbstractDirectMapping.buildCloneValue: the attribute accessor reads the field of
+ * the original (through the woven _persistence_get(String), which compares the name with every attribute of the class,
+ * or through reflection), and writes it into the copy the same way. A generated copier does it with one
+ * getfield/putfield pair per attribute:
+ *      -the fields are private, so the generated class reaches them through MethodHandles held in its static final fields,
+ *          which the JIT treats as constants and inlines down to the field access itself
+ *      -the woven _persistence_get_x/_persistence_set_x accessors are not used, since they check the fetch group and
+ *          fire change events on every call
+ *
+ * The loaded state is honoured: if the original is a FetchGroupTracker with a fetch group, an attribute that is not in
+ * it is not copied (which is what FetchGroupManager.isAttributeFetched would tell), so the copy keeps its default value.
+ *
+ * The generated code for RootEntity with "data1" and "data2" reads as:
+ *
+ *      public void copy(Object original, Object copy) {
+ *          FetchGroup fetchGroup = ((FetchGroupTracker) original)._persistence_getFetchGroup();
+ *          if (fetchGroup == null || fetchGroup.containsAttributeInternal("data1")) {
+ *              SET_0.invokeExact((RootEntity) copy, (String) GET_0.invokeExact((RootEntity) original));
+ *          }
+ *          if (fetchGroup == null || fetchGroup.containsAttributeInternal("data2")) {
+ *              SET_1.invokeExact((RootEntity) copy, (String) GET_1.invokeExact((RootEntity) original));
+ *          }
+ *      }
+ *
+ * Only mappings whose value can be shared between the original and the copy (not mutable) and that are backed by a
+ * field of a public class can be generated, see {@link #canGenerate(AbstractDirectMapping)}; the others are left to
+ * buildCloneValue.
+ *
+ * Every copier class gets a class loader of its own, so it can be collected together with the plan holding it.
+ *
+ */
+public final class FieldCopiers {
+
+	private static final String COPIER_NAME = Type.getInternalName(FieldCopier.class);
+	private static final String HANDLE_NAME = Type.getInternalName(MethodHandle.class);
+	private static final String HANDLE_DESCRIPTOR = Type.getDescriptor(MethodHandle.class);
+	private static final String FETCH_GROUP_NAME = Type.getInternalName(FetchGroup.class);
+	private static final String TRACKER_NAME = Type.getInternalName(FetchGroupTracker.class);
+
+	private static final AtomicInteger classCount = new AtomicInteger();
+
+	private FieldCopiers() {
+	}
+
+	/**
+	 * Whether the attribute of the given mapping can be copied by a generated copier.
+	 */
+	public static boolean canGenerate(AbstractDirectMapping mapping) {
+		if (mapping.isMutable() || !mapping.getAttributeAccessor().isInstanceVariableAttributeAccessor()) {
+			return false;
+		}
+		Field field = ((InstanceVariableAttributeAccessor) mapping.getAttributeAccessor()).getAttributeField();
+		return field != null && !Modifier.isStatic(field.getModifiers())
+				&& Modifier.isPublic(mapping.getDescriptor().getJavaClass().getModifiers())
+				&& (field.getType().isPrimitive() || Modifier.isPublic(field.getType().getModifiers()));
+	}
+
+	/**
+	 * Generates a copier for the given mappings of the given entity class; all of them must pass
+	 * {@link #canGenerate(AbstractDirectMapping)}.
+	 */
+	public static FieldCopier generate(Class<?> entityClass, List<AbstractDirectMapping> mappings) {
+		List<Field> fields = new ArrayList<Field>(mappings.size());
+		MethodHandle[] handles = new MethodHandle[mappings.size() * 2];
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		for (int i = 0; i < mappings.size(); i++) {
+			AbstractDirectMapping mapping = mappings.get(i);
+			if (!canGenerate(mapping)) {
+				throw new IllegalArgumentException("No field copier can be generated for the mapping " + mapping.getAttributeName()
+						+ " of " + entityClass.getName() + ".");
+			}
+			Field field = ((InstanceVariableAttributeAccessor) mapping.getAttributeAccessor()).getAttributeField();
+			field.setAccessible(true);
+			fields.add(field);
+			try {
+				handles[i * 2] = lookup.unreflectGetter(field);
+				handles[i * 2 + 1] = lookup.unreflectSetter(field);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("The field " + field + " cannot be accessed.", e);
+			}
+		}
+
+		String className = entityClass.getName() + "$FieldCopier" + classCount.incrementAndGet();
+		CopierClassLoader loader = new CopierClassLoader(entityClass.getClassLoader(), handles);
+		byte[] bytes = generateClass(className.replace('.', '/'), entityClass, mappings, fields);
+		try {
+			return (FieldCopier) loader.define(className, bytes).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("The field copier of " + entityClass.getName() + " cannot be instantiated.", e);
+		}
+	}
+
+	/**
+	 * Hands the generated class its MethodHandles (getter and setter of every attribute, in order) when it is initialized;
+	 * not meant to be called by anything else.
+	 */
+	public static MethodHandle[] handles(Class<?> copierClass) {
+		if (!(copierClass.getClassLoader() instanceof CopierClassLoader)) {
+			throw new IllegalArgumentException(copierClass.getName() + " is not a generated field copier.");
+		}
+		return ((CopierClassLoader) copierClass.getClassLoader()).handles.clone();
+	}
+
+	private static byte[] generateClass(String className, Class<?> entityClass, List<AbstractDirectMapping> mappings,
+			List<Field> fields) {
+		String entityName = Type.getInternalName(entityClass);
+		boolean tracked = FetchGroupTracker.class.isAssignableFrom(entityClass);
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+		cw.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, "java/lang/Object",
+				new String[] { COPIER_NAME });
+		for (int i = 0; i < fields.size(); i++) {
+			cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "GET_" + i, HANDLE_DESCRIPTOR, null, null)
+					.visitEnd();
+			cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "SET_" + i, HANDLE_DESCRIPTOR, null, null)
+					.visitEnd();
+		}
+
+		//static { MethodHandle[] handles = FieldCopiers.handles(<class>.class); GET_0 = handles[0]; SET_0 = handles[1]; ... }
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+		mv.visitCode();
+		mv.visitLdcInsn(Type.getObjectType(className));
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(FieldCopiers.class), "handles",
+				"(Ljava/lang/Class;)[" + HANDLE_DESCRIPTOR);
+		mv.visitVarInsn(Opcodes.ASTORE, 0);
+		for (int i = 0; i < fields.size() * 2; i++) {
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitLdcInsn(Integer.valueOf(i));
+			mv.visitInsn(Opcodes.AALOAD);
+			mv.visitFieldInsn(Opcodes.PUTSTATIC, className, (i % 2 == 0 ? "GET_" : "SET_") + i / 2, HANDLE_DESCRIPTOR);
+		}
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		//locals: 0 this, 1 original, 2 copy, 3 fetch group
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "copy", "(Ljava/lang/Object;Ljava/lang/Object;)V", null, null);
+		mv.visitCode();
+		if (tracked) {
+			mv.visitVarInsn(Opcodes.ALOAD, 1);
+			mv.visitTypeInsn(Opcodes.CHECKCAST, TRACKER_NAME);
+			mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, TRACKER_NAME, "_persistence_getFetchGroup", "()L" + FETCH_GROUP_NAME + ";");
+			mv.visitVarInsn(Opcodes.ASTORE, 3);
+		}
+		for (int i = 0; i < fields.size(); i++) {
+			String fieldDescriptor = Type.getDescriptor(fields.get(i).getType());
+			Label copyField = new Label();
+			Label skipField = new Label();
+			if (tracked) {
+				mv.visitVarInsn(Opcodes.ALOAD, 3);
+				mv.visitJumpInsn(Opcodes.IFNULL, copyField);
+				mv.visitVarInsn(Opcodes.ALOAD, 3);
+				mv.visitLdcInsn(mappings.get(i).getAttributeName());
+				mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, FETCH_GROUP_NAME, "containsAttributeInternal", "(Ljava/lang/String;)Z");
+				mv.visitJumpInsn(Opcodes.IFEQ, skipField);
+			}
+			mv.visitLabel(copyField);
+			mv.visitFieldInsn(Opcodes.GETSTATIC, className, "SET_" + i, HANDLE_DESCRIPTOR);
+			mv.visitVarInsn(Opcodes.ALOAD, 2);
+			mv.visitTypeInsn(Opcodes.CHECKCAST, entityName);
+			mv.visitFieldInsn(Opcodes.GETSTATIC, className, "GET_" + i, HANDLE_DESCRIPTOR);
+			mv.visitVarInsn(Opcodes.ALOAD, 1);
+			mv.visitTypeInsn(Opcodes.CHECKCAST, entityName);
+			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, HANDLE_NAME, "invokeExact", "(L" + entityName + ";)" + fieldDescriptor);
+			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, HANDLE_NAME, "invokeExact", "(L" + entityName + ";" + fieldDescriptor + ")V");
+			mv.visitLabel(skipField);
+		}
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	/**
+	 * Loads one copier class; classes the entity's loader does not know (FieldCopier itself, in a container) are looked up
+	 * where this class was loaded from.
+	 */
+	private static final class CopierClassLoader extends ClassLoader {
+
+		private final MethodHandle[] handles;
+
+		CopierClassLoader(ClassLoader parent, MethodHandle[] handles) {
+			super(parent);
+			this.handles = handles;
+		}
+
+		Class<?> define(String className, byte[] bytes) {
+			return defineClass(className, bytes, 0, bytes.length);
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			return Class.forName(name, false, FieldCopiers.class.getClassLoader());
+		}
+	}
+
+}
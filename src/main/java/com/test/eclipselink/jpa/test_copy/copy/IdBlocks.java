@@ -0,0 +1,153 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.exceptions.DatabaseException;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.foundation.AbstractDirectMapping;
+import org.eclipse.persistence.sequencing.NativeSequence;
+import org.eclipse.persistence.tools.schemaframework.SchemaManager;
+import org.eclipse.persistence.tools.schemaframework.SequenceObjectDefinition;
+
+/**
+ *
+ * Hands out new primary keys for copies to insert (see CopyPlan.copyForInsert), reserved from the database in blocks.
+ *
+ * The entities of this project assign their own ids, so they have no Eclipselink sequencing to draw from. Each entity
+ * class gets a database sequence of its own instead, "<table>_SEQ", used the way Eclipselink uses a NativeSequence with
+ * preallocation: the sequence is incremented by the block size, and one call reserves a whole block. A sequence that does
+ * not exist yet is created, starting after the largest id of the table.
+ *
+ * Only entities with a single basic primary key attribute can be given ids. Ids are handed out under a lock per class,
+ * so a single instance can be shared between threads.
+ *
+ */
+public class IdBlocks {
+
+	public static final int DEFAULT_BLOCK_SIZE = 500;
+
+	private final EntityManagerFactory emf;
+	private final AbstractSession session;
+	private final int blockSize;
+	private final ConcurrentMap<ClassDescriptor, Block> blocks = new ConcurrentHashMap<ClassDescriptor, Block>();
+
+	public IdBlocks(EntityManagerFactory emf) {
+		this(emf, DEFAULT_BLOCK_SIZE);
+	}
+
+	public IdBlocks(EntityManagerFactory emf, int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("The block size must be positive: " + blockSize);
+		}
+		this.emf = emf;
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.blockSize = blockSize;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Returns a new primary key for the given entity class, reserving a block of them first if none is left.
+	 */
+	public Object nextId(Class<?> entityClass) {
+		ClassDescriptor descriptor = session.getDescriptor(entityClass);
+		if (descriptor == null) {
+			throw new IllegalArgumentException("The class " + entityClass.getName() + " is not an entity of this persistence unit.");
+		}
+		return nextId(descriptor);
+	}
+
+	Object nextId(ClassDescriptor descriptor) {
+		return block(descriptor).next();
+	}
+
+	private Block block(ClassDescriptor descriptor) {
+		Block block = blocks.get(descriptor);
+		if (block == null) {
+			Block created = new Block(descriptor);
+			block = blocks.putIfAbsent(descriptor, created);
+			if (block == null) {
+				block = created;
+			}
+		}
+		return block;
+	}
+
+	private final class Block {
+
+		private final AbstractDirectMapping keyMapping;
+		private final NativeSequence sequence;
+		private long next;
+		private long last = -1;
+
+		Block(ClassDescriptor descriptor) {
+			List<DatabaseMapping> keyMappings = descriptor.getObjectBuilder().getPrimaryKeyMappings();
+			if (keyMappings.size() != 1 || !keyMappings.get(0).isDirectToFieldMapping()) {
+				throw new IllegalArgumentException("Ids can only be handed out for a single basic primary key attribute: "
+						+ descriptor.getJavaClass().getName());
+			}
+			keyMapping = (AbstractDirectMapping) keyMappings.get(0);
+			sequence = new NativeSequence(descriptor.getTableName() + "_SEQ", blockSize, false);
+			sequence.onConnect(session.getDatasourcePlatform());
+		}
+
+		synchronized Object next() {
+			if (next > last) {
+				reserve();
+			}
+			long id = next++;
+			Class<?> keyClass = keyMapping.getAttributeClassification();
+			return keyClass == Long.class ? Long.valueOf(id) : session.getDatasourcePlatform().convertObject(id, keyClass);
+		}
+
+		//the sequence returns the last id of the block it reserved
+		private void reserve() {
+			Number blockEnd;
+			try {
+				blockEnd = select();
+			} catch (DatabaseException e) {
+				blockEnd = createAndSelect();
+			}
+			last = blockEnd.longValue();
+			next = last - blockSize + 1;
+		}
+
+		private Number select() {
+			return (Number) sequence.getGeneratedVector(null, session).lastElement();
+		}
+
+		private Number createAndSelect() {
+			EntityManager em = emf.createEntityManager();
+			Number maximum;
+			try {
+				maximum = (Number) em.createQuery("SELECT MAX(e." + keyMapping.getAttributeName() + ") FROM "
+						+ keyMapping.getDescriptor().getAlias() + " e").getSingleResult();
+			} finally {
+				em.close();
+			}
+			sequence.setInitialValue(maximum == null ? 1 : (int) (maximum.longValue() + 1));
+			try {
+				new SchemaManager(JpaHelper.getServerSession(emf)).createObject(new SequenceObjectDefinition(sequence));
+			} catch (DatabaseException e) {
+				//created in the meantime, by another persistence unit on the same database, or not at all
+				try {
+					return select();
+				} catch (DatabaseException notCreated) {
+					throw e;
+				}
+			}
+			return select();
+		}
+	}
+
+}
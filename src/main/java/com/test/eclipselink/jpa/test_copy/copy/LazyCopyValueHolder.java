@@ -0,0 +1,76 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.Map;
+
+import org.eclipse.persistence.indirection.ValueHolder;
+
+/**
+ *
+ * The value holder of an association of a lazy copy (see CopyPlan.copyLazily), which copies the association of the
+ * original the first time it is read.
+ *
+ * It takes the place of the one the copy would get from JpaEntityManager.copy, in the woven _persistence_x_vh field, so
+ * the copy is an ordinary instance of the entity class: its getter asks the holder for its value and the association is
+ * copied then, with the plan and the original-to-copy map of the copy holding it. Back-references thus lead to copies
+ * already made: "association1.circularRef" of a lazy copy of a root is that copy.
+ *
+ * Until it is read, the holder keeps the original and the map: the original must still be able to load the association
+ * then, if it has not already, and the copy gets the association the original has at that time, not at the time of the
+ * copy. Setting the association does not spare the copying: the woven setter reads the previous value first.
+ *
+ * Like the copies themselves, a holder is not meant to be shared between threads. Serializing it copies the association
+ * first.
+ *
+ */
+final class LazyCopyValueHolder extends ValueHolder {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient CopyPlan plan;
+	private transient int index;
+	private transient Object original;
+	private transient Map<Object, Object> copies;
+
+	LazyCopyValueHolder(CopyPlan plan, int index, Object original, Map<Object, Object> copies) {
+		this.plan = plan;
+		this.index = index;
+		this.original = original;
+		this.copies = copies;
+	}
+
+	@Override
+	public Object getValue() {
+		if (original != null) {
+			value = plan.copyLazyReference(index, original, copies);
+			release();
+		}
+		return value;
+	}
+
+	@Override
+	public void setValue(Object value) {
+		this.value = value;
+		release();
+	}
+
+	@Override
+	public boolean isInstantiated() {
+		return original == null;
+	}
+
+	private void release() {
+		plan = null;
+		original = null;
+		copies = null;
+	}
+
+	private Object writeReplace() {
+		return new ValueHolder(getValue());
+	}
+
+	@Override
+	public String toString() {
+		return isInstantiated() ? super.toString() : "{" + getClass().getSimpleName() + ": not instantiated}";
+	}
+
+}
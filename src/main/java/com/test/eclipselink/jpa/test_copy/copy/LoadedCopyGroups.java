@@ -0,0 +1,93 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+/**
+ *
+ * Builds CopyGroups out of what is already loaded in an entity graph, so that copying never runs a query.
+ *
+ * As TestCopyEntities shows, JpaEntityManager.copy initializes whatever the CopyGroup reaches that was not fetched yet
+ * (CG_from_ENTITY_FG, CASC_ALL_EMPTY_CG__NO_FG) - and the original entities get initialized along the way. A CASCADE_TREE
+ * group that only names loaded attributes avoids both: nothing is left for the copy to initialize.
+ *
+ * The group is built by walking the graph:
+ *      -a basic attribute is added if it is fetched, as reported by EntityManagerFactoryImpl.isLoaded (FetchGroupTracker)
+ *      -an association is added if it is instantiated, with a nested group built from the associated entity
+ *      -an entity reached a second time (e.g. "association1.circularRef" pointing back to the root) is added with a group
+ *          holding only its primary key; the copy engine then hands back the copy it already made, keeping back-references
+ *
+ * Every group also names the primary key, which keeps it from being empty - an empty CASCADE_TREE group means
+ * "copy all attributes", which is exactly the initialization this class is meant to avoid.
+ *
+ */
+public final class LoadedCopyGroups {
+
+	private LoadedCopyGroups() {
+	}
+
+	/**
+	 * Copies the loaded state of the given entity graph; unloaded attributes and associations are left unfetched in the copy.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T copy(EntityManager em, T entity) {
+		JpaEntityManager jem = (JpaEntityManager) em;
+		return (T) jem.copy(entity, of(em, entity));
+	}
+
+	/**
+	 * Returns a CASCADE_TREE CopyGroup naming exactly what is loaded in the graph of the given entity.
+	 */
+	public static CopyGroup of(EntityManager em, Object entity) {
+		AbstractSession session = (AbstractSession) ((JpaEntityManager) em).getActiveSession();
+		CopyGroup group = new CopyGroup();
+		fillGroup(group, entity, session, new IdentityHashMap<Object, Boolean>());
+		return group;
+	}
+
+	//nested groups are attached before they are filled: attaching one shares the parent's copies (the identity map of
+	//the copy) with it, but not with the groups nested in it any further
+	private static void fillGroup(CopyGroup group, Object entity, AbstractSession session, Map<Object, Boolean> visited) {
+		ClassDescriptor descriptor = session.getDescriptor(entity);
+		addPrimaryKey(group, descriptor);
+		if (visited.put(entity, Boolean.TRUE) != null) {
+			return;
+		}
+		for (DatabaseMapping mapping : descriptor.getMappings()) {
+			String name = mapping.getAttributeName();
+			if (mapping.isPrimaryKeyMapping() || !Boolean.TRUE.equals(EntityManagerFactoryImpl.isLoaded(entity, name, session))) {
+				continue;
+			}
+			if (mapping.isForeignReferenceMapping() && mapping.getReferenceDescriptor() != null) {
+				//instantiated, so reading the real value does not trigger the value holder
+				Object target = mapping.getRealAttributeValueFromObject(entity, session);
+				if (target == null) {
+					group.addAttribute(name);
+				} else if (!mapping.isCollectionMapping()) {
+					//collections would need one group for all of their members; none of the test entities have one
+					CopyGroup targetGroup = new CopyGroup();
+					group.addAttribute(name, targetGroup);
+					fillGroup(targetGroup, target, session, visited);
+				}
+			} else {
+				group.addAttribute(name);
+			}
+		}
+	}
+
+	private static void addPrimaryKey(CopyGroup group, ClassDescriptor descriptor) {
+		for (DatabaseMapping mapping : descriptor.getObjectBuilder().getPrimaryKeyMappings()) {
+			group.addAttribute(mapping.getAttributeName());
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+/**
+ *
+ * Captures what is loaded in an entity graph as a nested FetchGroup.
+ *
+ * As CG_from_ENTITY_FG in TestCopyEntities shows, the fetch group of an entity (_persistence_getFetchGroup) only knows
+ * the entity's own attributes: "association.lazyData3" is in the FetchGroup the root was queried with, but not in the
+ * root's. Copying with it initializes the association's default attributes. The captured group is the one the graph was
+ * really loaded with - e.g. "data2", "association.data1" and "association.lazyData3" - so a copy made with
+ * {@link #copyGroup(Object)} runs no query.
+ *
+ * The graph is walked as LoadedCopyGroups walks it, checking fetch states with a FetchStateTracker:
+ *      -a basic attribute is added if it is loaded
+ *      -an association is added if it is instantiated, with a nested group captured from the associated entity
+ *      -an entity reached a second time is added with a group holding only its primary key
+ *
+ * Captured groups are cached per entity class: graphs loaded the same way get the same FetchGroup instance, built once.
+ * They are shared, and must not be modified.
+ *
+ */
+public class LoadedFetchGroups {
+
+	//the groups beyond this many, per class, are built every time
+	private static final int MAXIMUM_GROUPS = 256;
+
+	private final AbstractSession session;
+	private final FetchStateTracker fetchStates;
+	private final ConcurrentMap<Class<?>, Node> nodes = new ConcurrentHashMap<Class<?>, Node>();
+
+	public LoadedFetchGroups(EntityManagerFactory emf) {
+		this(emf, new FetchStateTracker(emf));
+	}
+
+	public LoadedFetchGroups(EntityManagerFactory emf, FetchStateTracker fetchStates) {
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.fetchStates = fetchStates;
+	}
+
+	/**
+	 * Returns a FetchGroup naming exactly what is loaded in the graph of the given entity.
+	 */
+	public FetchGroup capture(Object entity) {
+		return capture(entity, new IdentityHashMap<Object, Boolean>());
+	}
+
+	/**
+	 * Returns a CASCADE_TREE CopyGroup naming exactly what is loaded in the graph of the given entity.
+	 */
+	public CopyGroup copyGroup(Object entity) {
+		return capture(entity).toCopyGroup();
+	}
+
+	private FetchGroup capture(Object entity, Map<Object, Boolean> visited) {
+		Node node = node(entity.getClass());
+		if (visited.put(entity, Boolean.TRUE) != null) {
+			return node.primaryKeyGroup;
+		}
+		long[] loaded = new long[(node.mappings.length + 63) >>> 6];
+		FetchGroup[] targets = new FetchGroup[node.mappings.length];
+		for (int i = 0; i < node.mappings.length; i++) {
+			if (!node.isPrimaryKey(i) && fetchStates.isLoaded(entity, i)) {
+				loaded[i >>> 6] |= 1L << i;
+				DatabaseMapping mapping = node.mappings[i];
+				//collections would need one group for all of their members; none of the test entities have one
+				if (mapping.isForeignReferenceMapping() && !mapping.isCollectionMapping()
+						&& mapping.getReferenceDescriptor() != null) {
+					//instantiated, so reading the real value does not trigger the value holder
+					Object target = mapping.getRealAttributeValueFromObject(entity, session);
+					if (target != null) {
+						targets[i] = capture(target, visited);
+					}
+				}
+			}
+		}
+		return node.group(new Shape(loaded, targets));
+	}
+
+	private Node node(Class<?> entityClass) {
+		Node node = nodes.get(entityClass);
+		if (node == null) {
+			node = new Node(session.getDescriptor(entityClass));
+			nodes.put(entityClass, node);
+		}
+		return node;
+	}
+
+	private static final class Node {
+
+		private final DatabaseMapping[] mappings;
+		private final long[] primaryKey;
+		private final FetchGroup primaryKeyGroup;
+		private final ConcurrentMap<Shape, FetchGroup> groups = new ConcurrentHashMap<Shape, FetchGroup>();
+
+		//the mappings are in the order of the descriptor, as in FetchStateTracker
+		Node(ClassDescriptor descriptor) {
+			List<DatabaseMapping> descriptorMappings = descriptor.getMappings();
+			this.mappings = descriptorMappings.toArray(new DatabaseMapping[descriptorMappings.size()]);
+			this.primaryKey = new long[(mappings.length + 63) >>> 6];
+			this.primaryKeyGroup = new FetchGroup();
+			List<DatabaseMapping> primaryKeyMappings = new ArrayList<DatabaseMapping>(
+					descriptor.getObjectBuilder().getPrimaryKeyMappings());
+			for (int i = 0; i < mappings.length; i++) {
+				if (primaryKeyMappings.contains(mappings[i])) {
+					primaryKey[i >>> 6] |= 1L << i;
+					primaryKeyGroup.addAttribute(mappings[i].getAttributeName());
+				}
+			}
+		}
+
+		boolean isPrimaryKey(int position) {
+			return (primaryKey[position >>> 6] & (1L << position)) != 0;
+		}
+
+		FetchGroup group(Shape shape) {
+			FetchGroup group = groups.get(shape);
+			if (group == null) {
+				group = build(shape);
+				if (groups.size() < MAXIMUM_GROUPS) {
+					FetchGroup previous = groups.putIfAbsent(shape, group);
+					if (previous != null) {
+						group = previous;
+					}
+				}
+			}
+			return group;
+		}
+
+		//every group names the primary key, which keeps it from being empty - an empty group means "fetch everything"
+		private FetchGroup build(Shape shape) {
+			FetchGroup group = new FetchGroup();
+			for (int i = 0; i < mappings.length; i++) {
+				String name = mappings[i].getAttributeName();
+				if (isPrimaryKey(i)) {
+					group.addAttribute(name);
+				} else if ((shape.loaded[i >>> 6] & (1L << i)) != 0) {
+					if (shape.targets[i] == null) {
+						group.addAttribute(name);
+					} else {
+						group.addAttribute(name, shape.targets[i]);
+					}
+				}
+			}
+			return group;
+		}
+	}
+
+	//the loaded attributes of an entity, and the groups captured from its associations; those are cached too, so they
+	//are compared by identity
+	private static final class Shape {
+
+		private final long[] loaded;
+		private final FetchGroup[] targets;
+
+		Shape(long[] loaded, FetchGroup[] targets) {
+			this.loaded = loaded;
+			this.targets = targets;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = Arrays.hashCode(loaded);
+			for (FetchGroup target : targets) {
+				hash = 31 * hash + System.identityHashCode(target);
+			}
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Shape)) {
+				return false;
+			}
+			Shape other = (Shape) obj;
+			if (!Arrays.equals(loaded, other.loaded)) {
+				return false;
+			}
+			for (int i = 0; i < targets.length; i++) {
+				if (targets[i] != other.targets[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+/**
+ *
+ * Copies large numbers of entity graphs on a ForkJoinPool.
+ *
+ * An EntityManager is not thread-safe - copying initializes its entities - so the graphs are not loaded up front and
+ * handed out to threads. The ids of the roots are split instead, down to chunks of a given size, and every chunk is a task
+ * of its own that:
+ *      -creates an EntityManager, only ever used for reading
+ *      -reads its roots with one IN list
+ *      -copies them with a batch copy (see CopyPlans.copyAll with an EntityManager), so what they reference is loaded a
+ *          few hundred entities per query too
+ *      -closes the EntityManager; the copies are detached from it
+ *
+ * The graphs of a chunk share one original-to-copy map, so back-references within a graph point to the copies of that
+ * graph (rootEntCopy.getAssociation1().getCircularRef() == rootEntCopy); an entity referenced from the graphs of two
+ * chunks is copied once per chunk.
+ *
+ * The plans are shared by all tasks, through the given CopyPlans.
+ *
+ */
+public class ParallelCopier {
+
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	private final EntityManagerFactory emf;
+	private final CopyPlans plans;
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+
+	public ParallelCopier(EntityManagerFactory emf, CopyPlans plans, ForkJoinPool pool) {
+		this(emf, plans, pool, DEFAULT_CHUNK_SIZE);
+	}
+
+	public ParallelCopier(EntityManagerFactory emf, CopyPlans plans, ForkJoinPool pool, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size must be positive: " + chunkSize);
+		}
+		this.emf = emf;
+		this.plans = plans;
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Copies the entities of the given class with the given ids, in the order of the ids; ids that are not found are left
+	 * out. The ids are converted to the class of the primary key attribute (an Integer finds the entity of a Long key).
+	 *
+	 * @throws IllegalArgumentException if an id cannot be converted to the class of the primary key attribute
+	 */
+	public <T> List<T> copyAll(Class<T> entityClass, List<?> ids, CopyGroup group) {
+		AbstractSession session = (AbstractSession) JpaHelper.getServerSession(emf);
+		ClassDescriptor descriptor = session.getDescriptor(entityClass);
+		if (descriptor == null) {
+			throw new IllegalArgumentException("The class " + entityClass.getName() + " is not an entity of this persistence unit.");
+		}
+		List<DatabaseMapping> primaryKeyMappings = descriptor.getObjectBuilder().getPrimaryKeyMappings();
+		if (primaryKeyMappings.size() != 1) {
+			throw new IllegalArgumentException("Parallel copies need a single primary key attribute: " + entityClass.getName());
+		}
+		String jpql = "SELECT e FROM " + descriptor.getAlias() + " e WHERE e." + primaryKeyMappings.get(0).getAttributeName()
+				+ " IN :ids";
+		//the roots of a chunk are matched to its ids by the values of the key attribute
+		List<Object> keys = PrimaryKeys.convert(session, primaryKeyMappings.get(0), ids);
+		return pool.invoke(new CopyTask<T>(jpql, primaryKeyMappings.get(0), keys, group));
+	}
+
+	private class CopyTask<T> extends RecursiveTask<List<T>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String jpql;
+		private final DatabaseMapping primaryKeyMapping;
+		private final List<?> ids;
+		private final CopyGroup group;
+
+		CopyTask(String jpql, DatabaseMapping primaryKeyMapping, List<?> ids, CopyGroup group) {
+			this.jpql = jpql;
+			this.primaryKeyMapping = primaryKeyMapping;
+			this.ids = ids;
+			this.group = group;
+		}
+
+		@Override
+		protected List<T> compute() {
+			if (ids.size() > chunkSize) {
+				int middle = ids.size() / 2;
+				CopyTask<T> left = new CopyTask<T>(jpql, primaryKeyMapping, ids.subList(0, middle), group);
+				CopyTask<T> right = new CopyTask<T>(jpql, primaryKeyMapping, ids.subList(middle, ids.size()), group);
+				left.fork();
+				List<T> copies = new ArrayList<T>(right.compute());
+				copies.addAll(0, left.join());
+				return copies;
+			}
+			return copyChunk();
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<T> copyChunk() {
+			EntityManager em = emf.createEntityManager();
+			try {
+				Query query = em.createQuery(jpql);
+				query.setParameter("ids", ids);
+				Map<Object, T> rootsById = new HashMap<Object, T>();
+				for (Object root : query.getResultList()) {
+					rootsById.put(primaryKeyMapping.getAttributeValueFromObject(root), (T) root);
+				}
+				List<T> roots = new ArrayList<T>(rootsById.size());
+				for (Object id : ids) {
+					T root = rootsById.get(id);
+					if (root != null) {
+						roots.add(root);
+					}
+				}
+				return plans.copyAll(em, roots, group);
+			} finally {
+				em.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+
+/**
+ *
+ * A copy made into pooled targets by a CopyTargetPool: {@link #get()} returns the copy of the root, and {@link #close()}
+ * hands every entity of the copy back to the pool, for the next copies to be made into.
+ *
+ * Neither the copy nor anything reached from it may be used once it is closed. The handle itself is reused by the pool,
+ * as are the original-to-copy map and the list of targets it holds: it must not be kept either, since closing it again
+ * once the pool has handed it out for another copy would close that copy.
+ *
+ */
+public final class PooledCopy<T> implements AutoCloseable {
+
+	private final CopyTargetPool pool;
+	private final Map<Object, Object> copies = new CopyIdentityMap();
+	private Object[] targets = new Object[16];
+	private int targetCount;
+	private T root;
+	private boolean open;
+
+	PooledCopy(CopyTargetPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * The copy of the root entity.
+	 *
+	 * @throws IllegalStateException if the copy is closed
+	 */
+	public T get() {
+		if (!open) {
+			throw new IllegalStateException("The pooled copy is closed.");
+		}
+		return root;
+	}
+
+	/**
+	 * Hands the entities of the copy back to the pool.
+	 */
+	@Override
+	public void close() {
+		if (!open) {
+			return;
+		}
+		open = false;
+		root = null;
+		copies.clear();
+		for (int i = 0; i < targetCount; i++) {
+			pool.release(targets[i]);
+			targets[i] = null;
+		}
+		targetCount = 0;
+		pool.release(this);
+	}
+
+	@SuppressWarnings("unchecked")
+	void fill(CopyPlan plan, T original) {
+		open = true;
+		root = (T) plan.copy(original, copies, this);
+	}
+
+	Object acquire(ClassDescriptor descriptor) {
+		Object target = pool.acquire(descriptor);
+		if (targetCount == targets.length) {
+			targets = Arrays.copyOf(targets, 2 * targetCount);
+		}
+		targets[targetCount++] = target;
+		return target;
+	}
+
+	void setReference(ObjectReferenceMapping mapping, Object copy, Object value) {
+		pool.setReference(mapping, copy, value);
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.persistence.exceptions.ConversionException;
+import org.eclipse.persistence.internal.helper.Helper;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.foundation.AbstractDirectMapping;
+
+/**
+ *
+ * Brings the ids callers pass to the class of the primary key attribute.
+ *
+ * A query parameter converts an Integer id to a Long key, so the entities come back; a map keyed by the values of the key
+ * attribute, used to put them back in the order of the ids, does not, and finds none of them. The ids are converted the
+ * way the query converts them, with the conversion manager of the session.
+ *
+ */
+public final class PrimaryKeys {
+
+	private PrimaryKeys() {
+	}
+
+	/**
+	 * Returns the given ids converted to the class of the given key mapping; nulls and ids of that class are kept as they
+	 * are.
+	 *
+	 * @throws IllegalArgumentException if an id cannot be converted
+	 */
+	public static List<Object> convert(AbstractSession session, DatabaseMapping keyMapping, List<?> ids) {
+		Class<?> keyClass = keyClass(keyMapping);
+		List<Object> converted = new ArrayList<Object>(ids.size());
+		for (Object id : ids) {
+			if (id == null || keyClass == null || keyClass.isInstance(id)) {
+				converted.add(id);
+				continue;
+			}
+			try {
+				converted.add(session.getDatasourcePlatform().convertObject(id, keyClass));
+			} catch (ConversionException e) {
+				throw new IllegalArgumentException("The id " + id + " cannot be converted to " + keyClass.getName() + ".", e);
+			}
+		}
+		return converted;
+	}
+
+	//the class of the values of the attribute, primitives being boxed as they are when read from an entity
+	private static Class<?> keyClass(DatabaseMapping keyMapping) {
+		Class<?> keyClass = null;
+		if (keyMapping instanceof AbstractDirectMapping) {
+			keyClass = ((AbstractDirectMapping) keyMapping).getAttributeClassification();
+		}
+		if (keyClass == null) {
+			keyClass = keyMapping.getAttributeAccessor().getAttributeClass();
+		}
+		return keyClass == null ? null : Helper.getObjectClass(keyClass);
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+/**
+ *
+ * Counts the SQL statements sent to the database by the sessions of a persistence unit.
+ *
+ * Eclipselink's DatabaseAccessor wraps the preparation of every statement it executes (reads, writes and the queries
+ * triggered by lazy initialization alike) in a "Timer:SqlPrepare" profile operation, which makes a profiler a cheap place to
+ * count them; FINEST logging tells the same story, but is far too expensive to leave on.
+ *
+ * Statements are counted in total and per thread; the count of the current thread tells what a piece of code sent to the
+ * database even while other threads use the same persistence unit.
+ *
+ * NOTE: client sessions take the profiler of the server session when they are acquired, so the counter must be installed
+ * before the entity managers to be observed are created.
+ *
+ */
+public class StatementCounter extends SessionProfilerAdapter {
+
+	private final AtomicLong statements = new AtomicLong();
+	private final ThreadLocal<long[]> threadStatements = new ThreadLocal<long[]>() {
+
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	/**
+	 * Installs a new counter as the profiler of the server session behind the given factory.
+	 */
+	public static StatementCounter install(EntityManagerFactory emf) {
+		StatementCounter counter = new StatementCounter();
+		JpaHelper.getServerSession(emf).setProfiler(counter);
+		return counter;
+	}
+
+	/**
+	 * Returns the counter previously installed on the given factory, or null if there is none.
+	 */
+	public static StatementCounter of(EntityManagerFactory emf) {
+		Session session = JpaHelper.getServerSession(emf);
+		return session.getProfiler() instanceof StatementCounter ? (StatementCounter) session.getProfiler() : null;
+	}
+
+	@Override
+	public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+		if (SessionProfiler.SqlPrepare.equals(operationName)) {
+			statements.incrementAndGet();
+			threadStatements.get()[0]++;
+		}
+	}
+
+	@Override
+	public int getProfileWeight() {
+		//the accessor profiles statements with the highest weight; anything lower would never see them
+		return SessionProfiler.ALL;
+	}
+
+	public long getStatementCount() {
+		return statements.get();
+	}
+
+	/**
+	 * The number of statements sent by the current thread since the counter was installed; reset() leaves it alone.
+	 */
+	public long getThreadStatementCount() {
+		return threadStatements.get()[0];
+	}
+
+	public void reset() {
+		statements.set(0);
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.ResultSetType;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.queries.ScrollableCursor;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+/**
+ *
+ * Copies the results of a query as they are read, through a forward-only ScrollableCursor, handing every copy to a
+ * consumer.
+ *
+ * Neither the results nor their copies are collected: the results are read in chunks of a given size, each chunk is batch
+ * copied (see CopyPlans.copyAll with an EntityManager) and handed over, and then the persistence context is cleared. What
+ * stays on the heap is one chunk of originals, the copies the consumer keeps, and whatever the JDBC driver buffers - for
+ * HSQLDB, see hsqldb.result_max_memory_rows.
+ *
+ * The copies of a chunk share one original-to-copy map; an entity referenced from two chunks is copied once per chunk.
+ * Clearing the persistence context detaches everything read so far, including changes that were not flushed: the
+ * EntityManager should be used for nothing else while streaming.
+ *
+ */
+public class StreamingCopier {
+
+	public static final int DEFAULT_CLEAR_INTERVAL = 1000;
+
+	private final CopyPlans plans;
+	private final int clearInterval;
+
+	public StreamingCopier(CopyPlans plans) {
+		this(plans, DEFAULT_CLEAR_INTERVAL);
+	}
+
+	/**
+	 * @param clearInterval the number of results copied between two clears of the persistence context
+	 */
+	public StreamingCopier(CopyPlans plans, int clearInterval) {
+		if (clearInterval < 1) {
+			throw new IllegalArgumentException("The clear interval must be positive: " + clearInterval);
+		}
+		this.plans = plans;
+		this.clearInterval = clearInterval;
+	}
+
+	/**
+	 * Copies every result of the given query, created from the given EntityManager, and returns the number of copies made.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> long copyAll(EntityManager em, Query query, CopyGroup group, Consumer<? super T> consumer) {
+		query.setHint(QueryHints.SCROLLABLE_CURSOR, "true");
+		query.setHint(QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly);
+		query.setHint(QueryHints.JDBC_FETCH_SIZE, String.valueOf(clearInterval));
+		ScrollableCursor cursor = (ScrollableCursor) query.getSingleResult();
+		long count = 0;
+		try {
+			List<T> chunk = new ArrayList<T>(clearInterval);
+			while (cursor.hasNext()) {
+				chunk.add((T) cursor.next());
+				if (chunk.size() == clearInterval) {
+					count += copyChunk(em, cursor, chunk, group, consumer);
+				}
+			}
+			count += copyChunk(em, cursor, chunk, group, consumer);
+		} finally {
+			cursor.close();
+		}
+		return count;
+	}
+
+	private <T> int copyChunk(EntityManager em, ScrollableCursor cursor, List<T> chunk, CopyGroup group,
+			Consumer<? super T> consumer) {
+		int size = chunk.size();
+		if (size == 0) {
+			return 0;
+		}
+		for (T copy : plans.copyAll(em, chunk, group)) {
+			consumer.accept(copy);
+		}
+		chunk.clear();
+		clear(em, cursor);
+		return size;
+	}
+
+	//outside of a transaction, EntityManager.clear releases the unit of work and starts a new one the next time it is
+	//needed - but the cursor keeps registering what it reads in the released one, which is never cleared again
+	private void clear(EntityManager em, ScrollableCursor cursor) {
+		if (cursor.getSession() instanceof UnitOfWorkImpl) {
+			((UnitOfWorkImpl) cursor.getSession()).clear(true);
+		} else {
+			em.clear();
+		}
+	}
+
+}
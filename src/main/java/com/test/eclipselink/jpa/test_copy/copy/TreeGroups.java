@@ -0,0 +1,135 @@
+package com.test.eclipselink.jpa.test_copy.copy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.queries.AttributeGroup;
+
+/**
+ *
+ * Resolves the levels of a CASCADE_TREE group against the mappings of their class, for the code that follows a group
+ * without copying (DtoProjection, JsonCopyWriter).
+ *
+ * A level is the mappings the group reaches on one class:
+ *      -the primary key first, whatever the group names
+ *      -then the basic attributes: those the group names, all of them if the group is null (an association a CASCADE_TREE
+ *          copy has no group for gets its basic attributes) or empty (an empty CASCADE_TREE group stands for all
+ *          attributes)
+ *      -then the associations: those the group names, all of them if the group is empty, each to be followed with its
+ *          nested group
+ *
+ * Only single basic primary keys, direct and object reference (toOne) mappings are supported; anything else the group
+ * reaches is rejected with an IllegalArgumentException, as is an attribute the class does not have.
+ *
+ */
+public final class TreeGroups {
+
+	private TreeGroups() {
+	}
+
+	/**
+	 * Resolves the level of the given group on the given class.
+	 *
+	 * @param group the group of the level, null for the basic attributes
+	 * @param use what the level is resolved for, as in "cannot be written", for the messages
+	 * @throws IllegalArgumentException if the class, or an attribute the group reaches, is not supported
+	 */
+	public static Level resolve(ClassDescriptor descriptor, AttributeGroup group, String use) {
+		if (group != null) {
+			for (String name : group.getItems().keySet()) {
+				if (descriptor.getMappingForAttributeName(name) == null) {
+					throw new IllegalArgumentException("The class " + descriptor.getJavaClass().getName()
+							+ " has no attribute " + name + ".");
+				}
+			}
+		}
+		DatabaseMapping idMapping = idMapping(descriptor, use);
+		boolean allAttributes = group != null && !group.hasItems();
+		List<DatabaseMapping> mappings = new ArrayList<DatabaseMapping>();
+		List<DatabaseMapping> references = new ArrayList<DatabaseMapping>();
+		mappings.add(idMapping);
+		for (DatabaseMapping mapping : descriptor.getMappings()) {
+			if (mapping == idMapping) {
+				continue;
+			}
+			boolean named = allAttributes || group != null && group.getItems().containsKey(mapping.getAttributeName());
+			if (mapping.isDirectToFieldMapping()) {
+				if (group == null || named) {
+					mappings.add(mapping);
+				}
+			} else if (named) {
+				references.add(reference(descriptor, mapping, use));
+			}
+		}
+		int referenceStart = mappings.size();
+		mappings.addAll(references);
+		return new Level(descriptor, group, Collections.unmodifiableList(mappings), referenceStart, allAttributes);
+	}
+
+	/**
+	 * Resolves the level holding all the attributes of the given class, as an empty group does.
+	 *
+	 * @throws IllegalArgumentException if the class, or one of its attributes, is not supported
+	 */
+	public static Level resolveAll(ClassDescriptor descriptor, String use) {
+		return resolve(descriptor, new AttributeGroup(), use);
+	}
+
+	/**
+	 * Returns the mapping of the single basic primary key attribute of the given class.
+	 *
+	 * @throws IllegalArgumentException if the class has a composite or non-basic primary key
+	 */
+	public static DatabaseMapping idMapping(ClassDescriptor descriptor, String use) {
+		List<DatabaseMapping> keyMappings = descriptor.getObjectBuilder().getPrimaryKeyMappings();
+		if (keyMappings.size() != 1 || !keyMappings.get(0).isDirectToFieldMapping()) {
+			throw new IllegalArgumentException("Only entities with a single basic primary key attribute can be " + use
+					+ ": " + descriptor.getJavaClass().getName());
+		}
+		return keyMappings.get(0);
+	}
+
+	private static DatabaseMapping reference(ClassDescriptor descriptor, DatabaseMapping mapping, String use) {
+		if (!mapping.isObjectReferenceMapping()) {
+			throw new IllegalArgumentException("The attribute " + mapping.getAttributeName() + " of "
+					+ descriptor.getJavaClass().getName() + " cannot be " + use + ".");
+		}
+		return mapping;
+	}
+
+	/**
+	 * The mappings a group reaches on one class: the primary key, the basic attributes, then the associations.
+	 */
+	public static final class Level {
+
+		public final ClassDescriptor descriptor;
+		public final List<DatabaseMapping> mappings;
+		public final int referenceStart;
+		private final AttributeGroup group;
+		private final boolean allAttributes;
+
+		private Level(ClassDescriptor descriptor, AttributeGroup group, List<DatabaseMapping> mappings, int referenceStart,
+				boolean allAttributes) {
+			this.descriptor = descriptor;
+			this.group = group;
+			this.mappings = mappings;
+			this.referenceStart = referenceStart;
+			this.allAttributes = allAttributes;
+		}
+
+		public DatabaseMapping getIdMapping() {
+			return mappings.get(0);
+		}
+
+		/**
+		 * The group to follow the association at the given index with; null for its basic attributes.
+		 */
+		public AttributeGroup nestedGroup(int index) {
+			return allAttributes ? null : group.getItem(mappings.get(index).getAttributeName()).getGroup();
+		}
+	}
+
+}
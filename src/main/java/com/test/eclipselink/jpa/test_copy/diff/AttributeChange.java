@@ -0,0 +1,41 @@
+package com.test.eclipselink.jpa.test_copy.diff;
+
+/**
+ *
+ * An attribute whose value differs between an entity and its copy, found by an EntityDiffer.
+ *
+ * The path leads from the root of the diff to the attribute, e.g. "association.deepAssocEntity.data1". For a reference
+ * to another entity (by primary key), or to null, the values are the referenced entities: the diff does not go below
+ * it.
+ *
+ */
+public final class AttributeChange {
+
+	private final String path;
+	private final Object originalValue;
+	private final Object copyValue;
+
+	AttributeChange(String path, Object originalValue, Object copyValue) {
+		this.path = path;
+		this.originalValue = originalValue;
+		this.copyValue = copyValue;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public Object getOriginalValue() {
+		return originalValue;
+	}
+
+	public Object getCopyValue() {
+		return copyValue;
+	}
+
+	@Override
+	public String toString() {
+		return "AttributeChange(" + path + ": " + copyValue + " -> " + originalValue + ")";
+	}
+
+}
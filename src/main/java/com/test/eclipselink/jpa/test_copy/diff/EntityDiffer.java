@@ -0,0 +1,277 @@
+package com.test.eclipselink.jpa.test_copy.diff;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.indirection.ValueHolderInterface;
+import org.eclipse.persistence.internal.descriptors.InstanceVariableAttributeAccessor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+
+/**
+ *
+ * Compares an entity graph with its copy (see JpaEntityManager.copy) attribute by attribute, and lists the attributes
+ * that differ: typically a managed entity, edited since it was copied, against that copy.
+ *
+ * Both graphs are walked together, depth first, from their roots:
+ *      -only attributes loaded on both sides are compared, as told by a FetchStateTracker: the diff never triggers a
+ *      load, and what a CopyGroup left out of the copy is not reported as a change
+ *      -basic attributes are compared with equals
+ *      -references are followed when they lead to entities of the same class and primary key; otherwise the reference
+ *      itself is reported as changed, and the diff goes no further below it
+ *      -an entity already compared (like the root, reached again through "association1.circularRef") is not compared
+ *      again, so that cycles end
+ *
+ * Other mappings (collections, aggregates) are compared with equals on their values, as basic attributes are.
+ *
+ * Diffing an unchanged graph allocates nothing: the entities already compared are kept in an open-addressing identity
+ * set, and the mappings of the current path in an array, both reused per thread; the path of a change is only built
+ * once a change is found, and the list of changes only created for the first one.
+ *
+ */
+public class EntityDiffer {
+
+	private final AbstractSession session;
+	private final FetchStateTracker fetchStates;
+	private final ConcurrentMap<Class<?>, Node> nodes = new ConcurrentHashMap<Class<?>, Node>();
+	private final ThreadLocal<Walk> walks = new ThreadLocal<Walk>() {
+
+		@Override
+		protected Walk initialValue() {
+			return new Walk();
+		}
+	};
+
+	public EntityDiffer(EntityManagerFactory emf) {
+		this(emf, new FetchStateTracker(emf));
+	}
+
+	public EntityDiffer(EntityManagerFactory emf, FetchStateTracker fetchStates) {
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.fetchStates = fetchStates;
+	}
+
+	/**
+	 * Returns the changes between the given entity and its copy, in the order they were found; an empty list if there is
+	 * none.
+	 *
+	 * @throws IllegalArgumentException if both are not entities of the same class
+	 */
+	public List<AttributeChange> diff(Object original, Object copy) {
+		if (original.getClass() != copy.getClass()) {
+			throw new IllegalArgumentException("Cannot diff a " + original.getClass().getName() + " with a "
+					+ copy.getClass().getName() + ".");
+		}
+		Walk walk = walks.get();
+		try {
+			walk.visit(original);
+			compare(walk, node(original.getClass()), original, copy);
+			return walk.changes == null ? Collections.<AttributeChange> emptyList() : walk.changes;
+		} finally {
+			walk.reset();
+		}
+	}
+
+	private void compare(Walk walk, Node node, Object original, Object copy) {
+		DatabaseMapping[] mappings = node.mappings;
+		long loaded = node.isWide ? -1L : fetchStates.loadedAttributes(original) & fetchStates.loadedAttributes(copy);
+		for (int position = 0; position < mappings.length; position++) {
+			if (node.isWide ? !fetchStates.isLoaded(original, position) || !fetchStates.isLoaded(copy, position)
+					: (loaded & (1L << position)) == 0) {
+				continue;
+			}
+			DatabaseMapping mapping = mappings[position];
+			if (!mapping.isObjectReferenceMapping()) {
+				Object originalValue = node.value(position, original);
+				Object copyValue = node.value(position, copy);
+				if (originalValue == null ? copyValue != null : !originalValue.equals(copyValue)) {
+					walk.change(mapping, originalValue, copyValue);
+				}
+				continue;
+			}
+			Object originalReference = reference(mapping, original);
+			Object copyReference = reference(mapping, copy);
+			if (originalReference == null && copyReference == null) {
+				continue;
+			}
+			if (originalReference == null || copyReference == null
+					|| originalReference.getClass() != copyReference.getClass()) {
+				walk.change(mapping, originalReference, copyReference);
+				continue;
+			}
+			Node referenceNode = node(originalReference.getClass());
+			if (!referenceNode.isSameEntity(originalReference, copyReference)) {
+				walk.change(mapping, originalReference, copyReference);
+			} else if (walk.visit(originalReference)) {
+				walk.push(mapping);
+				compare(walk, referenceNode, originalReference, copyReference);
+				walk.pop();
+			}
+		}
+	}
+
+	//a loaded reference is instantiated, so this runs no query; its value holder is read as it is, since going through
+	//the indirection policy of woven entities sets the attribute again, reflectively, on every call
+	private static Object reference(DatabaseMapping mapping, Object entity) {
+		Object value = mapping.getAttributeValueFromObject(entity);
+		return value instanceof ValueHolderInterface ? ((ValueHolderInterface) value).getValue() : value;
+	}
+
+	private Node node(Class<?> entityClass) {
+		Node node = nodes.get(entityClass);
+		if (node == null) {
+			ClassDescriptor descriptor = session.getDescriptor(entityClass);
+			if (descriptor == null) {
+				throw new IllegalArgumentException(entityClass.getName() + " is not an entity of the persistence unit.");
+			}
+			node = new Node(descriptor);
+			nodes.put(entityClass, node);
+		}
+		return node;
+	}
+
+	/**
+	 * The mappings of a class, in the order of the positions of the FetchStateTracker, and the positions of its primary key.
+	 *
+	 * The fields of basic attributes are read directly when they can be: the accessor of woven entities would find the
+	 * attribute by comparing its name with those of the class, through _persistence_get(String).
+	 */
+	private static final class Node {
+
+		private final DatabaseMapping[] mappings;
+		private final Field[] fields;
+		private final int[] primaryKeyPositions;
+		//more attributes than the loaded ones fit in a long: they are checked one by one
+		private final boolean isWide;
+
+		Node(ClassDescriptor descriptor) {
+			List<DatabaseMapping> descriptorMappings = descriptor.getMappings();
+			this.mappings = descriptorMappings.toArray(new DatabaseMapping[descriptorMappings.size()]);
+			this.fields = new Field[mappings.length];
+			for (int i = 0; i < mappings.length; i++) {
+				if (mappings[i].isDirectToFieldMapping()
+						&& mappings[i].getAttributeAccessor() instanceof InstanceVariableAttributeAccessor) {
+					fields[i] = ((InstanceVariableAttributeAccessor) mappings[i].getAttributeAccessor())
+							.getAttributeField();
+					fields[i].setAccessible(true);
+				}
+			}
+			List<DatabaseMapping> keyMappings = descriptor.getObjectBuilder().getPrimaryKeyMappings();
+			this.primaryKeyPositions = new int[keyMappings.size()];
+			for (int i = 0; i < primaryKeyPositions.length; i++) {
+				primaryKeyPositions[i] = descriptorMappings.indexOf(keyMappings.get(i));
+			}
+			this.isWide = mappings.length > 64;
+		}
+
+		Object value(int position, Object entity) {
+			if (fields[position] != null) {
+				try {
+					return fields[position].get(entity);
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException("The field " + fields[position] + " cannot be accessed.", e);
+				}
+			}
+			DatabaseMapping mapping = mappings[position];
+			return mapping.isForeignReferenceMapping() ? reference(mapping, entity)
+					: mapping.getAttributeValueFromObject(entity);
+		}
+
+		boolean isSameEntity(Object original, Object copy) {
+			for (int position : primaryKeyPositions) {
+				Object originalKey = value(position, original);
+				if (originalKey == null || !originalKey.equals(value(position, copy))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * The state of one diff, reused by the diffs of the same thread: the original entities already compared, the
+	 * mappings leading to the entities being compared, and the changes found so far.
+	 */
+	private static final class Walk {
+
+		private Object[] visited = new Object[64];
+		private int visitedCount;
+		private DatabaseMapping[] path = new DatabaseMapping[8];
+		private int depth;
+		private List<AttributeChange> changes;
+
+		//adds the entity to the visited ones, unless it is already
+		boolean visit(Object entity) {
+			if (2 * (visitedCount + 1) > visited.length) {
+				grow();
+			}
+			int mask = visited.length - 1;
+			int index = System.identityHashCode(entity) & mask;
+			while (visited[index] != null) {
+				if (visited[index] == entity) {
+					return false;
+				}
+				index = (index + 1) & mask;
+			}
+			visited[index] = entity;
+			visitedCount++;
+			return true;
+		}
+
+		private void grow() {
+			Object[] previous = visited;
+			visited = new Object[2 * previous.length];
+			visitedCount = 0;
+			for (Object entity : previous) {
+				if (entity != null) {
+					visit(entity);
+				}
+			}
+		}
+
+		void push(DatabaseMapping mapping) {
+			if (depth == path.length) {
+				path = Arrays.copyOf(path, 2 * depth);
+			}
+			path[depth++] = mapping;
+		}
+
+		void pop() {
+			path[--depth] = null;
+		}
+
+		void change(DatabaseMapping mapping, Object originalValue, Object copyValue) {
+			StringBuilder attributePath = new StringBuilder();
+			for (int i = 0; i < depth; i++) {
+				attributePath.append(path[i].getAttributeName()).append('.');
+			}
+			attributePath.append(mapping.getAttributeName());
+			if (changes == null) {
+				changes = new ArrayList<AttributeChange>();
+			}
+			changes.add(new AttributeChange(attributePath.toString(), originalValue, copyValue));
+		}
+
+		void reset() {
+			if (visitedCount > 0) {
+				Arrays.fill(visited, null);
+				visitedCount = 0;
+			}
+			Arrays.fill(path, 0, depth, null);
+			depth = 0;
+			changes = null;
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+package com.test.eclipselink.jpa.test_copy.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.queries.AttributeGroup;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+import com.test.eclipselink.jpa.test_copy.copy.PrimaryKeys;
+import com.test.eclipselink.jpa.test_copy.copy.TreeGroups;
+
+/**
+ *
+ * Projects entities into DtoRecords, following an attribute group: a CASCADE_TREE CopyGroup or a FetchGroup.
+ *
+ * Entities are mostly copied to be serialized, and then only for some of their attributes. A projection reads those
+ * attributes into plain records instead, either from loaded entities or straight from the rows of a query, and builds no
+ * entity, no fetch group and no identity map along the way:
+ *      -every level of the group is a record: the primary key, then the basic attributes of the group, then the
+ *          associations of the group, each projected with its nested group, as TreeGroups resolves them (an empty
+ *          group stands for all the attributes, as for JpaEntityManager.copy)
+ *      -records are trees: an entity reached twice (the root, through "association1.circularRef") is projected twice
+ *      -the flat form of a record is a row of its values and those of its associations, depth first, named by their
+ *          path ("association.data1", see {@link #getColumnNames()})
+ *
+ * From loaded entities ({@link #project(Object)}), attributes that are not loaded yet are loaded, as a copy would. From a
+ * query ({@link #query(EntityManager, List)}), the group is turned into a single JPQL report query selecting the columns
+ * of the flat row, associations being LEFT JOINed, so that the records are built from the result set directly.
+ *
+ * The levels of the group are resolved by TreeGroups, whose restrictions apply when the projection is compiled. A
+ * projection is immutable and can be shared between threads.
+ *
+ */
+public final class DtoProjection {
+
+	private final AbstractSession session;
+	private final Node root;
+	private final List<String> columnNames;
+	private final String jpql;
+
+	private DtoProjection(AbstractSession session, Node root, List<String> columnNames, String jpql) {
+		this.session = session;
+		this.root = root;
+		this.columnNames = columnNames;
+		this.jpql = jpql;
+	}
+
+	/**
+	 * Compiles the given group for the given entity class.
+	 *
+	 * @throws IllegalArgumentException if the group is a CopyGroup that does not cascade as a tree, or names an attribute
+	 *             that cannot be projected
+	 */
+	public static DtoProjection compile(EntityManagerFactory emf, Class<?> entityClass, AttributeGroup group) {
+		AbstractSession session = (AbstractSession) JpaHelper.getServerSession(emf);
+		ClassDescriptor descriptor = session.getDescriptor(entityClass);
+		if (descriptor == null) {
+			throw new IllegalArgumentException("The class " + entityClass.getName() + " is not an entity of this persistence unit.");
+		}
+		if (group instanceof CopyGroup && !((CopyGroup) group).shouldCascadeTree()) {
+			throw new IllegalArgumentException("Only CASCADE_TREE copy groups describe a projection.");
+		}
+		List<String> columnNames = new ArrayList<String>();
+		StringBuilder select = new StringBuilder();
+		StringBuilder from = new StringBuilder(" FROM ").append(descriptor.getAlias()).append(" e0");
+		Node root = new Compiler(columnNames, select, from).compile(descriptor, group, "", "e0");
+		String jpql = "SELECT " + select + from + " WHERE e0." + root.mappings[0].getAttributeName() + " IN :ids";
+		return new DtoProjection(session, root, Collections.unmodifiableList(columnNames), jpql);
+	}
+
+	public Class<?> getEntityClass() {
+		return root.descriptor.getJavaClass();
+	}
+
+	/**
+	 * The names of the columns of the flat rows: the paths of the attributes, depth first.
+	 */
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+
+	/**
+	 * The JPQL query {@link #query(EntityManager, List)} runs, with the ids as the parameter "ids".
+	 */
+	public String getQueryString() {
+		return jpql;
+	}
+
+	/**
+	 * Projects the given entity, loading what it lacks through its EntityManager; null for null.
+	 */
+	public DtoRecord project(Object entity) {
+		return root.project(entity, session);
+	}
+
+	/**
+	 * Projects the given entity into a flat row, laid out as {@link #getColumnNames()}; the columns of an association
+	 * that is not set are null.
+	 */
+	public Object[] projectFlat(Object entity) {
+		Object[] row = new Object[columnNames.size()];
+		root.projectFlat(entity, row, session);
+		return row;
+	}
+
+	/**
+	 * Reads the projections of the entities with the given ids, in the order of the ids; ids that are not found are left
+	 * out.
+	 *
+	 * @throws IllegalArgumentException if an id cannot be converted to the class of the primary key attribute
+	 */
+	public List<DtoRecord> query(EntityManager em, List<?> ids) {
+		List<Object[]> rows = queryFlat(em, ids);
+		List<DtoRecord> records = new ArrayList<DtoRecord>(rows.size());
+		for (Object[] row : rows) {
+			records.add(root.fromRow(row));
+		}
+		return records;
+	}
+
+	/**
+	 * Reads the flat rows of the entities with the given ids, in the order of the ids; ids that are not found are left out.
+	 * The ids are converted to the class of the primary key attribute (an Integer finds the entity of a Long key).
+	 *
+	 * @throws IllegalArgumentException if an id cannot be converted to the class of the primary key attribute
+	 */
+	public List<Object[]> queryFlat(EntityManager em, List<?> ids) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		//the rows are matched to the ids by their first column, the value of the key attribute
+		ids = PrimaryKeys.convert(session, root.mappings[0], ids);
+		Query query = em.createQuery(jpql);
+		query.setParameter("ids", ids);
+		Map<Object, Object[]> rowsById = new HashMap<Object, Object[]>();
+		for (Object result : query.getResultList()) {
+			Object[] row = result instanceof Object[] ? (Object[]) result : new Object[] { result };
+			rowsById.put(row[0], row);
+		}
+		List<Object[]> rows = new ArrayList<Object[]>(rowsById.size());
+		for (Object id : ids) {
+			Object[] row = rowsById.get(id);
+			if (row != null) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private static final class Node {
+
+		final ClassDescriptor descriptor;
+		final DtoRecord.Layout layout;
+		//the primary key first, then the basic attributes, then the associations
+		final DatabaseMapping[] mappings;
+		final Node[] children;
+		//the column of the primary key in the flat row, and the one after the last column of the node and its children
+		final int offset;
+		final int end;
+
+		Node(ClassDescriptor descriptor, DatabaseMapping[] mappings, Node[] children, int offset) {
+			this.descriptor = descriptor;
+			this.mappings = mappings;
+			this.children = children;
+			this.offset = offset;
+			int column = offset;
+			for (Node child : children) {
+				column = child == null ? column + 1 : child.end;
+			}
+			this.end = column;
+			String[] names = new String[mappings.length];
+			for (int i = 0; i < mappings.length; i++) {
+				names[i] = mappings[i].getAttributeName();
+			}
+			this.layout = new DtoRecord.Layout(names);
+		}
+
+		DtoRecord project(Object entity, AbstractSession session) {
+			if (entity == null) {
+				return null;
+			}
+			loadMissingAttributes(entity);
+			Object[] values = new Object[mappings.length];
+			for (int i = 0; i < mappings.length; i++) {
+				Object value = mappings[i].getRealAttributeValueFromObject(entity, session);
+				values[i] = children[i] == null ? value : children[i].project(value, session);
+			}
+			return new DtoRecord(layout, values);
+		}
+
+		void projectFlat(Object entity, Object[] row, AbstractSession session) {
+			if (entity == null) {
+				return;
+			}
+			loadMissingAttributes(entity);
+			int column = offset;
+			for (int i = 0; i < mappings.length; i++) {
+				Object value = mappings[i].getRealAttributeValueFromObject(entity, session);
+				if (children[i] == null) {
+					row[column++] = value;
+				} else {
+					children[i].projectFlat(value, row, session);
+					column = children[i].end;
+				}
+			}
+		}
+
+		//an association whose primary key column is null is not set
+		DtoRecord fromRow(Object[] row) {
+			if (row[offset] == null) {
+				return null;
+			}
+			Object[] values = new Object[mappings.length];
+			int column = offset;
+			for (int i = 0; i < mappings.length; i++) {
+				if (children[i] == null) {
+					values[i] = row[column++];
+				} else {
+					values[i] = children[i].fromRow(row);
+					column = children[i].end;
+				}
+			}
+			return new DtoRecord(layout, values);
+		}
+
+		//the same check and load a CASCADE_TREE copy makes: whatever the node reads is loaded at once if anything is missing
+		private void loadMissingAttributes(Object entity) {
+			if (!(entity instanceof FetchGroupTracker)) {
+				return;
+			}
+			FetchGroup fetchGroup = ((FetchGroupTracker) entity)._persistence_getFetchGroup();
+			if (fetchGroup != null && !fetchGroup.getAttributeNames().containsAll(layout.nameList)) {
+				fetchGroup.onUnfetchedAttribute((FetchGroupTracker) entity, null);
+			}
+		}
+	}
+
+	private static final class Compiler {
+
+		private final List<String> columnNames;
+		private final StringBuilder select;
+		private final StringBuilder from;
+		private int aliases = 1;
+
+		Compiler(List<String> columnNames, StringBuilder select, StringBuilder from) {
+			this.columnNames = columnNames;
+			this.select = select;
+			this.from = from;
+		}
+
+		Node compile(ClassDescriptor descriptor, AttributeGroup group, String path, String alias) {
+			TreeGroups.Level level = TreeGroups.resolve(descriptor, group, "projected");
+			List<DatabaseMapping> mappings = level.mappings;
+			int offset = columnNames.size();
+			for (DatabaseMapping mapping : mappings.subList(0, level.referenceStart)) {
+				columnNames.add(path + mapping.getAttributeName());
+				select.append(select.length() == 0 ? "" : ", ").append(alias).append('.').append(mapping.getAttributeName());
+			}
+			List<Node> children = new ArrayList<Node>(Collections.<Node> nCopies(level.referenceStart, null));
+			for (int i = level.referenceStart; i < mappings.size(); i++) {
+				DatabaseMapping reference = mappings.get(i);
+				String referenceAlias = "e" + aliases++;
+				from.append(" LEFT JOIN ").append(alias).append('.').append(reference.getAttributeName()).append(' ')
+						.append(referenceAlias);
+				children.add(compile(reference.getReferenceDescriptor(), level.nestedGroup(i),
+						path + reference.getAttributeName() + ".", referenceAlias));
+			}
+			return new Node(descriptor, mappings.toArray(new DatabaseMapping[mappings.size()]),
+					children.toArray(new Node[children.size()]), offset);
+		}
+	}
+
+}
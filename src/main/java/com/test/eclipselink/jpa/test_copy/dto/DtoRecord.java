@@ -0,0 +1,101 @@
+package com.test.eclipselink.jpa.test_copy.dto;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * The projection of one entity (see DtoProjection): its attribute values by name, the projection of an association being
+ * a DtoRecord itself, or null.
+ *
+ * A record is an array of values; the names, and the index of every name, are shared by all records of the same level of
+ * a projection.
+ *
+ */
+public final class DtoRecord {
+
+	private final Layout layout;
+	private final Object[] values;
+
+	DtoRecord(Layout layout, Object[] values) {
+		this.layout = layout;
+		this.values = values;
+	}
+
+	/**
+	 * The names of the attributes, primary key first, then in the order of the mappings of the entity.
+	 */
+	public List<String> getNames() {
+		return layout.nameList;
+	}
+
+	/**
+	 * The value of the attribute at the given index of {@link #getNames()}.
+	 */
+	public Object get(int index) {
+		return values[index];
+	}
+
+	/**
+	 * The value of the given attribute.
+	 *
+	 * @throws IllegalArgumentException if the attribute is not projected
+	 */
+	public Object get(String name) {
+		Integer index = layout.indexes.get(name);
+		if (index == null) {
+			throw new IllegalArgumentException("The attribute " + name + " is not projected: " + layout.nameList);
+		}
+		return values[index];
+	}
+
+	/**
+	 * The record as nested maps, in the order of {@link #getNames()}.
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < values.length; i++) {
+			Object value = values[i];
+			map.put(layout.names[i], value instanceof DtoRecord ? ((DtoRecord) value).toMap() : value);
+		}
+		return map;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.deepHashCode(values);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof DtoRecord)) {
+			return false;
+		}
+		DtoRecord other = (DtoRecord) obj;
+		return layout.nameList.equals(other.layout.nameList) && Arrays.deepEquals(values, other.values);
+	}
+
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+
+	static final class Layout {
+
+		final String[] names;
+		final List<String> nameList;
+		final Map<String, Integer> indexes = new LinkedHashMap<String, Integer>();
+
+		Layout(String[] names) {
+			this.names = names;
+			this.nameList = Collections.unmodifiableList(Arrays.asList(names));
+			for (int i = 0; i < names.length; i++) {
+				indexes.put(names[i], i);
+			}
+		}
+	}
+
+}
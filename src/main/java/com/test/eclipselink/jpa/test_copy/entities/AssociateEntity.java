@@ -1,5 +1,7 @@
 package com.test.eclipselink.jpa.test_copy.entities;
 
+import java.io.Serializable;
+
 import javax.persistence.Basic;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -11,7 +13,9 @@ import javax.persistence.Table;
 
 @Entity
 @Table(name = "ASSOCIATE_ENTITY")
-public class AssociateEntity {
+public class AssociateEntity implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	@Id
 	private Long id;
@@ -1,5 +1,7 @@
 package com.test.eclipselink.jpa.test_copy.entities;
 
+import java.io.Serializable;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -10,7 +12,9 @@ import javax.persistence.Table;
 
 @Entity
 @Table(name = "ASSOCIATE_ENTITY_1")
-public class AssociateEntity_1 {
+public class AssociateEntity_1 implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	@Id
 	private Long id;
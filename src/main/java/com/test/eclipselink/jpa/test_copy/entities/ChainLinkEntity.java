@@ -0,0 +1,53 @@
+package com.test.eclipselink.jpa.test_copy.entities;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.OneToOne;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "CHAIN_LINK_ENTITY")
+public class ChainLinkEntity implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private Long id;
+
+	@Column(name = "DATA1")
+	private String data1;
+
+	@JoinColumn(name = "NEXT_FK")
+	@OneToOne(fetch = FetchType.LAZY)
+	private ChainLinkEntity next;
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getData1() {
+		return data1;
+	}
+
+	public void setData1(String data1) {
+		this.data1 = data1;
+	}
+
+	public ChainLinkEntity getNext() {
+		return next;
+	}
+
+	public void setNext(ChainLinkEntity next) {
+		this.next = next;
+	}
+
+}
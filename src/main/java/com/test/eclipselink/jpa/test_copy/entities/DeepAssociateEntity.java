@@ -1,5 +1,7 @@
 package com.test.eclipselink.jpa.test_copy.entities;
 
+import java.io.Serializable;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -7,7 +9,9 @@ import javax.persistence.Table;
 
 @Entity
 @Table(name = "DEEP_ASSOCIATE_ENTITY")
-public class DeepAssociateEntity {
+public class DeepAssociateEntity implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	@Id
 	private Long id;
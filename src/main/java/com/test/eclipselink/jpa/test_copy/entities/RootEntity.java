@@ -1,5 +1,7 @@
 package com.test.eclipselink.jpa.test_copy.entities;
 
+import java.io.Serializable;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -12,7 +14,9 @@ import org.eclipse.persistence.annotations.PrivateOwned;
 
 @Entity
 @Table(name = "ROOT_ENTITY")
-public class RootEntity {
+public class RootEntity implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	@Id
 	private Long id;
@@ -0,0 +1,268 @@
+package com.test.eclipselink.jpa.test_copy.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ForeignReferenceMapping;
+import org.eclipse.persistence.queries.AttributeGroup;
+import org.eclipse.persistence.sessions.CopyGroup;
+
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+import com.test.eclipselink.jpa.test_copy.copy.TreeGroups;
+
+/**
+ *
+ * Writes entity graphs as JSON, following the rules of a CopyGroup, straight from the managed entities.
+ *
+ * Serializing a copy builds the graph twice: once as the copy, once as the JSON. The writer walks the original graph
+ * instead, reading what a copy with the same group would hold:
+ *      -CASCADE_TREE: the attributes of the group, and of the nested groups ("association.lazyData3"), as TreeGroups
+ *          resolves them
+ *      -CASCADE_ALL_PARTS, CASCADE_PRIVATE_PARTS: all attributes, associations being nested if they are cascaded to
+ *      -NO_CASCADE: all attributes
+ *
+ * Unlike a copy, the writer never loads anything:
+ *      -an attribute that is not loaded (see FetchStateTracker) is left out of its object; a loaded null is null
+ *      -an entity reached again, such as the root through "association1.circularRef", is written as its id, as is an
+ *          association that is not cascaded to
+ * Each object starts with the primary key, then the basic attributes, then the associations.
+ *
+ * Every class is resolved by TreeGroups, whose restrictions apply when the writer is compiled. A writer is immutable and
+ * can be shared between threads.
+ *
+ */
+public final class JsonCopyWriter {
+
+	private static final int BASIC = 0;
+	private static final int NESTED = 1;
+	private static final int ID = 2;
+
+	private final AbstractSession session;
+	private final FetchStateTracker fetchStates;
+	private final Node root;
+
+	private JsonCopyWriter(AbstractSession session, FetchStateTracker fetchStates, Node root) {
+		this.session = session;
+		this.fetchStates = fetchStates;
+		this.root = root;
+	}
+
+	/**
+	 * Compiles the given group for the given entity class.
+	 *
+	 * @throws IllegalArgumentException if the group names an attribute that cannot be written
+	 */
+	public static JsonCopyWriter compile(EntityManagerFactory emf, Class<?> entityClass, CopyGroup group) {
+		AbstractSession session = (AbstractSession) JpaHelper.getServerSession(emf);
+		ClassDescriptor descriptor = session.getDescriptor(entityClass);
+		if (descriptor == null) {
+			throw new IllegalArgumentException("The class " + entityClass.getName() + " is not an entity of this persistence unit.");
+		}
+		FetchStateTracker fetchStates = new FetchStateTracker(emf);
+		Compiler compiler = new Compiler(fetchStates, group);
+		Node root = group.shouldCascadeTree() ? compiler.compileTree(descriptor, group) : compiler.compileCascade(descriptor);
+		return new JsonCopyWriter(session, fetchStates, root);
+	}
+
+	/**
+	 * Writes the given entity as a JSON object, or null, to the given stream, which is flushed but not closed.
+	 */
+	public void write(Object entity, OutputStream out) throws IOException {
+		JsonOutput output = new JsonOutput(out);
+		write(entity, output);
+		output.flush();
+	}
+
+	/**
+	 * Writes the given entity as a JSON object, or null, to the given channel, which is not closed.
+	 */
+	public void write(Object entity, WritableByteChannel channel) throws IOException {
+		JsonOutput output = new JsonOutput(channel);
+		write(entity, output);
+		output.flush();
+	}
+
+	/**
+	 * Writes the given entities as a JSON array to the given stream, which is flushed but not closed; every entity is
+	 * written whole, whatever the others reached.
+	 */
+	public void writeAll(Collection<?> entities, OutputStream out) throws IOException {
+		JsonOutput output = new JsonOutput(out);
+		writeAll(entities, output);
+		output.flush();
+	}
+
+	/**
+	 * Writes the given entities as a JSON array to the given channel, which is not closed; every entity is written whole,
+	 * whatever the others reached.
+	 */
+	public void writeAll(Collection<?> entities, WritableByteChannel channel) throws IOException {
+		JsonOutput output = new JsonOutput(channel);
+		writeAll(entities, output);
+		output.flush();
+	}
+
+	private void write(Object entity, JsonOutput output) throws IOException {
+		root.write(entity, output, new IdentityHashMap<Object, Boolean>(), this);
+	}
+
+	private void writeAll(Collection<?> entities, JsonOutput output) throws IOException {
+		Map<Object, Boolean> written = new IdentityHashMap<Object, Boolean>();
+		output.writeByte('[');
+		boolean first = true;
+		for (Object entity : entities) {
+			if (!first) {
+				output.writeByte(',');
+			}
+			first = false;
+			root.write(entity, output, written, this);
+			written.clear();
+		}
+		output.writeByte(']');
+	}
+
+	private static final class Node {
+
+		final ClassDescriptor descriptor;
+		final DatabaseMapping idMapping;
+		//the primary key first, then the basic attributes, then the associations
+		DatabaseMapping[] mappings;
+		//the position of each mapping in the fetch state, the key it is written with ("name":), and how it is written
+		int[] positions;
+		byte[][] keys;
+		int[] kinds;
+		//the node of a NESTED association, or that of the associated class for an ID one
+		Node[] children;
+
+		Node(ClassDescriptor descriptor, DatabaseMapping idMapping) {
+			this.descriptor = descriptor;
+			this.idMapping = idMapping;
+		}
+
+		void write(Object entity, JsonOutput output, Map<Object, Boolean> written, JsonCopyWriter writer) throws IOException {
+			if (entity == null) {
+				output.writeAscii("null");
+				return;
+			}
+			if (written.put(entity, Boolean.TRUE) != null) {
+				writeId(entity, output, writer);
+				return;
+			}
+			output.writeByte('{');
+			boolean first = true;
+			for (int i = 0; i < mappings.length; i++) {
+				if (!writer.fetchStates.isLoaded(entity, positions[i])) {
+					continue;
+				}
+				if (!first) {
+					output.writeByte(',');
+				}
+				first = false;
+				output.writeBytes(keys[i]);
+				//loaded, so an association is instantiated and reading it runs no query
+				Object value = mappings[i].getRealAttributeValueFromObject(entity, writer.session);
+				if (kinds[i] == BASIC) {
+					output.writeValue(value);
+				} else if (kinds[i] == NESTED) {
+					children[i].write(value, output, written, writer);
+				} else if (value == null) {
+					output.writeAscii("null");
+				} else {
+					children[i].writeId(value, output, writer);
+				}
+			}
+			output.writeByte('}');
+		}
+
+		void writeId(Object entity, JsonOutput output, JsonCopyWriter writer) throws IOException {
+			output.writeValue(idMapping.getRealAttributeValueFromObject(entity, writer.session));
+		}
+	}
+
+	private static final class Compiler {
+
+		private final FetchStateTracker fetchStates;
+		private final CopyGroup group;
+		//the nodes of a cascading group, one per class; the graph of the classes may have cycles
+		private final Map<ClassDescriptor, Node> nodes = new HashMap<ClassDescriptor, Node>();
+
+		Compiler(FetchStateTracker fetchStates, CopyGroup group) {
+			this.fetchStates = fetchStates;
+			this.group = group;
+		}
+
+		Node compileTree(ClassDescriptor descriptor, AttributeGroup treeGroup) {
+			TreeGroups.Level level = TreeGroups.resolve(descriptor, treeGroup, "written");
+			Node node = new Node(descriptor, level.getIdMapping());
+			Node[] children = new Node[level.mappings.size()];
+			int[] kinds = new int[level.mappings.size()];
+			for (int i = level.referenceStart; i < children.length; i++) {
+				children[i] = compileTree(level.mappings.get(i).getReferenceDescriptor(), level.nestedGroup(i));
+				kinds[i] = NESTED;
+			}
+			fill(node, level.mappings, kinds, children);
+			return node;
+		}
+
+		Node compileCascade(ClassDescriptor descriptor) {
+			Node node = nodes.get(descriptor);
+			if (node != null) {
+				return node;
+			}
+			TreeGroups.Level level = TreeGroups.resolveAll(descriptor, "written");
+			node = new Node(descriptor, level.getIdMapping());
+			nodes.put(descriptor, node);
+			Node[] children = new Node[level.mappings.size()];
+			int[] kinds = new int[level.mappings.size()];
+			for (int i = level.referenceStart; i < children.length; i++) {
+				ForeignReferenceMapping reference = (ForeignReferenceMapping) level.mappings.get(i);
+				boolean cascaded = group.shouldCascadeAllParts() || group.shouldCascadePrivateParts() && reference.isPrivateOwned();
+				children[i] = compileCascade(reference.getReferenceDescriptor());
+				kinds[i] = cascaded ? NESTED : ID;
+			}
+			fill(node, level.mappings, kinds, children);
+			return node;
+		}
+
+		private void fill(Node node, List<DatabaseMapping> mappings, int[] kinds, Node[] children) {
+			Class<?> entityClass = node.descriptor.getJavaClass();
+			node.mappings = mappings.toArray(new DatabaseMapping[mappings.size()]);
+			node.positions = new int[mappings.size()];
+			node.keys = new byte[mappings.size()][];
+			for (int i = 0; i < node.mappings.length; i++) {
+				String name = node.mappings[i].getAttributeName();
+				node.positions[i] = fetchStates.position(entityClass, name);
+				node.keys[i] = key(name);
+			}
+			node.kinds = kinds;
+			node.children = children;
+		}
+
+		private static byte[] key(String name) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			JsonOutput output = new JsonOutput(bytes);
+			try {
+				output.writeString(name);
+				output.writeByte(':');
+				output.flush();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return bytes.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+package com.test.eclipselink.jpa.test_copy.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ *
+ * Buffers UTF-8 encoded JSON on its way to an OutputStream or a channel; neither is closed.
+ *
+ */
+final class JsonOutput {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+	private final OutputStream stream;
+	private final WritableByteChannel channel;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+
+	JsonOutput(OutputStream stream) {
+		this.stream = stream;
+		this.channel = null;
+	}
+
+	JsonOutput(WritableByteChannel channel) {
+		this.stream = null;
+		this.channel = channel;
+	}
+
+	void writeByte(int b) throws IOException {
+		if (position == buffer.length) {
+			drain();
+		}
+		buffer[position++] = (byte) b;
+	}
+
+	void writeBytes(byte[] bytes) throws IOException {
+		if (bytes.length > buffer.length - position) {
+			drain();
+			if (bytes.length > buffer.length) {
+				write(bytes, bytes.length);
+				return;
+			}
+		}
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	/**
+	 * Writes a basic attribute value: numbers and booleans as they are, null as null, anything else as the string of its
+	 * toString.
+	 */
+	void writeValue(Object value) throws IOException {
+		if (value == null) {
+			writeAscii("null");
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+				|| value instanceof BigInteger || value instanceof BigDecimal || value instanceof Boolean) {
+			writeAscii(value.toString());
+		} else if ((value instanceof Double || value instanceof Float) && isFinite(((Number) value).doubleValue())) {
+			//NaN and Infinity are not JSON numbers, and end up as strings
+			writeAscii(value.toString());
+		} else {
+			writeString(value.toString());
+		}
+	}
+
+	private static boolean isFinite(double value) {
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+
+	void writeAscii(String ascii) throws IOException {
+		for (int i = 0; i < ascii.length(); i++) {
+			writeByte(ascii.charAt(i));
+		}
+	}
+
+	void writeString(CharSequence chars) throws IOException {
+		writeByte('"');
+		int length = chars.length();
+		for (int i = 0; i < length; i++) {
+			char c = chars.charAt(i);
+			if (c == '"' || c == '\\') {
+				writeByte('\\');
+				writeByte(c);
+			} else if (c < 0x20) {
+				writeControl(c);
+			} else if (c < 0x80) {
+				writeByte(c);
+			} else if (c < 0x800) {
+				writeByte(0xc0 | c >> 6);
+				writeByte(0x80 | c & 0x3f);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+				writeByte(0xf0 | codePoint >> 18);
+				writeByte(0x80 | codePoint >> 12 & 0x3f);
+				writeByte(0x80 | codePoint >> 6 & 0x3f);
+				writeByte(0x80 | codePoint & 0x3f);
+			} else if (Character.isSurrogate(c)) {
+				//a lone surrogate has no UTF-8 form, but JSON can escape it
+				writeEscape(c);
+			} else {
+				writeByte(0xe0 | c >> 12);
+				writeByte(0x80 | c >> 6 & 0x3f);
+				writeByte(0x80 | c & 0x3f);
+			}
+		}
+		writeByte('"');
+	}
+
+	private void writeControl(char c) throws IOException {
+		switch (c) {
+		case '\b':
+			writeAscii("\\b");
+			break;
+		case '\f':
+			writeAscii("\\f");
+			break;
+		case '\n':
+			writeAscii("\\n");
+			break;
+		case '\r':
+			writeAscii("\\r");
+			break;
+		case '\t':
+			writeAscii("\\t");
+			break;
+		default:
+			writeEscape(c);
+		}
+	}
+
+	private void writeEscape(char c) throws IOException {
+		writeAscii("\\u");
+		writeByte(HEX[c >> 12 & 0xf]);
+		writeByte(HEX[c >> 8 & 0xf]);
+		writeByte(HEX[c >> 4 & 0xf]);
+		writeByte(HEX[c & 0xf]);
+	}
+
+	/**
+	 * Writes out what is buffered, and flushes the stream.
+	 */
+	void flush() throws IOException {
+		drain();
+		if (stream != null) {
+			stream.flush();
+		}
+	}
+
+	private void drain() throws IOException {
+		if (position > 0) {
+			write(buffer, position);
+			position = 0;
+		}
+	}
+
+	private void write(byte[] bytes, int length) throws IOException {
+		if (stream != null) {
+			stream.write(bytes, 0, length);
+		} else {
+			ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, 0, length);
+			while (byteBuffer.hasRemaining()) {
+				channel.write(byteBuffer);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,223 @@
+package com.test.eclipselink.jpa.test_copy.snapshot;
+
+import java.nio.ByteBuffer;
+
+import com.test.eclipselink.jpa.test_copy.snapshot.SnapshotLayout.Kind;
+
+/**
+ *
+ * A view of one entity of a snapshot (see SnapshotStore and SnapshotFile): every getter reads the buffer, nothing is decoded up front.
+ *
+ * As with the copies of a CASCADE_TREE CopyGroup, reading an attribute that was not loaded when the snapshot was taken
+ * throws an IllegalStateException; so does reading a snapshot that was freed.
+ *
+ */
+public final class EntitySnapshot {
+
+	private static final int NULL = -1;
+	private static final int NOT_LOADED = -2;
+
+	private final SnapshotLayouts layouts;
+	private final Slab slab;
+	private final int generation;
+	//the buffer of the slab when the view was made: a view of a SnapshotFile keeps reading the mapping it was made from
+	//as the file grows and gets remapped, and the buffer of a released slab stays readable until the view is gone
+	private final ByteBuffer buffer;
+	private final int base;
+	private final int record;
+	private final SnapshotLayout layout;
+
+	EntitySnapshot(SnapshotLayouts layouts, Slab slab, int generation, int base, int record) {
+		this(layouts, slab, generation, slab.buffer, base, record);
+	}
+
+	private EntitySnapshot(SnapshotLayouts layouts, Slab slab, int generation, ByteBuffer buffer, int base, int record) {
+		if (buffer == null) {
+			throw freed();
+		}
+		this.layouts = layouts;
+		this.slab = slab;
+		this.generation = generation;
+		this.buffer = buffer;
+		this.base = base;
+		this.record = record;
+		long stamp = beginRead();
+		int classIndex = buffer().getInt(record);
+		endRead(stamp);
+		this.layout = layouts.get(classIndex);
+	}
+
+	public Class<?> getEntityClass() {
+		return layout.getEntityClass();
+	}
+
+	public boolean isLoaded(String attributeName) {
+		int position = layout.position(attributeName);
+		long stamp = beginRead();
+		long loaded = buffer().getLong(record + 4);
+		endRead(stamp);
+		return (loaded & (1L << position)) != 0;
+	}
+
+	public boolean isNull(String attributeName) {
+		int position = position(attributeName, null);
+		long stamp = beginRead();
+		int slot = slot(buffer(), position);
+		endRead(stamp);
+		return checkLoaded(slot, position) == NULL;
+	}
+
+	/**
+	 * The value of a basic attribute, boxed (or decoded, for a string); null if it is null.
+	 */
+	public Object get(String attributeName) {
+		int position = layout.position(attributeName);
+		if (layout.kinds[position] == Kind.STRING) {
+			CharSequence chars = getChars(attributeName);
+			return chars == null ? null : chars.toString();
+		}
+		long stamp = beginRead();
+		ByteBuffer buffer = buffer();
+		int slot = slot(buffer, position);
+		long value = slot < 0 ? 0 : buffer.getLong(slot);
+		endRead(stamp);
+		return checkLoaded(slot, position) == NULL ? null : layout.fromSlot(position, value);
+	}
+
+	/**
+	 * The value of a long attribute; 0 if it is null.
+	 */
+	public long getLong(String attributeName) {
+		int position = position(attributeName, Kind.LONG);
+		long stamp = beginRead();
+		ByteBuffer buffer = buffer();
+		int slot = slot(buffer, position);
+		long value = slot < 0 ? 0 : buffer.getLong(slot);
+		endRead(stamp);
+		checkLoaded(slot, position);
+		return value;
+	}
+
+	public String getString(String attributeName) {
+		CharSequence chars = getChars(attributeName);
+		return chars == null ? null : chars.toString();
+	}
+
+	/**
+	 * The characters of a string attribute, read from the buffer as they are asked for; null if it is null.
+	 */
+	public CharSequence getChars(String attributeName) {
+		int position = position(attributeName, Kind.STRING);
+		long stamp = beginRead();
+		ByteBuffer buffer = buffer();
+		int slot = slot(buffer, position);
+		int offset = slot < 0 ? 0 : buffer.getInt(slot);
+		int lengthAndCoder = slot < 0 ? 0 : buffer.getInt(slot + 4);
+		endRead(stamp);
+		if (checkLoaded(slot, position) == NULL) {
+			return null;
+		}
+		return new SnapshotChars(this, base + offset, lengthAndCoder >>> 1, (lengthAndCoder & 1) != 0);
+	}
+
+	/**
+	 * The entity referenced by a reference attribute, in the same snapshot; null if it is null.
+	 */
+	public EntitySnapshot getReference(String attributeName) {
+		int position = position(attributeName, Kind.REFERENCE);
+		long stamp = beginRead();
+		ByteBuffer buffer = buffer();
+		int slot = slot(buffer, position);
+		long offset = slot < 0 ? 0 : buffer.getLong(slot);
+		endRead(stamp);
+		if (checkLoaded(slot, position) == NULL) {
+			return null;
+		}
+		return new EntitySnapshot(layouts, slab, generation, this.buffer, base, base + (int) offset);
+	}
+
+	char charAt(int offset, boolean utf16) {
+		long stamp = beginRead();
+		ByteBuffer buffer = buffer();
+		char c = utf16 ? buffer.getChar(offset) : (char) (buffer.get(offset) & 0xFF);
+		endRead(stamp);
+		return c;
+	}
+
+	private int position(String attributeName, Kind kind) {
+		int position = layout.position(attributeName);
+		if (kind != null && layout.kinds[position] != kind) {
+			throw new IllegalArgumentException("The attribute '" + attributeName + "' of "
+					+ layout.getEntityClass().getName() + " is a " + layout.kinds[position] + ", not a " + kind + ".");
+		}
+		return position;
+	}
+
+	//the index of the slot of an attribute, NULL if it is null, or NOT_LOADED; to be checked once the read is validated
+	private int slot(ByteBuffer buffer, int position) {
+		if ((buffer.getLong(record + 4) & (1L << position)) == 0) {
+			return NOT_LOADED;
+		}
+		if ((buffer.getLong(record + 12) & (1L << position)) != 0) {
+			return NULL;
+		}
+		return record + SnapshotLayout.HEADER_SIZE + position * SnapshotLayout.SLOT_SIZE;
+	}
+
+	private int checkLoaded(int slot, int position) {
+		if (slot == NOT_LOADED) {
+			throw new IllegalStateException("The attribute '" + layout.attributeNames[position] + "' of "
+					+ layout.getEntityClass().getName() + " was not loaded when the snapshot was taken.");
+		}
+		return slot;
+	}
+
+	//what is read between beginRead and endRead is only used once endRead returns (see Slab)
+	private long beginRead() {
+		long stamp = slab.lock.tryOptimisticRead();
+		if (stamp == 0 || slab.generation != generation) {
+			throw freed();
+		}
+		return stamp;
+	}
+
+	private void endRead(long stamp) {
+		if (!slab.lock.validate(stamp)) {
+			throw freed();
+		}
+	}
+
+	private ByteBuffer buffer() {
+		if (buffer.getInt(base + 4) == SnapshotWriter.FREED) {
+			throw freed();
+		}
+		return buffer;
+	}
+
+	private static IllegalStateException freed() {
+		return new IllegalStateException("The snapshot was freed.");
+	}
+
+	/**
+	 * Whether both views show the same entity of the same snapshot, e.g. a root and what its back-reference leads to.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof EntitySnapshot)) {
+			return false;
+		}
+		EntitySnapshot other = (EntitySnapshot) obj;
+		return slab == other.slab && generation == other.generation && record == other.record;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * slab.index + record;
+	}
+
+	@Override
+	public String toString() {
+		return "EntitySnapshot(" + layout.getEntityClass().getSimpleName() + "@" + (record - base) + ")";
+	}
+
+}
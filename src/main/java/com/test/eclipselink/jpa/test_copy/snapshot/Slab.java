@@ -0,0 +1,45 @@
+package com.test.eclipselink.jpa.test_copy.snapshot;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *
+ * A buffer snapshots are appended to: a direct buffer of a SnapshotStore, or the mapping of a SnapshotFile.
+ *
+ * Its generation changes whenever it is released, which invalidates the handles and EntitySnapshots of the snapshots
+ * it held. Views read the buffer the slab had when they were made; a SnapshotFile replaces it with a larger mapping as
+ * the file grows.
+ *
+ * Views read without locking: they read optimistically through the lock, and only trust what they read once the lock
+ * validates it. Releasing the slab takes the write lock, so that a read racing a release - which may have read the
+ * snapshots written into the slab once it is reused - fails instead of returning those. The memory of the buffer is
+ * never freed explicitly, a view may still be reading it; it goes when the last view does.
+ *
+ */
+final class Slab {
+
+	final int index;
+	final StampedLock lock = new StampedLock();
+	volatile ByteBuffer buffer;
+	volatile int generation;
+	int position;
+	int live;
+
+	Slab(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Changes the generation, failing the reads in progress.
+	 */
+	void release() {
+		long stamp = lock.writeLock();
+		try {
+			generation++;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.test.eclipselink.jpa.test_copy.snapshot;
+
+/**
+ *
+ * The characters of a string in a snapshot, read from the buffer one at a time: one byte per character for Latin-1
+ * strings, two otherwise.
+ *
+ */
+final class SnapshotChars implements CharSequence {
+
+	private final EntitySnapshot owner;
+	private final int offset;
+	private final int length;
+	private final boolean utf16;
+
+	SnapshotChars(EntitySnapshot owner, int offset, int length, boolean utf16) {
+		this.owner = owner;
+		this.offset = offset;
+		this.length = length;
+		this.utf16 = utf16;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+		return owner.charAt(utf16 ? offset + 2 * index : offset + index, utf16);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+		}
+		return new SnapshotChars(owner, offset + (utf16 ? 2 * start : start), end - start, utf16);
+	}
+
+	@Override
+	public String toString() {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = charAt(i);
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,312 @@
+package com.test.eclipselink.jpa.test_copy.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+import com.test.eclipselink.jpa.test_copy.snapshot.SnapshotLayout.Kind;
+
+/**
+ *
+ * Keeps snapshots of entity graphs in an append-only, memory-mapped file, so that they survive a restart: opening the
+ * file maps it and reads back the handles of its snapshots, without a query.
+ *
+ * The file is versioned: an 8-byte header (the magic number and the format version, big-endian as everything else),
+ * then entries, each starting with its length and its type:
+ *      -a class entry describes the layout of the records of one entity class (see SnapshotLayout): its class index,
+ *      the name of the class, and the kind and name of every attribute, in slot order
+ *      -a snapshot entry is a snapshot as a SnapshotStore writes it (see SnapshotWriter), references being offsets of
+ *      records within it, so back-references like "association1.circularRef" survive the restart
+ *
+ * A class entry is written before the first snapshot of its class. The layouts read back are kept as they were
+ * written: if the descriptor of a class has changed since, the old snapshots still read as they were taken, and a new
+ * class entry is written for the new ones.
+ *
+ * The length of an entry is written last: an entry whose length reads 0 was never completely written, and ends the file
+ * when it is opened again - it is zeroed, and the next entry is written over it. Appending does not force the mapping to the disk; see
+ * {@link #force()}.
+ *
+ * The file is locked while it is open, so one process at a time appends to it. Appending is synchronized, reading
+ * EntitySnapshots is not; the file is remapped as it grows, previous mappings being left to the garbage collector, so
+ * views read before a remapping stay valid. Closing the file does not unmap it either: reads racing the close fail
+ * with an IllegalStateException, as they do for a SnapshotStore.
+ *
+ */
+public class SnapshotFile implements Closeable {
+
+	public static final int MAGIC = 0x534E4150;
+	public static final int FORMAT_VERSION = 1;
+
+	static final int FILE_HEADER_SIZE = 8;
+	static final int CLASS_ENTRY = 2;
+	private static final int INITIAL_MAPPING_SIZE = 1 << 20;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final SnapshotLayouts layouts;
+	private final SnapshotWriter writer;
+	private final Slab slab = new Slab(0);
+	private int writtenLayouts;
+	private long[] handles = new long[16];
+	private int snapshotCount;
+
+	/**
+	 * Opens the given file, creating it if it does not exist.
+	 *
+	 * @throws IOException if the file cannot be mapped or locked, or is not a snapshot file of the supported version
+	 */
+	public SnapshotFile(EntityManagerFactory emf, Path path) throws IOException {
+		AbstractSession session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.path = path;
+		this.layouts = new SnapshotLayouts(session);
+		this.writer = new SnapshotWriter(session, layouts, new FetchStateTracker(emf));
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			if (channel.tryLock() == null) {
+				throw new IOException(path + " is open in another process.");
+			}
+			long fileSize = channel.size();
+			if (fileSize > Integer.MAX_VALUE) {
+				throw new IOException(path + " is larger than a mapping can be.");
+			}
+			map(Math.max((int) fileSize, INITIAL_MAPPING_SIZE));
+			if (fileSize == 0) {
+				slab.buffer.putInt(0, MAGIC);
+				slab.buffer.putInt(4, FORMAT_VERSION);
+				slab.position = FILE_HEADER_SIZE;
+			} else {
+				load((int) fileSize);
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void load(int fileSize) throws IOException {
+		ByteBuffer buffer = slab.buffer;
+		if (fileSize < FILE_HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException(path + " is not a snapshot file.");
+		}
+		if (buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IOException(path + " is of the format version " + buffer.getInt(4) + ", not "
+					+ FORMAT_VERSION + ".");
+		}
+		int position = FILE_HEADER_SIZE;
+		while (position <= fileSize - SnapshotWriter.SNAPSHOT_HEADER_SIZE) {
+			int length = buffer.getInt(position);
+			if (length == 0 || length > fileSize - position) {
+				//an entry that was not completely written
+				break;
+			}
+			if (length < SnapshotWriter.SNAPSHOT_HEADER_SIZE) {
+				throw new IOException(path + " has an entry of " + length + " bytes at " + position + ".");
+			}
+			int type = buffer.getInt(position + 4);
+			if (type == CLASS_ENTRY) {
+				layouts.add(readLayout(buffer, position + SnapshotWriter.SNAPSHOT_HEADER_SIZE));
+				writtenLayouts++;
+			} else if (type == 0) {
+				addHandle(position);
+			} else {
+				throw new IOException(path + " has an entry of the unknown type " + type + " at " + position + ".");
+			}
+			position += length;
+		}
+		slab.position = position;
+		if (position < fileSize) {
+			//what is left of a torn entry would be read as the header of the entries written after a shorter one over it
+			for (int index = position; index < fileSize; index++) {
+				buffer.put(index, (byte) 0);
+			}
+			((MappedByteBuffer) buffer).force();
+		}
+	}
+
+	private SnapshotLayout readLayout(ByteBuffer buffer, int index) throws IOException {
+		int classIndex = buffer.getInt(index);
+		String className = readString(buffer, index + 4);
+		index += 4 + 2 + 2 * className.length();
+		ClassDescriptor descriptor = layouts.descriptor(className);
+		if (descriptor == null) {
+			throw new IOException(path + " has snapshots of " + className
+					+ ", which is not an entity of the persistence unit.");
+		}
+		int count = buffer.getInt(index);
+		index += 4;
+		String[] attributeNames = new String[count];
+		Kind[] kinds = new Kind[count];
+		for (int i = 0; i < count; i++) {
+			int kind = buffer.get(index);
+			if (kind < 0 || kind >= Kind.values().length) {
+				throw new IOException(path + " has an attribute of the unknown kind " + kind + ".");
+			}
+			kinds[i] = Kind.values()[kind];
+			attributeNames[i] = readString(buffer, index + 1);
+			index += 1 + 2 + 2 * attributeNames[i].length();
+		}
+		return new SnapshotLayout(classIndex, descriptor, attributeNames, kinds);
+	}
+
+	/**
+	 * Appends a snapshot of the graph of the given entity and returns its handle, valid across restarts.
+	 *
+	 * @throws IOException if the file cannot be remapped to grow
+	 */
+	public synchronized long append(Object entity) throws IOException {
+		checkOpen();
+		int size = writer.measure(entity);
+		for (; writtenLayouts < layouts.size(); writtenLayouts++) {
+			writeLayout(layouts.get(writtenLayouts));
+		}
+		int base = reserve(size);
+		writer.write(slab.buffer, base);
+		slab.position += size;
+		addHandle(base);
+		return base;
+	}
+
+	private void writeLayout(SnapshotLayout layout) throws IOException {
+		int size = SnapshotWriter.SNAPSHOT_HEADER_SIZE + 4 + 2 + 2 * layout.descriptor.getJavaClassName().length() + 4;
+		for (String attributeName : layout.attributeNames) {
+			size += 1 + 2 + 2 * attributeName.length();
+		}
+		int base = reserve(size);
+		ByteBuffer buffer = slab.buffer;
+		buffer.putInt(base, 0);
+		buffer.putInt(base + 4, CLASS_ENTRY);
+		int index = base + SnapshotWriter.SNAPSHOT_HEADER_SIZE;
+		buffer.putInt(index, layout.classIndex);
+		index = writeString(buffer, index + 4, layout.descriptor.getJavaClassName());
+		buffer.putInt(index, layout.attributeNames.length);
+		index += 4;
+		for (int i = 0; i < layout.attributeNames.length; i++) {
+			buffer.put(index, (byte) layout.kinds[i].ordinal());
+			index = writeString(buffer, index + 1, layout.attributeNames[i]);
+		}
+		buffer.putInt(base, size);
+		slab.position += size;
+	}
+
+	/**
+	 * Returns the root of the snapshot of the given handle.
+	 *
+	 * @throws IllegalArgumentException if there is no snapshot at the given handle
+	 * @throws IllegalStateException if the file was closed
+	 */
+	public synchronized EntitySnapshot get(long handle) {
+		checkOpen();
+		if (Arrays.binarySearch(handles, 0, snapshotCount, handle) < 0) {
+			throw new IllegalArgumentException("There is no snapshot at " + handle + " in " + path + ".");
+		}
+		int base = (int) handle;
+		return new EntitySnapshot(layouts, slab, slab.generation, base, base + SnapshotWriter.SNAPSHOT_HEADER_SIZE);
+	}
+
+	/**
+	 * The handles of the snapshots of the file, in the order they were appended.
+	 */
+	public synchronized long[] getHandles() {
+		return Arrays.copyOf(handles, snapshotCount);
+	}
+
+	public synchronized int getSnapshotCount() {
+		return snapshotCount;
+	}
+
+	/**
+	 * The bytes taken by the entries of the file.
+	 */
+	public synchronized long getSize() {
+		return slab.position;
+	}
+
+	/**
+	 * Writes what was appended to the disk.
+	 */
+	public synchronized void force() {
+		checkOpen();
+		((MappedByteBuffer) slab.buffer).force();
+	}
+
+	/**
+	 * Forces, trims and unlocks the file; its snapshots cannot be read anymore. The mapping is left to the garbage
+	 * collector, as reads racing the close may still be using it.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (slab.buffer == null) {
+			return;
+		}
+		((MappedByteBuffer) slab.buffer).force();
+		slab.release();
+		slab.buffer = null;
+		try {
+			channel.truncate(slab.position);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void checkOpen() {
+		if (slab.buffer == null) {
+			throw new IllegalStateException(path + " was closed.");
+		}
+	}
+
+	//the index to write an entry of the given size at, the file being remapped if it has to grow
+	private int reserve(int size) throws IOException {
+		long end = (long) slab.position + size;
+		if (end > Integer.MAX_VALUE) {
+			throw new IllegalStateException(path + " is full.");
+		}
+		if (end > slab.buffer.capacity()) {
+			map((int) Math.min(Integer.MAX_VALUE, Math.max(end, 2L * slab.buffer.capacity())));
+		}
+		return slab.position;
+	}
+
+	private void map(int size) throws IOException {
+		slab.buffer = channel.map(MapMode.READ_WRITE, 0, size);
+	}
+
+	private void addHandle(long handle) {
+		if (snapshotCount == handles.length) {
+			handles = Arrays.copyOf(handles, 2 * snapshotCount);
+		}
+		handles[snapshotCount++] = handle;
+	}
+
+	private static String readString(ByteBuffer buffer, int index) {
+		char[] chars = new char[buffer.getShort(index) & 0xFFFF];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = buffer.getChar(index + 2 + 2 * i);
+		}
+		return new String(chars);
+	}
+
+	private static int writeString(ByteBuffer buffer, int index, String string) {
+		buffer.putShort(index, (short) string.length());
+		index += 2;
+		for (int i = 0; i < string.length(); i++) {
+			buffer.putChar(index, string.charAt(i));
+			index += 2;
+		}
+		return index;
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.test.eclipselink.jpa.test_copy.snapshot;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+
+/**
+ *
+ * The binary layout of the records of one entity class, derived from its descriptor.
+ *
+ * A record is a fixed-size header followed by one 8-byte slot per mapping, in the order of the descriptor's mappings:
+ *      -the index of the class in the store (int)
+ *      -a bitmap of the loaded attributes (long), and one of the null ones (long)
+ *      -the slots: numbers as raw long bits, strings as the offset and the length of their characters, references as the
+ *      offset of the referenced record - all offsets being relative to the start of the snapshot
+ *
+ * Only basic attributes of the common immutable types and single-valued references are supported; collections and
+ * aggregates would need variable-sized slots.
+ *
+ * A layout read back from a SnapshotFile keeps the attribute names and kinds it was written with, whatever the
+ * descriptor maps now: its mappings are only those still mapped by the same name, and are not used for reading.
+ *
+ */
+final class SnapshotLayout {
+
+	static final int HEADER_SIZE = 20;
+	static final int SLOT_SIZE = 8;
+	static final int MAXIMUM_MAPPINGS = 64;
+
+	enum Kind {
+		STRING, LONG, INT, SHORT, BYTE, BOOLEAN, DOUBLE, FLOAT, CHAR, REFERENCE
+	}
+
+	final int classIndex;
+	final ClassDescriptor descriptor;
+	final DatabaseMapping[] mappings;
+	final String[] attributeNames;
+	final Kind[] kinds;
+	final int recordSize;
+	private final Map<String, Integer> positions = new HashMap<String, Integer>();
+
+	SnapshotLayout(int classIndex, ClassDescriptor descriptor) {
+		List<DatabaseMapping> descriptorMappings = descriptor.getMappings();
+		if (descriptorMappings.size() > MAXIMUM_MAPPINGS) {
+			throw new IllegalArgumentException(descriptor.getJavaClassName() + " maps more than " + MAXIMUM_MAPPINGS
+					+ " attributes.");
+		}
+		this.classIndex = classIndex;
+		this.descriptor = descriptor;
+		this.mappings = descriptorMappings.toArray(new DatabaseMapping[descriptorMappings.size()]);
+		this.attributeNames = new String[mappings.length];
+		this.kinds = new Kind[mappings.length];
+		for (int i = 0; i < mappings.length; i++) {
+			attributeNames[i] = mappings[i].getAttributeName();
+			kinds[i] = kind(descriptor, mappings[i]);
+			positions.put(attributeNames[i], i);
+		}
+		this.recordSize = HEADER_SIZE + SLOT_SIZE * mappings.length;
+	}
+
+	/**
+	 * A layout as it was written, e.g. in a SnapshotFile.
+	 */
+	SnapshotLayout(int classIndex, ClassDescriptor descriptor, String[] attributeNames, Kind[] kinds) {
+		if (attributeNames.length > MAXIMUM_MAPPINGS) {
+			throw new IllegalArgumentException(descriptor.getJavaClassName() + " maps more than " + MAXIMUM_MAPPINGS
+					+ " attributes.");
+		}
+		this.classIndex = classIndex;
+		this.descriptor = descriptor;
+		this.mappings = new DatabaseMapping[attributeNames.length];
+		this.attributeNames = attributeNames;
+		this.kinds = kinds;
+		for (int i = 0; i < attributeNames.length; i++) {
+			mappings[i] = descriptor.getMappingForAttributeName(attributeNames[i]);
+			positions.put(attributeNames[i], i);
+		}
+		this.recordSize = HEADER_SIZE + SLOT_SIZE * attributeNames.length;
+	}
+
+	private static Kind kind(ClassDescriptor descriptor, DatabaseMapping mapping) {
+		if (mapping.isObjectReferenceMapping()) {
+			return Kind.REFERENCE;
+		}
+		if (mapping.isAbstractDirectMapping()) {
+			Class<?> type = mapping.getAttributeAccessor().getAttributeClass();
+			if (type == String.class) {
+				return Kind.STRING;
+			} else if (type == Long.class || type == long.class) {
+				return Kind.LONG;
+			} else if (type == Integer.class || type == int.class) {
+				return Kind.INT;
+			} else if (type == Short.class || type == short.class) {
+				return Kind.SHORT;
+			} else if (type == Byte.class || type == byte.class) {
+				return Kind.BYTE;
+			} else if (type == Boolean.class || type == boolean.class) {
+				return Kind.BOOLEAN;
+			} else if (type == Double.class || type == double.class) {
+				return Kind.DOUBLE;
+			} else if (type == Float.class || type == float.class) {
+				return Kind.FLOAT;
+			} else if (type == Character.class || type == char.class) {
+				return Kind.CHAR;
+			}
+		}
+		throw new IllegalArgumentException("The attribute '" + mapping.getAttributeName() + "' of "
+				+ descriptor.getJavaClassName() + " cannot be snapshotted.");
+	}
+
+	/**
+	 * Whether records of both layouts are written the same way, whatever their class index.
+	 */
+	boolean hasSameSlots(SnapshotLayout other) {
+		return descriptor == other.descriptor && Arrays.equals(attributeNames, other.attributeNames)
+				&& Arrays.equals(kinds, other.kinds);
+	}
+
+	Class<?> getEntityClass() {
+		return descriptor.getJavaClass();
+	}
+
+	int position(String attributeName) {
+		Integer position = positions.get(attributeName);
+		if (position == null) {
+			throw new IllegalArgumentException(
+					"The attribute '" + attributeName + "' is not mapped by " + descriptor.getJavaClassName() + ".");
+		}
+		return position;
+	}
+
+	/**
+	 * The slot of a number, as raw long bits.
+	 */
+	long toSlot(int position, Object value) {
+		switch (kinds[position]) {
+		case LONG:
+		case INT:
+		case SHORT:
+		case BYTE:
+			return ((Number) value).longValue();
+		case BOOLEAN:
+			return ((Boolean) value) ? 1 : 0;
+		case DOUBLE:
+			return Double.doubleToRawLongBits((Double) value);
+		case FLOAT:
+			return Float.floatToRawIntBits((Float) value);
+		case CHAR:
+			return (Character) value;
+		default:
+			throw new IllegalStateException(kinds[position] + " is not stored as a number.");
+		}
+	}
+
+	/**
+	 * The boxed value of a number slot.
+	 */
+	Object fromSlot(int position, long slot) {
+		switch (kinds[position]) {
+		case LONG:
+			return slot;
+		case INT:
+			return (int) slot;
+		case SHORT:
+			return (short) slot;
+		case BYTE:
+			return (byte) slot;
+		case BOOLEAN:
+			return slot != 0;
+		case DOUBLE:
+			return Double.longBitsToDouble(slot);
+		case FLOAT:
+			return Float.intBitsToFloat((int) slot);
+		case CHAR:
+			return (char) slot;
+		default:
+			throw new IllegalStateException(kinds[position] + " is not stored as a number.");
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.test.eclipselink.jpa.test_copy.snapshot;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+
+/**
+ *
+ * The layouts of the records of a SnapshotStore or a SnapshotFile, by class index: the index records are written with.
+ *
+ * Records are written with the layout of the current descriptor of their class ({@link #forClass(Class)}), created the
+ * first time the class is written; a SnapshotFile also adds the layouts it reads back ({@link #add(SnapshotLayout)}).
+ *
+ * Adding is done under the lock of the owner; getting by index is not, and is safe as the layouts are kept in a
+ * CopyOnWriteArrayList.
+ *
+ */
+final class SnapshotLayouts {
+
+	private final AbstractSession session;
+	private final Map<Class<?>, SnapshotLayout> current = new IdentityHashMap<Class<?>, SnapshotLayout>();
+	private final List<SnapshotLayout> byIndex = new CopyOnWriteArrayList<SnapshotLayout>();
+
+	SnapshotLayouts(AbstractSession session) {
+		this.session = session;
+	}
+
+	SnapshotLayout get(int classIndex) {
+		return byIndex.get(classIndex);
+	}
+
+	int size() {
+		return byIndex.size();
+	}
+
+	SnapshotLayout forClass(Class<?> entityClass) {
+		SnapshotLayout layout = current.get(entityClass);
+		if (layout == null) {
+			layout = new SnapshotLayout(byIndex.size(), descriptor(entityClass));
+			current.put(entityClass, layout);
+			byIndex.add(layout);
+		}
+		return layout;
+	}
+
+	/**
+	 * Adds a layout read back with the next class index; it is used for writing too if it matches the current
+	 * descriptor of its class.
+	 */
+	void add(SnapshotLayout layout) {
+		if (layout.classIndex != byIndex.size()) {
+			throw new IllegalArgumentException("Expected the class index " + byIndex.size() + ", not "
+					+ layout.classIndex + ".");
+		}
+		byIndex.add(layout);
+		if (layout.hasSameSlots(new SnapshotLayout(layout.classIndex, layout.descriptor))) {
+			current.put(layout.getEntityClass(), layout);
+		} else {
+			current.remove(layout.getEntityClass());
+		}
+	}
+
+	ClassDescriptor descriptor(Class<?> entityClass) {
+		ClassDescriptor descriptor = session.getDescriptor(entityClass);
+		if (descriptor == null) {
+			throw new IllegalArgumentException(entityClass.getName() + " is not an entity of the persistence unit.");
+		}
+		return descriptor;
+	}
+
+	/**
+	 * The descriptor of the entity class of the given name, or null.
+	 */
+	ClassDescriptor descriptor(String entityClassName) {
+		for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+			if (entityClassName.equals(descriptor.getJavaClassName())) {
+				return descriptor;
+			}
+		}
+		return null;
+	}
+
+}
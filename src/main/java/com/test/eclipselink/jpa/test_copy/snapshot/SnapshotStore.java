@@ -0,0 +1,221 @@
+package com.test.eclipselink.jpa.test_copy.snapshot;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+
+/**
+ *
+ * Keeps immutable snapshots of entity graphs (typically CASCADE_ALL_PARTS copies) off the heap, in direct ByteBuffers.
+ *
+ * A snapshot is written in one piece into a slab (see SnapshotWriter): one record per entity of the graph, then the
+ * characters of its strings. An entity reached twice, like the root through "association1.circularRef", is written once:
+ * references are offsets, so back-references survive.
+ *
+ * Only what is loaded is written, so snapshotting never triggers a load, and a snapshot knows which attributes it does
+ * not have.
+ *
+ * Reading a snapshot ({@link #get(long)}) builds no object graph: the EntitySnapshot it returns reads its fields from the
+ * buffer when asked, and strings can be read as CharSequences over the buffer without being copied.
+ *
+ * Once every snapshot of a slab has been freed ({@link #free(long)}), the slab is kept for reuse, or dropped if enough
+ * slabs are kept already; its memory then goes with the last EntitySnapshot still reading it. Writing and freeing are
+ * synchronized, reading is not: EntitySnapshots read optimistically (see Slab), so those of freed snapshots fail fast,
+ * even while another thread frees them, instead of reading what the slab holds next.
+ *
+ */
+public class SnapshotStore implements Closeable {
+
+	public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+	private static final int MAXIMUM_POOLED_SLABS = 4;
+
+	private final SnapshotLayouts layouts;
+	private final SnapshotWriter writer;
+	private final int slabSize;
+
+	private final List<Slab> slabs = new ArrayList<Slab>();
+	private final ArrayDeque<Slab> pooledSlabs = new ArrayDeque<Slab>();
+	private final ArrayDeque<Slab> releasedSlabs = new ArrayDeque<Slab>();
+	private Slab currentSlab;
+	private long snapshotCount;
+	private long usedBytes;
+
+	public SnapshotStore(EntityManagerFactory emf) {
+		this(emf, DEFAULT_SLAB_SIZE);
+	}
+
+	/**
+	 * @param slabSize the size of the direct buffers snapshots are written in; a larger snapshot gets a slab of its own
+	 */
+	public SnapshotStore(EntityManagerFactory emf, int slabSize) {
+		if (slabSize < SnapshotWriter.SNAPSHOT_HEADER_SIZE) {
+			throw new IllegalArgumentException("The slab size is too small: " + slabSize);
+		}
+		AbstractSession session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.layouts = new SnapshotLayouts(session);
+		this.writer = new SnapshotWriter(session, layouts, new FetchStateTracker(emf));
+		this.slabSize = slabSize;
+	}
+
+	/**
+	 * Writes a snapshot of the graph of the given entity and returns its handle.
+	 */
+	public synchronized long put(Object entity) {
+		int size = writer.measure(entity);
+		Slab slab = slabFor(size);
+		int base = slab.position;
+		writer.write(slab.buffer, base);
+		slab.position += size;
+		slab.live++;
+		snapshotCount++;
+		usedBytes += size;
+		return handle(slab, base);
+	}
+
+	/**
+	 * Returns the root of the snapshot of the given handle.
+	 *
+	 * @throws IllegalStateException if the snapshot was freed
+	 */
+	public synchronized EntitySnapshot get(long handle) {
+		Slab slab = slab(handle);
+		int base = (int) handle;
+		return new EntitySnapshot(layouts, slab, slab.generation, base, base + SnapshotWriter.SNAPSHOT_HEADER_SIZE);
+	}
+
+	/**
+	 * Frees the snapshot of the given handle; its slab is reused or freed once all of its snapshots are.
+	 *
+	 * @throws IllegalStateException if the snapshot was freed already
+	 */
+	public synchronized void free(long handle) {
+		Slab slab = slab(handle);
+		int base = (int) handle;
+		slab.buffer.putInt(base + 4, SnapshotWriter.FREED);
+		snapshotCount--;
+		usedBytes -= slab.buffer.getInt(base);
+		if (--slab.live == 0 && slab != currentSlab) {
+			release(slab);
+		}
+	}
+
+	/**
+	 * The number of snapshots in the store.
+	 */
+	public synchronized long getSnapshotCount() {
+		return snapshotCount;
+	}
+
+	/**
+	 * The bytes taken by the snapshots in the store.
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * The bytes of direct memory the store holds, reused slabs included; dropped slabs are not, though their memory may
+	 * not have been collected yet.
+	 */
+	public synchronized long getReservedBytes() {
+		long reserved = 0;
+		for (Slab slab : slabs) {
+			if (slab.buffer != null) {
+				reserved += slab.buffer.capacity();
+			}
+		}
+		return reserved;
+	}
+
+	/**
+	 * Drops every slab; the snapshots of the store cannot be read anymore.
+	 */
+	@Override
+	public synchronized void close() {
+		for (Slab slab : slabs) {
+			if (slab.buffer != null) {
+				slab.release();
+				slab.buffer = null;
+			}
+		}
+		pooledSlabs.clear();
+		releasedSlabs.clear();
+		releasedSlabs.addAll(slabs);
+		currentSlab = null;
+		snapshotCount = 0;
+		usedBytes = 0;
+	}
+
+	private Slab slabFor(int size) {
+		if (currentSlab != null && currentSlab.buffer.capacity() - currentSlab.position >= size) {
+			return currentSlab;
+		}
+		if (currentSlab != null && currentSlab.live == 0) {
+			release(currentSlab);
+		}
+		Slab slab = null;
+		for (Slab pooled : pooledSlabs) {
+			if (pooled.buffer.capacity() >= size) {
+				slab = pooled;
+				break;
+			}
+		}
+		if (slab != null) {
+			pooledSlabs.remove(slab);
+		} else {
+			slab = releasedSlabs.isEmpty() ? null : releasedSlabs.poll();
+			if (slab == null) {
+				if (slabs.size() > 0xFFFF) {
+					throw new IllegalStateException("The store holds too many slabs.");
+				}
+				slab = new Slab(slabs.size());
+				slabs.add(slab);
+			}
+			slab.buffer = ByteBuffer.allocateDirect(Math.max(slabSize, size));
+		}
+		slab.position = 0;
+		slab.live = 0;
+		currentSlab = slab;
+		return slab;
+	}
+
+	private void release(Slab slab) {
+		slab.release();
+		if (currentSlab == slab) {
+			currentSlab = null;
+		}
+		if (pooledSlabs.size() < MAXIMUM_POOLED_SLABS && slab.buffer.capacity() == slabSize) {
+			pooledSlabs.add(slab);
+		} else {
+			slab.buffer = null;
+			releasedSlabs.add(slab);
+		}
+	}
+
+	//a handle is the index of the slab (16 bits), its generation (16 bits) and the offset of the snapshot (32 bits)
+	private static long handle(Slab slab, int base) {
+		return ((long) slab.index << 48) | ((long) (slab.generation & 0xFFFF) << 32) | (base & 0xFFFFFFFFL);
+	}
+
+	private Slab slab(long handle) {
+		int index = (int) (handle >>> 48);
+		int generation = (int) (handle >>> 32) & 0xFFFF;
+		Slab slab = index < slabs.size() ? slabs.get(index) : null;
+		if (slab == null || slab.buffer == null || (slab.generation & 0xFFFF) != generation
+				|| slab.buffer.getInt((int) handle + 4) == SnapshotWriter.FREED) {
+			throw new IllegalStateException("The snapshot " + Long.toHexString(handle) + " was freed.");
+		}
+		return slab;
+	}
+
+}
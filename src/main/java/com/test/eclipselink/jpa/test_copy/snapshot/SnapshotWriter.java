@@ -0,0 +1,168 @@
+package com.test.eclipselink.jpa.test_copy.snapshot;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+import com.test.eclipselink.jpa.test_copy.snapshot.SnapshotLayout.Kind;
+
+/**
+ *
+ * Writes the snapshot of an entity graph, the same way for a SnapshotStore and a SnapshotFile, in two passes:
+ *      -{@link #measure(Object)} collects the entities of the graph in breadth-first order, gives each of them the offset
+ *      of its record, and returns the size of the snapshot
+ *      -{@link #write(ByteBuffer, int)} writes the snapshot at the given index of a buffer with room for it
+ *
+ * A snapshot is an 8-byte header - its length and its state, 0 or FREED - then the records (see SnapshotLayout), the
+ * root first, then the characters of its strings: one byte per character when they all fit in Latin-1, two otherwise.
+ * The length is written last, so a snapshot whose length reads 0 was never completely written.
+ *
+ * Only what is loaded is written, as told by a FetchStateTracker, so writing never triggers a load.
+ *
+ * A writer keeps the graph between both passes, and reuses its collections from one snapshot to the next: it is meant to
+ * be used under the lock of its owner.
+ *
+ */
+final class SnapshotWriter {
+
+	static final int SNAPSHOT_HEADER_SIZE = 8;
+	static final int FREED = 1;
+
+	private final AbstractSession session;
+	private final SnapshotLayouts layouts;
+	private final FetchStateTracker fetchStates;
+
+	private final List<Object> entities = new ArrayList<Object>();
+	private final Map<Object, Integer> offsets = new IdentityHashMap<Object, Integer>();
+	private int recordsEnd;
+	private int size;
+
+	SnapshotWriter(AbstractSession session, SnapshotLayouts layouts, FetchStateTracker fetchStates) {
+		this.session = session;
+		this.layouts = layouts;
+		this.fetchStates = fetchStates;
+	}
+
+	/**
+	 * The size of the snapshot of the graph of the given entity, header included.
+	 */
+	int measure(Object entity) {
+		entities.clear();
+		offsets.clear();
+		entities.add(entity);
+		offsets.put(entity, SNAPSHOT_HEADER_SIZE);
+		recordsEnd = SNAPSHOT_HEADER_SIZE + layouts.forClass(entity.getClass()).recordSize;
+		long stringsSize = 0;
+		for (int i = 0; i < entities.size(); i++) {
+			Object current = entities.get(i);
+			SnapshotLayout layout = layouts.forClass(current.getClass());
+			for (int position = 0; position < layout.mappings.length; position++) {
+				if (!fetchStates.isLoaded(current, position)) {
+					continue;
+				}
+				Object value = value(layout, position, current);
+				if (value == null) {
+					continue;
+				}
+				if (layout.kinds[position] == Kind.STRING) {
+					stringsSize += encodedSize((String) value);
+				} else if (layout.kinds[position] == Kind.REFERENCE && !offsets.containsKey(value)) {
+					entities.add(value);
+					offsets.put(value, recordsEnd);
+					recordsEnd += layouts.forClass(value.getClass()).recordSize;
+				}
+			}
+		}
+		long snapshotSize = recordsEnd + stringsSize;
+		if (snapshotSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The snapshot would take " + snapshotSize + " bytes.");
+		}
+		size = (int) snapshotSize;
+		return size;
+	}
+
+	/**
+	 * Writes the snapshot last measured at the given index.
+	 */
+	void write(ByteBuffer buffer, int base) {
+		int strings = base + recordsEnd;
+		buffer.putInt(base, 0);
+		buffer.putInt(base + 4, 0);
+		for (Object current : entities) {
+			SnapshotLayout layout = layouts.forClass(current.getClass());
+			int record = base + offsets.get(current);
+			long loaded = 0;
+			long nulls = 0;
+			for (int position = 0; position < layout.mappings.length; position++) {
+				int slot = record + SnapshotLayout.HEADER_SIZE + position * SnapshotLayout.SLOT_SIZE;
+				if (!fetchStates.isLoaded(current, position)) {
+					buffer.putLong(slot, 0);
+					continue;
+				}
+				loaded |= 1L << position;
+				Object value = value(layout, position, current);
+				if (value == null) {
+					nulls |= 1L << position;
+					buffer.putLong(slot, 0);
+				} else if (layout.kinds[position] == Kind.STRING) {
+					String string = (String) value;
+					boolean latin1 = isLatin1(string);
+					buffer.putInt(slot, strings - base);
+					buffer.putInt(slot + 4, string.length() << 1 | (latin1 ? 0 : 1));
+					strings = writeString(buffer, strings, string, latin1);
+				} else if (layout.kinds[position] == Kind.REFERENCE) {
+					buffer.putLong(slot, offsets.get(value));
+				} else {
+					buffer.putLong(slot, layout.toSlot(position, value));
+				}
+			}
+			buffer.putInt(record, layout.classIndex);
+			buffer.putLong(record + 4, loaded);
+			buffer.putLong(record + 12, nulls);
+		}
+		buffer.putInt(base, size);
+		entities.clear();
+		offsets.clear();
+	}
+
+	//the value of a loaded attribute; the value holder of a loaded reference is instantiated, so this runs no query
+	private Object value(SnapshotLayout layout, int position, Object entity) {
+		DatabaseMapping mapping = layout.mappings[position];
+		if (layout.kinds[position] == Kind.REFERENCE) {
+			return mapping.getRealAttributeValueFromObject(entity, session);
+		}
+		return mapping.getAttributeValueFromObject(entity);
+	}
+
+	private static boolean isLatin1(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (string.charAt(i) > 0xFF) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int encodedSize(String string) {
+		return isLatin1(string) ? string.length() : string.length() * 2;
+	}
+
+	private static int writeString(ByteBuffer buffer, int index, String string, boolean latin1) {
+		for (int i = 0; i < string.length(); i++) {
+			if (latin1) {
+				buffer.put(index++, (byte) string.charAt(i));
+			} else {
+				buffer.putChar(index, string.charAt(i));
+				index += 2;
+			}
+		}
+		return index;
+	}
+
+}
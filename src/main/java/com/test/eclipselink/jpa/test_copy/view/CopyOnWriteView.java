@@ -0,0 +1,20 @@
+package com.test.eclipselink.jpa.test_copy.view;
+
+/**
+ *
+ * Implemented by the views CopyOnWriteViews generates, which extend the class of the entity they show.
+ *
+ */
+public interface CopyOnWriteView {
+
+	/**
+	 * The entity the view reads through to.
+	 */
+	Object getOriginalEntity();
+
+	/**
+	 * The attributes set on the view, as a bitset of their positions in the descriptor of the entity's class.
+	 */
+	long getWrittenAttributes();
+
+}
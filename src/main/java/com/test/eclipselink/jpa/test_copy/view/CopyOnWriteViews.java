@@ -0,0 +1,296 @@
+package com.test.eclipselink.jpa.test_copy.view;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.libraries.asm.ClassWriter;
+import org.eclipse.persistence.internal.libraries.asm.Label;
+import org.eclipse.persistence.internal.libraries.asm.MethodVisitor;
+import org.eclipse.persistence.internal.libraries.asm.Opcodes;
+import org.eclipse.persistence.internal.libraries.asm.Type;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+
+/**
+ *
+ * Copy-on-write views of entity graphs, instead of eager CASCADE_ALL_PARTS copies: a view costs one small object per
+ * entity actually reached, and a field per attribute actually set, whatever the size of the graph.
+ *
+ * A view is an instance of a class generated (with the ASM that comes with Eclipselink) once per entity class, which
+ * extends it and overrides the getter and setter of every mapped attribute:
+ *      -until its setter is called, the getter of an attribute reads through to the original entity; for a reference, it
+ *      returns the view of the referenced entity, created on first access
+ *      -the setter writes into the view itself (which, being an instance of the entity class, has the fields for it) and
+ *      marks the attribute as written: from then on, the getter returns the view's own value, and the original is left
+ *      as it was
+ *
+ * The generated getters of RootEntity.getData1() and RootEntity.getAssociation() read as (DATA1 and ASSOCIATION being
+ * the bits of the positions of their mappings):
+ *
+ *      public String getData1() {
+ *          return (written & DATA1) != 0 ? super.getData1() : original.getData1();
+ *      }
+ *
+ *      public AssociateEntity getAssociation() {
+ *          return (written & ASSOCIATION) != 0 ? super.getAssociation()
+ *                  : (AssociateEntity) graph.view(original.getAssociation());
+ *      }
+ *
+ * Reading through means reading the original as it is now: an attribute the original had not loaded is loaded when the
+ * view reads it, so the original must still be managed by an open EntityManager, and changes made to the original show
+ * in the attributes of the view that were not set. Collections are read through as they are, not as views.
+ *
+ * Attributes are reached through their getters and setters (get/is and set, after the attribute name); an attribute
+ * without a public, non-final pair of them is not overridden, and reads as the view's own (default) value.
+ *
+ */
+public class CopyOnWriteViews {
+
+	private static final String VIEW_NAME = Type.getInternalName(CopyOnWriteView.class);
+	private static final String GRAPH_NAME = Type.getInternalName(ViewGraph.class);
+	private static final String GRAPH_DESCRIPTOR = Type.getDescriptor(ViewGraph.class);
+
+	private static final AtomicInteger classCount = new AtomicInteger();
+
+	private final AbstractSession session;
+	private final ConcurrentMap<Class<?>, Constructor<?>> constructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+	public CopyOnWriteViews(EntityManagerFactory emf) {
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+	}
+
+	/**
+	 * Returns a view of the given entity, and through it of its graph; the view is an instance of the entity's class.
+	 *
+	 * @throws IllegalArgumentException if the entity is a view already, or its class cannot be extended
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T view(T entity) {
+		return (T) new ViewGraph(this).view(entity);
+	}
+
+	/**
+	 * Whether the given attribute was set on the given view.
+	 */
+	public boolean isWritten(Object view, String attributeName) {
+		CopyOnWriteView cowView = (CopyOnWriteView) view;
+		List<DatabaseMapping> mappings = descriptor(cowView.getOriginalEntity().getClass()).getMappings();
+		for (int i = 0; i < mappings.size(); i++) {
+			if (mappings.get(i).getAttributeName().equals(attributeName)) {
+				return (cowView.getWrittenAttributes() & (1L << i)) != 0;
+			}
+		}
+		throw new IllegalArgumentException("The attribute '" + attributeName + "' is not mapped by "
+				+ cowView.getOriginalEntity().getClass().getName() + ".");
+	}
+
+	Object newView(Object original, ViewGraph graph) {
+		if (original instanceof CopyOnWriteView) {
+			throw new IllegalArgumentException(original + " is a view already.");
+		}
+		Constructor<?> constructor = constructors.get(original.getClass());
+		if (constructor == null) {
+			constructor = generate(original.getClass());
+			Constructor<?> previous = constructors.putIfAbsent(original.getClass(), constructor);
+			constructor = previous == null ? constructor : previous;
+		}
+		try {
+			return constructor.newInstance(original, graph);
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("The view of " + original.getClass().getName() + " cannot be instantiated.",
+					e);
+		}
+	}
+
+	private ClassDescriptor descriptor(Class<?> entityClass) {
+		ClassDescriptor descriptor = session.getDescriptor(entityClass);
+		if (descriptor == null || descriptor.getJavaClass() != entityClass) {
+			throw new IllegalArgumentException(entityClass.getName() + " is not an entity of the persistence unit.");
+		}
+		return descriptor;
+	}
+
+	private Constructor<?> generate(Class<?> entityClass) {
+		List<DatabaseMapping> mappings = descriptor(entityClass).getMappings();
+		if (mappings.size() > 64) {
+			throw new IllegalArgumentException(entityClass.getName() + " maps more than 64 attributes.");
+		}
+		if (!Modifier.isPublic(entityClass.getModifiers()) || Modifier.isFinal(entityClass.getModifiers())) {
+			throw new IllegalArgumentException(entityClass.getName() + " cannot be extended by a view.");
+		}
+		String className = entityClass.getName() + "$CopyOnWriteView" + classCount.incrementAndGet();
+		ViewClassLoader loader = new ViewClassLoader(entityClass.getClassLoader());
+		byte[] bytes = generateClass(className.replace('.', '/'), entityClass, mappings);
+		try {
+			return loader.define(className, bytes).getConstructor(entityClass, ViewGraph.class);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("The view of " + entityClass.getName() + " has no constructor.", e);
+		}
+	}
+
+	private static byte[] generateClass(String className, Class<?> entityClass, List<DatabaseMapping> mappings) {
+		String entityName = Type.getInternalName(entityClass);
+		String entityDescriptor = Type.getDescriptor(entityClass);
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+		cw.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, entityName,
+				new String[] { VIEW_NAME });
+		cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "original", entityDescriptor, null, null).visitEnd();
+		cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "graph", GRAPH_DESCRIPTOR, null, null).visitEnd();
+		cw.visitField(Opcodes.ACC_PRIVATE, "written", "J", null, null).visitEnd();
+
+		//public <init>(<entity> original, ViewGraph graph) { super(); this.original = original; this.graph = graph; }
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(" + entityDescriptor + GRAPH_DESCRIPTOR + ")V",
+				null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, entityName, "<init>", "()V");
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitFieldInsn(Opcodes.PUTFIELD, className, "original", entityDescriptor);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitVarInsn(Opcodes.ALOAD, 2);
+		mv.visitFieldInsn(Opcodes.PUTFIELD, className, "graph", GRAPH_DESCRIPTOR);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "getOriginalEntity", "()Ljava/lang/Object;", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "original", entityDescriptor);
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "getWrittenAttributes", "()J", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "written", "J");
+		mv.visitInsn(Opcodes.LRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		for (int i = 0; i < mappings.size(); i++) {
+			DatabaseMapping mapping = mappings.get(i);
+			Method getter = getter(entityClass, mapping.getAttributeName());
+			Method setter = getter == null ? null : setter(entityClass, mapping.getAttributeName(), getter.getReturnType());
+			if (setter == null) {
+				continue;
+			}
+			Type type = Type.getType(getter.getReturnType());
+			Long bit = Long.valueOf(1L << i);
+
+			//getter: (written & bit) != 0 ? super.get() : original.get(), the latter as a view for a reference
+			mv = cw.visitMethod(Opcodes.ACC_PUBLIC, getter.getName(), Type.getMethodDescriptor(getter), null, null);
+			mv.visitCode();
+			Label readOriginal = new Label();
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitFieldInsn(Opcodes.GETFIELD, className, "written", "J");
+			mv.visitLdcInsn(bit);
+			mv.visitInsn(Opcodes.LAND);
+			mv.visitInsn(Opcodes.LCONST_0);
+			mv.visitInsn(Opcodes.LCMP);
+			mv.visitJumpInsn(Opcodes.IFEQ, readOriginal);
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitMethodInsn(Opcodes.INVOKESPECIAL, entityName, getter.getName(), Type.getMethodDescriptor(getter));
+			mv.visitInsn(type.getOpcode(Opcodes.IRETURN));
+			mv.visitLabel(readOriginal);
+			if (mapping.isObjectReferenceMapping()) {
+				mv.visitVarInsn(Opcodes.ALOAD, 0);
+				mv.visitFieldInsn(Opcodes.GETFIELD, className, "graph", GRAPH_DESCRIPTOR);
+			}
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitFieldInsn(Opcodes.GETFIELD, className, "original", entityDescriptor);
+			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, entityName, getter.getName(), Type.getMethodDescriptor(getter));
+			if (mapping.isObjectReferenceMapping()) {
+				mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, GRAPH_NAME, "view", "(Ljava/lang/Object;)Ljava/lang/Object;");
+				mv.visitTypeInsn(Opcodes.CHECKCAST, type.getInternalName());
+			}
+			mv.visitInsn(type.getOpcode(Opcodes.IRETURN));
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+
+			//setter: super.set(value); written |= bit;
+			mv = cw.visitMethod(Opcodes.ACC_PUBLIC, setter.getName(), Type.getMethodDescriptor(setter), null, null);
+			mv.visitCode();
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitVarInsn(type.getOpcode(Opcodes.ILOAD), 1);
+			mv.visitMethodInsn(Opcodes.INVOKESPECIAL, entityName, setter.getName(), Type.getMethodDescriptor(setter));
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitInsn(Opcodes.DUP);
+			mv.visitFieldInsn(Opcodes.GETFIELD, className, "written", "J");
+			mv.visitLdcInsn(bit);
+			mv.visitInsn(Opcodes.LOR);
+			mv.visitFieldInsn(Opcodes.PUTFIELD, className, "written", "J");
+			mv.visitInsn(Opcodes.RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static Method getter(Class<?> entityClass, String attributeName) {
+		String suffix = Character.toUpperCase(attributeName.charAt(0)) + attributeName.substring(1);
+		for (String name : new String[] { "get" + suffix, "is" + suffix }) {
+			try {
+				Method method = entityClass.getMethod(name);
+				if (method.getReturnType() != void.class && isOverridable(method)) {
+					return method;
+				}
+			} catch (NoSuchMethodException e) {
+				//not this one
+			}
+		}
+		return null;
+	}
+
+	private static Method setter(Class<?> entityClass, String attributeName, Class<?> type) {
+		String name = "set" + Character.toUpperCase(attributeName.charAt(0)) + attributeName.substring(1);
+		try {
+			Method method = entityClass.getMethod(name, type);
+			return isOverridable(method) ? method : null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static boolean isOverridable(Method method) {
+		int modifiers = method.getModifiers();
+		return Modifier.isPublic(modifiers) && !Modifier.isFinal(modifiers) && !Modifier.isStatic(modifiers)
+				&& Modifier.isPublic(method.getReturnType().getModifiers());
+	}
+
+	/**
+	 * Loads one view class; classes the entity's loader does not know (CopyOnWriteView and ViewGraph, in a container) are
+	 * looked up where this class was loaded from.
+	 */
+	private static final class ViewClassLoader extends ClassLoader {
+
+		ViewClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String className, byte[] bytes) {
+			return defineClass(className, bytes, 0, bytes.length);
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			return Class.forName(name, false, CopyOnWriteViews.class.getClassLoader());
+		}
+	}
+
+}
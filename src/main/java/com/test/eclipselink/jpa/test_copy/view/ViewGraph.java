@@ -0,0 +1,37 @@
+package com.test.eclipselink.jpa.test_copy.view;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ *
+ * The views of one graph, by the entity they show, so that an entity reached twice (like the root through
+ * "association1.circularRef") gets the same view, and cycles close.
+ *
+ * Views create the views of the entities they reference through {@link #view(Object)} when their getters are called; it is
+ * public for the generated views to reach it, and not meant to be called by anything else.
+ *
+ */
+public final class ViewGraph {
+
+	private final CopyOnWriteViews views;
+	//sized for the four entities of a graph: the default size would take more than the views themselves
+	private final Map<Object, Object> viewsByOriginal = new IdentityHashMap<Object, Object>(4);
+
+	ViewGraph(CopyOnWriteViews views) {
+		this.views = views;
+	}
+
+	public Object view(Object original) {
+		if (original == null) {
+			return null;
+		}
+		Object view = viewsByOriginal.get(original);
+		if (view == null) {
+			view = views.newView(original, this);
+			viewsByOriginal.put(original, view);
+		}
+		return view;
+	}
+
+}
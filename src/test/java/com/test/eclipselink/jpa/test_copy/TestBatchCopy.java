@@ -0,0 +1,166 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Batch copies (CopyPlans.copyAll with an EntityManager) should produce what copying the roots one by one produces, with
+ * a number of queries that does not grow with the number of roots.
+ *
+ * Every comparison loads the roots twice, in two contexts, so that the initializations of one copy do not help the other.
+ *
+ */
+public class TestBatchCopy {
+
+	private static final int WIDTH = 5;
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+	private static CopyPlans plans;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("batchCopy");
+		for (long id = 1; id <= WIDTH; id++) {
+			TestGraphs.persistGraph(emf, id);
+		}
+		statementCounter = StatementCounter.install(emf);
+		plans = new CopyPlans(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static boolean isAttributeInitialized(Object entity, String attributeName) {
+		return ((EntityManagerFactoryImpl) emf).isLoaded(entity, attributeName);
+	}
+
+	private static List<RootEntity> findRootEntities(EntityManager em, boolean withFetchGroup) {
+		List<RootEntity> roots = new ArrayList<RootEntity>();
+		for (long id = 1; id <= WIDTH; id++) {
+			roots.add(TestGraphs.findRootEntityById(em, id, withFetchGroup ? TestGraphs.customFetchGroup() : null));
+		}
+		return roots;
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG scenario, for all the roots at once
+	public void BATCH_CASC_ALL_EMPTY_CG__NO_FG() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+
+		EntityManager em = emf.createEntityManager();
+		List<RootEntity> roots = findRootEntities(em, false);
+		statementCounter.reset();
+		List<RootEntity> expected = new ArrayList<RootEntity>();
+		for (RootEntity root : roots) {
+			expected.add(plans.copy(root, cg));
+		}
+		long oneByOne = statementCounter.getStatementCount();
+		em.close();
+
+		em = emf.createEntityManager();
+		roots = findRootEntities(em, false);
+		statementCounter.reset();
+		List<RootEntity> copies = plans.copyAll(em, roots, cg);
+
+		//one query per association: association, association1, association.deepAssocEntity and association1.circularRef
+		assertEquals(4, statementCounter.getStatementCount());
+		assertTrue(oneByOne > statementCounter.getStatementCount());
+
+		for (int i = 0; i < WIDTH; i++) {
+			RootEntity copyRoot = copies.get(i);
+			assertEquals(expected.get(i).getData1(), copyRoot.getData1());
+			assertEquals(expected.get(i).getAssociation().getData2(), copyRoot.getAssociation().getData2());
+			assertEquals(expected.get(i).getAssociation().getDeepAssocEntity().getData1(),
+					copyRoot.getAssociation().getDeepAssocEntity().getData1());
+			assertEquals(expected.get(i).getAssociation1().getData1(), copyRoot.getAssociation1().getData1());
+			assertTrue(copyRoot.getAssociation1().getCircularRef() == copyRoot);
+			assertTrue(copyRoot.getAssociation() != roots.get(i).getAssociation());
+		}
+
+		//the originals were initialized as copying them one by one would have
+		assertTrue(isAttributeInitialized(roots.get(0), "association1"));
+		assertTrue(roots.get(0).getAssociation1().getCircularRef() == roots.get(0));
+		em.close();
+	}
+
+	@Test
+	//the CASC_TREE_GROUP_with_ATTS scenario, for all the roots at once
+	public void BATCH_CASC_TREE_GROUP_with_ATTS() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.data2");
+
+		EntityManager em = emf.createEntityManager();
+		List<RootEntity> roots = findRootEntities(em, true);
+		statementCounter.reset();
+		List<RootEntity> expected = new ArrayList<RootEntity>();
+		for (RootEntity root : roots) {
+			expected.add(plans.copy(root, cg));
+		}
+		long oneByOne = statementCounter.getStatementCount();
+		em.close();
+
+		em = emf.createEntityManager();
+		roots = findRootEntities(em, true);
+		statementCounter.reset();
+		List<RootEntity> copies = plans.copyAll(em, roots, cg);
+		assertTrue(oneByOne > statementCounter.getStatementCount());
+
+		for (int i = 0; i < WIDTH; i++) {
+			RootEntity copyRoot = copies.get(i);
+			for (String attributeName : Arrays.asList("id", "data1", "data2", "association", "association1")) {
+				assertEquals(isAttributeInitialized(expected.get(i), attributeName), isAttributeInitialized(copyRoot, attributeName));
+			}
+			for (String attributeName : Arrays.asList("data1", "data2", "lazyData3", "deepAssocEntity")) {
+				assertEquals(isAttributeInitialized(expected.get(i).getAssociation(), attributeName),
+						isAttributeInitialized(copyRoot.getAssociation(), attributeName));
+			}
+			assertEquals("Root:" + (i + 1) + "L:Data1", copyRoot.getData1());
+			assertEquals(expected.get(i).getAssociation().getData2(), copyRoot.getAssociation().getData2());
+		}
+
+		//copying needs nothing more from the database
+		statementCounter.reset();
+		plans.copyAll(roots, cg);
+		assertEquals(0, statementCounter.getStatementCount());
+		em.close();
+	}
+
+	@Test
+	//an entity listed twice is copied once
+	public void BATCH_shared_references() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		List<RootEntity> copies = plans.copyAll(em, Arrays.asList(rootEnt, rootEnt.getAssociation1().getCircularRef()), cg);
+
+		assertTrue(copies.get(0) == copies.get(1));
+		assertTrue(copies.get(0).getAssociation1().getCircularRef() == copies.get(0));
+		em.close();
+	}
+
+}
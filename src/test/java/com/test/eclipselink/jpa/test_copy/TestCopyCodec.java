@@ -0,0 +1,153 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.codec.CopyCodec;
+import com.test.eclipselink.jpa.test_copy.copy.LoadedCopyGroups;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity_1;
+import com.test.eclipselink.jpa.test_copy.entities.DeepAssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * A copy decoded by a CopyCodec should hold what the encoded copy held, and leave unloaded what it left unloaded.
+ *
+ */
+public class TestCopyCodec {
+
+	private static EntityManagerFactory emf;
+	private static CopyCodec codec;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("copyCodec");
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+		codec = new CopyCodec(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static void assertSameFetchState(Object copy, Object decoded, String... attributes) {
+		PersistenceUnitUtil util = emf.getPersistenceUnitUtil();
+		for (String attribute : attributes) {
+			assertEquals(attribute, util.isLoaded(copy, attribute), util.isLoaded(decoded, attribute));
+		}
+	}
+
+	@Test
+	//a graph loaded all the way, the root reached again through association1 decoded into the same instance
+	public void CODEC_round_trip() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEntity = TestGraphs.findRootEntityById(em, 1L, null);
+		rootEntity.getAssociation().getLazyData3();
+		rootEntity.getAssociation().getDeepAssocEntity();
+		rootEntity.getAssociation1().getCircularRef();
+		RootEntity copy = LoadedCopyGroups.copy(em, rootEntity);
+		em.close();
+
+		RootEntity decoded = (RootEntity) codec.decode(codec.encode(copy));
+		assertEquals("Root:1L:Data1", decoded.getData1());
+		assertEquals("Root:1L:Data2", decoded.getData2());
+		AssociateEntity association = decoded.getAssociation();
+		assertEquals("Assoc:1L:LazyData3", association.getLazyData3());
+		DeepAssociateEntity deepAssocEntity = association.getDeepAssocEntity();
+		assertEquals(Long.valueOf(1L), deepAssocEntity.getId());
+		assertEquals("DeepAssoc:1L:Data2", deepAssocEntity.getData2());
+		AssociateEntity_1 association1 = decoded.getAssociation1();
+		assertEquals("Assoc_1:1L:Data1", association1.getData1());
+		assertSame(decoded, association1.getCircularRef());
+		assertSameFetchState(copy, decoded, "data1", "data2", "association", "association1");
+		assertSameFetchState(copy.getAssociation(), association, "data1", "data2", "lazyData3", "deepAssocEntity");
+	}
+
+	@Test
+	//what the copy did not load stays unloaded, rather than null
+	public void CODEC_fetch_state() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEntity = TestGraphs.findRootEntityById(em, 2L, TestGraphs.customFetchGroup());
+		rootEntity.getAssociation();
+		RootEntity copy = LoadedCopyGroups.copy(em, rootEntity);
+		em.close();
+
+		RootEntity decoded = (RootEntity) codec.decode(codec.encode(copy));
+		PersistenceUnitUtil util = emf.getPersistenceUnitUtil();
+		assertFalse(util.isLoaded(decoded, "data1"));
+		assertFalse(util.isLoaded(decoded, "association1"));
+		assertEquals("Root:2L:Data2", decoded.getData2());
+		assertTrue(util.isLoaded(decoded, "association"));
+		AssociateEntity association = decoded.getAssociation();
+		assertEquals("Assoc:2L:Data1", association.getData1());
+		assertEquals("Assoc:2L:LazyData3", association.getLazyData3());
+		assertFalse(util.isLoaded(association, "data2"));
+		assertFalse(util.isLoaded(association, "deepAssocEntity"));
+		assertSameFetchState(copy, decoded, "data1", "data2", "association", "association1");
+		assertSameFetchState(copy.getAssociation(), association, "data1", "data2", "lazyData3", "deepAssocEntity");
+
+		//a loaded null is a null
+		RootEntity bare = new RootEntity();
+		bare.setId(3L);
+		bare.setData1("Root:3L:Data1");
+		RootEntity decodedBare = (RootEntity) codec.decode(codec.encode(bare));
+		assertTrue(util.isLoaded(decodedBare, "data2"));
+		assertNull(decodedBare.getData2());
+		assertNull(decodedBare.getAssociation());
+	}
+
+	@Test
+	//copies of the same entity, made apart, are encoded once and decoded into one instance
+	public void CODEC_shared_by_id() {
+		EntityManager em1 = emf.createEntityManager();
+		RootEntity copy1 = LoadedCopyGroups.copy(em1, TestGraphs.findRootEntityById(em1, 1L, null));
+		em1.close();
+		EntityManager em2 = emf.createEntityManager();
+		RootEntity copy2 = LoadedCopyGroups.copy(em2, TestGraphs.findRootEntityById(em2, 1L, null));
+		em2.close();
+
+		byte[] one = codec.encodeAll(Arrays.asList(copy1));
+		byte[] both = codec.encodeAll(Arrays.asList(copy1, copy2));
+		//the second copy is a single reference
+		assertEquals(one.length + 1, both.length);
+		List<Object> decoded = codec.decodeAll(both);
+		assertEquals(2, decoded.size());
+		assertSame(decoded.get(0), decoded.get(1));
+	}
+
+	@Test
+	//only encodings of this schema are decoded
+	public void CODEC_rejected() {
+		byte[] bytes = codec.encode(new RootEntity());
+		byte[] otherSchema = bytes.clone();
+		otherSchema[4] ^= 1;
+		byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+		for (byte[] rejected : Arrays.asList(new byte[] { 1, 2, 3 }, otherSchema, truncated)) {
+			try {
+				codec.decode(rejected);
+				fail("not an encoding of a copy with this schema");
+			} catch (IllegalArgumentException e) {
+				//expected
+			}
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package com.test.eclipselink.jpa.test_copy;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import javax.persistence.EntityManager;
@@ -18,6 +19,7 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
 import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
 import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity_1;
 import com.test.eclipselink.jpa.test_copy.entities.DeepAssociateEntity;
@@ -55,10 +57,12 @@ import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
 public class TestCopyEntities {
 
 	private static EntityManagerFactory emf;
+	private static FetchStateTracker fetchStates;
 
 	@BeforeClass
 	public static void initialize() {
 		emf = Persistence.createEntityManagerFactory("testPU");
+		fetchStates = new FetchStateTracker(emf);
 		EntityManager em = createEM();
 
 		RootEntity rootEntity = new RootEntity();
@@ -146,13 +150,18 @@ public class TestCopyEntities {
 	 * 
 	 * http://briaguy.blogspot.com/2017/09/eclipselink-252-jpa-210-determining.html
 	 * 
+	 * Every answer is also checked against the FetchStateTracker, which should agree in every scenario.
+	 * 
 	 */
 	private static boolean isAttributeInitialized(Object entity, String attributeName) {
 		if (!(entity instanceof FetchGroupTracker)) {
 			throw new IllegalArgumentException(
 					"The entity is not configured for tracking fetch groups. Perhaps weaving was not enabled for this entity or at all.");
 		} else {
-			return ((EntityManagerFactoryImpl) emf).isLoaded(entity, attributeName);
+			boolean initialized = ((EntityManagerFactoryImpl) emf).isLoaded(entity, attributeName);
+			assertEquals("The fetch state tracker disagrees on '" + attributeName + "'.", initialized,
+					fetchStates.isLoaded(entity, attributeName));
+			return initialized;
 		}
 	}
 
@@ -0,0 +1,148 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyIdentityMap;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.IdBlocks;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.DeepAssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copies for insert (see CopyPlan.copyForInsert) should be new rows whatever the cascade level: new ids on all four
+ * entities (or none), every attribute the group copies, and nothing that keeps them from being persisted in a batch.
+ *
+ */
+public class TestCopyForInsert {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+	private static CopyPlans plans;
+
+	@BeforeClass
+	public static void initialize() {
+		Map<String, Object> overrides = new HashMap<String, Object>();
+		overrides.put(PersistenceUnitProperties.BATCH_WRITING, "JDBC");
+		emf = TestGraphs.createEntityManagerFactory("copyForInsert", overrides);
+		statementCounter = StatementCounter.install(emf);
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+		plans = new CopyPlans(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static void persistAll(Map<Object, Object> copies) {
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		for (Object copy : copies.values()) {
+			em.persist(copy);
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG copy, as new rows: ids after those of the table, and the lazy attribute loaded
+	public void INSERT_CASC_ALL_resequenced() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		CopyPlan plan = plans.plan(RootEntity.class, cg);
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+
+		Map<Object, Object> copies = new CopyIdentityMap();
+		RootEntity copyRoot = (RootEntity) plan.copyForInsert(rootEnt, copies, new IdBlocks(emf, 3));
+		assertEquals(4, copies.size());
+		assertEquals(Long.valueOf(1L), rootEnt.getId());
+		Set<Long> ids = new HashSet<Long>();
+		ids.add(copyRoot.getId());
+		ids.add(copyRoot.getAssociation().getId());
+		ids.add(copyRoot.getAssociation().getDeepAssocEntity().getId());
+		ids.add(copyRoot.getAssociation1().getId());
+		for (Long id : ids) {
+			assertTrue(id > 2L);
+		}
+		assertEquals("Assoc:1L:LazyData3", copyRoot.getAssociation().getLazyData3());
+		for (Object copy : copies.values()) {
+			assertNull(((FetchGroupTracker) copy)._persistence_getFetchGroup());
+		}
+		em.close();
+
+		persistAll(copies);
+
+		em = emf.createEntityManager();
+		RootEntity inserted = em.find(RootEntity.class, copyRoot.getId());
+		assertEquals("Root:1L:Data1", inserted.getData1());
+		assertEquals(copyRoot.getAssociation().getId(), inserted.getAssociation().getId());
+		assertEquals("Assoc:1L:LazyData3", inserted.getAssociation().getLazyData3());
+		assertEquals("DeepAssoc:1L:Data2", inserted.getAssociation().getDeepAssocEntity().getData2());
+		assertTrue(inserted.getAssociation1().getCircularRef() == inserted);
+		em.close();
+	}
+
+	@Test
+	//a CASCADE_TREE copy loses its ids, basic or not, and is left with no fetch group
+	public void INSERT_CASC_TREE_no_ids() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.data1");
+		CopyPlan plan = plans.plan(RootEntity.class, cg);
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 2L, null);
+
+		Map<Object, Object> copies = new CopyIdentityMap();
+		RootEntity copyRoot = (RootEntity) plan.copyForInsert(rootEnt, copies, null);
+		assertEquals(2, copies.size());
+		assertNull(((FetchGroupTracker) copyRoot)._persistence_getFetchGroup());
+		assertNull(copyRoot.getId());
+		assertEquals("Root:2L:Data1", copyRoot.getData1());
+		assertNull(copyRoot.getData2());
+		AssociateEntity copyAssoc = copyRoot.getAssociation();
+		assertNull(copyAssoc.getId());
+		assertEquals("Assoc:2L:Data1", copyAssoc.getData1());
+		assertNull(copyAssoc.getDeepAssocEntity());
+		em.close();
+	}
+
+	@Test
+	//one statement per block of ids, once the sequence exists
+	public void INSERT_blocks() {
+		IdBlocks ids = new IdBlocks(emf, 3);
+		long first = (Long) ids.nextId(DeepAssociateEntity.class);
+		statementCounter.reset();
+		assertEquals(first + 1, ids.nextId(DeepAssociateEntity.class));
+		assertEquals(first + 2, ids.nextId(DeepAssociateEntity.class));
+		assertEquals(0, statementCounter.getStatementCount());
+		long next = (Long) ids.nextId(DeepAssociateEntity.class);
+		assertTrue(next > first + 2);
+		assertEquals(1, statementCounter.getStatementCount());
+		assertEquals(next + 1, ids.nextId(DeepAssociateEntity.class));
+		assertEquals(1, statementCounter.getStatementCount());
+	}
+
+}
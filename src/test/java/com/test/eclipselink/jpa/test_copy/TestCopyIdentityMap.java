@@ -0,0 +1,117 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyIdentityMap;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * The original-to-copy map of copy traversals (see CopyIdentityMap) should behave as the IdentityHashMap it replaces, and
+ * be sized from the plans.
+ *
+ */
+public class TestCopyIdentityMap {
+
+	private static EntityManagerFactory emf;
+	private static CopyPlans plans;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("copyIdentityMap");
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+		plans = new CopyPlans(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	@Test
+	//equal keys that are not the same are distinct keys; the map grows past its expected size
+	public void MAP_identity() {
+		CopyIdentityMap map = new CopyIdentityMap(2);
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			String key = new String("k" + i % 10);
+			keys.add(key);
+			assertEquals(null, map.put(key, "Copy:" + i));
+		}
+		assertEquals(1000, map.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("Copy:" + i, map.get(keys.get(i)));
+		}
+		assertEquals(null, map.get(new String("k1")));
+		assertEquals("Copy:0", map.put(keys.get(0), "Copy:0:again"));
+		assertEquals("Copy:0:again", map.get(keys.get(0)));
+		assertEquals(1000, map.entrySet().size());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertEquals(null, map.get(keys.get(0)));
+	}
+
+	@Test
+	//the map of a thread is the same from one copy to the next, unless it is in use
+	public void MAP_thread_map() {
+		CopyIdentityMap map = CopyIdentityMap.acquire(4);
+		map.put(this, "Copy");
+		CopyIdentityMap nested = CopyIdentityMap.acquire(4);
+		assertTrue(nested != map);
+		nested.release();
+		map.release();
+		assertTrue(map.isEmpty());
+
+		CopyIdentityMap next = CopyIdentityMap.acquire(1000);
+		assertTrue(next == map);
+		next.release();
+	}
+
+	@Test
+	//root, association, deepAssocEntity, association1 - and back to the root
+	public void MAP_expected_size() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		assertEquals(4, plans.plan(RootEntity.class, cg).getExpectedSize());
+
+		CopyGroup treeGroup = new CopyGroup();
+		treeGroup.addAttribute("data2");
+		treeGroup.addAttribute("association.data1");
+		assertEquals(2, plans.plan(RootEntity.class, treeGroup).getExpectedSize());
+	}
+
+	@Test
+	//all graphs copied with one map: the back-references still lead to the copy of their own root
+	public void MAP_copy_all() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		EntityManager em = emf.createEntityManager();
+		List<RootEntity> roots = Arrays.asList(TestGraphs.findRootEntityById(em, 1L, null),
+				TestGraphs.findRootEntityById(em, 2L, null));
+		List<RootEntity> copies = plans.copyAll(roots, cg);
+		for (int i = 0; i < roots.size(); i++) {
+			RootEntity copyRoot = copies.get(i);
+			assertTrue(copyRoot != roots.get(i));
+			assertEquals(roots.get(i).getId(), copyRoot.getId());
+			assertTrue(copyRoot.getAssociation1().getCircularRef() == copyRoot);
+		}
+		em.close();
+	}
+
+}
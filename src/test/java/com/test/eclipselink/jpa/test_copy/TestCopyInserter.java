@@ -0,0 +1,163 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyIdentityMap;
+import com.test.eclipselink.jpa.test_copy.copy.CopyInserter;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.IdBlocks;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity_1;
+import com.test.eclipselink.jpa.test_copy.entities.ChainLinkEntity;
+import com.test.eclipselink.jpa.test_copy.entities.DeepAssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * A CopyInserter should insert copies, whoever made them, as the rows Eclipselink would have inserted for them: table by
+ * table in commit order, a JDBC batch per table.
+ *
+ */
+public class TestCopyInserter {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+	private static CopyPlans plans;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("copyInserter", CopyInserter.batchProperties(100));
+		statementCounter = StatementCounter.install(emf);
+		TestGraphs.persistGraph(emf, 1L);
+		plans = new CopyPlans(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static CopyGroup cascadeAll(boolean resetPrimaryKey) {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		cg.setShouldResetPrimaryKey(resetPrimaryKey);
+		return cg;
+	}
+
+	private static CopyGroup privateParts(boolean resetPrimaryKey) {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadePrivateParts();
+		cg.setShouldResetPrimaryKey(resetPrimaryKey);
+		return cg;
+	}
+
+	private static long count(Class<?> entityClass) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			return (Long) em.createQuery("SELECT COUNT(e) FROM " + entityClass.getSimpleName() + " e").getSingleResult();
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test
+	//JpaEntityManager.copy copies without primary keys, given new ones and inserted with their back-reference
+	public void INSERT_jpa_copies() {
+		long roots = count(RootEntity.class);
+		long deepAssociates = count(DeepAssociateEntity.class);
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		List<RootEntity> copies = new ArrayList<RootEntity>();
+		for (int i = 0; i < 50; i++) {
+			copies.add((RootEntity) ((JpaEntityManager) em).copy(rootEnt, cascadeAll(true)));
+		}
+		em.close();
+
+		CopyInserter inserter = new CopyInserter(emf, plans, new IdBlocks(emf), 20);
+		assertEquals(200, inserter.insertAll(copies, cascadeAll(true)));
+		assertEquals(roots + 50, count(RootEntity.class));
+		assertEquals(deepAssociates + 50, count(DeepAssociateEntity.class));
+
+		em = emf.createEntityManager();
+		RootEntity inserted = em.find(RootEntity.class, copies.get(49).getId());
+		assertEquals("Root:1L:Data2", inserted.getData2());
+		assertEquals("Assoc:1L:Data1", inserted.getAssociation().getData1());
+		assertEquals("DeepAssoc:1L:Data1", inserted.getAssociation().getDeepAssocEntity().getData1());
+		assertEquals("Assoc_1:1L:Data1", inserted.getAssociation1().getData1());
+		assertTrue(inserted.getAssociation1().getCircularRef() == inserted);
+		em.close();
+	}
+
+	@Test
+	//the tables referenced by a foreign key first, and only the tables the copies cascade to
+	public void INSERT_order() {
+		CopyInserter inserter = new CopyInserter(emf, plans, null);
+		assertEquals(Arrays.<Class<?>> asList(DeepAssociateEntity.class, AssociateEntity.class, RootEntity.class,
+				AssociateEntity_1.class), inserter.getInsertOrder(plans.plan(RootEntity.class, cascadeAll(false))));
+		assertEquals(Arrays.<Class<?>> asList(AssociateEntity.class, RootEntity.class),
+				inserter.getInsertOrder(plans.plan(RootEntity.class, privateParts(false))));
+		try {
+			inserter.getInsertOrder(plans.plan(ChainLinkEntity.class, cascadeAll(false)));
+			fail("links refer to links");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	@Test
+	//one batch per table and transaction, whatever the number of rows
+	public void INSERT_batched() {
+		CopyPlan plan = plans.plan(RootEntity.class, cascadeAll(false));
+		IdBlocks ids = new IdBlocks(emf);
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		List<Object> copies = new ArrayList<Object>();
+		for (int i = 0; i < 30; i++) {
+			copies.add(plan.copyForInsert(rootEnt, new CopyIdentityMap(), ids));
+		}
+		em.close();
+
+		statementCounter.reset();
+		assertEquals(120, new CopyInserter(emf, plans, null, 10).insertAll(copies, plan));
+		assertEquals(3 * 4, statementCounter.getStatementCount());
+	}
+
+	@Test
+	//the copies of private parts share the deep associate of the original, which is not inserted again
+	public void INSERT_private_parts() {
+		long deepAssociates = count(DeepAssociateEntity.class);
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		rootEnt.getAssociation().getDeepAssocEntity();
+		List<RootEntity> copies = new ArrayList<RootEntity>();
+		for (int i = 0; i < 5; i++) {
+			copies.add((RootEntity) ((JpaEntityManager) em).copy(rootEnt, privateParts(true)));
+		}
+		em.close();
+
+		assertEquals(10, new CopyInserter(emf, plans, new IdBlocks(emf)).insertAll(copies, privateParts(true)));
+		assertEquals(deepAssociates, count(DeepAssociateEntity.class));
+		em = emf.createEntityManager();
+		RootEntity inserted = em.find(RootEntity.class, copies.get(0).getId());
+		assertEquals(Long.valueOf(1L), inserted.getAssociation().getDeepAssocEntity().getId());
+		em.close();
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.timer.Timer;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyGroupStats;
+import com.test.eclipselink.jpa.test_copy.copy.CopyMetrics;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copy metrics (see CopyMetrics) should tell the copies that load what they copy from those that do not.
+ *
+ */
+public class TestCopyMetrics {
+
+	private static EntityManagerFactory emf;
+	private static CopyMetrics metrics;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("copyMetrics");
+		TestGraphs.persistGraph(emf, 1L);
+		metrics = CopyMetrics.install(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		metrics.uninstall();
+		emf.close();
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG scenario: every association is loaded by the copy
+	public void METRICS_CASC_ALL_hidden_loads() throws Exception {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		cg.setShouldResetPrimaryKey(true);
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		RootEntity copyRoot = metrics.copy(em, rootEnt, cg);
+		em.close();
+
+		CopyGroupStats stats = metrics.getStats(cg);
+		assertTrue(copyRoot.getId() == null);
+		assertEquals(1, stats.getCopyCount());
+		assertEquals(4, stats.getEntitiesCopied());
+		//association, association1, deepAssocEntity and circularRef; the last one is found in the persistence context
+		assertEquals(4, stats.getLazyInitializations());
+		assertEquals(3, stats.getStatements());
+		assertTrue(stats.getMaxLatencyMicros() > 0);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = metrics.objectName(CopyPlans.signature(cg));
+		assertEquals(4L, server.getAttribute(name, "EntitiesCopied"));
+		assertEquals(stats.getLazyInitializations(), server.getAttribute(name, "LazyInitializations"));
+	}
+
+	@Test
+	//the same copy, once everything it copies is loaded
+	public void METRICS_CASC_ALL_loaded() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		rootEnt.getAssociation().getDeepAssocEntity().getData1();
+		rootEnt.getAssociation1().getCircularRef();
+		CopyPlans plans = new CopyPlans(emf);
+		plans.setMetrics(metrics);
+		plans.copy(rootEnt, cg);
+		plans.copy(rootEnt, cg);
+		em.close();
+
+		CopyGroupStats stats = metrics.getStats(cg);
+		assertEquals(2, stats.getCopyCount());
+		assertEquals(8, stats.getEntitiesCopied());
+		assertEquals(0, stats.getLazyInitializations());
+		assertEquals(0, stats.getStatements());
+		assertTrue(stats.get50thPercentileMicros() <= stats.get99thPercentileMicros());
+	}
+
+	@Test
+	//a CASCADE_TREE copy adds the primary key to its group: the copy is recorded under the signature the group had before
+	public void METRICS_CASC_TREE_signature() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		metrics.copy(em, rootEnt, treeGroup());
+		CopyPlans plans = new CopyPlans(emf);
+		plans.setMetrics(metrics);
+		plans.copy(rootEnt, treeGroup());
+		em.close();
+
+		assertEquals(2, metrics.getStats(treeGroup()).getCopyCount());
+	}
+
+	private static CopyGroup treeGroup() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.data2");
+		return cg;
+	}
+
+	@Test
+	//installing again returns the installed metrics, and an MBean left under the same name is replaced
+	public void METRICS_installed_twice() throws Exception {
+		assertSame(metrics, CopyMetrics.install(emf));
+		assertSame(metrics, CopyMetrics.of(emf));
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = metrics.objectName("left registered");
+		server.registerMBean(new Timer(), name);
+
+		metrics.start().stop("left registered", 1);
+
+		assertEquals(1L, server.getAttribute(name, "CopyCount"));
+	}
+
+}
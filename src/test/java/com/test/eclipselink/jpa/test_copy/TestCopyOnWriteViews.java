@@ -0,0 +1,119 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+import com.test.eclipselink.jpa.test_copy.view.CopyOnWriteView;
+import com.test.eclipselink.jpa.test_copy.view.CopyOnWriteViews;
+
+/**
+ *
+ * Copy-on-write views (see CopyOnWriteViews) should read through to the original graph, loading nothing up front, and
+ * keep what is set on them to themselves.
+ *
+ */
+public class TestCopyOnWriteViews {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+	private static FetchStateTracker fetchStates;
+	private static CopyOnWriteViews views;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("copyOnWriteViews");
+		statementCounter = StatementCounter.install(emf);
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+		fetchStates = new FetchStateTracker(emf);
+		views = new CopyOnWriteViews(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	@Test
+	//the root loaded with the custom fetch group: the view loads what it reads, when it reads it
+	public void VIEW_read_through() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+
+		statementCounter.reset();
+		RootEntity view = views.view(rootEnt);
+		assertTrue(view instanceof CopyOnWriteView);
+		assertTrue(((CopyOnWriteView) view).getOriginalEntity() == rootEnt);
+		assertEquals("Root:1L:Data2", view.getData2());
+		assertEquals(0, statementCounter.getStatementCount());
+		assertTrue(!fetchStates.isLoaded(rootEnt, "association"));
+
+		AssociateEntity assocView = view.getAssociation();
+		assertTrue(assocView instanceof CopyOnWriteView);
+		assertTrue(fetchStates.isLoaded(rootEnt, "association"));
+		assertEquals("Assoc:1L:Data1", assocView.getData1());
+		assertTrue(assocView == view.getAssociation());
+		assertEquals("DeepAssoc:1L:Data2", assocView.getDeepAssocEntity().getData2());
+		em.close();
+	}
+
+	@Test
+	//what is set stays in the view; what is not keeps reading through, changes of the original included
+	public void VIEW_write() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		RootEntity view = views.view(rootEnt);
+
+		view.setData1("View:Data1");
+		view.getAssociation().setData2("View:Assoc:Data2");
+		assertEquals("View:Data1", view.getData1());
+		assertEquals("Root:1L:Data1", rootEnt.getData1());
+		assertEquals("View:Assoc:Data2", view.getAssociation().getData2());
+		assertEquals("Assoc:1L:Data2", rootEnt.getAssociation().getData2());
+		assertTrue(views.isWritten(view, "data1"));
+		assertTrue(!views.isWritten(view, "data2"));
+
+		rootEnt.setData2("Root:1L:Data2:edited");
+		assertEquals("Root:1L:Data2:edited", view.getData2());
+		em.close();
+	}
+
+	@Test
+	//a reference set on the view replaces the view of the original's
+	public void VIEW_write_reference() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		AssociateEntity otherAssoc = em.find(AssociateEntity.class, 2L);
+		RootEntity view = views.view(rootEnt);
+
+		view.setAssociation(otherAssoc);
+		view.setAssociation1(null);
+		assertTrue(view.getAssociation() == otherAssoc);
+		assertTrue(view.getAssociation1() == null);
+		assertEquals(1L, rootEnt.getAssociation().getId().longValue());
+		assertTrue(rootEnt.getAssociation1() != null);
+		em.close();
+	}
+
+	@Test
+	//the back-reference leads to the view of the root
+	public void VIEW_circular_reference() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		RootEntity view = views.view(rootEnt);
+		assertTrue(view.getAssociation1().getCircularRef() == view);
+		em.close();
+	}
+
+}
@@ -0,0 +1,206 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copy plans (see CopyPlan) should produce what JpaEntityManager.copy produces with the same CopyGroup.
+ *
+ * Every comparison loads the root twice, in two contexts, so that the initializations one copy makes do not help the other.
+ *
+ */
+public class TestCopyPlans {
+
+	private static EntityManagerFactory emf;
+	private static CopyPlans plans;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("copyPlans");
+		TestGraphs.persistGraph(emf, 1L);
+		plans = new CopyPlans(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static boolean isAttributeInitialized(Object entity, String attributeName) {
+		return ((EntityManagerFactoryImpl) emf).isLoaded(entity, attributeName);
+	}
+
+	private static void assertSameFetchState(Object expected, Object actual, String... attributeNames) {
+		for (String attributeName : attributeNames) {
+			assertEquals("The fetch state of '" + attributeName + "' should be the same as with JpaEntityManager.copy.",
+					isAttributeInitialized(expected, attributeName), isAttributeInitialized(actual, attributeName));
+		}
+	}
+
+	@Test
+	//the CASC_TREE_GROUP_with_ATTS scenario
+	public void PLAN_CASC_TREE_GROUP_with_ATTS() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.data2");
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		RootEntity expected = (RootEntity) ((JpaEntityManager) em).copy(rootEnt, cg);
+		em.close();
+
+		em = emf.createEntityManager();
+		rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		RootEntity copyRoot = plans.copy(rootEnt, cg);
+
+		assertSameFetchState(expected, copyRoot, "id", "data1", "data2", "association", "association1");
+		assertSameFetchState(expected.getAssociation(), copyRoot.getAssociation(), "id", "data1", "data2", "lazyData3",
+				"deepAssocEntity");
+		assertEquals(expected.getData1(), copyRoot.getData1());
+		assertEquals(expected.getAssociation().getData2(), copyRoot.getAssociation().getData2());
+
+		//like the copies of JpaEntityManager.copy, those of a plan know what they are missing
+		IllegalStateException illegalStateExc = null;
+		try {
+			copyRoot.getAssociation().getDeepAssocEntity();
+		} catch (IllegalStateException e) {
+			illegalStateExc = e;
+		}
+		assertTrue(illegalStateExc != null);
+
+		//and the original got the initializations the copy needed
+		assertTrue(isAttributeInitialized(rootEnt, "data1"));
+		assertTrue(isAttributeInitialized(rootEnt.getAssociation(), "data2"));
+		em.close();
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG scenario
+	public void PLAN_CASC_ALL_EMPTY_CG__NO_FG() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		RootEntity copyRoot = plans.copy(rootEnt, cg);
+
+		assertTrue(isAttributeInitialized(copyRoot, "association"));
+		assertTrue(isAttributeInitialized(copyRoot, "association1"));
+		assertTrue(isAttributeInitialized(copyRoot.getAssociation(), "deepAssocEntity"));
+		assertTrue(isAttributeInitialized(copyRoot.getAssociation1(), "circularRef"));
+		assertTrue(copyRoot.getAssociation() != rootEnt.getAssociation());
+		assertEquals("DeepAssoc:1L:Data2", copyRoot.getAssociation().getDeepAssocEntity().getData2());
+
+		//the same LAZY basic attribute quirk as JpaEntityManager.copy
+		assertTrue(copyRoot.getAssociation().getLazyData3() == null);
+
+		//and the same back-referencing
+		assertTrue(copyRoot.getAssociation1().getCircularRef() == copyRoot);
+		em.close();
+	}
+
+	@Test
+	//only @PrivateOwned associations are copied; the others are shared with the original
+	public void PLAN_CASC_PRIVATE() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadePrivateParts();
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		RootEntity copyRoot = plans.copy(rootEnt, cg);
+
+		assertTrue(copyRoot.getAssociation() != rootEnt.getAssociation());
+		assertTrue(copyRoot.getAssociation1() == rootEnt.getAssociation1());
+		assertTrue(copyRoot.getAssociation().getDeepAssocEntity() == rootEnt.getAssociation().getDeepAssocEntity());
+		em.close();
+	}
+
+	@Test
+	public void PLAN_reset_primary_key() {
+		CopyGroup cg = new CopyGroup();
+		cg.setShouldResetPrimaryKey(true);
+		cg.cascadeAllParts();
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity copyRoot = plans.copy(TestGraphs.findRootEntityById(em, 1L, null), cg);
+
+		assertTrue(copyRoot.getId() == null);
+		assertTrue(copyRoot.getAssociation().getId() == null);
+		assertTrue(copyRoot.getAssociation1().getId() == null);
+		assertEquals("Root:1L:Data1", copyRoot.getData1());
+		em.close();
+	}
+
+	@Test
+	//groups with the same signature share their plan, even if their attributes were added in another order
+	public void PLAN_cache() {
+		CopyGroup cg1 = new CopyGroup();
+		cg1.addAttribute("data2");
+		cg1.addAttribute("association.data1");
+
+		CopyGroup cg2 = new CopyGroup();
+		cg2.addAttribute("association.data1");
+		cg2.addAttribute("data2");
+
+		CopyGroup cg3 = new CopyGroup();
+		cg3.addAttribute("data2");
+		cg3.addAttribute("association.data2");
+
+		CopyPlan plan = plans.plan(RootEntity.class, cg1);
+		assertTrue(plan == plans.plan(RootEntity.class, cg2));
+		assertTrue(plan != plans.plan(RootEntity.class, cg3));
+		assertEquals(CopyGroup.CASCADE_TREE, plan.getDepth());
+
+		CopyPlans bounded = new CopyPlans(emf, 1);
+		bounded.plan(RootEntity.class, cg1);
+		bounded.plan(RootEntity.class, cg3);
+		assertEquals(1, bounded.size());
+	}
+
+	@Test
+	//a group describes the attributes of one class: entities of another class are rejected before anything is copied
+	public void PLAN_copy_all_mixed_classes() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEntity = TestGraphs.findRootEntityById(em, 1L, null);
+		try {
+			plans.copyAll(Arrays.<Object> asList(rootEntity, rootEntity.getAssociation()), cg);
+			fail("RootEntity and AssociateEntity are copied with one group");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		try {
+			plans.copyAll(em, Arrays.<Object> asList(rootEntity, null, rootEntity.getAssociation()), cg);
+			fail("RootEntity and AssociateEntity are copied with one group");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		List<RootEntity> copies = plans.copyAll(Arrays.asList(null, rootEntity), cg);
+		assertNull(copies.get(0));
+		assertEquals("Root:1L:Data1", copies.get(1).getData1());
+		em.close();
+	}
+
+}
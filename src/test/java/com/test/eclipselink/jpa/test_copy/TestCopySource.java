@@ -0,0 +1,184 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.CopySource;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * A CopySource should hand out copies of the graph it was built from, on any number of threads at once, once its
+ * EntityManager is gone and without going to the database.
+ *
+ */
+public class TestCopySource {
+
+	private static final int THREADS = 8;
+	private static final int COPIES_PER_THREAD = 200;
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+	private static CopyPlans plans;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("copySource");
+		statementCounter = StatementCounter.install(emf);
+		TestGraphs.persistGraph(emf, 1L);
+		plans = new CopyPlans(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static CopyGroup cascadeAll(boolean resetPrimaryKey) {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		cg.setShouldResetPrimaryKey(resetPrimaryKey);
+		return cg;
+	}
+
+	//the source is built from an EntityManager that is closed right away
+	private static CopySource<RootEntity> createSource(CopyGroup group) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			return new CopySource<RootEntity>(plans, TestGraphs.findRootEntityById(em, 1L, null), group);
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG copy, made from the snapshot
+	public void SOURCE_copy() {
+		CopySource<RootEntity> source = createSource(cascadeAll(false));
+
+		statementCounter.reset();
+		RootEntity copyRoot = source.copy();
+		RootEntity otherCopyRoot = source.copy();
+		assertEquals(0, statementCounter.getStatementCount());
+
+		assertTrue(copyRoot != otherCopyRoot);
+		assertEquals(Long.valueOf(1L), copyRoot.getId());
+		assertEquals("Root:1L:Data1", copyRoot.getData1());
+		assertEquals("Assoc:1L:Data2", copyRoot.getAssociation().getData2());
+		assertEquals("DeepAssoc:1L:Data1", copyRoot.getAssociation().getDeepAssocEntity().getData1());
+		assertTrue(copyRoot.getAssociation() != otherCopyRoot.getAssociation());
+		assertTrue(copyRoot.getAssociation1().getCircularRef() == copyRoot);
+		assertTrue(otherCopyRoot.getAssociation1().getCircularRef() == otherCopyRoot);
+	}
+
+	@Test
+	//variants without primary keys, one per tenant, copied by several threads at once
+	public void SOURCE_concurrent_variants() throws Exception {
+		final CopySource<RootEntity> source = createSource(cascadeAll(false));
+		final CopyPlan variantPlan = plans.plan(RootEntity.class, cascadeAll(true));
+
+		statementCounter.reset();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<List<RootEntity>>> futures = new ArrayList<Future<List<RootEntity>>>();
+		try {
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(new Callable<List<RootEntity>>() {
+
+					@Override
+					public List<RootEntity> call() {
+						List<RootEntity> variants = new ArrayList<RootEntity>();
+						for (int i = 0; i < COPIES_PER_THREAD; i++) {
+							variants.add(source.copy(variantPlan));
+						}
+						return variants;
+					}
+				}));
+			}
+			Set<Object> copies = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			for (Future<List<RootEntity>> future : futures) {
+				for (RootEntity variant : future.get()) {
+					assertNull(variant.getId());
+					assertNull(variant.getAssociation().getId());
+					assertNull(variant.getAssociation().getDeepAssocEntity().getId());
+					assertNull(variant.getAssociation1().getId());
+					assertEquals("Root:1L:Data2", variant.getData2());
+					assertEquals("Assoc_1:1L:Data1", variant.getAssociation1().getData1());
+					assertTrue(variant.getAssociation1().getCircularRef() == variant);
+					assertTrue(copies.add(variant));
+					assertTrue(copies.add(variant.getAssociation()));
+				}
+			}
+			assertEquals(2 * THREADS * COPIES_PER_THREAD, copies.size());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(0, statementCounter.getStatementCount());
+	}
+
+	@Test
+	//a CASCADE_TREE snapshot only serves the groups it holds
+	public void SOURCE_tree() {
+		CopyGroup sourceGroup = new CopyGroup();
+		sourceGroup.addAttribute("data1");
+		sourceGroup.addAttribute("association.data1");
+		CopySource<RootEntity> source = createSource(sourceGroup);
+
+		CopyGroup smallerGroup = new CopyGroup();
+		smallerGroup.addAttribute("data1");
+		smallerGroup.addAttribute("association.data1");
+		smallerGroup.setShouldResetPrimaryKey(true);
+		statementCounter.reset();
+		RootEntity copyRoot = source.copy(smallerGroup);
+		assertEquals(0, statementCounter.getStatementCount());
+		assertEquals("Root:1L:Data1", copyRoot.getData1());
+		assertEquals("Assoc:1L:Data1", copyRoot.getAssociation().getData1());
+
+		CopyGroup largerGroup = new CopyGroup();
+		largerGroup.addAttribute("data1");
+		largerGroup.addAttribute("data2");
+		try {
+			source.copy(largerGroup);
+			fail("data2 is not in the snapshot");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	@Test
+	//a plan that shares what the snapshot copied would hand out the snapshot itself
+	public void SOURCE_cascade_mismatch() {
+		CopySource<RootEntity> source = createSource(cascadeAll(false));
+		CopyGroup privateParts = new CopyGroup();
+		privateParts.cascadePrivateParts();
+		try {
+			source.copy(privateParts);
+			fail("association1 is copied in the snapshot");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+}
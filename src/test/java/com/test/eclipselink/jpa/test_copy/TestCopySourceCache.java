@@ -0,0 +1,154 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.CopySourceCache;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * A CopySourceCache should copy hot graphs without going to the database, and stop doing so as soon as anything they
+ * hold is changed through the persistence unit.
+ *
+ */
+public class TestCopySourceCache {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+	private static CopyPlans plans;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("copySourceCache");
+		statementCounter = StatementCounter.install(emf);
+		for (long id = 1; id <= 4; id++) {
+			TestGraphs.persistGraph(emf, id);
+		}
+		plans = new CopyPlans(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static CopyGroup cascadeAll() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		return cg;
+	}
+
+	@Test
+	//the second copy is made from the snapshot of the first
+	public void CACHE_hit() {
+		CopySourceCache cache = new CopySourceCache(emf, plans, cascadeAll());
+		try {
+			RootEntity copyRoot = cache.copy(RootEntity.class, 1L);
+			statementCounter.reset();
+			RootEntity otherCopyRoot = cache.copy(RootEntity.class, 1L);
+			assertEquals(0, statementCounter.getStatementCount());
+			assertTrue(copyRoot != otherCopyRoot);
+			assertEquals("Root:1L:Data1", otherCopyRoot.getData1());
+			assertEquals("DeepAssoc:1L:Data2", otherCopyRoot.getAssociation().getDeepAssocEntity().getData2());
+			assertTrue(otherCopyRoot.getAssociation1().getCircularRef() == otherCopyRoot);
+			assertEquals(1, cache.getHitCount());
+			assertEquals(1, cache.getMissCount());
+			assertEquals(0.5, cache.getHitRatio(), 0);
+
+			assertNull(cache.copy(RootEntity.class, 99L));
+			assertEquals(1, cache.size());
+		} finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	//a commit changing an associate of the graph drops its snapshot, and the next copy sees the change
+	public void CACHE_invalidated_on_commit() {
+		CopySourceCache cache = new CopySourceCache(emf, plans, cascadeAll());
+		try {
+			cache.copy(RootEntity.class, 2L);
+			cache.copy(RootEntity.class, 3L);
+
+			EntityManager em = emf.createEntityManager();
+			em.getTransaction().begin();
+			em.find(AssociateEntity.class, 2L).setData1("Assoc:2L:Changed");
+			em.getTransaction().commit();
+			em.close();
+
+			assertEquals(1, cache.getInvalidationCount());
+			assertEquals(1, cache.size());
+			assertEquals("Assoc:2L:Changed", cache.copy(RootEntity.class, 2L).getAssociation().getData1());
+			assertEquals(3, cache.getMissCount());
+			cache.copy(RootEntity.class, 3L);
+			assertEquals(1, cache.getHitCount());
+		} finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	//a JPQL UPDATE drops every snapshot holding an entity of its class
+	public void CACHE_invalidated_by_bulk_update() {
+		CopySourceCache cache = new CopySourceCache(emf, plans, cascadeAll());
+		try {
+			cache.copy(RootEntity.class, 1L);
+			cache.copy(RootEntity.class, 4L);
+
+			EntityManager em = emf.createEntityManager();
+			em.getTransaction().begin();
+			em.createQuery("UPDATE DeepAssociateEntity e SET e.data1 = 'DeepAssoc:Updated' WHERE e.id = 4").executeUpdate();
+			em.getTransaction().commit();
+			em.close();
+
+			assertEquals(0, cache.size());
+			assertEquals("DeepAssoc:Updated", cache.copy(RootEntity.class, 4L).getAssociation().getDeepAssocEntity().getData1());
+		} finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	//the least recently used snapshot goes first, and none outlives the time to live
+	public void CACHE_evicted() throws InterruptedException {
+		CopySourceCache cache = new CopySourceCache(emf, plans, cascadeAll(), 2, CopySourceCache.DEFAULT_TIME_TO_LIVE_MILLIS);
+		try {
+			cache.copy(RootEntity.class, 1L);
+			cache.copy(RootEntity.class, 2L);
+			cache.copy(RootEntity.class, 1L);
+			cache.copy(RootEntity.class, 3L);
+			assertEquals(1, cache.getEvictionCount());
+			assertEquals(2, cache.size());
+			cache.copy(RootEntity.class, 1L);
+			assertEquals(2, cache.getHitCount());
+		} finally {
+			cache.close();
+		}
+
+		CopySourceCache shortLived = new CopySourceCache(emf, plans, cascadeAll(), 2, 1);
+		try {
+			shortLived.copy(RootEntity.class, 1L);
+			Thread.sleep(10);
+			shortLived.copy(RootEntity.class, 1L);
+			assertEquals(0, shortLived.getHitCount());
+			assertEquals(2, shortLived.getMissCount());
+			assertEquals(1, shortLived.getEvictionCount());
+		} finally {
+			shortLived.close();
+		}
+	}
+
+}
@@ -0,0 +1,175 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.descriptors.PersistenceObject;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.CopyTargetPool;
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+import com.test.eclipselink.jpa.test_copy.copy.PooledCopy;
+import com.test.eclipselink.jpa.test_copy.diff.EntityDiffer;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copies into pooled targets (see CopyTargetPool) should be the copies the plan would make into new entities, whatever
+ * the targets held before.
+ *
+ */
+public class TestCopyTargetPool {
+
+	private static EntityManagerFactory emf;
+	private static CopyPlans plans;
+	private static FetchStateTracker fetchStates;
+	private static EntityDiffer differ;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("copyTargetPool");
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+		plans = new CopyPlans(emf);
+		fetchStates = new FetchStateTracker(emf);
+		differ = new EntityDiffer(emf, fetchStates);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static CopyGroup cascadeAll() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		return cg;
+	}
+
+	//the whole graph but the lazy basic attribute, loaded
+	private static RootEntity findLoadedRoot(EntityManager em, Long id) {
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, id, null);
+		rootEnt.getAssociation().getDeepAssocEntity().getData1();
+		rootEnt.getAssociation1().getCircularRef();
+		return rootEnt;
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG copy of the second graph, into the targets of the first one
+	public void POOL_reuse() {
+		CopyTargetPool pool = new CopyTargetPool(plans);
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt1 = findLoadedRoot(em, 1L);
+		RootEntity rootEnt2 = findLoadedRoot(em, 2L);
+
+		PooledCopy<RootEntity> copy1 = pool.copy(rootEnt1, cascadeAll());
+		RootEntity copyRoot1 = copy1.get();
+		AssociateEntity copyAssoc1 = copyRoot1.getAssociation();
+		copy1.close();
+		assertEquals(1, pool.getIdleCount(RootEntity.class));
+
+		try (PooledCopy<RootEntity> copy2 = pool.copy(rootEnt2, cascadeAll())) {
+			RootEntity copyRoot2 = copy2.get();
+			assertTrue(copyRoot2 == copyRoot1);
+			assertTrue(copyRoot2.getAssociation() == copyAssoc1);
+			assertEquals("Root:2L:Data1", copyRoot2.getData1());
+			assertEquals("DeepAssoc:2L:Data2", copyRoot2.getAssociation().getDeepAssocEntity().getData2());
+			assertTrue(copyRoot2.getAssociation1().getCircularRef() == copyRoot2);
+			assertTrue(differ.diff(rootEnt2, copyRoot2).isEmpty());
+			assertEquals(0, pool.getIdleCount(RootEntity.class));
+		}
+		assertEquals(1, pool.getIdleCount(RootEntity.class));
+		em.close();
+	}
+
+	@Test
+	//what the second copy does not copy is not left over from the first
+	public void POOL_reset() {
+		CopyTargetPool pool = new CopyTargetPool(plans);
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = findLoadedRoot(em, 1L);
+		pool.copy(rootEnt, cascadeAll()).close();
+
+		//the CASC_TREE_GROUP_with_ATTS copy
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data2");
+		cg.addAttribute("association.data1");
+		try (PooledCopy<RootEntity> copy = pool.copy(rootEnt, cg)) {
+			RootEntity copyRoot = copy.get();
+			assertEquals("Root:1L:Data2", copyRoot.getData2());
+			assertEquals(null, ((PersistenceObject) copyRoot)._persistence_get("data1"));
+			assertEquals(null, ((PersistenceObject) copyRoot)._persistence_get("association1"));
+			assertTrue(!fetchStates.isLoaded(copyRoot, "data1"));
+			AssociateEntity copyAssoc = copyRoot.getAssociation();
+			assertEquals("Assoc:1L:Data1", copyAssoc.getData1());
+			assertEquals(null, ((PersistenceObject) copyAssoc)._persistence_get("data2"));
+			assertEquals(null, ((PersistenceObject) copyAssoc)._persistence_get("deepAssocEntity"));
+		}
+
+		//the CASC_ALL_EMPTY_CG__NO_FG copy of a root loaded with the custom fetch group: the attributes it did not load are
+		//left as in a new entity, and the fetch group of the previous copy is gone
+		EntityManager em2 = emf.createEntityManager();
+		RootEntity partialRoot = TestGraphs.findRootEntityById(em2, 1L, TestGraphs.customFetchGroup());
+		try (PooledCopy<RootEntity> copy = pool.copy(partialRoot, cascadeAll())) {
+			RootEntity copyRoot = copy.get();
+			assertTrue(fetchStates.isLoaded(copyRoot, "data1"));
+			assertEquals(null, copyRoot.getData1());
+			assertEquals("Root:1L:Data2", copyRoot.getData2());
+		}
+		em2.close();
+		em.close();
+	}
+
+	@Test
+	public void POOL_maximum_idle() {
+		CopyTargetPool pool = new CopyTargetPool(plans, 1);
+		EntityManager em = emf.createEntityManager();
+		PooledCopy<RootEntity> copy1 = pool.copy(findLoadedRoot(em, 1L), cascadeAll());
+		PooledCopy<RootEntity> copy2 = pool.copy(findLoadedRoot(em, 2L), cascadeAll());
+		assertTrue(copy1.get() != copy2.get());
+		copy1.close();
+		copy2.close();
+		assertEquals(1, pool.getIdleCount(RootEntity.class));
+		assertEquals(1, pool.getIdleCount(AssociateEntity.class));
+		em.close();
+	}
+
+	@Test
+	public void POOL_no_allocation() {
+		CopyTargetPool pool = new CopyTargetPool(plans);
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = findLoadedRoot(em, 1L);
+		CopyPlan plan = plans.plan(RootEntity.class, cascadeAll());
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long length = 0;
+		//the first rounds warm up, as in TestFetchStateTracker
+		for (int round = 0; round < 3; round++) {
+			long allocated = threads.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < 100000; i++) {
+				PooledCopy<RootEntity> copy = pool.copy(rootEnt, plan);
+				length += copy.get().getAssociation().getData1().length();
+				copy.close();
+			}
+			allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+			if (round == 2) {
+				assertTrue("Copying into pooled targets allocated " + allocated + " bytes.", allocated < 1024);
+			}
+		}
+		assertEquals(300000 * "Assoc:1L:Data1".length(), length);
+		em.close();
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyIdentityMap;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.CopyTraversal;
+import com.test.eclipselink.jpa.test_copy.entities.ChainLinkEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copy plans should walk graphs iteratively (see CopyTraversal): a chain of links far longer than a recursive copy can
+ * go down, closed into a cycle, should be copied whole, in either order.
+ *
+ */
+public class TestDeepCopies {
+
+	private static final int CHAIN_LENGTH = 50000;
+
+	private static EntityManagerFactory emf;
+	private static CopyPlans plans;
+
+	@BeforeClass
+	public static void initialize() {
+		Map<String, Object> overrides = new HashMap<String, Object>();
+		//not every insert of the chain
+		overrides.put(PersistenceUnitProperties.LOGGING_LEVEL, "WARNING");
+		emf = TestGraphs.createEntityManagerFactory("deepCopies", overrides);
+		TestGraphs.persistGraph(emf, 1L);
+		persistChain();
+		plans = new CopyPlans(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	//links 1 to CHAIN_LENGTH, each one's next the one after it, and the last one's the first one; inserted from the last
+	//one, so that the foreign key of each link is there before it
+	private static void persistChain() {
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		for (long id = CHAIN_LENGTH; id >= 1; id--) {
+			em.createNativeQuery("INSERT INTO CHAIN_LINK_ENTITY (ID, DATA1, NEXT_FK) VALUES (?, ?, ?)")
+					.setParameter(1, id).setParameter(2, "Link:" + id + "L:Data1")
+					.setParameter(3, id == CHAIN_LENGTH ? null : id + 1).executeUpdate();
+		}
+		em.createNativeQuery("UPDATE CHAIN_LINK_ENTITY SET NEXT_FK = 1 WHERE ID = ?").setParameter(1, CHAIN_LENGTH)
+				.executeUpdate();
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	private static CopyGroup cascadeAll() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		return cg;
+	}
+
+	//the links, all in the persistence context, so that walking the chain runs no query
+	private static ChainLinkEntity loadChain(EntityManager em) {
+		List<ChainLinkEntity> links = em.createQuery("SELECT o FROM ChainLinkEntity o", ChainLinkEntity.class)
+				.getResultList();
+		assertEquals(CHAIN_LENGTH, links.size());
+		return em.find(ChainLinkEntity.class, 1L);
+	}
+
+	private static void assertChainCopy(ChainLinkEntity first, ChainLinkEntity firstCopy) {
+		ChainLinkEntity link = first;
+		ChainLinkEntity linkCopy = firstCopy;
+		for (int i = 1; i <= CHAIN_LENGTH; i++) {
+			assertTrue(linkCopy != link);
+			assertEquals(link.getId(), linkCopy.getId());
+			assertEquals(link.getData1(), linkCopy.getData1());
+			link = link.getNext();
+			linkCopy = linkCopy.getNext();
+		}
+		//the cycle closes on the copy of the first link
+		assertTrue(linkCopy == firstCopy);
+	}
+
+	@Test
+	public void DEEP_depth_first() {
+		EntityManager em = emf.createEntityManager();
+		ChainLinkEntity first = loadChain(em);
+		CopyPlan plan = plans.plan(ChainLinkEntity.class, cascadeAll());
+		ChainLinkEntity firstCopy = (ChainLinkEntity) plan.copy(first, new CopyIdentityMap(CHAIN_LENGTH),
+				CopyTraversal.DEPTH_FIRST);
+		assertChainCopy(first, firstCopy);
+		em.close();
+	}
+
+	@Test
+	public void DEEP_breadth_first() {
+		EntityManager em = emf.createEntityManager();
+		ChainLinkEntity first = loadChain(em);
+		CopyPlan plan = plans.plan(ChainLinkEntity.class, cascadeAll());
+		ChainLinkEntity firstCopy = (ChainLinkEntity) plan.copy(first, new CopyIdentityMap(CHAIN_LENGTH),
+				CopyTraversal.BREADTH_FIRST);
+		assertChainCopy(first, firstCopy);
+		em.close();
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG copy, breadth first: the same copy as depth first
+	public void DEEP_breadth_first_graph() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		CopyPlan plan = plans.plan(RootEntity.class, cascadeAll());
+		RootEntity copyRoot = (RootEntity) plan.copy(rootEnt, new CopyIdentityMap(), CopyTraversal.BREADTH_FIRST);
+
+		assertEquals("Root:1L:Data1", copyRoot.getData1());
+		assertTrue(copyRoot.getAssociation() != rootEnt.getAssociation());
+		assertEquals("Assoc:1L:Data2", copyRoot.getAssociation().getData2());
+		assertEquals("DeepAssoc:1L:Data1", copyRoot.getAssociation().getDeepAssocEntity().getData1());
+		assertTrue(copyRoot.getAssociation1().getCircularRef() == copyRoot);
+		em.close();
+	}
+
+}
@@ -0,0 +1,183 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.dto.DtoProjection;
+import com.test.eclipselink.jpa.test_copy.dto.DtoRecord;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * A DtoProjection should hold what a CASCADE_TREE copy with the same group holds, whether it reads loaded entities or
+ * the rows of its own query.
+ *
+ */
+public class TestDtoProjection {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("dtoProjection");
+		statementCounter = StatementCounter.install(emf);
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+
+		//a root without associations
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		RootEntity rootEntity = new RootEntity();
+		rootEntity.setId(3L);
+		rootEntity.setData1("Root:3L:Data1");
+		em.persist(rootEntity);
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static CopyGroup treeGroup() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.data2");
+		cg.addAttribute("association.deepAssocEntity.data1");
+		cg.addAttribute("association1.circularRef.data2");
+		return cg;
+	}
+
+	@Test
+	//the graph as nested records, the root reached again through association1 projected again
+	public void DTO_project() {
+		DtoProjection projection = DtoProjection.compile(emf, RootEntity.class, treeGroup());
+		EntityManager em = emf.createEntityManager();
+		DtoRecord root = projection.project(TestGraphs.findRootEntityById(em, 1L, null));
+		em.close();
+
+		assertEquals(Arrays.asList("id", "data1", "association", "association1"), root.getNames());
+		assertEquals(1L, root.get("id"));
+		assertEquals("Root:1L:Data1", root.get("data1"));
+		DtoRecord association = (DtoRecord) root.get("association");
+		assertEquals(Arrays.asList("id", "data2", "deepAssocEntity"), association.getNames());
+		assertEquals("Assoc:1L:Data2", association.get("data2"));
+		assertEquals("DeepAssoc:1L:Data1", ((DtoRecord) association.get("deepAssocEntity")).get("data1"));
+		DtoRecord circularRef = (DtoRecord) ((DtoRecord) root.get("association1")).get("circularRef");
+		assertEquals(1L, circularRef.get("id"));
+		assertEquals("Root:1L:Data2", circularRef.get("data2"));
+		try {
+			root.get("data2");
+			fail("data2 is not in the group");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	@Test
+	//one statement, and the same records as from the loaded entities, in the order of the ids
+	public void DTO_query() {
+		DtoProjection projection = DtoProjection.compile(emf, RootEntity.class, treeGroup());
+		EntityManager em = emf.createEntityManager();
+		statementCounter.reset();
+		List<DtoRecord> records = projection.query(em, Arrays.asList(2L, 99L, 1L, 3L));
+		assertEquals(1, statementCounter.getStatementCount());
+		assertEquals(3, records.size());
+		assertEquals(projection.project(TestGraphs.findRootEntityById(em, 2L, null)), records.get(0));
+		assertEquals(projection.project(TestGraphs.findRootEntityById(em, 1L, null)), records.get(1));
+		assertEquals(3L, records.get(2).get("id"));
+		assertNull(records.get(2).get("association"));
+		assertNull(records.get(2).get("association1"));
+		em.close();
+	}
+
+	@Test
+	//one row per graph, the columns of a missing association null
+	public void DTO_flat() {
+		DtoProjection projection = DtoProjection.compile(emf, RootEntity.class, treeGroup());
+		assertEquals(Arrays.asList("id", "data1", "association.id", "association.data2", "association.deepAssocEntity.id",
+				"association.deepAssocEntity.data1", "association1.id", "association1.circularRef.id",
+				"association1.circularRef.data2"), projection.getColumnNames());
+		EntityManager em = emf.createEntityManager();
+		assertArrayEquals(new Object[] { 2L, "Root:2L:Data1", 2L, "Assoc:2L:Data2", 2L, "DeepAssoc:2L:Data1", 2L, 2L,
+				"Root:2L:Data2" }, projection.projectFlat(TestGraphs.findRootEntityById(em, 2L, null)));
+		Object[] bare = new Object[] { 3L, "Root:3L:Data1", null, null, null, null, null, null, null };
+		assertArrayEquals(bare, projection.projectFlat(TestGraphs.findRootEntityById(em, 3L, null)));
+		assertArrayEquals(bare, projection.queryFlat(em, Arrays.asList(3L)).get(0));
+		//ids of another class than the key are converted to it
+		List<Object[]> rows = projection.queryFlat(em, Arrays.<Object> asList(3, "2"));
+		assertEquals(2, rows.size());
+		assertArrayEquals(bare, rows.get(0));
+		assertEquals(2L, rows.get(1)[0]);
+		em.close();
+	}
+
+	@Test
+	//a fetch group as the projection, of an entity loaded with a smaller one: what is missing gets loaded
+	public void DTO_fetch_group() {
+		FetchGroup fg = new FetchGroup();
+		fg.addAttribute("data2");
+		fg.addAttribute("association.lazyData3");
+		DtoProjection projection = DtoProjection.compile(emf, RootEntity.class, fg);
+		EntityManager em = emf.createEntityManager();
+		DtoRecord root = projection.project(TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup()));
+		em.close();
+		assertEquals("Root:1L:Data2", root.get("data2"));
+		assertEquals("Assoc:1L:LazyData3", ((DtoRecord) root.get("association")).get("lazyData3"));
+	}
+
+	@Test
+	//an empty group stands for all the attributes, as for a copy: the associations are projected with their basic attributes
+	public void DTO_empty_group() {
+		CopyGroup empty = new CopyGroup();
+		empty.cascadeTree();
+		DtoProjection projection = DtoProjection.compile(emf, RootEntity.class, empty);
+		EntityManager em = emf.createEntityManager();
+		DtoRecord root = projection.project(TestGraphs.findRootEntityById(em, 1L, null));
+		assertEquals(Arrays.asList("id", "data1", "data2", "association", "association1"), root.getNames());
+		DtoRecord association = (DtoRecord) root.get("association");
+		assertEquals(Arrays.asList("id", "data1", "data2", "lazyData3"), association.getNames());
+		assertEquals("Assoc:1L:LazyData3", association.get("lazyData3"));
+		assertEquals(root, projection.query(em, Arrays.asList(1L)).get(0));
+		em.close();
+	}
+
+	@Test
+	//only trees make projections
+	public void DTO_rejected() {
+		CopyGroup cascadeAll = new CopyGroup();
+		cascadeAll.cascadeAllParts();
+		try {
+			DtoProjection.compile(emf, RootEntity.class, cascadeAll);
+			fail("a CASCADE_ALL_PARTS group has no end");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		CopyGroup unknown = new CopyGroup();
+		unknown.addAttribute("data3");
+		try {
+			DtoProjection.compile(emf, RootEntity.class, unknown);
+			fail("there is no data3");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.diff.AttributeChange;
+import com.test.eclipselink.jpa.test_copy.diff.EntityDiffer;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Diffs (see EntityDiffer) between managed entities, edited after they were copied, and their copies: only the edits
+ * should be reported, by attribute path, without loading anything.
+ *
+ */
+public class TestEntityDiffer {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+	private static FetchStateTracker fetchStates;
+	private static EntityDiffer differ;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("entityDiffer");
+		statementCounter = StatementCounter.install(emf);
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+		fetchStates = new FetchStateTracker(emf);
+		differ = new EntityDiffer(emf, fetchStates);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	//the whole graph but the lazy basic attribute, loaded
+	private static RootEntity findLoadedRoot(EntityManager em) {
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		rootEnt.getAssociation().getDeepAssocEntity().getData1();
+		rootEnt.getAssociation1().getCircularRef();
+		return rootEnt;
+	}
+
+	private static RootEntity copyAll(EntityManager em, RootEntity rootEnt) {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		return (RootEntity) ((JpaEntityManager) em).copy(rootEnt, cg);
+	}
+
+	private static Map<String, AttributeChange> byPath(List<AttributeChange> changes) {
+		Map<String, AttributeChange> byPath = new TreeMap<String, AttributeChange>();
+		for (AttributeChange change : changes) {
+			byPath.put(change.getPath(), change);
+		}
+		return byPath;
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG copy, not edited: the cycle through association1.circularRef ends
+	public void DIFF_unchanged() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = findLoadedRoot(em);
+		RootEntity copyRoot = copyAll(em, rootEnt);
+
+		statementCounter.reset();
+		assertTrue(differ.diff(rootEnt, copyRoot).isEmpty());
+		assertEquals(0, statementCounter.getStatementCount());
+		em.close();
+	}
+
+	@Test
+	//edits at all depths, the circular reference included
+	public void DIFF_edited() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = findLoadedRoot(em);
+		RootEntity copyRoot = copyAll(em, rootEnt);
+
+		rootEnt.setData1("Root:1L:Data1:edited");
+		rootEnt.getAssociation().getDeepAssocEntity().setData2(null);
+		rootEnt.getAssociation1().getCircularRef().setData2("Root:1L:Data2:edited");
+
+		statementCounter.reset();
+		Map<String, AttributeChange> changes = byPath(differ.diff(rootEnt, copyRoot));
+		assertEquals(0, statementCounter.getStatementCount());
+		assertEquals("[association.deepAssocEntity.data2, data1, data2]", changes.keySet().toString());
+		assertEquals("Root:1L:Data1:edited", changes.get("data1").getOriginalValue());
+		assertEquals("Root:1L:Data1", changes.get("data1").getCopyValue());
+		assertEquals(null, changes.get("association.deepAssocEntity.data2").getOriginalValue());
+		assertEquals("DeepAssoc:1L:Data2", changes.get("association.deepAssocEntity.data2").getCopyValue());
+		em.close();
+	}
+
+	@Test
+	//a reference to another entity is a change of its own: what it leads to is not compared
+	public void DIFF_reference_replaced() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = findLoadedRoot(em);
+		RootEntity copyRoot = copyAll(em, rootEnt);
+
+		AssociateEntity otherAssoc = em.find(AssociateEntity.class, 2L);
+		rootEnt.setAssociation(otherAssoc);
+		rootEnt.setAssociation1(null);
+
+		Map<String, AttributeChange> changes = byPath(differ.diff(rootEnt, copyRoot));
+		assertEquals("[association, association1]", changes.keySet().toString());
+		assertTrue(changes.get("association").getOriginalValue() == otherAssoc);
+		assertTrue(changes.get("association").getCopyValue() == copyRoot.getAssociation());
+		assertEquals(null, changes.get("association1").getOriginalValue());
+		em.close();
+	}
+
+	@Test
+	//the CASC_TREE_GROUP_with_ATTS copy of an entity loaded with the custom fetch group: neither what the entity did not
+	//load, nor what the copy left out, is compared, or loaded
+	public void DIFF_not_loaded() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data2");
+		cg.addAttribute("association.data1");
+		RootEntity copyRoot = (RootEntity) ((JpaEntityManager) em).copy(rootEnt, cg);
+
+		statementCounter.reset();
+		assertTrue(differ.diff(rootEnt, copyRoot).isEmpty());
+		assertEquals(0, statementCounter.getStatementCount());
+		assertTrue(!fetchStates.isLoaded(rootEnt, "data1"));
+		assertTrue(!fetchStates.isLoaded(rootEnt, "association1"));
+		em.close();
+	}
+
+	@Test
+	public void DIFF_no_allocation() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = findLoadedRoot(em);
+		RootEntity copyRoot = copyAll(em, rootEnt);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		int unchanged = 0;
+		//the first rounds warm up, as in TestFetchStateTracker
+		for (int round = 0; round < 3; round++) {
+			long allocated = threads.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < 200000; i++) {
+				if (differ.diff(rootEnt, copyRoot).isEmpty()) {
+					unchanged++;
+				}
+			}
+			allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+			if (round == 2) {
+				assertTrue("Diffing allocated " + allocated + " bytes.", allocated < 1024);
+			}
+		}
+		assertEquals(600000, unchanged);
+		em.close();
+	}
+
+}
@@ -0,0 +1,151 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * The fetch state tracker (see FetchStateTracker) should agree with EntityManagerFactoryImpl.isLoaded as the fetch state
+ * of entities changes, and answer without allocating. TestCopyEntities checks it in every one of its scenarios too.
+ *
+ */
+public class TestFetchStateTracker {
+
+	private static final String[] ROOT_ATTRIBUTES = { "id", "data1", "data2", "association", "association1" };
+	private static final String[] ASSOCIATION_ATTRIBUTES = { "id", "data1", "data2", "lazyData3", "deepAssocEntity" };
+
+	private static EntityManagerFactory emf;
+	private static FetchStateTracker fetchStates;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("fetchStateTracker");
+		TestGraphs.persistGraph(emf, 1L);
+		fetchStates = new FetchStateTracker(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static void assertSameFetchState(Object entity, String... attributeNames) {
+		for (String attributeName : attributeNames) {
+			assertEquals("The fetch state of '" + attributeName + "' should be the one EntityManagerFactoryImpl.isLoaded reports.",
+					((EntityManagerFactoryImpl) emf).isLoaded(entity, attributeName),
+					fetchStates.isLoaded(entity, attributeName));
+			//the bitset of all loaded attributes agrees
+			long loadedBit = fetchStates.loadedAttributes(entity)
+					& (1L << fetchStates.position(entity.getClass(), attributeName));
+			assertEquals(fetchStates.isLoaded(entity, attributeName), loadedBit != 0);
+		}
+	}
+
+	@Test
+	//the entities of the custom fetch group, as they get initialized; "association.lazyData3" comes with "association"
+	public void TRACKER_custom_FG() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		assertSameFetchState(rootEnt, ROOT_ATTRIBUTES);
+		assertTrue(fetchStates.isLoaded(rootEnt, "data2"));
+		assertTrue(!fetchStates.isLoaded(rootEnt, "data1"));
+		assertTrue(!fetchStates.isLoaded(rootEnt, "association"));
+
+		AssociateEntity assoc = rootEnt.getAssociation();
+		assertSameFetchState(rootEnt, ROOT_ATTRIBUTES);
+		assertSameFetchState(assoc, ASSOCIATION_ATTRIBUTES);
+		assertTrue(fetchStates.isLoaded(rootEnt, "association"));
+		assertTrue(fetchStates.isLoaded(assoc, "lazyData3"));
+		assertTrue(!fetchStates.isLoaded(assoc, "data2"));
+
+		//loads the rest of the entity
+		assoc.getData2();
+		assertSameFetchState(assoc, ASSOCIATION_ATTRIBUTES);
+		assertTrue(fetchStates.isLoaded(assoc, "data2"));
+		assertTrue(!fetchStates.isLoaded(assoc, "deepAssocEntity"));
+		assoc.getDeepAssocEntity();
+		assertTrue(fetchStates.isLoaded(assoc, "deepAssocEntity"));
+		em.close();
+	}
+
+	@Test
+	//without a fetch group, the lazy basic attribute is left out by the default fetch group
+	public void TRACKER_default_FG() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		AssociateEntity assoc = rootEnt.getAssociation();
+		assertSameFetchState(assoc, ASSOCIATION_ATTRIBUTES);
+		assertTrue(!fetchStates.isLoaded(assoc, "lazyData3"));
+
+		assoc.getLazyData3();
+		assertSameFetchState(assoc, ASSOCIATION_ATTRIBUTES);
+		assertTrue(fetchStates.isLoaded(assoc, "lazyData3"));
+		em.close();
+	}
+
+	@Test
+	//copies carry the fetch group of their CopyGroup
+	public void TRACKER_CASC_TREE_copy() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.data2");
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		RootEntity copyRoot = (RootEntity) em.unwrap(JpaEntityManager.class).copy(rootEnt, cg);
+		em.close();
+
+		assertSameFetchState(copyRoot, ROOT_ATTRIBUTES);
+		assertSameFetchState(copyRoot.getAssociation(), ASSOCIATION_ATTRIBUTES);
+		assertTrue(fetchStates.isLoaded(copyRoot, "data1"));
+		assertTrue(!fetchStates.isLoaded(copyRoot, "data2"));
+		assertTrue(!fetchStates.isLoaded(copyRoot.getAssociation(), "lazyData3"));
+	}
+
+	@Test
+	public void TRACKER_no_allocation() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		AssociateEntity assoc = rootEnt.getAssociation();
+		int lazyData3 = fetchStates.position(AssociateEntity.class, "lazyData3");
+		int association = fetchStates.position(RootEntity.class, "association");
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		int loaded = 0;
+		//the first rounds warm up, and let reflection settle on its accessors
+		for (int round = 0; round < 3; round++) {
+			long allocated = threads.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < 1000000; i++) {
+				if (fetchStates.isLoaded(assoc, lazyData3) && fetchStates.isLoaded(rootEnt, association)
+						&& !fetchStates.isLoaded(assoc, "data2")) {
+					loaded++;
+				}
+			}
+			allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+			//a few hundred bytes go to the JIT and the counter itself, at times: 3M checks still allocate nothing
+			if (round == 2) {
+				assertTrue("Checking fetch states allocated " + allocated + " bytes.", allocated < 1024);
+			}
+		}
+		assertEquals(3000000, loaded);
+		em.close();
+	}
+
+}
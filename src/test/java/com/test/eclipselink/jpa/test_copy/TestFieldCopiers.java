@@ -0,0 +1,124 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.foundation.AbstractDirectMapping;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlan;
+import com.test.eclipselink.jpa.test_copy.copy.FieldCopier;
+import com.test.eclipselink.jpa.test_copy.copy.FieldCopiers;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Generated field copiers (see FieldCopiers) should copy what the mappings copy, and nothing that was not fetched.
+ *
+ */
+public class TestFieldCopiers {
+
+	private static EntityManagerFactory emf;
+	private static AbstractSession session;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("fieldCopiers");
+		TestGraphs.persistGraph(emf, 1L);
+		session = (AbstractSession) JpaHelper.getServerSession(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static FieldCopier generate(Class<?> entityClass, String... attributeNames) {
+		ClassDescriptor descriptor = session.getDescriptor(entityClass);
+		List<AbstractDirectMapping> mappings = new ArrayList<AbstractDirectMapping>();
+		for (String attributeName : attributeNames) {
+			AbstractDirectMapping mapping = (AbstractDirectMapping) descriptor.getMappingForAttributeName(attributeName);
+			assertTrue(FieldCopiers.canGenerate(mapping));
+			mappings.add(mapping);
+		}
+		return FieldCopiers.generate(entityClass, mappings);
+	}
+
+	@Test
+	public void FIELD_COPIER_copies_fields() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+
+		RootEntity copy = new RootEntity();
+		generate(RootEntity.class, "id", "data1", "data2").copy(rootEnt, copy);
+
+		assertEquals(Long.valueOf(1L), copy.getId());
+		assertEquals("Root:1L:Data1", copy.getData1());
+		assertEquals("Root:1L:Data2", copy.getData2());
+		em.close();
+	}
+
+	@Test
+	//the FetchGroup loads "data2", "association.data1" and "association.lazyData3" only
+	public void FIELD_COPIER_honours_fetch_group() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		AssociateEntity assoc = rootEnt.getAssociation();
+
+		RootEntity copy = new RootEntity();
+		generate(RootEntity.class, "data1", "data2").copy(rootEnt, copy);
+		AssociateEntity assocCopy = new AssociateEntity();
+		generate(AssociateEntity.class, "id", "data1", "data2", "lazyData3").copy(assoc, assocCopy);
+
+		assertEquals("Root:1L:Data2", copy.getData2());
+		assertTrue(copy.getData1() == null);
+		assertEquals("Assoc:1L:Data1", assocCopy.getData1());
+		assertEquals("Assoc:1L:LazyData3", assocCopy.getLazyData3());
+		assertTrue(assocCopy.getData2() == null);
+
+		//reading the fields directly did not load anything into the originals
+		assertTrue(!((EntityManagerFactoryImpl) emf).isLoaded(rootEnt, "data1"));
+		assertTrue(!((EntityManagerFactoryImpl) emf).isLoaded(assoc, "data2"));
+		em.close();
+	}
+
+	@Test
+	//a plan with generated copiers copies the same values as one that copies every attribute with its mapping
+	public void FIELD_COPIER_plan_matches_mappings() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		CopyPlan generated = CopyPlan.compile(session, RootEntity.class, cg, true);
+		CopyPlan mappings = CopyPlan.compile(session, RootEntity.class, cg, false);
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		RootEntity expected = (RootEntity) mappings.copy(rootEnt);
+		RootEntity actual = (RootEntity) generated.copy(rootEnt);
+
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getData1(), actual.getData1());
+		assertEquals(expected.getData2(), actual.getData2());
+		assertEquals(expected.getAssociation().getData1(), actual.getAssociation().getData1());
+		assertEquals(expected.getAssociation().getLazyData3(), actual.getAssociation().getLazyData3());
+		assertEquals(expected.getAssociation().getDeepAssocEntity().getData2(),
+				actual.getAssociation().getDeepAssocEntity().getData2());
+		assertEquals(expected.getAssociation1().getData1(), actual.getAssociation1().getData1());
+		assertTrue(actual.getAssociation1().getCircularRef() == actual);
+		em.close();
+	}
+
+}
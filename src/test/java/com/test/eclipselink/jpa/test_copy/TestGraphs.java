@@ -0,0 +1,105 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.FetchGroup;
+
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity_1;
+import com.test.eclipselink.jpa.test_copy.entities.DeepAssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * The setup of TestCopyEntities, for the test sets that came after it.
+ *
+ * Each test set gets an in-memory database of its own, so that graphs set up by other test sets (in the same JVM) are
+ * not merged over.
+ *
+ */
+final class TestGraphs {
+
+	private TestGraphs() {
+	}
+
+	static EntityManagerFactory createEntityManagerFactory(String database) {
+		return createEntityManagerFactory(database, new HashMap<String, Object>());
+	}
+
+	static EntityManagerFactory createEntityManagerFactory(String database, Map<String, Object> overrides) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PersistenceUnitProperties.JDBC_URL, "jdbc:hsqldb:mem:" + database);
+		properties.putAll(overrides);
+		return Persistence.createEntityManagerFactory("testPU", properties);
+	}
+
+	/**
+	 * Persists the graph of TestCopyEntities.initialize(), with the given id on all four entities.
+	 */
+	static void persistGraph(EntityManagerFactory emf, long id) {
+		EntityManager em = emf.createEntityManager();
+
+		RootEntity rootEntity = new RootEntity();
+		rootEntity.setId(id);
+		rootEntity.setData1("Root:" + id + "L:Data1");
+		rootEntity.setData2("Root:" + id + "L:Data2");
+
+		DeepAssociateEntity deepAssoc = new DeepAssociateEntity();
+		deepAssoc.setId(id);
+		deepAssoc.setData1("DeepAssoc:" + id + "L:Data1");
+		deepAssoc.setData2("DeepAssoc:" + id + "L:Data2");
+
+		AssociateEntity assocEnt = new AssociateEntity();
+		assocEnt.setId(id);
+		assocEnt.setData1("Assoc:" + id + "L:Data1");
+		assocEnt.setData2("Assoc:" + id + "L:Data2");
+		assocEnt.setLazyData3("Assoc:" + id + "L:LazyData3");
+
+		AssociateEntity_1 circularAssoc = new AssociateEntity_1();
+		circularAssoc.setId(id);
+		circularAssoc.setData1("Assoc_1:" + id + "L:Data1");
+		circularAssoc.setData2("Assoc_1:" + id + "L:Data2");
+
+		em.getTransaction().begin();
+
+		rootEntity = em.merge(rootEntity);
+		assocEnt = em.merge(assocEnt);
+		assocEnt.setDeepAssocEntity(em.merge(deepAssoc));
+		rootEntity.setAssociation(assocEnt);
+
+		circularAssoc.setCircularRef(rootEntity);
+		rootEntity.setAssociation1(em.merge(circularAssoc));
+
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * The FetchGroup most of TestCopyEntities queries with.
+	 */
+	static FetchGroup customFetchGroup() {
+		FetchGroup fg = new FetchGroup();
+		fg.addAttribute("data2");
+		fg.addAttribute("association.data1");
+		fg.addAttribute("association.lazyData3");
+		return fg;
+	}
+
+	static RootEntity findRootEntityById(EntityManager em, Long id, FetchGroup fg) {
+		TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class);
+		query.setParameter("id", id);
+		if (fg != null) {
+			query.setHint(QueryHints.FETCH_GROUP, fg);
+		}
+		return query.getSingleResult();
+	}
+
+}
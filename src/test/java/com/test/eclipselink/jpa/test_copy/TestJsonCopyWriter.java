@@ -0,0 +1,177 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+import com.test.eclipselink.jpa.test_copy.json.JsonCopyWriter;
+
+/**
+ *
+ * A JsonCopyWriter should write what a copy with the same group holds, leaving out what is not loaded rather than
+ * loading it.
+ *
+ */
+public class TestJsonCopyWriter {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("jsonCopyWriter");
+		statementCounter = StatementCounter.install(emf);
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static CopyGroup treeGroup() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.lazyData3");
+		cg.addAttribute("association.deepAssocEntity");
+		cg.addAttribute("association1.circularRef");
+		return cg;
+	}
+
+	//the graph loaded all the way, lazyData3 included
+	private static RootEntity loadGraph(EntityManager em, long id) {
+		RootEntity rootEntity = TestGraphs.findRootEntityById(em, id, null);
+		rootEntity.getAssociation().getLazyData3();
+		rootEntity.getAssociation().getDeepAssocEntity();
+		rootEntity.getAssociation1().getCircularRef();
+		return rootEntity;
+	}
+
+	private static String write(JsonCopyWriter writer, Object entity) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(entity, out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	//nested paths, basic attributes for an association without a nested group, and the root written again as its id
+	public void JSON_tree() throws IOException {
+		JsonCopyWriter writer = JsonCopyWriter.compile(emf, RootEntity.class, treeGroup());
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEntity = loadGraph(em, 1L);
+		statementCounter.reset();
+		assertEquals("{\"id\":1,\"data1\":\"Root:1L:Data1\",\"association\":{\"id\":1,\"lazyData3\":\"Assoc:1L:LazyData3\","
+				+ "\"deepAssocEntity\":{\"id\":1,\"data1\":\"DeepAssoc:1L:Data1\",\"data2\":\"DeepAssoc:1L:Data2\"}},"
+				+ "\"association1\":{\"id\":1,\"circularRef\":1}}", write(writer, rootEntity));
+		assertEquals(0, statementCounter.getStatementCount());
+		em.close();
+	}
+
+	@Test
+	//what is not loaded is left out, and stays unloaded
+	public void JSON_unloaded_omitted() throws IOException {
+		CopyGroup cg = treeGroup();
+		cg.addAttribute("data2");
+		JsonCopyWriter writer = JsonCopyWriter.compile(emf, RootEntity.class, cg);
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEntity = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		statementCounter.reset();
+		assertEquals("{\"id\":1,\"data2\":\"Root:1L:Data2\"}", write(writer, rootEntity));
+		assertEquals(0, statementCounter.getStatementCount());
+		assertFalse(emf.getPersistenceUnitUtil().isLoaded(rootEntity, "data1"));
+		assertFalse(emf.getPersistenceUnitUtil().isLoaded(rootEntity, "association"));
+
+		//the association is loaded with the nested fetch group: lazyData3, but not deepAssocEntity
+		rootEntity.getAssociation();
+		statementCounter.reset();
+		assertEquals("{\"id\":1,\"data2\":\"Root:1L:Data2\",\"association\":{\"id\":1,\"lazyData3\":\"Assoc:1L:LazyData3\"}}",
+				write(writer, rootEntity));
+		assertEquals(0, statementCounter.getStatementCount());
+		em.close();
+	}
+
+	@Test
+	//associations that are not cascaded to are written as their ids
+	public void JSON_cascade() throws IOException {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEntity = loadGraph(em, 2L);
+		String root = "\"id\":2,\"data1\":\"Root:2L:Data1\",\"data2\":\"Root:2L:Data2\"";
+		String association = "{\"id\":2,\"data1\":\"Assoc:2L:Data1\",\"data2\":\"Assoc:2L:Data2\","
+				+ "\"lazyData3\":\"Assoc:2L:LazyData3\",\"deepAssocEntity\":";
+		String deep = "{\"id\":2,\"data1\":\"DeepAssoc:2L:Data1\",\"data2\":\"DeepAssoc:2L:Data2\"}";
+
+		CopyGroup cascadeAll = new CopyGroup();
+		cascadeAll.cascadeAllParts();
+		assertEquals("{" + root + ",\"association\":" + association + deep + "},\"association1\":"
+				+ "{\"id\":2,\"data1\":\"Assoc_1:2L:Data1\",\"data2\":\"Assoc_1:2L:Data2\",\"circularRef\":2}}",
+				write(JsonCopyWriter.compile(emf, RootEntity.class, cascadeAll), rootEntity));
+
+		CopyGroup privateParts = new CopyGroup();
+		privateParts.cascadePrivateParts();
+		assertEquals("{" + root + ",\"association\":" + association + "2},\"association1\":2}",
+				write(JsonCopyWriter.compile(emf, RootEntity.class, privateParts), rootEntity));
+
+		CopyGroup noCascade = new CopyGroup();
+		noCascade.dontCascade();
+		assertEquals("{" + root + ",\"association\":2,\"association1\":2}",
+				write(JsonCopyWriter.compile(emf, RootEntity.class, noCascade), rootEntity));
+		em.close();
+	}
+
+	@Test
+	//strings escaped and UTF-8 encoded, the same on a stream and on a channel; arrays of graphs written whole
+	public void JSON_output() throws IOException {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		JsonCopyWriter writer = JsonCopyWriter.compile(emf, RootEntity.class, cg);
+		RootEntity rootEntity = new RootEntity();
+		rootEntity.setId(5L);
+		rootEntity.setData1("\"\\/\t\n\u0001é€😀");
+		String expected = "{\"id\":5,\"data1\":\"\\\"\\\\/\\t\\n\\u0001é€😀\"}";
+		assertEquals(expected, write(writer, rootEntity));
+
+		ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+		writer.write(rootEntity, Channels.newChannel(channelOut));
+		assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), channelOut.toByteArray());
+
+		EntityManager em = emf.createEntityManager();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonCopyWriter.compile(emf, RootEntity.class, treeGroup()).writeAll(Arrays.asList(loadGraph(em, 1L), loadGraph(em, 1L)),
+				out);
+		String graph = write(JsonCopyWriter.compile(emf, RootEntity.class, treeGroup()), loadGraph(em, 1L));
+		assertEquals("[" + graph + "," + graph + "]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+		em.close();
+	}
+
+	@Test
+	//the same checks as a projection
+	public void JSON_rejected() {
+		CopyGroup unknown = new CopyGroup();
+		unknown.addAttribute("association.data3");
+		try {
+			JsonCopyWriter.compile(emf, RootEntity.class, unknown);
+			fail("there is no data3");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+}
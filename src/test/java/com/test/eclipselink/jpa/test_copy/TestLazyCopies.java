@@ -0,0 +1,147 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.FetchStateTracker;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Lazy copies (see CopyPlan.copyLazily) should copy nothing but the basic attributes up front, and then each association
+ * on first access, as the eager copy with the same CopyGroup would have.
+ *
+ */
+public class TestLazyCopies {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+	private static FetchStateTracker fetchStates;
+	private static CopyPlans plans;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("lazyCopies");
+		statementCounter = StatementCounter.install(emf);
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+		fetchStates = new FetchStateTracker(emf);
+		plans = new CopyPlans(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static CopyGroup cascadeAll() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		return cg;
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG copy: nothing is loaded until an association of the copy is read
+	public void LAZY_CASC_ALL() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+
+		statementCounter.reset();
+		RootEntity copyRoot = plans.copyLazily(rootEnt, cascadeAll());
+		assertEquals(0, statementCounter.getStatementCount());
+		assertEquals("Root:1L:Data1", copyRoot.getData1());
+		assertTrue(!fetchStates.isLoaded(copyRoot, "association"));
+		assertTrue(!fetchStates.isLoaded(rootEnt, "association"));
+
+		AssociateEntity copyAssoc = copyRoot.getAssociation();
+		assertTrue(fetchStates.isLoaded(copyRoot, "association"));
+		assertTrue(copyAssoc != rootEnt.getAssociation());
+		assertTrue(copyAssoc == copyRoot.getAssociation());
+		assertEquals("Assoc:1L:Data1", copyAssoc.getData1());
+		assertTrue(!fetchStates.isLoaded(copyAssoc, "deepAssocEntity"));
+		assertEquals("DeepAssoc:1L:Data2", copyAssoc.getDeepAssocEntity().getData2());
+		assertTrue(copyAssoc.getDeepAssocEntity() != rootEnt.getAssociation().getDeepAssocEntity());
+		assertTrue(!fetchStates.isLoaded(copyRoot, "association1"));
+		em.close();
+	}
+
+	@Test
+	//associations the original already loaded are copied without a query, and the back-reference leads to the copy of the
+	//root
+	public void LAZY_circular_reference() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		rootEnt.getAssociation1().getCircularRef();
+
+		statementCounter.reset();
+		RootEntity copyRoot = plans.copyLazily(rootEnt, cascadeAll());
+		assertTrue(copyRoot.getAssociation1() != rootEnt.getAssociation1());
+		assertTrue(copyRoot.getAssociation1().getCircularRef() == copyRoot);
+		assertEquals(0, statementCounter.getStatementCount());
+		em.close();
+	}
+
+	@Test
+	//an association set before it is read replaces the one to be copied; the original keeps its own
+	public void LAZY_set() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		AssociateEntity otherAssoc = em.find(AssociateEntity.class, 2L);
+		RootEntity copyRoot = plans.copyLazily(rootEnt, cascadeAll());
+
+		copyRoot.setAssociation(otherAssoc);
+		copyRoot.setAssociation1(null);
+		assertTrue(copyRoot.getAssociation() == otherAssoc);
+		assertTrue(copyRoot.getAssociation1() == null);
+		assertEquals(1L, rootEnt.getAssociation().getId().longValue());
+		assertTrue(rootEnt.getAssociation1() != null);
+		em.close();
+	}
+
+	@Test
+	//associations that are not cascaded are shared with the original, as in the eager copy, once read
+	public void LAZY_CASC_PRIVATE() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadePrivateParts();
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		RootEntity copyRoot = plans.copyLazily(rootEnt, cg);
+
+		assertTrue(copyRoot.getAssociation() != rootEnt.getAssociation());
+		assertTrue(copyRoot.getAssociation1() == rootEnt.getAssociation1());
+		assertTrue(copyRoot.getAssociation().getDeepAssocEntity() == rootEnt.getAssociation().getDeepAssocEntity());
+		em.close();
+	}
+
+	@Test
+	//the CASC_TREE_GROUP_with_ATTS copy: the association gets the attributes of its nested group when it is read
+	public void LAZY_CASC_TREE_GROUP_with_ATTS() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.data2");
+
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		RootEntity copyRoot = plans.copyLazily(rootEnt, cg);
+
+		assertTrue(!fetchStates.isLoaded(copyRoot, "association"));
+		AssociateEntity copyAssoc = copyRoot.getAssociation();
+		assertEquals("Assoc:1L:Data2", copyAssoc.getData2());
+		assertTrue(!fetchStates.isLoaded(copyAssoc, "data1"));
+		assertTrue(!fetchStates.isLoaded(copyRoot, "data2"));
+		em.close();
+	}
+
+}
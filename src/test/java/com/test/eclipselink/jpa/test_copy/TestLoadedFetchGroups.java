@@ -0,0 +1,120 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.LoadedFetchGroups;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * FetchGroups captured from loaded graphs (see LoadedFetchGroups) should be the groups the graphs were loaded with, and
+ * copying with them should run no query - unlike the CG_from_ENTITY_FG scenario of TestCopyEntities.
+ *
+ */
+public class TestLoadedFetchGroups {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+	private static LoadedFetchGroups fetchGroups;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("loadedFetchGroups");
+		TestGraphs.persistGraph(emf, 1L);
+		TestGraphs.persistGraph(emf, 2L);
+		statementCounter = StatementCounter.install(emf);
+		fetchGroups = new LoadedFetchGroups(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static boolean isAttributeInitialized(Object entity, String attributeName) {
+		return ((EntityManagerFactoryImpl) emf).isLoaded(entity, attributeName);
+	}
+
+	@Test
+	//the CG_from_ENTITY_FG scenario, with the group captured from the graph instead of the root's own
+	public void CAPTURE_custom_FG() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		AssociateEntity assoc = rootEnt.getAssociation();
+
+		FetchGroup captured = fetchGroups.capture(rootEnt);
+		assertTrue(captured.containsAttribute("data2"));
+		assertTrue(captured.containsAttribute("association.data1"));
+		assertTrue(captured.containsAttribute("association.lazyData3"));
+		assertTrue(!captured.containsAttribute("data1"));
+		assertTrue(!captured.containsAttribute("association1"));
+		assertTrue(!captured.containsAttribute("association.data2"));
+		assertTrue(!captured.containsAttribute("association.deepAssocEntity"));
+
+		statementCounter.reset();
+		RootEntity copyRoot = (RootEntity) ((JpaEntityManager) em).copy(rootEnt, captured.toCopyGroup());
+		assertEquals(0, statementCounter.getStatementCount());
+
+		assertEquals("Root:1L:Data2", copyRoot.getData2());
+		assertEquals("Assoc:1L:Data1", copyRoot.getAssociation().getData1());
+		assertEquals("Assoc:1L:LazyData3", copyRoot.getAssociation().getLazyData3());
+		assertTrue(!isAttributeInitialized(copyRoot, "data1"));
+		assertTrue(!isAttributeInitialized(copyRoot.getAssociation(), "data2"));
+
+		//nor were the originals initialized any further
+		assertTrue(!isAttributeInitialized(assoc, "data2"));
+		em.close();
+	}
+
+	@Test
+	//graphs loaded the same way share their group
+	public void CAPTURE_cached_per_class() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt1 = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		RootEntity rootEnt2 = TestGraphs.findRootEntityById(em, 2L, TestGraphs.customFetchGroup());
+		assertTrue(fetchGroups.capture(rootEnt1) == fetchGroups.capture(rootEnt2));
+
+		rootEnt2.getAssociation();
+		assertTrue(fetchGroups.capture(rootEnt1) != fetchGroups.capture(rootEnt2));
+		rootEnt1.getAssociation();
+		assertTrue(fetchGroups.capture(rootEnt1) == fetchGroups.capture(rootEnt2));
+		em.close();
+	}
+
+	@Test
+	//a fully loaded graph, back-reference included
+	public void CAPTURE_circular_reference() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		//loading lazyData3 refreshes the association, which resets its value holders: it goes first
+		rootEnt.getAssociation().getLazyData3();
+		rootEnt.getAssociation().getDeepAssocEntity();
+		rootEnt.getAssociation1().getCircularRef();
+
+		FetchGroup captured = fetchGroups.capture(rootEnt);
+		assertTrue(captured.containsAttribute("association.deepAssocEntity.data2"));
+		assertTrue(captured.containsAttribute("association1.circularRef.id"));
+		assertTrue(!captured.containsAttribute("association1.circularRef.data1"));
+
+		statementCounter.reset();
+		RootEntity copyRoot = (RootEntity) ((JpaEntityManager) em).copy(rootEnt, fetchGroups.copyGroup(rootEnt));
+		assertEquals(0, statementCounter.getStatementCount());
+		assertTrue(copyRoot.getAssociation1().getCircularRef() == copyRoot);
+		assertEquals("DeepAssoc:1L:Data1", copyRoot.getAssociation().getDeepAssocEntity().getData1());
+		em.close();
+	}
+
+}
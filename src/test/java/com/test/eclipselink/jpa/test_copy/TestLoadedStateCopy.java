@@ -0,0 +1,136 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.LoadedCopyGroups;
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.AssociateEntity;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Copies that only take what is already loaded (see LoadedCopyGroups).
+ *
+ * The same graph as in TestCopyEntities is used; this time, a StatementCounter tells us whether copying
+ * went to the database behind our back.
+ *
+ */
+public class TestLoadedStateCopy {
+
+	private static EntityManagerFactory emf;
+	private static StatementCounter statementCounter;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("loadedStateCopy");
+		TestGraphs.persistGraph(emf, 1L);
+
+		statementCounter = StatementCounter.install(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	@Before
+	public void resetCounter() {
+		statementCounter.reset();
+	}
+
+	private static boolean isAttributeInitialized(Object entity, String attributeName) {
+		return ((EntityManagerFactoryImpl) emf).isLoaded(entity, attributeName);
+	}
+
+	@Test
+	//the CG_from_ENTITY_FG scenario: this time the nested "association.lazyData3" survives and nothing is queried
+	public void LOADED_CG__WITH_FG() {
+		EntityManager em = emf.createEntityManager();
+
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, TestGraphs.customFetchGroup());
+		AssociateEntity assoc = rootEnt.getAssociation();
+		statementCounter.reset();
+
+		RootEntity copyRoot = LoadedCopyGroups.copy(em, rootEnt);
+
+		assertEquals("Copying loaded state should not execute any statement.", 0, statementCounter.getStatementCount());
+
+		//the copy has exactly what the FetchGroup loaded:
+		assertTrue(isAttributeInitialized(copyRoot, "data2"));
+		assertTrue(isAttributeInitialized(copyRoot, "association"));
+		assertTrue(isAttributeInitialized(copyRoot.getAssociation(), "data1"));
+		assertTrue(isAttributeInitialized(copyRoot.getAssociation(), "lazyData3"));
+		assertEquals("Assoc:1L:LazyData3", copyRoot.getAssociation().getLazyData3());
+
+		assertTrue(!isAttributeInitialized(copyRoot, "data1"));
+		assertTrue(!isAttributeInitialized(copyRoot, "association1"));
+		assertTrue(!isAttributeInitialized(copyRoot.getAssociation(), "data2"));
+		assertTrue(!isAttributeInitialized(copyRoot.getAssociation(), "deepAssocEntity"));
+
+		//and, unlike CG_from_ENTITY_FG, the original "association" was left alone
+		assertTrue(!isAttributeInitialized(assoc, "data2"));
+		assertTrue(!isAttributeInitialized(rootEnt, "data1"));
+
+		em.close();
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG scenario: default fetch state, no associations touched
+	public void LOADED_CG__NO_FG() {
+		EntityManager em = emf.createEntityManager();
+
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		statementCounter.reset();
+
+		RootEntity copyRoot = LoadedCopyGroups.copy(em, rootEnt);
+
+		assertEquals("Copying loaded state should not execute any statement.", 0, statementCounter.getStatementCount());
+		assertEquals("Root:1L:Data1", copyRoot.getData1());
+		assertEquals("Root:1L:Data2", copyRoot.getData2());
+		assertTrue(!isAttributeInitialized(copyRoot, "association"));
+		assertTrue(!isAttributeInitialized(copyRoot, "association1"));
+
+		//the original stays as it was
+		assertTrue(!isAttributeInitialized(rootEnt, "association"));
+		assertTrue(!isAttributeInitialized(rootEnt, "association1"));
+
+		em.close();
+	}
+
+	@Test
+	//a graph that was initialized all the way around the circular reference
+	public void LOADED_CG__FULL_GRAPH() {
+		EntityManager em = emf.createEntityManager();
+
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		rootEnt.getAssociation().getDeepAssocEntity();
+		rootEnt.getAssociation1().getCircularRef();
+		statementCounter.reset();
+
+		RootEntity copyRoot = LoadedCopyGroups.copy(em, rootEnt);
+
+		assertEquals("Copying loaded state should not execute any statement.", 0, statementCounter.getStatementCount());
+		assertEquals("DeepAssoc:1L:Data1", copyRoot.getAssociation().getDeepAssocEntity().getData1());
+		assertEquals("Assoc_1:1L:Data2", copyRoot.getAssociation1().getData2());
+		assertTrue(copyRoot != rootEnt);
+
+		//back-referencing is kept: the circular reference points to the root's copy
+		assertTrue(copyRoot.getAssociation1().getCircularRef() == copyRoot);
+
+		//lazyData3 was never fetched, so it is not part of the copy either
+		assertTrue(!isAttributeInitialized(copyRoot.getAssociation(), "lazyData3"));
+
+		em.close();
+	}
+
+}
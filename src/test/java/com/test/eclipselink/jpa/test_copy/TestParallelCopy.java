@@ -0,0 +1,140 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.ParallelCopier;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Parallel copies (see ParallelCopier), split into chunks small enough to give every thread of the pool some work.
+ *
+ */
+public class TestParallelCopy {
+
+	private static final int WIDTH = 20;
+
+	private static EntityManagerFactory emf;
+	private static ForkJoinPool pool;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("parallelCopy");
+		for (long id = 1; id <= WIDTH; id++) {
+			TestGraphs.persistGraph(emf, id);
+		}
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		pool.shutdown();
+		emf.close();
+	}
+
+	private static List<Long> ids(long from, long to) {
+		List<Long> ids = new ArrayList<Long>();
+		for (long id = from; id <= to; id++) {
+			ids.add(id);
+		}
+		return ids;
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG scenario, for every root
+	public void PARALLEL_CASC_ALL_EMPTY_CG__NO_FG() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+
+		ParallelCopier copier = new ParallelCopier(emf, new CopyPlans(emf), pool, 3);
+		List<RootEntity> copies = copier.copyAll(RootEntity.class, ids(1, WIDTH), cg);
+
+		assertEquals(WIDTH, copies.size());
+		for (int i = 0; i < WIDTH; i++) {
+			RootEntity copyRoot = copies.get(i);
+			long id = i + 1;
+			assertEquals(Long.valueOf(id), copyRoot.getId());
+			assertEquals("Root:" + id + "L:Data1", copyRoot.getData1());
+			assertEquals("DeepAssoc:" + id + "L:Data2", copyRoot.getAssociation().getDeepAssocEntity().getData2());
+
+			//every graph keeps its back-reference
+			assertTrue(copyRoot.getAssociation1().getCircularRef() == copyRoot);
+		}
+	}
+
+	@Test
+	//the CASC_TREE_GROUP_with_ATTS scenario: the copies know what they are missing, once detached from their context
+	public void PARALLEL_CASC_TREE_GROUP_with_ATTS() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.data2");
+
+		ParallelCopier copier = new ParallelCopier(emf, new CopyPlans(emf), pool, 2);
+		List<RootEntity> copies = copier.copyAll(RootEntity.class, ids(5, 9), cg);
+
+		assertEquals(5, copies.size());
+		for (int i = 0; i < copies.size(); i++) {
+			long id = i + 5;
+			assertEquals("Root:" + id + "L:Data1", copies.get(i).getData1());
+			assertEquals("Assoc:" + id + "L:Data2", copies.get(i).getAssociation().getData2());
+		}
+
+		IllegalStateException illegalStateExc = null;
+		try {
+			copies.get(0).getData2();
+		} catch (IllegalStateException e) {
+			illegalStateExc = e;
+		}
+		assertTrue(illegalStateExc != null);
+	}
+
+	@Test
+	public void PARALLEL_missing_ids() {
+		CopyGroup cg = new CopyGroup();
+		cg.dontCascade();
+
+		List<Long> ids = ids(WIDTH - 1, WIDTH + 2);
+		List<RootEntity> copies = new ParallelCopier(emf, new CopyPlans(emf), pool).copyAll(RootEntity.class, ids, cg);
+
+		assertEquals(2, copies.size());
+		assertEquals(Long.valueOf(WIDTH - 1), copies.get(0).getId());
+		assertEquals(Long.valueOf(WIDTH), copies.get(1).getId());
+	}
+
+	@Test
+	//ids of another class than the key are converted to it, not silently left out
+	public void PARALLEL_converted_ids() {
+		CopyGroup cg = new CopyGroup();
+		cg.dontCascade();
+		ParallelCopier copier = new ParallelCopier(emf, new CopyPlans(emf), pool);
+
+		List<RootEntity> copies = copier.copyAll(RootEntity.class, Arrays.<Object> asList(3, "2", 1L), cg);
+
+		assertEquals(3, copies.size());
+		assertEquals(Long.valueOf(3), copies.get(0).getId());
+		assertEquals(Long.valueOf(2), copies.get(1).getId());
+		assertEquals(Long.valueOf(1), copies.get(2).getId());
+		try {
+			copier.copyAll(RootEntity.class, Arrays.<Object> asList("one"), cg);
+			fail("not an id");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+}
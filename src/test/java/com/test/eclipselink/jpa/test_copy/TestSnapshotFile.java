@@ -0,0 +1,209 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.test.eclipselink.jpa.test_copy.copy.StatementCounter;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+import com.test.eclipselink.jpa.test_copy.snapshot.EntitySnapshot;
+import com.test.eclipselink.jpa.test_copy.snapshot.SnapshotFile;
+
+/**
+ *
+ * Snapshots written to a SnapshotFile should read back the same after a restart - played by a second
+ * EntityManagerFactory over an empty database, which is never queried - back-references included.
+ *
+ */
+public class TestSnapshotFile {
+
+	private static EntityManagerFactory emf;
+	private static EntityManagerFactory restartedEmf;
+	private static StatementCounter statementCounter;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("snapshotFile");
+		TestGraphs.persistGraph(emf, 1L);
+		restartedEmf = TestGraphs.createEntityManagerFactory("snapshotFileRestarted");
+		statementCounter = StatementCounter.install(restartedEmf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+		restartedEmf.close();
+	}
+
+	private static RootEntity copyAll() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, null);
+		RootEntity copyRoot = (RootEntity) ((JpaEntityManager) em).copy(rootEnt, cg);
+		em.close();
+		return copyRoot;
+	}
+
+	private static RootEntity newRoot(long id, String data1) {
+		RootEntity rootEnt = new RootEntity();
+		rootEnt.setId(id);
+		rootEnt.setData1(data1);
+		return rootEnt;
+	}
+
+	private Path newFile() throws IOException {
+		File file = folder.newFile();
+		//the file must not exist yet, so as to be created with its header
+		file.delete();
+		return file.toPath();
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG copy, read back after a restart
+	public void SNAPSHOT_FILE_reload() throws IOException {
+		Path path = newFile();
+		SnapshotFile file = new SnapshotFile(emf, path);
+		long graphHandle = file.append(copyAll());
+		long newHandle = file.append(newRoot(7L, "Rööt ☃"));
+		file.close();
+
+		statementCounter.reset();
+		SnapshotFile reloaded = new SnapshotFile(restartedEmf, path);
+		assertArrayEquals(new long[] { graphHandle, newHandle }, reloaded.getHandles());
+
+		EntitySnapshot root = reloaded.get(graphHandle);
+		assertEquals(RootEntity.class, root.getEntityClass());
+		assertEquals(1L, root.getLong("id"));
+		assertEquals("Root:1L:Data2", root.getString("data2"));
+		EntitySnapshot assoc = root.getReference("association");
+		assertTrue(assoc.isNull("lazyData3"));
+		assertEquals("DeepAssoc:1L:Data1", assoc.getReference("deepAssocEntity").getString("data1"));
+		//the back-reference leads to the root itself
+		assertEquals(root, root.getReference("association1").getReference("circularRef"));
+
+		EntitySnapshot newRoot = reloaded.get(newHandle);
+		assertEquals("Rööt ☃", newRoot.getString("data1"));
+		assertTrue(newRoot.getReference("association") == null);
+		assertEquals(0, statementCounter.getStatementCount());
+
+		reloaded.close();
+		IllegalStateException illegalStateExc = null;
+		try {
+			root.getString("data1");
+		} catch (IllegalStateException e) {
+			illegalStateExc = e;
+		}
+		assertTrue(illegalStateExc != null);
+	}
+
+	@Test
+	//appending after a restart, past the size of the first mapping
+	public void SNAPSHOT_FILE_append_after_reload() throws IOException {
+		Path path = newFile();
+		SnapshotFile file = new SnapshotFile(emf, path);
+		file.append(newRoot(1L, "Root:1"));
+		file.close();
+		long sizeAfterOne = path.toFile().length();
+
+		file = new SnapshotFile(restartedEmf, path);
+		for (long id = 2; id <= 20000; id++) {
+			file.append(newRoot(id, "Root:" + id));
+		}
+		file.close();
+		assertTrue(path.toFile().length() > 1 << 20);
+
+		file = new SnapshotFile(emf, path);
+		long[] handles = file.getHandles();
+		assertEquals(20000, handles.length);
+		//the layout of RootEntity was written once, with the first snapshot
+		assertEquals(handles[1] - handles[0], handles[2] - handles[1]);
+		assertEquals(sizeAfterOne, handles[1]);
+		assertEquals("Root:20000", file.get(handles[19999]).getString("data1"));
+		file.close();
+	}
+
+	@Test
+	//an entry whose length was not written ends the file, and is written over
+	public void SNAPSHOT_FILE_torn_entry() throws IOException {
+		//the size of the entry of a shorter root, as written after the same entries
+		Path scratch = newFile();
+		SnapshotFile file = new SnapshotFile(emf, scratch);
+		file.append(newRoot(1L, "Root:1"));
+		long shorterHandle = file.append(newRoot(3L, "R3"));
+		long shorterSize = file.getSize() - shorterHandle;
+		file.close();
+
+		Path path = newFile();
+		file = new SnapshotFile(emf, path);
+		file.append(newRoot(1L, "Root:1"));
+		long tornHandle = file.append(newRoot(2L, "Root:2:a longer root, torn"));
+		file.close();
+		try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw")) {
+			raf.seek(tornHandle);
+			raf.writeInt(0);
+			//what is left of the torn entry where the shorter one ends, read as the header of an entry
+			raf.seek(tornHandle + shorterSize);
+			raf.writeInt(16);
+			raf.writeInt(7);
+		}
+
+		file = new SnapshotFile(emf, path);
+		assertEquals(1, file.getSnapshotCount());
+		//a shorter entry over the torn one, the process dying before the file is closed, and so trimmed
+		assertEquals(tornHandle, file.append(newRoot(3L, "R3")));
+		file.force();
+		Path crashed = newFile();
+		Files.copy(path, crashed, StandardCopyOption.REPLACE_EXISTING);
+		assertEquals(3L, file.get(tornHandle).getLong("id"));
+		file.close();
+
+		file = new SnapshotFile(emf, crashed);
+		assertEquals(2, file.getSnapshotCount());
+		assertEquals("R3", file.get(tornHandle).getString("data1"));
+		file.close();
+	}
+
+	@Test
+	//a file of another format version is not read
+	public void SNAPSHOT_FILE_version() throws IOException {
+		Path path = newFile();
+		SnapshotFile file = new SnapshotFile(emf, path);
+		file.append(newRoot(1L, "Root:1"));
+		file.close();
+		try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw")) {
+			raf.seek(4);
+			raf.writeInt(SnapshotFile.FORMAT_VERSION + 1);
+		}
+
+		IOException ioExc = null;
+		try {
+			new SnapshotFile(emf, path);
+		} catch (IOException e) {
+			ioExc = e;
+		}
+		assertTrue(ioExc != null);
+	}
+
+}
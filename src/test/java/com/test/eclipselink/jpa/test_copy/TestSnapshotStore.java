@@ -0,0 +1,231 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+import com.test.eclipselink.jpa.test_copy.snapshot.EntitySnapshot;
+import com.test.eclipselink.jpa.test_copy.snapshot.SnapshotStore;
+
+/**
+ *
+ * Off-heap snapshots (see SnapshotStore) should read back what the copies they were taken from hold, back-reference
+ * included, and stop being readable once freed.
+ *
+ */
+public class TestSnapshotStore {
+
+	private static EntityManagerFactory emf;
+
+	@BeforeClass
+	public static void initialize() {
+		emf = TestGraphs.createEntityManagerFactory("snapshotStore");
+		TestGraphs.persistGraph(emf, 1L);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static RootEntity copy(CopyGroup cg, FetchGroup fg) {
+		EntityManager em = emf.createEntityManager();
+		RootEntity rootEnt = TestGraphs.findRootEntityById(em, 1L, fg);
+		RootEntity copyRoot = (RootEntity) ((JpaEntityManager) em).copy(rootEnt, cg);
+		em.close();
+		return copyRoot;
+	}
+
+	private static void assertNotReadable(EntitySnapshot snapshot) {
+		IllegalStateException illegalStateExc = null;
+		try {
+			snapshot.getLong("id");
+		} catch (IllegalStateException e) {
+			illegalStateExc = e;
+		}
+		assertTrue(illegalStateExc != null);
+	}
+
+	@Test
+	//the CASC_ALL_EMPTY_CG__NO_FG copy, the whole graph
+	public void SNAPSHOT_CASC_ALL() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+		RootEntity copyRoot = copy(cg, null);
+
+		SnapshotStore store = new SnapshotStore(emf);
+		long handle = store.put(copyRoot);
+		EntitySnapshot root = store.get(handle);
+
+		assertEquals(RootEntity.class, root.getEntityClass());
+		assertEquals(1L, root.getLong("id"));
+		assertEquals("Root:1L:Data1", root.getString("data1"));
+		assertEquals("Root:1L:Data2", root.get("data2"));
+		EntitySnapshot assoc = root.getReference("association");
+		//as in the copy, the lazy basic attribute is nulled
+		assertTrue(assoc.isNull("lazyData3"));
+		assertEquals("Assoc:1L:Data2", assoc.getString("data2"));
+		assertEquals("DeepAssoc:1L:Data2", assoc.getReference("deepAssocEntity").getString("data2"));
+		assertEquals("Assoc_1:1L:Data1", root.getReference("association1").getString("data1"));
+
+		//the back-reference leads to the root itself
+		assertEquals(root, root.getReference("association1").getReference("circularRef"));
+
+		//strings can be read in place
+		CharSequence data1 = root.getChars("data1");
+		assertEquals(13, data1.length());
+		assertEquals('R', data1.charAt(0));
+		assertEquals("Data1", data1.subSequence(8, 13).toString());
+		store.close();
+	}
+
+	@Test
+	//the CASC_TREE_GROUP_with_ATTS copy: what the copy does not have, the snapshot does not have either
+	public void SNAPSHOT_CASC_TREE_GROUP_with_ATTS() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("association.data2");
+		RootEntity copyRoot = copy(cg, TestGraphs.customFetchGroup());
+
+		SnapshotStore store = new SnapshotStore(emf);
+		EntitySnapshot root = store.get(store.put(copyRoot));
+		assertEquals("Root:1L:Data1", root.getString("data1"));
+		assertEquals("Assoc:1L:Data2", root.getReference("association").getString("data2"));
+		assertTrue(!root.isLoaded("data2"));
+		assertTrue(!root.isLoaded("association1"));
+		assertTrue(!root.getReference("association").isLoaded("lazyData3"));
+
+		IllegalStateException illegalStateExc = null;
+		try {
+			root.getString("data2");
+		} catch (IllegalStateException e) {
+			illegalStateExc = e;
+		}
+		assertTrue(illegalStateExc != null);
+		store.close();
+	}
+
+	@Test
+	//nulls, characters beyond Latin-1, and an entity that was never persisted
+	public void SNAPSHOT_new_entity() {
+		RootEntity rootEnt = new RootEntity();
+		rootEnt.setId(7L);
+		rootEnt.setData1("Rööt ☃");
+
+		SnapshotStore store = new SnapshotStore(emf);
+		EntitySnapshot root = store.get(store.put(rootEnt));
+		assertEquals("Rööt ☃", root.getString("data1"));
+		assertEquals('☃', root.getChars("data1").charAt(5));
+		assertTrue(root.isNull("data2"));
+		assertTrue(root.getString("data2") == null);
+		assertTrue(root.getReference("association") == null);
+		store.close();
+	}
+
+	@Test
+	//slabs smaller than a few graphs, freed as their snapshots are
+	public void SNAPSHOT_free() {
+		RootEntity rootEnt = new RootEntity();
+		rootEnt.setData1("Root:Data1");
+		rootEnt.setData2("Root:Data2");
+
+		SnapshotStore store = new SnapshotStore(emf, 512);
+		List<Long> handles = new ArrayList<Long>();
+		for (long id = 1; id <= 1000; id++) {
+			rootEnt.setId(id);
+			handles.add(store.put(rootEnt));
+		}
+		assertEquals(1000, store.getSnapshotCount());
+		EntitySnapshot first = store.get(handles.get(0));
+		EntitySnapshot last = store.get(handles.get(999));
+		assertEquals(1L, first.getLong("id"));
+
+		for (int i = 0; i < 999; i++) {
+			store.free(handles.get(i));
+		}
+		assertEquals(1, store.getSnapshotCount());
+		assertNotReadable(first);
+		assertEquals(1000L, last.getLong("id"));
+		//the slab of the last snapshot, and the few kept for reuse
+		assertTrue(store.getReservedBytes() <= 5 * 512);
+
+		IllegalStateException illegalStateExc = null;
+		try {
+			store.get(handles.get(0));
+		} catch (IllegalStateException e) {
+			illegalStateExc = e;
+		}
+		assertTrue(illegalStateExc != null);
+
+		store.close();
+		assertNotReadable(last);
+	}
+
+	@Test
+	//a view read while its snapshot is freed and its slab reused reads its own snapshot, or fails; never another one
+	public void SNAPSHOT_free_while_reading() throws InterruptedException {
+		final RootEntity rootEnt = new RootEntity();
+		rootEnt.setData1("Root:Data1");
+		final SnapshotStore store = new SnapshotStore(emf, 512);
+		final AtomicReference<EntitySnapshot> view = new AtomicReference<EntitySnapshot>();
+		final AtomicLong expectedId = new AtomicLong();
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<String> mismatch = new AtomicReference<String>();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				while (!done.get()) {
+					EntitySnapshot snapshot = view.get();
+					long id = expectedId.get();
+					if (snapshot == null) {
+						continue;
+					}
+					try {
+						long read = snapshot.getLong("id");
+						if (read != id && view.get() == snapshot) {
+							mismatch.set("read " + read + " instead of " + id);
+						}
+					} catch (IllegalStateException e) {
+						//freed
+					}
+				}
+			}
+		};
+		reader.start();
+		for (long id = 1; id <= 20000; id++) {
+			rootEnt.setId(id);
+			long handle = store.put(rootEnt);
+			//a view is kept while its slab is released and reused; the id is set first, so that it is read with it, or
+			//with that of a view it replaces, in which case the view is not checked
+			if (id % 64 == 1) {
+				EntitySnapshot snapshot = store.get(handle);
+				view.set(null);
+				expectedId.set(id);
+				view.set(snapshot);
+			}
+			store.free(handle);
+		}
+		store.close();
+		done.set(true);
+		reader.join();
+		assertNull(mismatch.get());
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.test.eclipselink.jpa.test_copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.sessions.CopyGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.test_copy.copy.CopyPlans;
+import com.test.eclipselink.jpa.test_copy.copy.StreamingCopier;
+import com.test.eclipselink.jpa.test_copy.entities.RootEntity;
+
+/**
+ *
+ * Streaming copies (see StreamingCopier) of a large ROOT_ENTITY table, 1M rows unless the "streamingCopy.rows" system
+ * property says otherwise.
+ *
+ * The database is a file database with cached tables, so that its rows are not on the heap the test measures: HSQLDB
+ * keeps no more than 10000 rows of its tables, and of a result, in memory.
+ *
+ */
+public class TestStreamingCopy {
+
+	private static final int ROWS = Integer.getInteger("streamingCopy.rows", 1000000);
+
+	//far below what 1M originals, or 1M copies, take
+	private static final long MAX_HEAP_GROWTH = 64L * 1024 * 1024;
+
+	private static EntityManagerFactory emf;
+
+	@BeforeClass
+	public static void initialize() throws IOException {
+		//the settings of the database only apply when it is created
+		deleteRecursively(new File("target/streamingCopy"));
+
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PersistenceUnitProperties.JDBC_URL,
+				"jdbc:hsqldb:file:target/streamingCopy/db;shutdown=true;hsqldb.default_table_type=cached;"
+						+ "hsqldb.result_max_memory_rows=10000");
+		properties.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.DROP_AND_CREATE);
+		properties.put(PersistenceUnitProperties.LOGGING_LEVEL, "OFF");
+		emf = TestGraphs.createEntityManagerFactory("streamingCopy", properties);
+
+		//generated by the database: persisting a million entities would take longer than copying them; every transaction
+		//inserts 10000 rows, as HSQLDB holds on to the rows of a transaction in memory
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		em.createNativeQuery("SET FILES CACHE ROWS 10000").executeUpdate();
+		em.createNativeQuery("SET FILES CACHE SIZE 4096").executeUpdate();
+		em.getTransaction().commit();
+		for (int from = 1; from <= ROWS; from += 10000) {
+			em.getTransaction().begin();
+			em.createNativeQuery("INSERT INTO ROOT_ENTITY (ID, DATA1, DATA2) SELECT X, 'Root:' || X || 'L:Data1', 'Root:' || X "
+					+ "|| 'L:Data2' FROM UNNEST(SEQUENCE_ARRAY(" + from + ", " + Math.min(from + 9999, ROWS) + ", 1)) AS T(X)")
+					.executeUpdate();
+			em.getTransaction().commit();
+		}
+		em.getTransaction().begin();
+		em.createNativeQuery("CHECKPOINT").executeUpdate();
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static void deleteRecursively(File file) throws IOException {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Cannot delete " + file);
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Test
+	public void STREAMING_flat_heap() {
+		CopyGroup cg = new CopyGroup();
+		cg.addAttribute("data1");
+		cg.addAttribute("data2");
+
+		final long baseline = usedHeap();
+		final long[] maxGrowth = new long[1];
+		final long[] copied = new long[1];
+
+		EntityManager em = emf.createEntityManager();
+		long count = new StreamingCopier(new CopyPlans(emf)).copyAll(em,
+				em.createQuery("SELECT o FROM RootEntity o ORDER BY o.id"), cg, new Consumer<RootEntity>() {
+
+					@Override
+					public void accept(RootEntity copy) {
+						copied[0]++;
+						assertEquals(Long.valueOf(copied[0]), copy.getId());
+						if (copied[0] % 100000 == 0) {
+							assertEquals("Root:" + copied[0] + "L:Data2", copy.getData2());
+							maxGrowth[0] = Math.max(maxGrowth[0], usedHeap() - baseline);
+						}
+					}
+				});
+		em.close();
+
+		assertEquals(ROWS, count);
+		assertEquals(ROWS, copied[0]);
+		assertTrue("The heap grew by " + maxGrowth[0] + " bytes while streaming.", maxGrowth[0] < MAX_HEAP_GROWTH);
+	}
+
+	@Test
+	//chunks that do not divide the number of results, and associations loaded chunk by chunk
+	public void STREAMING_partial_chunk() {
+		CopyGroup cg = new CopyGroup();
+		cg.cascadeAllParts();
+
+		EntityManager em = emf.createEntityManager();
+		final long[] copied = new long[1];
+		long count = new StreamingCopier(new CopyPlans(emf), 7).copyAll(em,
+				em.createQuery("SELECT o FROM RootEntity o WHERE o.id <= 100 ORDER BY o.id"), cg, new Consumer<RootEntity>() {
+
+					@Override
+					public void accept(RootEntity copy) {
+						copied[0]++;
+						assertEquals("Root:" + copied[0] + "L:Data1", copy.getData1());
+						assertTrue(copy.getAssociation() == null);
+					}
+				});
+		em.close();
+
+		assertEquals(100, count);
+		assertEquals(100, copied[0]);
+	}
+
+}